@@ -7,6 +7,7 @@ import scala.Tuple2;
 import scala.collection.Iterator;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -70,6 +71,28 @@ public class AHashMapBenchmark {
         bh.consume(m);
     }
 
+    @Benchmark
+    public void testCountAHashMapGetAndPlus(Blackhole bh) {
+        final Random rand = new Random(12345);
+        AHashMap<Integer,Integer> m = AHashMap.empty();
+
+        for(int i=0; i<numIter; i++) {
+            final int key = rand.nextInt(size);
+            m=m.plus(key, m.getOptional(key).orElse(0) + 1);
+        }
+        bh.consume(m);
+    }
+    @Benchmark
+    public void testCountAHashMapMerged(Blackhole bh) {
+        final Random rand = new Random(12345);
+        AHashMap<Integer,Integer> m = AHashMap.empty();
+
+        for(int i=0; i<numIter; i++) {
+            m=m.merged(rand.nextInt(size), 1, Integer::sum);
+        }
+        bh.consume(m);
+    }
+
     @Benchmark
     public void testIterateScala(Blackhole bh) {
         scala.collection.immutable.HashMap<Integer,Integer> m = new scala.collection.immutable.HashMap<>();
@@ -112,4 +135,174 @@ public class AHashMapBenchmark {
         }
         bh.consume(sum);
     }
+
+    private static final int numSmallMaps = 100_000;
+    private static final int smallMapSize = 8;
+
+    @Benchmark
+    public void testManySmallScala(Blackhole bh) {
+        final Object[] maps = new Object[numSmallMaps];
+        int sum=0;
+        for (int i=0; i<numSmallMaps; i++) {
+            scala.collection.immutable.HashMap<Integer,Integer> m = new scala.collection.immutable.HashMap<>();
+            for (int j=0; j<smallMapSize; j++) {
+                m=m.$plus(new Tuple2<>(i+j, j));
+            }
+            maps[i] = m;
+
+            final Iterator<Tuple2<Integer, Integer>> it = m.iterator();
+            while (it.hasNext()) {
+                sum += it.next()._2;
+            }
+        }
+        bh.consume(maps);
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testManySmallDexx(Blackhole bh) {
+        final Object[] maps = new Object[numSmallMaps];
+        int sum=0;
+        for (int i=0; i<numSmallMaps; i++) {
+            com.github.andrewoma.dexx.collection.HashMap<Integer,Integer> m = new com.github.andrewoma.dexx.collection.HashMap<>();
+            for (int j=0; j<smallMapSize; j++) {
+                m=m.put(i+j, j);
+            }
+            maps[i] = m;
+
+            for (Pair<Integer, Integer> el: m) {
+                sum += el.component2();
+            }
+        }
+        bh.consume(maps);
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testManySmallAHashMap(Blackhole bh) {
+        // many small maps held at the same time: run with '-prof gc' to see the per-map footprint of the CHAMP encoding
+        final Object[] maps = new Object[numSmallMaps];
+        int sum=0;
+        for (int i=0; i<numSmallMaps; i++) {
+            AHashMap<Integer,Integer> m = AHashMap.empty();
+            for (int j=0; j<smallMapSize; j++) {
+                m=m.plus(i+j, j);
+            }
+            maps[i] = m;
+
+            for (Map.Entry<Integer, Integer> el: m) {
+                sum += el.getValue();
+            }
+        }
+        bh.consume(maps);
+        bh.consume(sum);
+    }
+
+    @State(Scope.Benchmark)
+    public static class PrebuiltMaps {
+        scala.collection.immutable.HashMap<Integer,Integer> scalaMap = new scala.collection.immutable.HashMap<>();
+        com.github.andrewoma.dexx.collection.HashMap<Integer,Integer> dexxMap = new com.github.andrewoma.dexx.collection.HashMap<>();
+        AHashMap<Integer,Integer> aHashMap = AHashMap.empty();
+
+        @Setup
+        public void setUp() {
+            for(int i=0; i<size; i++) {
+                scalaMap = scalaMap.$plus(new Tuple2<>(i, i));
+                dexxMap = dexxMap.put(i, i);
+                aHashMap = aHashMap.plus(i, i);
+            }
+        }
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltScala(PrebuiltMaps maps, Blackhole bh) {
+        int sum=0;
+        final Iterator<Tuple2<Integer, Integer>> it = maps.scalaMap.iterator();
+        while (it.hasNext()) {
+            sum += it.next()._2;
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltDexx(PrebuiltMaps maps, Blackhole bh) {
+        int sum=0;
+        for (Pair<Integer, Integer> el: maps.dexxMap) {
+            sum += el.component2();
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltAHashMap(PrebuiltMaps maps, Blackhole bh) {
+        int sum=0;
+        for (Map.Entry<Integer, Integer> el: maps.aHashMap) {
+            sum += el.getValue();
+        }
+        bh.consume(sum);
+    }
+
+    /**
+     * A composite key that does not cache its hash code, like a record
+     */
+    static final class CompositeKey {
+        final String tenant;
+        final String region;
+        final long account;
+
+        CompositeKey (String tenant, String region, long account) {
+            this.tenant = tenant;
+            this.region = region;
+            this.account = account;
+        }
+
+        @Override public boolean equals (Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CompositeKey)) return false;
+            final CompositeKey that = (CompositeKey) o;
+            return account == that.account && tenant.equals(that.tenant) && region.equals(that.region);
+        }
+
+        @Override public int hashCode () {
+            return Objects.hash(tenant, region, account);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompositeKeyVersions {
+        final AVector<CompositeKey> keys = ARange.create(0, 1000).map(i -> new CompositeKey("tenant-" + (i % 17), "region-" + (i % 5), i)).toVector();
+        final AVector<PrehashedKey<CompositeKey>> prehashedKeys = keys.map(PrehashedKey::of);
+        final AVector<AHashMap<CompositeKey,Integer>> versions;
+
+        public CompositeKeyVersions() {
+            AHashMap<CompositeKey,Integer> m = AHashMap.empty();
+            for (int i=0; i<size; i++) m = m.plus(new CompositeKey("other", "region", i), i);
+            for (CompositeKey key: keys) m = m.plus(key, (int) key.account);
+
+            final AVector.Builder<AHashMap<CompositeKey,Integer>> builder = AVector.builder();
+            for (int i=0; i<100; i++) {
+                builder.add(m);
+                m = m.plus(new CompositeKey("other", "region", i), -i);
+            }
+            versions = builder.build();
+        }
+    }
+
+    @Benchmark
+    public void testLookupInVersionsAHashMap(CompositeKeyVersions data, Blackhole bh) {
+        int sum=0;
+        for (CompositeKey key: data.keys) {
+            for (AHashMap<CompositeKey,Integer> m: data.versions) sum += m.get(key);
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testLookupInVersionsAHashMapPrehashed(CompositeKeyVersions data, Blackhole bh) {
+        int sum=0;
+        for (PrehashedKey<CompositeKey> key: data.prehashedKeys) {
+            for (AHashMap<CompositeKey,Integer> m: data.versions) sum += m.getPrehashed(key);
+        }
+        bh.consume(sum);
+    }
 }
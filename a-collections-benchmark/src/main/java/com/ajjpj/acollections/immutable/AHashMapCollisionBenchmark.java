@@ -81,6 +81,49 @@ public class AHashMapCollisionBenchmark {
         bh.consume(sum);
     }
 
+    /**
+     * String keys consisting of the blocks "Aa" and "BB" all have the same hash code, so they end up in a single collision node
+     */
+    private static final String[] collidingStrings = collidingStrings(12);
+
+    private static String[] collidingStrings(int numBlocks) {
+        final String[] result = new String[1 << numBlocks];
+        for (int i=0; i<result.length; i++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int block=0; block<numBlocks; block++) {
+                sb.append((i & (1 << block)) == 0 ? "Aa" : "BB");
+            }
+            result[i] = sb.toString();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void testLargeCollisionBucketAHashMap(Blackhole bh) {
+        AHashMap<String,Integer> m = AHashMap.empty();
+        for (int i=0; i<collidingStrings.length; i++) {
+            m = m.plus(collidingStrings[i], i);
+        }
+        int sum=0;
+        for (String key: collidingStrings) {
+            sum += m.get(key);
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testLargeCollisionBucketHashMap(Blackhole bh) {
+        final java.util.HashMap<String,Integer> m = new java.util.HashMap<>();
+        for (int i=0; i<collidingStrings.length; i++) {
+            m.put(collidingStrings[i], i);
+        }
+        int sum=0;
+        for (String key: collidingStrings) {
+            sum += m.get(key);
+        }
+        bh.consume(sum);
+    }
+
     static class IntWithCollision {
         final int i;
 
@@ -109,4 +109,110 @@ public class AHashSetBenchmark {
         }
         bh.consume(sum);
     }
+
+    private static final int numSmallSets = 100_000;
+    private static final int smallSetSize = 8;
+
+    @Benchmark
+    public void testManySmallScala(Blackhole bh) {
+        final Object[] sets = new Object[numSmallSets];
+        int sum=0;
+        for (int i=0; i<numSmallSets; i++) {
+            scala.collection.immutable.HashSet<Integer> m = new scala.collection.immutable.HashSet<>();
+            for (int j=0; j<smallSetSize; j++) {
+                m=m.$plus(i+j);
+            }
+            sets[i] = m;
+
+            final Iterator<Integer> it = m.iterator();
+            while (it.hasNext()) {
+                sum += it.next();
+            }
+        }
+        bh.consume(sets);
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testManySmallDexx(Blackhole bh) {
+        final Object[] sets = new Object[numSmallSets];
+        int sum=0;
+        for (int i=0; i<numSmallSets; i++) {
+            com.github.andrewoma.dexx.collection.HashSet<Integer> m = com.github.andrewoma.dexx.collection.HashSet.empty();
+            for (int j=0; j<smallSetSize; j++) {
+                m=m.add(i+j);
+            }
+            sets[i] = m;
+
+            for (Integer el: m) {
+                sum += el;
+            }
+        }
+        bh.consume(sets);
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testManySmallAHashSet(Blackhole bh) {
+        // many small sets held at the same time: run with '-prof gc' to see the per-set footprint of the CHAMP encoding
+        final Object[] sets = new Object[numSmallSets];
+        int sum=0;
+        for (int i=0; i<numSmallSets; i++) {
+            AHashSet<Integer> m = AHashSet.empty();
+            for (int j=0; j<smallSetSize; j++) {
+                m=m.plus(i+j);
+            }
+            sets[i] = m;
+
+            for (Integer el: m) {
+                sum += el;
+            }
+        }
+        bh.consume(sets);
+        bh.consume(sum);
+    }
+
+    @State(Scope.Benchmark)
+    public static class PrebuiltSets {
+        scala.collection.immutable.HashSet<Integer> scalaSet = new scala.collection.immutable.HashSet<>();
+        com.github.andrewoma.dexx.collection.HashSet<Integer> dexxSet = com.github.andrewoma.dexx.collection.HashSet.empty();
+        AHashSet<Integer> aHashSet = AHashSet.empty();
+
+        @Setup
+        public void setUp() {
+            for(int i=0; i<size; i++) {
+                scalaSet = scalaSet.$plus(i);
+                dexxSet = dexxSet.add(i);
+                aHashSet = aHashSet.plus(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltScala(PrebuiltSets sets, Blackhole bh) {
+        int sum=0;
+        final Iterator<Integer> it = sets.scalaSet.iterator();
+        while (it.hasNext()) {
+            sum += it.next();
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltDexx(PrebuiltSets sets, Blackhole bh) {
+        int sum=0;
+        for (Integer el: sets.dexxSet) {
+            sum += el;
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testIteratePrebuiltAHashSet(PrebuiltSets sets, Blackhole bh) {
+        int sum=0;
+        for (Integer el: sets.aHashSet) {
+            sum += el;
+        }
+        bh.consume(sum);
+    }
 }
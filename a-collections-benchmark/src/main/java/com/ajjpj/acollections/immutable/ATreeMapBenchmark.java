@@ -1,5 +1,7 @@
 package com.ajjpj.acollections.immutable;
 
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.util.AOption;
 import com.github.andrewoma.dexx.collection.Pair;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
@@ -73,7 +75,57 @@ public class ATreeMapBenchmark {
         bh.consume(m);
     }
 
+    @Benchmark
+    public void testModifyABTreeMap(Blackhole bh) {
+        final Random rand = new Random(12345);
+        ABTreeMap<Integer,Integer> m = ABTreeMap.empty(Comparator.<Integer>naturalOrder());
+
+        for(int i=0; i<numIter; i++) {
+            final int key = rand.nextInt(size);
+            final boolean add = rand.nextBoolean();
+
+            if(add)
+                m=m.plus(key, key);
+            else
+                m=m.minus(key);
+        }
+        bh.consume(m);
+    }
+
 //    @Benchmark
+    public void testCountATreeMapGetAndPlus(Blackhole bh) {
+        final Random rand = new Random(12345);
+        ATreeMap<Integer,Integer> m = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+
+        for(int i=0; i<numIter; i++) {
+            final int key = rand.nextInt(size);
+            m=m.plus(key, m.getOptional(key).orElse(0) + 1);
+        }
+        bh.consume(m);
+    }
+    @Benchmark
+    public void testCountATreeMapMerged(Blackhole bh) {
+        final Random rand = new Random(12345);
+        ATreeMap<Integer,Integer> m = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+
+        for(int i=0; i<numIter; i++) {
+            m=m.merged(rand.nextInt(size), 1, Integer::sum);
+        }
+        bh.consume(m);
+    }
+
+    @Benchmark
+    public void testCountABTreeMapMerged(Blackhole bh) {
+        final Random rand = new Random(12345);
+        ABTreeMap<Integer,Integer> m = ABTreeMap.empty(Comparator.<Integer>naturalOrder());
+
+        for(int i=0; i<numIter; i++) {
+            m=m.merged(rand.nextInt(size), 1, Integer::sum);
+        }
+        bh.consume(m);
+    }
+
+    @Benchmark
     public void testIterateScala(Blackhole bh) {
         scala.collection.immutable.TreeMap<Integer,Integer> m = new scala.collection.immutable.TreeMap<>(new LowPriorityOrderingImplicits(){}.comparatorToOrdering(Comparator.<Integer>naturalOrder()));
 
@@ -115,4 +167,222 @@ public class ATreeMapBenchmark {
         }
         bh.consume(sum);
     }
+
+    @Benchmark
+    public void testBuildSortedATreeMapPlus(Blackhole bh) {
+        ATreeMap<Integer,Integer> m = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            m = m.plus(i, i);
+        }
+        bh.consume(m);
+    }
+    @Benchmark
+    public void testBuildSortedATreeMapBuilder(Blackhole bh) {
+        final ATreeMap.Builder<Integer,Integer> builder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            builder.add(i, i);
+        }
+        bh.consume(builder.build());
+    }
+    @Benchmark
+    public void testBuildRandomATreeMapBuilder(Blackhole bh) {
+        final Random rand = new Random(12345);
+        final ATreeMap.Builder<Integer,Integer> builder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            final int key = rand.nextInt(size);
+            builder.add(key, key);
+        }
+        bh.consume(builder.build());
+    }
+
+    @Benchmark
+    public void testBuildSortedABTreeMapPlus(Blackhole bh) {
+        ABTreeMap<Integer,Integer> m = ABTreeMap.empty(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            m = m.plus(i, i);
+        }
+        bh.consume(m);
+    }
+    @Benchmark
+    public void testBuildSortedABTreeMapBuilder(Blackhole bh) {
+        final ABTreeMap.Builder<Integer,Integer> builder = ABTreeMap.builder(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            builder.add(i, i);
+        }
+        bh.consume(builder.build());
+    }
+    @Benchmark
+    public void testBuildRandomABTreeMapBuilder(Blackhole bh) {
+        final Random rand = new Random(12345);
+        final ABTreeMap.Builder<Integer,Integer> builder = ABTreeMap.builder(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<size; i++) {
+            final int key = rand.nextInt(size);
+            builder.add(key, key);
+        }
+        bh.consume(builder.build());
+    }
+
+    @State(Scope.Benchmark)
+    public static class LookupState {
+        ATreeMap<Integer,Integer> treeMap;
+        ABTreeMap<Integer,Integer> bTreeMap;
+
+        @Setup
+        public void setUp() {
+            final ATreeMap.Builder<Integer,Integer> treeMapBuilder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+            final ABTreeMap.Builder<Integer,Integer> bTreeMapBuilder = ABTreeMap.builder(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size; i++) {
+                treeMapBuilder.add(i, i);
+                bTreeMapBuilder.add(i, i);
+            }
+            treeMap = treeMapBuilder.build();
+            bTreeMap = bTreeMapBuilder.build();
+        }
+    }
+
+    /**
+     * looks up random keys in a red-black tree vs. in a B-tree with the same entries
+     */
+    @Benchmark
+    public void testLookupATreeMap(LookupState state, Blackhole bh) {
+        final Random rand = new Random(12345);
+        int sum = 0;
+        for (int i=0; i<size; i++) {
+            sum += state.treeMap.get(rand.nextInt(size));
+        }
+        bh.consume(sum);
+    }
+    @Benchmark
+    public void testLookupABTreeMap(LookupState state, Blackhole bh) {
+        final Random rand = new Random(12345);
+        int sum = 0;
+        for (int i=0; i<size; i++) {
+            sum += state.bTreeMap.get(rand.nextInt(size));
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testIterateBuiltATreeMap(LookupState state, Blackhole bh) {
+        int sum=0;
+        for (Map.Entry<Integer, Integer> el: state.treeMap) {
+            sum += el.getValue();
+        }
+        bh.consume(sum);
+    }
+    @Benchmark
+    public void testIterateBuiltABTreeMap(LookupState state, Blackhole bh) {
+        int sum=0;
+        for (Map.Entry<Integer, Integer> el: state.bTreeMap) {
+            sum += el.getValue();
+        }
+        bh.consume(sum);
+    }
+
+    @Benchmark
+    public void testRangeCountATreeMap(LookupState state, Blackhole bh) {
+        final Random rand = new Random(12345);
+        int sum = 0;
+        for (int i=0; i<size/100; i++) {
+            final int from = rand.nextInt(size);
+            sum += state.treeMap.countInRange(AOption.some(from), AOption.some(from + size/10));
+        }
+        bh.consume(sum);
+    }
+    @Benchmark
+    public void testRangeCountABTreeMap(LookupState state, Blackhole bh) {
+        final Random rand = new Random(12345);
+        int sum = 0;
+        for (int i=0; i<size/100; i++) {
+            final int from = rand.nextInt(size);
+            sum += state.bTreeMap.countInRange(AOption.some(from), AOption.some(from + size/10));
+        }
+        bh.consume(sum);
+    }
+
+    @State(Scope.Benchmark)
+    public static class ScanState {
+        ATreeMap<Integer,Integer> treeMap;
+        ATreeSet<Integer> treeSet;
+
+        @Setup
+        public void setUp() {
+            final ATreeMap.Builder<Integer,Integer> treeMapBuilder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+            final ATreeSet.Builder<Integer> treeSetBuilder = ATreeSet.builder(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size; i++) {
+                treeMapBuilder.add(i, i);
+                treeSetBuilder.add(i);
+            }
+            treeMap = treeMapBuilder.build();
+            treeSet = treeSetBuilder.build();
+        }
+    }
+
+    /**
+     * range scans and full scans over red-black trees (see also testIterateBuiltATreeMap); run with '-prof gc' to see that iterating
+     *  allocates (almost) nothing per element
+     */
+    @Benchmark
+    public void testRangeScanATreeMap(ScanState state, Blackhole bh) {
+        int sum=0;
+        for (int from=0; from<size; from += size/100) {
+            final AIterator<Map.Entry<Integer,Integer>> it = state.treeMap.iterator(AOption.some(from), true, AOption.some(from + size/1000), false);
+            while (it.hasNext()) {
+                sum += it.next().getValue();
+            }
+        }
+        bh.consume(sum);
+    }
+    @Benchmark
+    public void testScanATreeSet(ScanState state, Blackhole bh) {
+        int sum=0;
+        for (Integer el: state.treeSet) {
+            sum += el;
+        }
+        bh.consume(sum);
+    }
+    @Benchmark
+    public void testRangeScanATreeSet(ScanState state, Blackhole bh) {
+        int sum=0;
+        for (int from=0; from<size; from += size/100) {
+            final AIterator<Integer> it = state.treeSet.iterator(AOption.some(from), true, AOption.some(from + size/1000), false);
+            while (it.hasNext()) {
+                sum += it.next();
+            }
+        }
+        bh.consume(sum);
+    }
+
+    @State(Scope.Benchmark)
+    public static class MergeState {
+        ATreeMap<Integer,Integer> large;
+        ATreeMap<Integer,Integer> small;
+
+        @Setup
+        public void setUp() {
+            final Random rand = new Random(12345);
+            final ATreeMap.Builder<Integer,Integer> largeBuilder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size; i++) largeBuilder.add(i, i);
+            final ATreeMap.Builder<Integer,Integer> smallBuilder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size/100; i++) smallBuilder.add(rand.nextInt(size), -1);
+            large = largeBuilder.build();
+            small = smallBuilder.build();
+        }
+    }
+
+    /**
+     * merges a small map into a large one, entry by entry vs. by splitting and joining the two trees
+     */
+    @Benchmark
+    public void testMergeSmallIntoLargeATreeMapPlus(MergeState state, Blackhole bh) {
+        ATreeMap<Integer,Integer> m = state.large;
+        for (Map.Entry<Integer,Integer> e: state.small) {
+            m = m.plus(e.getKey(), e.getValue());
+        }
+        bh.consume(m);
+    }
+    @Benchmark
+    public void testMergeSmallIntoLargeATreeMapPlusAll(MergeState state, Blackhole bh) {
+        bh.consume(state.large.plusAll(state.small));
+    }
 }
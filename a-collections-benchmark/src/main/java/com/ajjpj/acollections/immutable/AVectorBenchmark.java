@@ -5,7 +5,10 @@ import com.github.andrewoma.dexx.collection.Vector;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
+import java.util.ArrayList;
+import java.util.PrimitiveIterator;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Warmup(iterations = 3, time=10, timeUnit = TimeUnit.SECONDS)
 @BenchmarkMode(Mode.AverageTime)
@@ -58,6 +61,63 @@ public class AVectorBenchmark {
         bh.consume(v);
     }
 
+    @Benchmark
+    public void testAppendAVectorTransient(Blackhole bh) {
+        final AVector.Transient<Integer> t = AVector.<Integer>empty().toTransient();
+        for (int i=0; i<numElements; i++) {
+            t.append(i);
+        }
+        bh.consume(t.toVector());
+    }
+
+    /**
+     * appends batches of elements to an existing vector, e.g. for an event log
+     */
+    @Benchmark
+    public void testAppendBatchesAVector(Blackhole bh) {
+        AVector<Integer> v = AVector.empty();
+        for (int batch=0; batch<numElements/1000; batch++) {
+            for (int i=0; i<1000; i++) {
+                v = v.append(i);
+            }
+            bh.consume(v);
+        }
+    }
+    @Benchmark
+    public void testAppendBatchesAVectorWithMutations(Blackhole bh) {
+        AVector<Integer> v = AVector.empty();
+        for (int batch=0; batch<numElements/1000; batch++) {
+            v = v.withMutations(t -> {
+                for (int i=0; i<1000; i++) {
+                    t.append(i);
+                }
+            });
+            bh.consume(v);
+        }
+    }
+
+    /**
+     * repeatedly cuts a vector in two at varying positions and joins the parts in swapped order, e.g. for lists of document chunks
+     */
+    @Benchmark
+    public void testSplitAndMergeAVector(Blackhole bh) {
+        AVector<Integer> v = AVector.from(ARange.create(0, numElements/100));
+        for (int i=0; i<100; i++) {
+            final int at = (i * 7919) % v.size();
+            v = v.drop(at).concat(v.take(at));
+        }
+        bh.consume(v);
+    }
+    @Benchmark
+    public void testSplitAndMergeARrbVector(Blackhole bh) {
+        ARrbVector<Integer> v = ARrbVector.from(ARange.create(0, numElements/100));
+        for (int i=0; i<100; i++) {
+            final int at = (i * 7919) % v.size();
+            v = v.drop(at).concat(v.take(at));
+        }
+        bh.consume(v);
+    }
+
     @Benchmark
     public void testBuildDexx(Blackhole bh) {
         Builder<Integer, Vector<Integer>> builder = Vector.<Integer>factory().newBuilder();
@@ -124,4 +184,102 @@ public class AVectorBenchmark {
         }
         bh.consume(result);
     }
+
+    /**
+     * builds vectors of boxed vs. primitive values; run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} for the difference in footprint
+     */
+    @Benchmark
+    public void testBuildAVectorOfDouble(Blackhole bh) {
+        AVector.Builder<Double> builder = AVector.builder();
+        for (int i=0; i<numElements; i++) {
+            builder.add(i * .5);
+        }
+        bh.consume(builder.build());
+    }
+    @Benchmark
+    public void testBuildADoubleVector(Blackhole bh) {
+        ADoubleVector.Builder builder = ADoubleVector.builder();
+        for (int i=0; i<numElements; i++) {
+            builder.addDouble(i * .5);
+        }
+        bh.consume(builder.build());
+    }
+
+    @State(Scope.Benchmark)
+    public static class ScanState {
+        AVector<Integer> boxed;
+        AIntVector primitive;
+
+        @Setup
+        public void setUp() {
+            boxed = AVector.from(ARange.create(0, numElements));
+            primitive = AIntVector.from(ARange.create(0, numElements));
+        }
+    }
+
+    /**
+     * sums up prebuilt vectors' elements, comparing scans over boxed and primitive elements
+     */
+    @Benchmark
+    public void testScanAVectorOfInteger(ScanState state, Blackhole bh) {
+        long result = 0;
+        for (int i: state.boxed) {
+            result += i;
+        }
+        bh.consume(result);
+    }
+    @Benchmark
+    public void testScanAIntVectorIterator(ScanState state, Blackhole bh) {
+        long result = 0;
+        for (PrimitiveIterator.OfInt it = state.primitive.intIterator(); it.hasNext(); ) {
+            result += it.nextInt();
+        }
+        bh.consume(result);
+    }
+    @Benchmark
+    public void testScanAIntVectorSum(ScanState state, Blackhole bh) {
+        bh.consume(state.primitive.sum());
+    }
+
+    @State(Scope.Benchmark)
+    public static class TransformState {
+        AVector<Integer> vector;
+        ArrayList<Integer> arrayList;
+
+        @Setup
+        public void setUp() {
+            vector = AVector.from(ARange.create(0, numElements));
+            arrayList = new ArrayList<>(vector);
+        }
+    }
+
+    /**
+     * map / filter / collect on prebuilt collections, comparing AVector's leaf-at-a-time implementations with ArrayList streams
+     */
+    @Benchmark
+    public void testMapAVector(TransformState state, Blackhole bh) {
+        bh.consume(state.vector.map(i -> i + 1));
+    }
+    @Benchmark
+    public void testMapArrayListStream(TransformState state, Blackhole bh) {
+        bh.consume(state.arrayList.stream().map(i -> i + 1).collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public void testFilterAVector(TransformState state, Blackhole bh) {
+        bh.consume(state.vector.filter(i -> (i & 4) == 0));
+    }
+    @Benchmark
+    public void testFilterArrayListStream(TransformState state, Blackhole bh) {
+        bh.consume(state.arrayList.stream().filter(i -> (i & 4) == 0).collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public void testCollectAVector(TransformState state, Blackhole bh) {
+        bh.consume(state.vector.collect(i -> (i & 4) == 0, i -> i + 1));
+    }
+    @Benchmark
+    public void testCollectArrayListStream(TransformState state, Blackhole bh) {
+        bh.consume(state.arrayList.stream().filter(i -> (i & 4) == 0).map(i -> i + 1).collect(Collectors.toList()));
+    }
 }
@@ -0,0 +1,102 @@
+package com.ajjpj.acollections.immutable;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 3, time=10, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Measurement(iterations = 10, time=10, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+public class ParallelStreamBenchmark {
+    private static final int size = 1_000_000;
+
+    @Benchmark
+    public long testParallelSumArrayList(PrebuiltCollections c) {
+        return c.arrayList.parallelStream().mapToLong(ParallelStreamBenchmark::work).sum();
+    }
+    @Benchmark
+    public long testParallelSumAVector(PrebuiltCollections c) {
+        return c.aVector.parallelStream().mapToLong(ParallelStreamBenchmark::work).sum();
+    }
+    @Benchmark
+    public long testSequentialSumAVector(PrebuiltCollections c) {
+        return c.aVector.stream().mapToLong(ParallelStreamBenchmark::work).sum();
+    }
+
+    @Benchmark
+    public long testParallelSumHashMap(PrebuiltCollections c) {
+        return c.hashMap.entrySet().parallelStream().mapToLong(e -> work(e.getValue())).sum();
+    }
+    @Benchmark
+    public long testParallelSumAHashMap(PrebuiltCollections c) {
+        return c.aHashMap.entrySet().parallelStream().mapToLong(e -> work(e.getValue())).sum();
+    }
+    @Benchmark
+    public long testSequentialSumAHashMap(PrebuiltCollections c) {
+        return c.aHashMap.entrySet().stream().mapToLong(e -> work(e.getValue())).sum();
+    }
+
+    @Benchmark
+    public long testParallelSumTreeMap(PrebuiltCollections c) {
+        return c.treeMap.entrySet().parallelStream().mapToLong(e -> work(e.getValue())).sum();
+    }
+    @Benchmark
+    public long testParallelSumATreeMap(PrebuiltCollections c) {
+        return c.aTreeMap.entrySet().parallelStream().mapToLong(e -> work(e.getValue())).sum();
+    }
+    @Benchmark
+    public long testSequentialSumATreeMap(PrebuiltCollections c) {
+        return c.aTreeMap.entrySet().stream().mapToLong(e -> work(e.getValue())).sum();
+    }
+
+    @Benchmark
+    public AHashMap<Integer,Integer> testBuildAHashMap(PrebuiltCollections c) {
+        return AHashMap.from(c.entries);
+    }
+    @Benchmark
+    public AHashMap<Integer,Integer> testBuildAHashMapFromParallel(PrebuiltCollections c) {
+        return AHashMap.fromParallel(c.entries);
+    }
+    @Benchmark
+    public AHashMap<Integer,Integer> testBuildAHashMapParallelCollector(PrebuiltCollections c) {
+        return c.entries.parallelStream().collect(AHashMap.streamCollector());
+    }
+
+    /**
+     * some per-element work so that parallelization can pay off
+     */
+    private static long work(int i) {
+        long result = i;
+        for (int j=0; j<20; j++) {
+            result = result * 6364136223846793005L + 1442695040888963407L;
+        }
+        return result;
+    }
+
+    @State(Scope.Benchmark)
+    public static class PrebuiltCollections {
+        List<Integer> arrayList = new ArrayList<>();
+        AVector<Integer> aVector;
+        Map<Integer,Integer> hashMap = new HashMap<>();
+        List<Map.Entry<Integer,Integer>> entries = new ArrayList<>();
+        AHashMap<Integer,Integer> aHashMap;
+        Map<Integer,Integer> treeMap = new TreeMap<>();
+        ATreeMap<Integer,Integer> aTreeMap;
+
+        @Setup
+        public void setUp() {
+            for(int i=0; i<size; i++) {
+                arrayList.add(i);
+                hashMap.put(i, i);
+                treeMap.put(i, i);
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(i, i));
+            }
+            aVector = AVector.from(arrayList);
+            aHashMap = AHashMap.fromMap(hashMap);
+            aTreeMap = ATreeMap.fromMap(treeMap);
+        }
+    }
+}
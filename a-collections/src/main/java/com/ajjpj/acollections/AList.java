@@ -556,6 +556,18 @@ public interface AList<T> extends ACollection<T>, List<T> {
 
     @Override ListIterator<T> listIterator(int index);
 
+    /**
+     * Returns a list with this list's elements from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive), as specified by
+     *  {@link List#subList(int, int)}. For immutable lists, this is a read-only view that is created without copying the elements,
+     *  which makes it cheap e.g. for paginating large lists.
+     *
+     * @param fromIndex the first index to keep
+     * @param toIndex   the upper bound (exclusive) of indices to keep
+     * @return a list with elements from {@code fromIndex} up to {@code toIndex}
+     * @throws IndexOutOfBoundsException if {@code fromIndex} or {@code toIndex} is out of range
+     */
+    @Override AList<T> subList(int fromIndex, int toIndex);
+
     <U> AList<U> map(Function<T,U> f);
     <U> AList<U> flatMap(Function<T, Iterable<U>> f);
     AList<T> filter(Predicate<T> f);
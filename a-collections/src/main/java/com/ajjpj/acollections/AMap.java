@@ -4,8 +4,8 @@ import com.ajjpj.acollections.immutable.AHashMap;
 import com.ajjpj.acollections.mutable.AMutableMapWrapper;
 import com.ajjpj.acollections.util.AOption;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -239,6 +239,73 @@ public interface AMap<K,V> extends Map<K,V>, ACollectionOps<Map.Entry<K,V>>, Ite
      */
     AMap<K,V> minus(K key);
 
+    /**
+     * Adds, replaces or removes the entry for a given key based on its current value, returning the modified map. The function is
+     *  called with the value this map holds for the key (or {@link AOption#none()} if there is none), and it returns the new value,
+     *  or {@link AOption#none()} to remove the entry.
+     *
+     * <p> For a mutable AMap, this modifies the map in place; for an immutable AMap, the method returns a new instance. Persistent
+     *  maps look up the key only once for this, and they return the map itself if the function returns the existing value (by
+     *  identity), or no value for a missing key. This makes read-modify-write updates cheaper than calling
+     *  {@link #getOptional(Object)} and {@link #plus(Object, Object)}:
+     *
+     * <p> {@code counts = counts.updatedWith(word, n -> AOption.some(n.orElse(0) + 1));}
+     *
+     * @param key the key whose entry is updated
+     * @param f   the function determining the new value
+     * @return the (potentially) modified map
+     */
+    default AMap<K,V> updatedWith (K key, Function<AOption<V>, AOption<V>> f) {
+        final AOption<V> existing = getOptional(key);
+        final AOption<V> result = f.apply(existing);
+        if (result.isDefined()) {
+            if (existing.isDefined() && existing.get() == result.get()) return this;
+            return plus(key, result.get());
+        }
+        return existing.isDefined() ? minus(key) : this;
+    }
+
+    /**
+     * The persistent counterpart of {@link java.util.Map#compute(Object, BiFunction)}: This is the same as
+     *  {@link #updatedWith(Object, Function)}, except that the function is called with the key as well.
+     *
+     * @param key the key whose entry is updated
+     * @param f   the function determining the new value, or {@link AOption#none()} to remove the entry
+     * @return the (potentially) modified map
+     */
+    default AMap<K,V> computed (K key, BiFunction<? super K, AOption<V>, AOption<V>> f) {
+        return updatedWith(key, v -> f.apply(key, v));
+    }
+
+    /**
+     * The persistent counterpart of {@link java.util.Map#computeIfAbsent(Object, Function)}: If this map holds no entry for a given
+     *  key, an entry with a value computed from the key is added. Otherwise the map is returned unchanged, and the function is not
+     *  called.
+     *
+     * @param key the key whose entry is added if it does not exist
+     * @param f   the function computing the value for a missing key
+     * @return the (potentially) modified map
+     */
+    default AMap<K,V> computedIfAbsent (K key, Function<? super K, ? extends V> f) {
+        return updatedWith(key, v -> v.isDefined() ? v : AOption.some(f.apply(key)));
+    }
+
+    /**
+     * The persistent counterpart of {@link java.util.Map#merge(Object, Object, BiFunction)}: If this map holds no entry for a given
+     *  key, an entry with the given value is added. Otherwise the existing value is replaced by the result of calling the function
+     *  with the existing value and the given value.
+     *
+     * <p> {@code counts = counts.merged(word, 1, Integer::sum);}
+     *
+     * @param key   the key whose entry is updated
+     * @param value the value to add, or to merge with an existing value
+     * @param f     the function merging an existing value with the given value
+     * @return the modified map
+     */
+    default AMap<K,V> merged (K key, V value, BiFunction<V,V,V> f) {
+        return updatedWith(key, v -> AOption.some(v.isDefined() ? f.apply(v.get(), value) : value));
+    }
+
     /**
      * Adds entries to this map, replacing existing entries if they exists, returning the modified map.
      *
@@ -258,6 +325,92 @@ public interface AMap<K,V> extends Map<K,V>, ACollectionOps<Map.Entry<K,V>>, Ite
         return result;
     }
 
+    /**
+     * Adds entries to this map, using a function to determine the resulting value for keys contained in both maps, and returns the
+     *  modified map.
+     *
+     * <p> For a mutable AMap, this modifies the map in place; for an immutable AMap, the method returns a new instance with the new
+     *  entries. Persistent hash maps implement this by merging their internal structures, reusing the parts that only one of them
+     *  contains.
+     *
+     * <p> {@code AMap<String,Integer> m = AMap.of("a", 1, "b", 2).plusAll(AMap.of("b", 10, "c", 20), Integer::sum);}
+     * <p> {@code System.out.println(m); // a->1, b->12, c->20 }
+     *
+     * @param other the map whose entries are added to this map
+     * @param f     the function determining the resulting value if both maps contain a key; it is called with this map's value
+     *              and the other map's value
+     * @return the map with the new entries
+     */
+    default AMap<K,V> plusAll (Map<? extends K, ? extends V> other, BiFunction<V,V,V> f) {
+        AMap<K,V> result = this;
+        for (Map.Entry<? extends K, ? extends V> e: other.entrySet()) {
+            result = result.merged(e.getKey(), e.getValue(), f);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries for a number of keys from this map, returning the modified map.
+     *
+     * <p> For a mutable AMap, this modifies the map in place; for an immutable AMap, the method returns a new instance. Passing
+     *  another persistent hash map's {@link #keySet()} to a persistent hash map allows an implementation to work on both maps' internal
+     *  structures rather than removing keys one at a time.
+     *
+     * @param keys the keys whose entries are removed
+     * @return the (potentially) modified map
+     */
+    default AMap<K,V> minusAll (Iterable<? extends K> keys) {
+        AMap<K,V> result = this;
+        for (K key: keys) {
+            result = result.minus(key);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries whose keys are not contained in a given collection from this map, returning the modified map.
+     *
+     * <p> For a mutable AMap, this modifies the map in place; for an immutable AMap, the method returns a new instance. Passing
+     *  another persistent hash map's {@link #keySet()} to a persistent hash map allows an implementation to work on both maps' internal
+     *  structures rather than checking keys one at a time.
+     *
+     * @param keys the keys whose entries are retained
+     * @return the (potentially) modified map
+     */
+    default AMap<K,V> retainKeys (Collection<? extends K> keys) {
+        final List<K> toBeRemoved = new ArrayList<>();
+        for (K key: keySet()) {
+            if (! keys.contains(key)) toBeRemoved.add(key);
+        }
+        return minusAll(toBeRemoved);
+    }
+
+    /**
+     * Returns the differences between this map and another map, i.e. the changes that turn this map into the other map: entries
+     *  whose keys are contained only in the other map are reported as {@link AMapChange#isAdded() added}, entries whose keys are
+     *  contained only in this map as {@link AMapChange#isRemoved() removed}, and entries whose values differ (based on
+     *  {@link Object#equals(Object)}) as {@link AMapChange#isChanged() changed}.
+     *
+     * <p> For two versions of the same persistent map (e.g. an {@link AHashMap} and a modified version of it), implementations skip
+     *  the parts of the internal structure that both versions share, so the cost is proportional to the number of changes rather
+     *  than the maps' size. This makes it cheap to find out what changed between two snapshots, e.g. for invalidating caches.
+     *
+     * @param other the map this map is compared with
+     * @return an iterator over the changes
+     */
+    default AIterator<AMapChange<K,V>> diff (AMap<K,V> other) {
+        final List<AMapChange<K,V>> result = new ArrayList<>();
+        for (Map.Entry<K,V> e: this) {
+            final AOption<V> otherValue = other.getOptional(e.getKey());
+            if (otherValue.isEmpty()) result.add(AMapChange.removed(e.getKey(), e.getValue()));
+            else if (! Objects.equals(e.getValue(), otherValue.get())) result.add(AMapChange.changed(e.getKey(), e.getValue(), otherValue.get()));
+        }
+        for (Map.Entry<K,V> e: other) {
+            if (! containsKey(e.getKey())) result.add(AMapChange.added(e.getKey(), e.getValue()));
+        }
+        return AIterator.wrap(result.iterator());
+    }
+
     @Override AMap<K, V> filter (Predicate<Entry<K, V>> f);
     @Override AMap<K, V> filterNot (Predicate<Entry<K, V>> f);
 
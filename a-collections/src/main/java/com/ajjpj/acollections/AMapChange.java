@@ -0,0 +1,83 @@
+package com.ajjpj.acollections;
+
+import com.ajjpj.acollections.util.AOption;
+
+import java.util.Objects;
+
+
+/**
+ * A single difference between two versions of a map as returned by {@link AMap#diff(AMap)}: an entry that was added, removed, or
+ *  whose value was changed.
+ *
+ * @param <K> the map's key type
+ * @param <V> the map's value type
+ */
+public final class AMapChange<K,V> {
+    private final K key;
+    private final AOption<V> oldValue;
+    private final AOption<V> newValue;
+
+    private AMapChange (K key, AOption<V> oldValue, AOption<V> newValue) {
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public static <K,V> AMapChange<K,V> added (K key, V newValue) {
+        return new AMapChange<>(key, AOption.none(), AOption.some(newValue));
+    }
+    public static <K,V> AMapChange<K,V> removed (K key, V oldValue) {
+        return new AMapChange<>(key, AOption.some(oldValue), AOption.none());
+    }
+    public static <K,V> AMapChange<K,V> changed (K key, V oldValue, V newValue) {
+        return new AMapChange<>(key, AOption.some(oldValue), AOption.some(newValue));
+    }
+
+    /**
+     * @return the key whose entry differs between the two maps
+     */
+    public K key () {
+        return key;
+    }
+
+    /**
+     * @return the value in the original map, or {@link AOption#none()} if the entry was added
+     */
+    public AOption<V> oldValue () {
+        return oldValue;
+    }
+
+    /**
+     * @return the value in the other map, or {@link AOption#none()} if the entry was removed
+     */
+    public AOption<V> newValue () {
+        return newValue;
+    }
+
+    public boolean isAdded () {
+        return oldValue.isEmpty();
+    }
+    public boolean isRemoved () {
+        return newValue.isEmpty();
+    }
+    public boolean isChanged () {
+        return oldValue.isDefined() && newValue.isDefined();
+    }
+
+    @Override public boolean equals (Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final AMapChange<?, ?> that = (AMapChange<?, ?>) o;
+        return Objects.equals(key, that.key) && oldValue.equals(that.oldValue) && newValue.equals(that.newValue);
+    }
+
+    @Override public int hashCode () {
+        return Objects.hash(key, oldValue, newValue);
+    }
+
+    @Override public String toString () {
+        if (isAdded()) return "AMapChange{added " + key + "->" + newValue.get() + "}";
+        if (isRemoved()) return "AMapChange{removed " + key + "->" + oldValue.get() + "}";
+        return "AMapChange{changed " + key + "->" + oldValue.get() + " to " + newValue.get() + "}";
+    }
+}
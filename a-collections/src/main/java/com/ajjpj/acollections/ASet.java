@@ -269,6 +269,22 @@ public interface ASet<T> extends ACollection<T>, Set<T> {
      */
     ASet<T> diff(Set<T> that);
 
+    /**
+     * Returns an iterator over the symmetric difference between this set and another set, i.e. over all elements that are contained
+     *  in exactly one of the two sets. Whether an element was added or removed can be determined by checking which of the sets
+     *  contains it.
+     *
+     * <p> For two versions of the same persistent set (e.g. an {@link AHashSet} and a modified version of it), implementations skip
+     *  the parts of the internal structure that both versions share, so the cost is proportional to the number of differences
+     *  rather than the sets' size.
+     *
+     * @param that the set this set is compared with
+     * @return an iterator over the elements contained in exactly one of the sets
+     */
+    default AIterator<T> symmetricDiff(Set<T> that) {
+        return iterator().filterNot(that::contains).concat(AIterator.wrap(that.iterator()).filterNot(this::contains));
+    }
+
     /**
      * Returns an iterator with all of this set's subsets. The number of subsets can be huge compared to the
      *  number of elements in the set (e.g. &gt; 1.000.000 subsets for a set of 20 elements), which is the reason
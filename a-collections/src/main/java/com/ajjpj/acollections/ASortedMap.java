@@ -2,6 +2,7 @@ package com.ajjpj.acollections;
 
 import com.ajjpj.acollections.immutable.AHashMap;
 import com.ajjpj.acollections.immutable.ATreeMap;
+import com.ajjpj.acollections.internal.ACollectionSupport;
 import com.ajjpj.acollections.mutable.AMutableSortedMapWrapper;
 import com.ajjpj.acollections.util.AOption;
 
@@ -329,6 +330,48 @@ public interface ASortedMap<K,V> extends AMap<K,V>, NavigableMap<K,V> {
      */
     AOption<Map.Entry<K,V>> greatest();
 
+    /**
+     * Returns the entry with a given rank, i.e. the entry with {@code rank} smaller keys. For an {@link ATreeMap}, this takes
+     *  O(log n) time.
+     *
+     * @param rank the entry's 0-based position in this map's key order
+     * @return the entry with the given rank
+     * @throws IndexOutOfBoundsException if {@code rank < 0} or {@code rank >= size()}
+     */
+    Map.Entry<K,V> entryAtRank (int rank);
+
+    /**
+     * Returns the key with a given index in this map's key order. This is the same as {@code entryAtRank(index).getKey()}.
+     *
+     * @param index the key's 0-based position in this map's key order
+     * @return the key with the given index
+     * @throws IndexOutOfBoundsException if {@code index < 0} or {@code index >= size()}
+     */
+    K getByIndex (int index);
+
+    /**
+     * Returns the index of a key in this map's key order, i.e. the number of smaller keys, or -1 if this map does not contain
+     *  the key. For an {@link ATreeMap}, this takes O(log n) time.
+     *
+     * @param key the key whose index is returned
+     * @return the key's index, or -1 if this map does not contain the key
+     */
+    int indexOf (K key);
+
+    /**
+     * Returns the entry at a given quantile of this map's keys, using the nearest-rank method: this is the entry with rank
+     *  {@code ceil(q * size()) - 1}, or the smallest entry for {@code q == 0}. So {@code quantile(0.5)} returns the median and
+     *  {@code quantile(0.99)} the 99th percentile, without copying the entries. For an {@link ATreeMap}, this takes O(log n) time.
+     *
+     * @param q the quantile, between 0 and 1 (both inclusive)
+     * @return the entry at the given quantile
+     * @throws IllegalArgumentException if {@code q} is not between 0 and 1
+     * @throws java.util.NoSuchElementException if this map is empty
+     */
+    default Map.Entry<K,V> quantile (double q) {
+        return entryAtRank(ACollectionSupport.quantileIndex(q, size()));
+    }
+
     ASortedSet<K> keySet();
     ASortedSet<Map.Entry<K,V>> entrySet();
 
@@ -1,6 +1,7 @@
 package com.ajjpj.acollections;
 
 import com.ajjpj.acollections.immutable.ATreeSet;
+import com.ajjpj.acollections.internal.ACollectionSupport;
 import com.ajjpj.acollections.mutable.AMutableSortedSetWrapper;
 import com.ajjpj.acollections.util.AOption;
 
@@ -289,6 +290,39 @@ public interface ASortedSet<T> extends ASet<T>, NavigableSet<T> {
      */
     AOption<T> greatest();
 
+    /**
+     * Returns the element with a given index in this set's order, i.e. the element with {@code index} smaller elements. For an
+     *  {@link ATreeSet}, this takes O(log n) time.
+     *
+     * @param index the element's 0-based position in this set's order
+     * @return the element with the given index
+     * @throws IndexOutOfBoundsException if {@code index < 0} or {@code index >= size()}
+     */
+    T getByIndex (int index);
+
+    /**
+     * Returns the index of an element in this set's order, i.e. the number of smaller elements, or -1 if this set does not contain
+     *  the element. For an {@link ATreeSet}, this takes O(log n) time.
+     *
+     * @param o the element whose index is returned
+     * @return the element's index, or -1 if this set does not contain the element
+     */
+    int indexOf (T o);
+
+    /**
+     * Returns the element at a given quantile of this set, using the nearest-rank method: this is the element with index
+     *  {@code ceil(q * size()) - 1}, or the smallest element for {@code q == 0}. So {@code quantile(0.5)} returns the median and
+     *  {@code quantile(0.99)} the 99th percentile, without copying the elements. For an {@link ATreeSet}, this takes O(log n) time.
+     *
+     * @param q the quantile, between 0 and 1 (both inclusive)
+     * @return the element at the given quantile
+     * @throws IllegalArgumentException if {@code q} is not between 0 and 1
+     * @throws NoSuchElementException if this set is empty
+     */
+    default T quantile (double q) {
+        return getByIndex(ACollectionSupport.quantileIndex(q, size()));
+    }
+
     /**
      * Returns an {@link AIterator} starting at a lower bound and ending at an upper bound.
      *
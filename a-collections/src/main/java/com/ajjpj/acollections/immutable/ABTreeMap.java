@@ -0,0 +1,673 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AMapDefaults;
+import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AOption;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * This class implements immutable maps using a persistent B-tree, sorting entries by key based on a {@link Comparator}. It has the same
+ *  API as {@link ATreeMap}, but it stores up to 32 entries per node in arrays rather than one entry per node. That makes lookups and
+ *  iteration more cache friendly and reduces memory overhead, at the price of copying somewhat larger nodes on modification.
+ *  Operations based on the entries' ranks ({@link #countInRange(AOption, boolean, AOption, boolean) countInRange}, {@link #drop(int) drop},
+ *  {@link #take(int) take} and {@link #slice(int, int) slice}) take logarithmic time because nodes store their subtrees' sizes.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.Map}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> So instances of ABTreeMap rely on methods like {@link #plus(Object, Object)} or {@link #minus(Object)} that return the modified
+ *  collection to add or remove entries. For details and sample code, see {@link AMap}.
+ *
+ * @param <K> the map's key type
+ * @param <V> the map's value type
+ */
+public class ABTreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedMap<K,V>, ACollectionDefaults<Map.Entry<K,V>, ABTreeMap<K,V>>, AMapDefaults<K,V,ABTreeMap<K,V>>, Serializable {
+    private final BTree.Node root;
+    private final Comparator<? super K> comparator;
+
+    /**
+     * Convenience method for creating an empty {@link ABTreeMap} with {@link Comparator#naturalOrder()}. This can later be modified by
+     *  calling {@link #plus(Object,Object)} or {@link #minus(Object)}. For creating a map with known elements, calling one of the
+     *  {@code of} factory methods is usually more concise.
+     *
+     * @param <K> the new map's key type
+     * @param <V> the new map's value type
+     * @return an empty {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> empty() {
+        return new ABTreeMap<>(null, Comparator.<K>naturalOrder());
+    }
+
+    /**
+     * Convenience method for creating an empty {@link ABTreeMap}. This can later be modified by calling {@link #plus(Object,Object)} or
+     * {@link #minus(Object)}. For creating a map with known elements, calling one of the {@code of} factory methods is usually more concise.
+     *
+     * @param comparator the tree map's comparator
+     *
+     * @param <K> the new map's key type
+     * @param <V> the new map's value type
+     * @return an empty {@link ABTreeMap}
+     */
+    public static <K,V> ABTreeMap<K,V> empty(Comparator<? super K> comparator) {
+        return new ABTreeMap<>(null, comparator);
+    }
+
+    private ABTreeMap (BTree.Node root, Comparator<? super K> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on an {@link Iterator}'s elements using {@link Comparator#naturalOrder()}.
+     *
+     * @param it the {@link Iterator} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> fromIterator(Iterator<? extends Entry<K,V>> it) {
+        return fromIterator(it, Comparator.naturalOrder());
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on an {@link Iterator}'s elements using a comparator provided by the caller.
+     *
+     * @param it         the {@link Iterator} from which the new map is initialized
+     * @param comparator the key comparator to use
+     *
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> ABTreeMap<K,V> fromIterator(Iterator<? extends Entry<K,V>> it, Comparator<? super K> comparator) {
+        return ABTreeMap.<K,V> builder(comparator).addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on a {@link java.util.Map}'s elements using {@link Comparator#naturalOrder()}.
+     *
+     * @param m the {@link Map} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> fromMap(Map<K,V> m) {
+        return from(m.entrySet());
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on a {@link java.util.Map}'s elements using a comparator provided by the caller.
+     *
+     * @param m          the {@link Map} from which the new map is initialized
+     * @param comparator the key comparator to use
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> fromMap(Map<K,V> m, Comparator<? super K> comparator) {
+        return from(m.entrySet(), comparator);
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on an {@link Iterable}'s elements using {@link Comparator#naturalOrder()}.
+     *
+     * @param coll the {@link Iterable} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> from(Iterable<? extends Entry<K,V>> coll) {
+        return from(coll, Comparator.naturalOrder());
+    }
+
+    /**
+     * Creates a new {@link ABTreeMap} based on an {@link Iterator}'s elements using a comparator provided by the caller.
+     *
+     * @param it         the {@link Iterator} from which the new map is initialized
+     * @param comparator the key comparator to use
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> ABTreeMap<K,V> from(Iterable<? extends Entry<K,V>> it, Comparator<? super K> comparator) {
+        return ABTreeMap.<K,V> builder(comparator).addAll(it).build();
+    }
+
+    /**
+     * This is an alias for {@link #empty()} for consistency with Java 9 conventions - it creates an empty {@link ABTreeMap}
+     *  using {@link Comparator#naturalOrder()}.
+     *
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return an empty {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> of() {
+        return empty(Comparator.<K>naturalOrder());
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeMap} with exactly one entry using {@link Comparator#naturalOrder()}.
+     *
+     * @param k1 the single entry's key
+     * @param v1 the single entry's value
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> of(K k1, V v1) {
+        return ABTreeMap.<K,V>builder().add(k1, v1).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeMap} with exactly two entries using {@link Comparator#naturalOrder()}.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> of(K k1, V v1, K k2, V v2) {
+        return ABTreeMap.<K,V>builder().add(k1, v1).add(k2, v2).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeMap} with three entries using {@link Comparator#naturalOrder()}.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param k3 the third entry's key
+     * @param v3 the third entry's value
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> of(K k1, V v1, K k2, V v2, K k3, V v3) {
+        return ABTreeMap.<K,V>builder().add(k1, v1).add(k2, v2).add(k3,v3).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeMap} with four entries using {@link Comparator#naturalOrder()}.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param k3 the third entry's key
+     * @param v3 the third entry's value
+     * @param k4 the fourth entry's key
+     * @param v4 the fourth entry's value
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> of(K k1, V v1, K k2, V v2, K k3, V v3, K k4, V v4) {
+        return ABTreeMap.<K,V>builder().add(k1, v1).add(k2, v2).add(k3,v3).add(k4,v4).build();
+    }
+
+    /**
+     * This is an alias for {@link #from(Iterable)} for consistency with Java 9 conventions - it creates an ABTreeMap from an Iterable of
+     * {@link Map.Entry} using {@link Comparator#naturalOrder()}.
+     *
+     * @param coll the entries
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new {@link ABTreeMap}
+     */
+    public static <K extends Comparable<K>,V> ABTreeMap<K,V> ofEntries(Iterable<Map.Entry<K,V>> coll) {
+        return from(coll);
+    }
+
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ABTreeMap efficiently and in a generic manner. The map uses
+     *  {@link Comparator#naturalOrder()} to sort keys.
+     *
+     * @param <K> the builder's key type
+     * @param <V> the builder's value type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <K extends Comparable<K>,V> Builder<K,V> builder() {
+        return builder(Comparator.<K>naturalOrder());
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ABTreeMap efficiently and in a generic manner.
+     *
+     * @param comparator the map's key comparator
+     * @param <K> the builder's key type
+     * @param <V> the builder's value type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <K,V> Builder<K,V> builder(Comparator<? super K> comparator) {
+        return new Builder<K,V>(comparator);
+    }
+
+    @Override public V get(Object key) {
+        try {
+            //noinspection unchecked
+            return BTree.getOrElse(root, (K) key, null, comparator);
+        }
+        catch (Exception e) {
+            // handle 'wrong type' exceptions thrown by the comparator because Java's API weirdly accepts 'Object' rather than 'K' as the key's type...
+            return null;
+        }
+    }
+    @Override public ABTreeMap<K,V> plus (K key, V value) {
+        if (root != null && comparator.compare(key, BTree.keyAt(root, size()-1)) > 0) {
+            // fast path for appending beyond the greatest key, e.g. for time series: no comparisons on the way down
+            return new ABTreeMap<>(BTree.appended(root, key, value, true), comparator);
+        }
+        return withRoot(BTree.updated(root, key, value, true, comparator));
+    }
+    @Override public ABTreeMap<K,V> minus (K key) {
+        return withRoot(BTree.removed(root, key, comparator));
+    }
+
+    private ABTreeMap<K,V> withRoot (BTree.Node newRoot) {
+        if (newRoot == root) return this;
+        return new ABTreeMap<>(newRoot, comparator);
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    @Override public AIterator<Entry<K,V>> iterator() {
+        return BTree.iterator(root, 0, size(), true, BTree.entries());
+    }
+
+    /**
+     * Returns a {@link Spliterator} that splits this map at the middle of its remaining entries, using the nodes' entry counts.
+     *  All parts' sizes are known exactly.
+     */
+    @Override public Spliterator<Entry<K,V>> spliterator () {
+        return BTree.spliterator(root, BTree.entries(), Spliterator.DISTINCT | Spliterator.NONNULL, Map.Entry.comparingByKey(comparator));
+    }
+
+    @Override public int size() {
+        return BTree.size(root);
+    }
+
+    /**
+     * Returns statistics on this map's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this map's B-tree
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this map's internal structure, including the number of bytes it shares with another version of the
+     *  map (e.g. a map from which this map was derived by adding or removing entries), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the map with which shared bytes are determined
+     * @return statistics on this map's B-tree
+     */
+    public CollectionStats stats (ABTreeMap<K,V> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        BTree.registerNodes(otherVersion.root, collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        BTree.collectStats(root, collector, 0);
+        return collector.build(size());
+    }
+
+    @Override public boolean contains (Object o) {
+        return AMapSupport.containsEntry(this, o);
+    }
+
+    @Override public boolean containsKey (Object key) {
+        try {
+            //noinspection unchecked
+            return BTree.contains(root, (K) key, comparator);
+        }
+        catch (Exception e) {
+            // handle 'wrong type' exceptions thrown by the comparator because Java's API weirdly accepts 'Object' rather than 'K' as the key's type...
+            return false;
+        }
+    }
+
+    @Override public boolean containsValue (Object value) {
+        return valuesIterator().exists(v -> Objects.equals(v, value));
+    }
+
+    @Override public AOption<V> getOptional (K key) {
+        return BTree.get(root, key, comparator);
+    }
+
+    @Override public ASortedMap<K, V> withDefaultValue (V defaultValue) {
+        return AMapSupport.wrapSortedMapWithDefaultValue(this, new AMapSupport.SerializableConstantFunction<>(defaultValue));
+    }
+
+    @Override public ASortedMap<K, V> withDerivedDefaultValue (Function<K, V> defaultProvider) {
+        return AMapSupport.wrapSortedMapWithDefaultValue(this, defaultProvider);
+    }
+
+    @Override public <U> ACollection<U> map (Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.map(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> flatMap (Function<Entry<K, V>, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> collect (Predicate<Entry<K, V>> filter, Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.collect(AVector.builder(), this, filter, f);
+    }
+
+    @Override public <V1> ABTreeMap<K, V1> mapValues (Function<V, V1> f) {
+        return (ABTreeMap<K,V1>) AMapDefaults.super.mapValues(f);
+    }
+
+    @Override public ABTreeMap<K, V> filter (Predicate<Entry<K, V>> f) {
+        return ABTreeMap.<K,V>builder(comparator).addAll(iterator().filter(f)).build();
+    }
+
+    @Override public ABTreeMap<K, V> filterNot (Predicate<Entry<K, V>> f) {
+        return filter(f.negate());
+    }
+
+    @Override public ABTreeMap<K, V> filterKeys (Predicate<K> f) {
+        return AMapDefaults.super.filterKeys(f);
+    }
+
+    @Override public <K1> AMap<K1, ABTreeMap<K, V>> groupBy (Function<Entry<K, V>, K1> keyExtractor) {
+        //noinspection unchecked
+        return (AMap<K1, ABTreeMap<K, V>>) AMapSupport.groupBy(this, keyExtractor);
+    }
+
+    @Override public boolean isEmpty () {
+        return root == null;
+    }
+
+    @Override public ASortedSet<K> keySet () {
+        return new AMapSupport.SortedKeySet<>(this);
+    }
+
+    @Override public ACollection<V> values () {
+        return new AMapSupport.ValuesCollection<>(this);
+    }
+
+    @Override public ASortedSet<Entry<K, V>> entrySet () {
+        return new AMapSupport.SortedEntrySet<>(this);
+    }
+
+    @Override public Comparator<? super K> comparator () {
+        return comparator;
+    }
+
+    private int fromRank (AOption<K> from, boolean fromInclusive) {
+        return BTree.fromRank(root, from, fromInclusive, comparator);
+    }
+
+    private int toRank (AOption<K> to, boolean toInclusive) {
+        return BTree.toRank(root, to, toInclusive, comparator);
+    }
+
+    @Override public int countInRange (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return Math.max(0, toRank(to, toInclusive) - fromRank(from, fromInclusive));
+    }
+
+    @Override public ABTreeMap<K, V> range (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return slice(fromRank(from, fromInclusive), toRank(to, toInclusive));
+    }
+
+    @Override public ABTreeMap<K, V> drop (int n) {
+        return slice(n, size());
+    }
+
+    @Override public ABTreeMap<K, V> take (int n) {
+        return slice(0, n);
+    }
+
+    @Override public ABTreeMap<K, V> slice (int from, int to) {
+        return withRoot(BTree.slice(root, from, to));
+    }
+
+    @Override public AOption<Entry<K, V>> smallest () {
+        if (root == null) return AOption.none();
+        return AOption.some(BTree.entryAt(root, 0));
+    }
+
+    @Override public AOption<Entry<K, V>> greatest () {
+        if (root == null) return AOption.none();
+        return AOption.some(BTree.entryAt(root, size()-1));
+    }
+
+    @Override public Entry<K, V> entryAtRank (int rank) {
+        return BTree.entryAt(root, rank);
+    }
+
+    @Override public K getByIndex (int index) {
+        return BTree.keyAt(root, index);
+    }
+
+    @Override public int indexOf (K key) {
+        return BTree.indexOf(root, key, comparator);
+    }
+
+    @Override public AIterator<K> keysIterator () {
+        return BTree.iterator(root, 0, size(), true, BTree.keys());
+    }
+    @Override public AIterator<V> valuesIterator () {
+        return BTree.iterator(root, 0, size(), true, BTree.values());
+    }
+
+    @Override public AIterator<Entry<K, V>> iterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return BTree.iterator(root, fromRank(from, fromInclusive), toRank(to, toInclusive), true, BTree.entries());
+    }
+    @Override public AIterator<K> keysIterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return BTree.iterator(root, fromRank(from, fromInclusive), toRank(to, toInclusive), true, BTree.keys());
+    }
+    @Override public AIterator<V> valuesIterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return BTree.iterator(root, fromRank(from, fromInclusive), toRank(to, toInclusive), true, BTree.values());
+    }
+
+    /**
+     * @return the entry with the given rank, or null if the rank is out of range
+     */
+    private Entry<K, V> entryAt (int rank) {
+        if (rank < 0 || rank >= size()) return null;
+        return BTree.entryAt(root, rank);
+    }
+
+    /**
+     * @return the key with the given rank, or null if the rank is out of range
+     */
+    private K keyAt (int rank) {
+        if (rank < 0 || rank >= size()) return null;
+        return BTree.keyAt(root, rank);
+    }
+
+    @Override public Entry<K, V> lowerEntry (K key) {
+        return entryAt(BTree.rank(root, key, false, comparator) - 1);
+    }
+
+    @Override public K lowerKey (K key) {
+        return keyAt(BTree.rank(root, key, false, comparator) - 1);
+    }
+
+    @Override public Entry<K, V> floorEntry (K key) {
+        return entryAt(BTree.rank(root, key, true, comparator) - 1);
+    }
+
+    @Override public K floorKey (K key) {
+        return keyAt(BTree.rank(root, key, true, comparator) - 1);
+    }
+
+    @Override public Entry<K, V> ceilingEntry (K key) {
+        return entryAt(BTree.rank(root, key, false, comparator));
+    }
+
+    @Override public K ceilingKey (K key) {
+        return keyAt(BTree.rank(root, key, false, comparator));
+    }
+
+    @Override public Entry<K, V> higherEntry (K key) {
+        return entryAt(BTree.rank(root, key, true, comparator));
+    }
+
+    @Override public K higherKey (K key) {
+        return keyAt(BTree.rank(root, key, true, comparator));
+    }
+
+    @Override public Entry<K, V> firstEntry () {
+        return smallest().orNull();
+    }
+
+    @Override public Entry<K, V> lastEntry () {
+        return greatest().orNull();
+    }
+
+    @Override public Entry<K, V> pollFirstEntry () {
+        throw new UnsupportedOperationException("mutable operation not supported for immutable collection");
+    }
+
+    @Override public Entry<K, V> pollLastEntry () {
+        throw new UnsupportedOperationException("mutable operation not supported for immutable collection");
+    }
+
+    @Override public ABTreeMap<K, V> descendingMap () {
+        return ABTreeMap.from(this, comparator.reversed());
+    }
+
+    @Override public ASortedSet<K> navigableKeySet () {
+        return keySet();
+    }
+
+    @Override public ASortedSet<K> descendingKeySet () {
+        return descendingMap().keySet();
+    }
+
+    @Override public ASortedMap<K, V> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if(comparator.compare(fromKey, toKey) > 0) throw new IllegalArgumentException();
+        return range(AOption.some(fromKey), fromInclusive, AOption.some(toKey), toInclusive);
+    }
+
+    @Override public ASortedMap<K, V> headMap (K toKey, boolean inclusive) {
+        return range(AOption.none(), false, AOption.some(toKey), inclusive);
+    }
+
+    @Override public ASortedMap<K, V> tailMap (K fromKey, boolean inclusive) {
+        return range(AOption.some(fromKey), inclusive, AOption.none(), false);
+    }
+
+    @Override public ASortedMap<K, V> subMap (K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override public ASortedMap<K, V> headMap (K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override public ASortedMap<K, V> tailMap (K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override public K firstKey () {
+        return smallest().get().getKey();
+    }
+
+    @Override public K lastKey () {
+        return greatest().get().getKey();
+    }
+
+
+    @Override public <K1, V1> ACollectionBuilder<Entry<K1, V1>, ABTreeMap<K1, V1>> newEntryBuilder () {
+        //noinspection unchecked
+        return new Builder(comparator());
+    }
+
+    /**
+     * A builder for {@link ABTreeMap}. It collects entries and builds the tree bottom-up in a single step, which takes linear time
+     *  if the entries are added in ascending key order, and sorts them only once otherwise. If there are several entries with the same
+     *  key, the last one wins.
+     */
+    public static class Builder<K,V> implements ACollectionBuilder<Map.Entry<K,V>, ABTreeMap<K,V>> {
+        private final BTree.Builder<K,V> builder;
+        private final Comparator<? super K> comparator;
+
+        Builder (Comparator<? super K> comparator) {
+            this.builder = new BTree.Builder<>(comparator, true);
+            this.comparator = comparator;
+        }
+
+        public Builder<K, V> add (K key, V value) {
+            builder.add(key, value);
+            return this;
+        }
+
+        @Override public Builder<K, V> add (Entry<K, V> el) {
+            builder.add(el.getKey(), el.getValue());
+            return this;
+        }
+
+        @Override public Builder<K, V> addAll (Iterator<? extends Entry<K, V>> it) {
+            while(it.hasNext()) add(it.next());
+            return this;
+        }
+
+        @Override public Builder<K, V> addAll (Iterable<? extends Entry<K, V>> coll) {
+            return addAll(coll.iterator());
+        }
+
+        @Override public Builder<K, V> addAll (Entry<K, V>[] coll) {
+            return addAll(Arrays.asList(coll));
+        }
+
+        @Override public ABTreeMap<K, V> build () {
+            return new ABTreeMap<>(builder.build(), comparator);
+        }
+    }
+
+    /**
+     * proxy class for serializing the map's comparator and its entries in ascending order rather than its nodes
+     */
+    private static class SerializationProxy implements Serializable {
+        private transient ABTreeMap<?,?> orig;
+
+        SerializationProxy (ABTreeMap<?,?> orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeObject(orig.comparator);
+            oos.writeInt(orig.size());
+            for (Map.Entry<?,?> e: orig) {
+                oos.writeObject(e.getKey());
+                oos.writeObject(e.getValue());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            //noinspection unchecked
+            final Builder<Object,Object> builder = builder((Comparator<Object>) ois.readObject());
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.add(ois.readObject(), ois.readObject());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.ASetDefaults;
+import com.ajjpj.acollections.internal.ASetSupport;
+import com.ajjpj.acollections.util.AOption;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.Collector;
+
+
+/**
+ * This class implements immutable sets using a persistent B-tree, sorting elements based on a {@link Comparator} and providing a
+ *  {@link SortedSet}. It has the same API as {@link ATreeSet}, but it stores up to 32 elements per node in an array rather than one
+ *  element per node, which makes lookups and iteration more cache friendly and reduces memory overhead. For details, see
+ *  {@link ABTreeMap}.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.Set}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> So instances of this class rely on methods like {@link #plus(Object)} or {@link #minus(Object)} for adding / removing
+ *  elements. These methods return new sets with the new elements, leaving the original unmodified:
+ *
+ * <p>{@code ASet<Integer> s0 = ABTreeSet.of(1, 2, 3);}
+ * <p>{@code ASet<Integer> s1 = s0.plus(5);}
+ * <p>{@code ASet<Integer> s2 = s1.minus(2);}
+ * <p>{@code System.out.println(s0); // 1, 2, 3 }
+ * <p>{@code System.out.println(s1); // 1, 2, 3, 5 }
+ * <p>{@code System.out.println(s2); // 1, 3, 5 }
+ *
+ * <p> This class has static factory methods (Java 9 style) for convenience creating instances.
+ *
+ * @param <T> the set's element type
+ */
+public class ABTreeSet<T> extends AbstractImmutableCollection<T> implements ASortedSet<T>, ACollectionDefaults<T,ABTreeSet<T>>, ASetDefaults<T,ABTreeSet<T>>, Serializable {
+    private final BTree.Node root;
+    private final Comparator<? super T> comparator;
+
+    /**
+     * Creates an empty {@link ABTreeSet} with {@link Comparator#naturalOrder()}.
+     * <p> This can later be modified by calling {@link #plus(Object)} or {@link #minus(Object)}. For creating a set with known elements,
+     *  calling one of the {@code of} factory methods is usually more concise.
+     *
+     * @param <T> the new set's element type
+     * @return an empty {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> empty() {
+        return empty(Comparator.<T>naturalOrder());
+    }
+
+    /**
+     * Creates an empty {@link ABTreeSet} with a given {@link Comparator}.
+     * <p> This can later be modified by calling {@link #plus(Object)} or {@link #minus(Object)}. For creating a set with known elements,
+     *  calling one of the {@code of} factory methods is usually more concise.
+     *
+     * @param comparator the new set's comparator
+     * @param <T> the new set's element type
+     * @return an empty {@link ABTreeSet}
+     */
+    public static <T> ABTreeSet<T> empty(Comparator<? super T> comparator) {
+        return new ABTreeSet<>(null, comparator);
+    }
+
+    /**
+     * This is an alias for {@link #empty()} for consistency with Java 9 conventions - it creates an empty {@link ABTreeSet} with
+     *  {@link Comparator#naturalOrder()}.
+     *
+     * @param <T> the new set's element type
+     * @return an empty {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> of() {
+        return empty();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeSet} with exactly one element and {@link Comparator#naturalOrder()}.
+     *
+     * @param o the single element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param <T> the new set's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> of(T o) {
+        return ABTreeSet
+                .<T>builder()
+                .add(o)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeSet} with exactly two elements and {@link Comparator#naturalOrder()}.
+     *
+     * @param o1 the first element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o2 the second element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param <T> the new set's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> of(T o1, T o2) {
+        return ABTreeSet
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeSet} with exactly three elements and {@link Comparator#naturalOrder()}.
+     *
+     * @param o1 the first element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o2 the second element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o3 the third element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param <T> the new set's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> of(T o1, T o2, T o3) {
+        return ABTreeSet
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeSet} with exactly four elements and {@link Comparator#naturalOrder()}.
+     *
+     * @param o1 the first element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o2 the second element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o3 the third element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o4 the fourth element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param <T> the new set's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ABTreeSet}
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> of(T o1, T o2, T o3, T o4) {
+        return ABTreeSet
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .add(o4)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ABTreeSet} with more than four elements and {@link Comparator#naturalOrder()}.
+     *
+     * @param o1 the first element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o2 the second element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o3 the third element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o4 the fourth element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param o5 the fifth element for the new set. It must implement {@link Comparable} to work with {@link Comparator#naturalOrder()}.
+     * @param others the (variable number of) additional elements
+     * @param <T> the new set's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ABTreeSet}
+     */
+    @SafeVarargs public static <T extends Comparable<T>> ABTreeSet<T> of(T o1, T o2, T o3, T o4, T o5, T... others) {
+        return ABTreeSet
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .add(o4)
+                .add(o5)
+                .addAll(others)
+                .build();
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an array's elements.
+     *
+     * @param that the array from which the new set is initialized
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> from(T[] that) {
+        return from(that, Comparator.naturalOrder());
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an array's elements with a given {@link Comparator}.
+     *
+     * @param that the array from which the new set is initialized
+     * @param comparator the new set's comparator
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T> ABTreeSet<T> from(T[] that, Comparator<? super T> comparator) {
+        return fromIterator(Arrays.asList(that).iterator(), comparator);
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an {@link Iterable}'s elements.
+     *
+     * @param that the {@link Iterable} from which the new set is initialized
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> from(Iterable<T> that) {
+        return from(that, Comparator.naturalOrder());
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an {@link Iterable}'s elements with a given {@link Comparator}.
+     *
+     * @param that the {@link Iterable} from which the new set is initialized
+     * @param comparator the new set's comparator
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T> ABTreeSet<T> from(Iterable<T> that, Comparator<? super T> comparator) {
+        return ABTreeSet.<T>builder(comparator).addAll(that).build();
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an {@link Iterator}'s elements.
+     *
+     * @param it the {@link Iterator} from which the new set is initialized
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T extends Comparable<T>> ABTreeSet<T> fromIterator(Iterator<T> it) {
+        return fromIterator(it, Comparator.naturalOrder());
+    }
+
+    /**
+     * Creates a new {@link ABTreeSet} based on an {@link Iterator}'s elements with a given {@link Comparator}.
+     *
+     * @param it the {@link Iterator} from which the new set is initialized
+     * @param comparator the new set's comparator
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T> ABTreeSet<T> fromIterator(Iterator<T> it, Comparator<? super T> comparator) {
+        return ABTreeSet.<T>builder(comparator).addAll(it).build();
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ABTreeSet efficiently and in a generic manner.
+     *
+     * @param comparator the builder's comparator
+     * @param <T> the builder's element type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <T> Builder<T> builder(Comparator<? super T> comparator) {
+        return new Builder<>(comparator);
+    }
+    private ABTreeSet (BTree.Node root, Comparator<? super T> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ABTreeSet efficiently and in a generic manner. The builder uses
+     *  {@link Comparator#naturalOrder()}.
+     *
+     * @param <T> the builder's element type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <T extends Comparable<T>> Builder<T> builder() {
+        return builder(Comparator.<T>naturalOrder());
+    }
+
+    @Override public Comparator<? super T> comparator () {
+        return comparator;
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return ASetSupport.equals(this, o);
+    }
+    @Override public int hashCode() {
+        return ASetSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(ABTreeSet.class, this);
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    @Override public AHashSet<T> toSet () {
+        return AHashSet.from(this);
+    }
+    @Override public ABTreeSet<T> plus (T o) {
+        if (root != null && comparator.compare(o, BTree.keyAt(root, size()-1)) > 0) {
+            // fast path for appending beyond the greatest element: no comparisons on the way down
+            return new ABTreeSet<>(BTree.appended(root, o, null, false), comparator);
+        }
+        return withRoot(BTree.updated(root, o, null, false, comparator));
+    }
+    @Override public ABTreeSet<T> minus (T o) {
+        return withRoot(BTree.removed(root, o, comparator));
+    }
+
+    private ABTreeSet<T> withRoot (BTree.Node newRoot) {
+        if (newRoot == root) return this;
+        return new ABTreeSet<>(newRoot, comparator);
+    }
+
+    @Override public ABTreeSet<T> union (Iterable<? extends T> that) {
+        ABTreeSet<T> result = this;
+        for (T o: that) result = result.plus(o);
+        return result;
+    }
+
+    @Override public ABTreeSet<T> intersect (Set<T> that) {
+        return filter(that::contains);
+    }
+
+    @Override public ABTreeSet<T> diff (Set<T> that) {
+        ABTreeSet<T> result = this;
+        for (T o: that) result = result.minus(o);
+        return result;
+    }
+
+    private int fromRank (AOption<T> from, boolean fromInclusive) {
+        return BTree.fromRank(root, from, fromInclusive, comparator);
+    }
+
+    private int toRank (AOption<T> to, boolean toInclusive) {
+        return BTree.toRank(root, to, toInclusive, comparator);
+    }
+
+    @Override public int countInRange (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
+        return Math.max(0, toRank(to, toInclusive) - fromRank(from, fromInclusive));
+    }
+
+    @Override public ABTreeSet<T> range (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
+        return withRoot(BTree.slice(root, fromRank(from, fromInclusive), toRank(to, toInclusive)));
+    }
+
+    @Override public ABTreeSet<T> drop (int n) {
+        return withRoot(BTree.slice(root, n, size()));
+    }
+
+    @Override public ABTreeSet<T> take (int n) {
+        return withRoot(BTree.slice(root, 0, n));
+    }
+
+    /**
+     * relative to *natural* order, which may or may not be the tree's order
+     */
+    @Override public T min () {
+        if (comparator.equals(Comparator.naturalOrder()))
+            return smallest().orElseThrow(NoSuchElementException::new);
+        else
+            return ACollectionDefaults.super.min();
+    }
+    /**
+     * relative to *natural* order, which may or may not be the tree's order
+     */
+    @Override public T max () {
+        if (comparator.equals(Comparator.naturalOrder()))
+            return greatest().orElseThrow(NoSuchElementException::new);
+        else
+            return ACollectionDefaults.super.max();
+    }
+
+    @Override public AOption<T> smallest () {
+        return root == null ? AOption.none() : AOption.some(BTree.keyAt(root, 0));
+    }
+
+    @Override public AOption<T> greatest () {
+        return root == null ? AOption.none() : AOption.some(BTree.keyAt(root, size()-1));
+    }
+
+    @Override public T getByIndex (int index) {
+        return BTree.keyAt(root, index);
+    }
+
+    @Override public int indexOf (T o) {
+        return BTree.indexOf(root, o, comparator);
+    }
+
+    @Override public AIterator<T> iterator (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
+        return BTree.iterator(root, fromRank(from, fromInclusive), toRank(to, toInclusive), true, BTree.keys());
+    }
+
+    @Override public AIterator<T> iterator () {
+        return BTree.iterator(root, 0, size(), true, BTree.keys());
+    }
+
+    /**
+     * Returns a {@link Spliterator} that splits this set at the middle of its remaining elements, using the nodes' element
+     *  counts. All parts' sizes are known exactly.
+     */
+    @Override public Spliterator<T> spliterator () {
+        return BTree.spliterator(root, BTree.keys(), Spliterator.DISTINCT, comparator);
+    }
+
+    @Override public <U> ACollectionBuilder<U, ABTreeSet<U>> newBuilder () {
+        //noinspection unchecked
+        return new Builder<U>((Comparator) comparator);
+    }
+
+    @Override public boolean isEmpty () {
+        return root == null;
+    }
+
+    @Override public <U> ABTreeSet<U> map (Function<T, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+
+    @Override public <U> ABTreeSet<U> flatMap (Function<T, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+
+    @Override public <U> ABTreeSet<U> collect (Predicate<T> filter, Function<T, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public ABTreeSet<T> filter (Predicate<T> f) {
+        return ACollectionDefaults.super.filter(f);
+    }
+
+    @Override public ABTreeSet<T> filterNot (Predicate<T> f) {
+        return ACollectionDefaults.super.filterNot(f);
+    }
+
+    @Override public <K> AMap<K, ABTreeSet<T>> groupBy (Function<T, K> keyExtractor) {
+        return ACollectionDefaults.super.groupBy(keyExtractor);
+    }
+
+    @Override public int size () {
+        return BTree.size(root);
+    }
+
+    /**
+     * Returns statistics on this set's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this set's B-tree
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this set's internal structure, including the number of bytes it shares with another version of the
+     *  set (e.g. a set from which this set was derived by adding or removing elements), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the set with which shared bytes are determined
+     * @return statistics on this set's B-tree
+     */
+    public CollectionStats stats (ABTreeSet<T> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        BTree.registerNodes(otherVersion.root, collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        BTree.collectStats(root, collector, 0);
+        return collector.build(size());
+    }
+
+    @Override public boolean contains (Object o) {
+        //noinspection unchecked
+        return BTree.contains(root, (T) o, comparator);
+    }
+
+    @Override public AIterator<ABTreeSet<T>> subsets () {
+        return ASetDefaults.super.subsets();
+    }
+
+    @Override public AIterator<ABTreeSet<T>> subsets (int len) {
+        return ASetDefaults.super.subsets(len);
+    }
+
+    @Override public boolean containsAll (Collection<?> c) {
+        return ACollectionDefaults.super.containsAll(c);
+    }
+
+    @Override public ABTreeSet<T> subSet (T fromElement, T toElement) {
+        return (ABTreeSet<T>) ASortedSet.super.subSet(fromElement, toElement);
+    }
+
+    @Override public ABTreeSet<T> headSet (T toElement) {
+        return (ABTreeSet<T>) ASortedSet.super.headSet(toElement);
+    }
+
+    @Override public ABTreeSet<T> tailSet (T fromElement) {
+        return (ABTreeSet<T>) ASortedSet.super.tailSet(fromElement);
+    }
+
+    /**
+     * @return the element with the given rank, or null if the rank is out of range
+     */
+    private T elementAt (int rank) {
+        if (rank < 0 || rank >= size()) return null;
+        return BTree.keyAt(root, rank);
+    }
+
+    @Override public T lower (T t) {
+        return elementAt(BTree.rank(root, t, false, comparator) - 1);
+    }
+
+    @Override public T floor (T t) {
+        return elementAt(BTree.rank(root, t, true, comparator) - 1);
+    }
+
+    @Override public T ceiling (T t) {
+        return elementAt(BTree.rank(root, t, false, comparator));
+    }
+
+    @Override public T higher (T t) {
+        return elementAt(BTree.rank(root, t, true, comparator));
+    }
+
+    @Override public T pollFirst () {
+        throw new UnsupportedOperationException("mutable operation on an immutable collection");
+    }
+
+    @Override public T pollLast () {
+        throw new UnsupportedOperationException("mutable operation on an immutable collection");
+    }
+
+    @Override public ASortedSet<T> descendingSet () {
+        return ABTreeSet.from(this, comparator.reversed());
+    }
+
+    @Override public AIterator<T> descendingIterator () {
+        return BTree.iterator(root, 0, size(), false, BTree.keys());
+    }
+
+    @Override public ASortedSet<T> subSet (T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return range(AOption.some(fromElement), fromInclusive, AOption.some(toElement), toInclusive);
+    }
+
+    @Override public ASortedSet<T> headSet (T toElement, boolean inclusive) {
+        return range(AOption.none(), false, AOption.some(toElement), inclusive);
+    }
+
+    @Override public ASortedSet<T> tailSet (T fromElement, boolean inclusive) {
+        return range(AOption.some(fromElement), inclusive, AOption.none(), false);
+    }
+
+    /**
+     * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an ABTreeSet.
+     *
+     * @param <T> the stream's element type
+     * @return a {@link Collector} to collect a stream's elements into an ABTreeSet
+     */
+    public static <T extends Comparable<T>> Collector<T, Builder<T>, ABTreeSet<T>> streamCollector() {
+        final Supplier<Builder<T>> supplier = ABTreeSet::builder;
+        final BiConsumer<Builder<T>, T> accumulator = Builder::add;
+        final BinaryOperator<Builder<T>> combiner = (b1, b2) -> {
+            b1.addAll(b2.build());
+            return b1;
+        };
+        final Function<Builder<T>, ABTreeSet<T>> finisher = Builder::build;
+
+        return Collector.of(supplier, accumulator, combiner, finisher);
+    }
+
+    /**
+     * A builder for {@link ABTreeSet}. It collects elements and builds the tree bottom-up in a single step, which takes linear time
+     *  if the elements are added in ascending order, and sorts them only once otherwise.
+     */
+    public static class Builder<T> implements ACollectionBuilder<T,ABTreeSet<T>> {
+        private final BTree.Builder<T,Object> builder;
+        private final Comparator<? super T> comparator;
+
+        public Builder (Comparator<? super T> comparator) {
+            this.builder = new BTree.Builder<>(comparator, false);
+            this.comparator = comparator;
+        }
+
+        @Override public ACollectionBuilder<T, ABTreeSet<T>> add (T el) {
+            builder.add(el, null);
+            return this;
+        }
+
+        @Override public ABTreeSet<T> build () {
+            return new ABTreeSet<>(builder.build(), comparator);
+        }
+    }
+
+    /**
+     * proxy class for serializing the set's comparator and its elements in ascending order rather than its nodes
+     */
+    private static class SerializationProxy implements Serializable {
+        private transient ABTreeSet<?> orig;
+
+        SerializationProxy (ABTreeSet<?> orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeObject(orig.comparator);
+            oos.writeInt(orig.size());
+            for (Object o: orig) {
+                oos.writeObject(o);
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            //noinspection unchecked
+            final Builder<Object> builder = builder((Comparator<Object>) ois.readObject());
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.add(ois.readObject());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
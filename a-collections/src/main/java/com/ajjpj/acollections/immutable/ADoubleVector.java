@@ -0,0 +1,480 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AListDefaults;
+import com.ajjpj.acollections.internal.AListSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * ADoubleVector is an immutable vector of primitive {@code double} values. It stores its elements in {@code double[]} arrays rather than as
+ *  {@link Double} objects, which takes a fraction of the memory of an {@code AVector<Double>} and allows scanning the elements
+ *  without following a reference per element. The {@code double} based methods like {@link #getDouble(int)}, {@link #appendDouble(double)},
+ *  {@link #updatedDouble(int, double)}, {@link #doubleIterator()}, {@link #doubleStream()} or {@link #sum()} do not box elements.
+ *
+ * <p> ADoubleVector implements {@link AList AList&lt;Double&gt;}, so it can be used wherever a list of {@link Double} is expected.
+ *  Those methods box and unbox elements. Operations that may change the element type (like {@link #map(Function)}) return an
+ *  {@link AVector}.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.List}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Implementation note: The elements are stored in blocks of 32, and the blocks are the elements of an {@link AVector}. So
+ *  ADoubleVector shares AVector's performance characteristics, i.e. effectively constant time random access, updates, append and prepend.
+ */
+public class ADoubleVector extends AbstractImmutableCollection<Double> implements AListDefaults<Double, AList<Double>>, RandomAccess, Serializable {
+    private static final IntFunction<double[]> NEW_BLOCK = double[]::new;
+    private static final ADoubleVector EMPTY = new ADoubleVector(PrimitiveBlocks.empty(NEW_BLOCK));
+
+    private final PrimitiveBlocks<double[]> data;
+
+    private ADoubleVector (PrimitiveBlocks<double[]> data) {
+        this.data = data;
+    }
+
+    /**
+     * Convenience method for creating an empty {@link ADoubleVector}.
+     *
+     * @return an empty {@link ADoubleVector}
+     */
+    public static ADoubleVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new {@link ADoubleVector} with the given elements.
+     *
+     * @param values the new vector's elements
+     * @return the new vector
+     */
+    public static ADoubleVector of(double... values) {
+        return builder().addAll(values).build();
+    }
+
+    /**
+     * Creates a new {@link ADoubleVector} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ADoubleVector from(Iterable<Double> that) {
+        return fromIterator(that.iterator());
+    }
+
+    /**
+     * Creates a new {@link ADoubleVector} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ADoubleVector fromIterator(Iterator<Double> it) {
+        return builder().addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link ADoubleVector} based on an {@link DoubleStream}'s elements.
+     *
+     * @param stream the stream from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ADoubleVector from(DoubleStream stream) {
+        return stream.collect(ADoubleVector::builder, Builder::addDouble, (b1, b2) -> b1.addAll(b2.build())).build();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return AListSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return AListSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(ADoubleVector.class, this);
+    }
+
+    @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
+        return AVector.builder();
+    }
+
+    @Override public int size () {
+        return data.size;
+    }
+
+    @Override public boolean isEmpty () {
+        return data.size == 0;
+    }
+
+    /**
+     * Returns the element at a given index without boxing it.
+     *
+     * @param index the element's index
+     * @return the element at the given index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public double getDouble (int index) {
+        final int pos = data.position(index);
+        return data.block(pos)[pos & PrimitiveBlocks.BLOCK_MASK];
+    }
+    @Override public Double get (int index) {
+        return getDouble(index);
+    }
+
+    /**
+     * Returns a new vector with an element appended at the end, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public ADoubleVector appendDouble (double value) {
+        final double[] block = data.blockForAppend();
+        block[data.endPosition() & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ADoubleVector(data.appended(block));
+    }
+    @Override public ADoubleVector append (Double o) {
+        return appendDouble(o);
+    }
+
+    /**
+     * Returns a new vector with an element prepended at the start, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public ADoubleVector prependDouble (double value) {
+        final double[] block = data.blockForPrepend();
+        block[(data.offset-1) & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ADoubleVector(data.prepended(block));
+    }
+    @Override public ADoubleVector prepend (Double o) {
+        return prependDouble(o);
+    }
+
+    /**
+     * Returns a new vector with the element at a given index replaced, without boxing it.
+     *
+     * @param index the index of the element to replace
+     * @param value the new element
+     * @return the new vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public ADoubleVector updatedDouble (int index, double value) {
+        final int pos = data.position(index);
+        final double[] block = data.copyOfBlock(pos);
+        block[pos & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ADoubleVector(data.withBlock(pos, block));
+    }
+    @Override public ADoubleVector updated (int idx, Double o) {
+        return updatedDouble(idx, o);
+    }
+
+    @Override public ADoubleVector concat (Iterator<? extends Double> that) {
+        final Builder builder = builder().addAll(this);
+        while (that.hasNext()) builder.addDouble(that.next());
+        return builder.build();
+    }
+    /**
+     * Concatenating two ADoubleVectors shares blocks of both vectors rather than copying their elements wherever possible, in particular
+     *  if this vector's size is a multiple of 32.
+     */
+    @Override public ADoubleVector concat (Iterable<? extends Double> that) {
+        if (that instanceof ADoubleVector) return wrap(data.concat(((ADoubleVector) that).data));
+        return builder().addAll(this).addAll(that).build();
+    }
+
+    @Override public ADoubleVector take (int n) {
+        return wrap(data.take(n));
+    }
+    @Override public ADoubleVector drop (int n) {
+        return wrap(data.drop(n));
+    }
+    @Override public ADoubleVector takeRight (int n) {
+        if (n <= 0) return empty();
+        return drop(size() - n);
+    }
+    @Override public ADoubleVector dropRight (int n) {
+        if (n <= 0) return this;
+        return take(size() - n);
+    }
+    @Override public ADoubleVector slice (int from, int to) {
+        return drop(Math.max(from, 0)).take(to - Math.max(from, 0));
+    }
+    @Override public AList<Double> subList (int fromIndex, int toIndex) {
+        return AListSupport.subList(this, fromIndex, toIndex);
+    }
+
+    @Override public ADoubleVector reverse () {
+        final Builder builder = builder();
+        for (int i=size()-1; i>=0; i--) builder.addDouble(getDouble(i));
+        return builder.build();
+    }
+
+    /**
+     * Returns a vector with the elements that match a given predicate, without boxing them.
+     *
+     * @param f the predicate
+     * @return the new vector
+     */
+    public ADoubleVector filterDouble (DoublePredicate f) {
+        final Builder builder = builder();
+        for (PrimitiveIterator.OfDouble it = doubleIterator(); it.hasNext(); ) {
+            final double value = it.nextDouble();
+            if (f.test(value)) builder.addDouble(value);
+        }
+        return builder.build();
+    }
+    @Override public ADoubleVector filter (Predicate<Double> f) {
+        return filterDouble(f::test);
+    }
+    @Override public ADoubleVector filterNot (Predicate<Double> f) {
+        return filterDouble(x -> !f.test(x));
+    }
+
+    /**
+     * @return the sum of this vector's elements
+     */
+    public double sum () {
+        double result = 0;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final double[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result += block[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest element, boxing only the result. Elements are compared based on {@link Double#compare(double, double)}
+     *  like {@link Double}'s natural ordering, i.e. {@code NaN} is greater than all other values.
+     */
+    @Override public Double min () {
+        if (isEmpty()) throw new NoSuchElementException();
+        double result = getDouble(0);
+        for (int b=0; b<data.numBlocks(); b++) {
+            final double[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) if (Double.compare(block[i], result) < 0) result = block[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the largest element, boxing only the result.
+     */
+    @Override public Double max () {
+        if (isEmpty()) throw new NoSuchElementException();
+        double result = getDouble(0);
+        for (int b=0; b<data.numBlocks(); b++) {
+            final double[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) if (Double.compare(block[i], result) > 0) result = block[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return a new array with this vector's elements
+     */
+    public double[] toDoubleArray () {
+        final double[] result = new double[size()];
+        data.copyTo(result);
+        return result;
+    }
+
+    /**
+     * Returns an iterator over this vector's elements that does not box them.
+     *
+     * @return an iterator over this vector's elements
+     */
+    public PrimitiveIterator.OfDouble doubleIterator () {
+        return new PrimitiveIterator.OfDouble() {
+            final Iterator<double[]> blockIt = data.blocks.iterator();
+            double[] block;
+            int idx = PrimitiveBlocks.BLOCK_SIZE;
+            int next = data.offset;
+            int remaining = data.size;
+
+            @Override public boolean hasNext () {
+                return remaining > 0;
+            }
+
+            @Override public double nextDouble () {
+                if (remaining == 0) throw new NoSuchElementException();
+                if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                    block = blockIt.next();
+                    idx = next;
+                    next = 0;
+                }
+                remaining -= 1;
+                return block[idx++];
+            }
+        };
+    }
+
+    /**
+     * @return a sequential {@link DoubleStream} of this vector's elements
+     */
+    public DoubleStream doubleStream () {
+        return StreamSupport.doubleStream(Spliterators.spliterator(doubleIterator(), size(), Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL), false);
+    }
+
+    @Override public AIterator<Double> iterator () {
+        final PrimitiveIterator.OfDouble it = doubleIterator();
+        return new AbstractAIterator<Double>() {
+            @Override public boolean hasNext () {
+                return it.hasNext();
+            }
+
+            @Override public Double next () {
+                return it.nextDouble();
+            }
+        };
+    }
+
+    @Override public AIterator<Double> reverseIterator () {
+        return new AbstractAIterator<Double>() {
+            int nextIdx = size()-1;
+
+            @Override public boolean hasNext () {
+                return nextIdx >= 0;
+            }
+
+            @Override public Double next () {
+                if (!hasNext()) throw new NoSuchElementException();
+                return getDouble(nextIdx--);
+            }
+        };
+    }
+
+    @Override public <U> AVector<U> map (Function<Double, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> flatMap (Function<Double, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> collect (Predicate<Double> filter, Function<Double, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public boolean addAll (int index, Collection<? extends Double> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Double set (int index, Double element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void add (int index, Double element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Double remove (int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static ADoubleVector wrap (PrimitiveBlocks<double[]> data) {
+        return data.size == 0 ? EMPTY : new ADoubleVector(data);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ADoubleVector efficiently and in a generic manner.
+     *
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements ACollectionBuilder<Double, ADoubleVector> {
+        private final AVector.Builder<double[]> blocks = AVector.builder();
+        private double[] block = new double[PrimitiveBlocks.BLOCK_SIZE];
+        private int idx = 0;
+        private int size = 0;
+        private boolean wasBuilt = false;
+
+        public Builder addDouble (double value) {
+            if (wasBuilt) throw new IllegalStateException();
+            if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                blocks.add(block);
+                block = new double[PrimitiveBlocks.BLOCK_SIZE];
+                idx = 0;
+            }
+            block[idx++] = value;
+            size += 1;
+            return this;
+        }
+        @Override public Builder add (Double el) {
+            return addDouble(el);
+        }
+
+        public Builder addAll (double[] values) {
+            for (double v: values) addDouble(v);
+            return this;
+        }
+        @Override public Builder addAll (Iterator<? extends Double> it) {
+            while (it.hasNext()) addDouble(it.next());
+            return this;
+        }
+        @Override public Builder addAll (Iterable<? extends Double> coll) {
+            if (coll instanceof ADoubleVector) {
+                for (PrimitiveIterator.OfDouble it = ((ADoubleVector) coll).doubleIterator(); it.hasNext(); ) addDouble(it.nextDouble());
+                return this;
+            }
+            return addAll(coll.iterator());
+        }
+
+        @Override public ADoubleVector build () {
+            if (wasBuilt) throw new IllegalStateException();
+            wasBuilt = true;
+
+            if (size == 0) return empty();
+            blocks.add(block);
+            return new ADoubleVector(PrimitiveBlocks.of(blocks.build(), size, NEW_BLOCK));
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient ADoubleVector orig;
+
+        SerializationProxy (ADoubleVector orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (PrimitiveIterator.OfDouble it = orig.doubleIterator(); it.hasNext(); ) {
+                oos.writeDouble(it.nextDouble());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException {
+            final Builder builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.addDouble(ois.readDouble());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
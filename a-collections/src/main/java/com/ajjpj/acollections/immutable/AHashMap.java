@@ -5,12 +5,15 @@ import com.ajjpj.acollections.internal.ACollectionDefaults;
 import com.ajjpj.acollections.internal.ACollectionSupport;
 import com.ajjpj.acollections.internal.AMapDefaults;
 import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AEquivalence;
 import com.ajjpj.acollections.util.AOption;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collector;
 
 
 /**
@@ -24,14 +27,23 @@ import java.util.function.Predicate;
  * <p> So instances of AHashMap rely on methods like {@link #plus(Object, Object)} or {@link #minus(Object)} that return the modified
  *  collection to add or remove entries. For details and sample code, see {@link AMap}.
  *
+ * <p> Keys are compared based on {@link Object#equals(Object)} and {@link Object#hashCode()} by default. Passing an {@link AEquivalence}
+ *  to {@link #empty(AEquivalence)} or {@link #builder(AEquivalence)} creates a map that compares keys in a different way (e.g. by
+ *  identity, see {@link AIdentityHashMap}) without wrapping them. Maps derived from such a map (e.g. by {@link #plus(Object, Object)}
+ *  or {@link #filter(Predicate)}) use the same equivalence. Like {@link IdentityHashMap}, a map with an equivalence other than
+ *  {@link AEquivalence#equality()} uses the equivalence's hash codes for its keys in {@link #hashCode()}, and it should not be
+ *  compared with other kinds of maps.
+ *
  * <p> Implementation note: This is a port of Scala's standard library {@code HashMap}. It uses some optimization ideas from
- *  the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>.
+ *  the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>, and it stores trie nodes in the compact
+ *  CHAMP encoding with entries inlined in their nodes.
  *
  * @param <K> the map's key type
  * @param <V> the map's value type
  */
 public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollectionDefaults<Map.Entry<K,V>, AHashMap<K,V>>, AMapDefaults<K,V,AHashMap<K,V>>, Serializable {
     private final CompactHashMap<MapEntryWithEquals> compactHashMap;
+    private final AEquivalence<? super K> equivalence;
 
     /**
      * Convenience method for creating an empty {@link AHashMap}. This can later be modified by calling {@link #plus(Object,Object)} or
@@ -43,7 +55,21 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
      */
     public static <K,V> AHashMap<K,V> empty() {
         //noinspection unchecked
-        return new AHashMap<>(CompactHashMap.EMPTY);
+        return new AHashMap<>(CompactHashMap.EMPTY, AEquivalence.equality());
+    }
+
+    /**
+     * Creates an empty {@link AHashMap} that compares its keys using a given {@link AEquivalence} rather than
+     *  {@link Object#equals(Object)}. Maps derived from it by adding or removing entries use the same equivalence.
+     *
+     * @param equivalence the equivalence for comparing keys
+     * @param <K> the new map's key type
+     * @param <V> the new map's value type
+     * @return an empty {@link AHashMap}
+     */
+    public static <K,V> AHashMap<K,V> empty(AEquivalence<? super K> equivalence) {
+        //noinspection unchecked
+        return new AHashMap<>(CompactHashMap.EMPTY, equivalence);
     }
 
     /**
@@ -58,6 +84,19 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         return from(m.entrySet());
     }
 
+    /**
+     * Creates a new {@link AHashMap} based on a {@link java.util.Map}'s elements, comparing keys using a given {@link AEquivalence}.
+     *
+     * @param m           the {@link Map} from which the new map is initialized
+     * @param equivalence the equivalence for comparing keys
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> AHashMap<K,V> fromMap(Map<K,V> m, AEquivalence<? super K> equivalence) {
+        return AHashMap.<K,V>builder(equivalence).addAll(m.entrySet()).build();
+    }
+
     /**
      * Creates a new {@link AHashMap} based on an {@link Iterable}'s elements.
      *
@@ -82,6 +121,22 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         return AHashMap.<K,V> builder().addAll(it).build();
     }
 
+    /**
+     * Creates a new {@link AHashMap} from a {@link Collection} of entries, using several threads for large collections. The
+     *  entries are partitioned by their keys' hash codes, and the partitions' parts of the hash trie are built by separate tasks
+     *  in the common {@link java.util.concurrent.ForkJoinPool}. If there are several entries with the same key, the last of them
+     *  wins.
+     *
+     * @param coll the {@link Collection} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> AHashMap<K,V> fromParallel(Collection<? extends Map.Entry<K,V>> coll) {
+        final Function<Entry<K,V>, MapEntryWithEquals> toEntry = e -> new MapEntryWithEquals<>(e.getKey(), e.getValue());
+        return new AHashMap<>(CompactHashMap.fromParallel(coll.toArray(), toEntry), AEquivalence.equality());
+    }
+
     /**
      * This is an alias for {@link #empty()} for consistency with Java 9 conventions - it creates an empty {@link AHashMap}.
      *
@@ -171,24 +226,274 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
     }
 
     private AHashMap () {
-        this (new CompactHashMap<>());
+        this (new CompactHashMap<>(), AEquivalence.equality());
     }
-    private AHashMap (CompactHashMap<MapEntryWithEquals> compactHashMap) {
+    private AHashMap (CompactHashMap<MapEntryWithEquals> compactHashMap, AEquivalence<? super K> equivalence) {
         this.compactHashMap = compactHashMap;
+        this.equivalence = equivalence;
+    }
+
+    /**
+     * @return the {@link AEquivalence} this map uses for comparing keys
+     */
+    public AEquivalence<? super K> equivalence () {
+        return equivalence;
+    }
+
+    private MapEntryWithEquals<K,V> entry (K key, V value) {
+        return newEntry(equivalence, key, value);
+    }
+
+    private static <K,V> MapEntryWithEquals<K,V> newEntry (AEquivalence<? super K> equivalence, K key, V value) {
+        if (equivalence == AEquivalence.equality()) return new MapEntryWithEquals<>(key, value);
+        return new MapEntryWithEquivalence<>(key, value, equivalence);
+    }
+
+    /**
+     * Creates an entry for a prehashed key, using the handle's cached hash codes if they were computed for this map's equivalence.
+     */
+    private MapEntryWithEquals<K,V> entry (PrehashedKey<? extends K> key, V value) {
+        if (key.isValidFor(equivalence)) return new PrehashedMapEntry<>(key.key(), value, equivalence, key.rawHash(), key.keyHash());
+        return entry(key.key(), value);
+    }
+
+    /**
+     * @return true if and only if the other map compares keys in the same way, so that both maps' tries can be combined node by node
+     */
+    private boolean hasSameEquivalence (AHashMap<?,?> other) {
+        return equivalence.equals(other.equivalence);
     }
 
     protected Object writeReplace() throws ObjectStreamException {
-        return new SerializationProxy(this);
+        if (equivalence == AEquivalence.equality()) return new SerializationProxy(this);
+        return new EquivalenceSerializationProxy(this);
+    }
+
+    /**
+     * Compares this map to another object as specified by {@link Map#equals(Object)}. If the other object is an {@link AHashMap} as
+     *  well, this compares the hash tries node by node: sub-tries shared by both maps are recognized by identity, and the aggregate
+     *  hash codes maintained by all nodes allow rejecting most mismatches without looking at individual entries.
+     */
+    @Override public boolean equals (Object o) {
+        if (o instanceof AHashMap && hasSameEquivalence((AHashMap<?,?>) o)) {
+            return compactHashMap.hasEqualContent(((AHashMap<?,?>) o).compactHashMap, 0);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Returns the hash code as specified by {@link Map#hashCode()}. The trie nodes maintain their entries' aggregate hash code
+     *  incrementally, so this takes constant time. Keys' and values' hash codes must therefore not change while they are stored in
+     *  the map.
+     */
+    @Override public int hashCode () {
+        return compactHashMap.contentHash();
+    }
+
+    /**
+     * Returns statistics on this map's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this map's hash trie
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this map's internal structure, including the number of bytes it shares with another version of the
+     *  map (e.g. a map from which this map was derived by adding or removing entries), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the map with which shared bytes are determined
+     * @return statistics on this map's hash trie
+     */
+    public CollectionStats stats (AHashMap<K,V> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        otherVersion.compactHashMap.registerNodes(collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        final int numEntryReferences = equivalence == AEquivalence.equality() ? 2 : 3;
+        compactHashMap.collectStats(collector, 0, CollectionStats.objectBytes(numEntryReferences, 1));
+        return collector.build(size());
     }
 
     @Override public AHashMap<K, V> plus (K key, V value) {
-        return new AHashMap<>(compactHashMap.updated0(new MapEntryWithEquals<>(key, value), 0));
+        return new AHashMap<>(compactHashMap.updated0(entry(key, value), 0), equivalence);
     }
     @Override public AHashMap<K, V> minus (K key) {
-        return new AHashMap<>(compactHashMap.removed0(new MapEntryWithEquals<>(key, null), 0));
+        return new AHashMap<>(compactHashMap.removed0(entry(key, null), 0), equivalence);
+    }
+
+    /**
+     * Same as {@link #plus(Object, Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the
+     *  key's hash code. The new entry keeps that hash code, so later operations on it do not compute it either.
+     *
+     * @param key   the prehashed key
+     * @param value the new value
+     * @return a map with the new entry
+     */
+    public AHashMap<K, V> plusPrehashed (PrehashedKey<? extends K> key, V value) {
+        return new AHashMap<>(compactHashMap.updated0(entry(key, value), 0), equivalence);
+    }
+
+    /**
+     * Adds, replaces or removes the entry for a given key based on its current value. This looks up the key only once, and it
+     *  returns this map itself if {@code f} returns the existing value (by identity), or no value for a missing key.
+     *
+     * @param key the key whose entry is updated
+     * @param f   the function determining the new value, or {@link AOption#none()} to remove the entry
+     * @return the (potentially) modified map
+     */
+    @Override public AHashMap<K, V> updatedWith (K key, Function<AOption<V>, AOption<V>> f) {
+        final MapEntryWithEquals<K,V> probe = entry(key, null);
+        //noinspection unchecked
+        return withTrie(compactHashMap.updatedWith0(probe, 0, existing -> {
+            final AOption<V> result = f.apply(existing == null ? AOption.none() : AOption.some((V) existing.getValue()));
+            if (result.isEmpty()) return null;
+            if (existing != null && existing.getValue() == result.get()) return existing;
+            return entry(key, result.get());
+        }));
+    }
+
+    /**
+     * Adds another map's entries to this map, replacing entries for existing keys. If the other map is an {@link AHashMap} as well,
+     *  this merges both maps' hash tries node by node, reusing sub-tries that are present in only one of the maps (or identical in
+     *  both) by reference.
+     *
+     * @param other the map whose entries are added to this map
+     * @param <K1> the other map's key type
+     * @param <V1> the other map's value type
+     * @return the map with the new entries
+     */
+    @Override public <K1 extends K, V1 extends V> AHashMap<K, V> plusAll (Map<K1, V1> other) {
+        if (other instanceof AHashMap && hasSameEquivalence((AHashMap<?,?>) other)) {
+            final AHashMap<?,?> that = (AHashMap<?,?>) other;
+            return withMergedTrie(that, CompactHashMap.keepRight());
+        }
+        return (AHashMap<K,V>) super.plusAll(other);
+    }
+
+    /**
+     * Adds another map's entries to this map, using a function to determine the resulting value for keys contained in both maps. If
+     *  the other map is an {@link AHashMap} as well, this merges both maps' hash tries node by node, reusing sub-tries that are present
+     *  in only one of the maps by reference. The function is called only for keys that are actually contained in both maps.
+     *
+     * @param other the map whose entries are added to this map
+     * @param f     the function determining the resulting value if both maps contain a key; it is called with this map's value
+     *              and the other map's value
+     * @return the map with the new entries
+     */
+    @Override public AHashMap<K, V> plusAll (Map<? extends K, ? extends V> other, BiFunction<V, V, V> f) {
+        if (other instanceof AHashMap && hasSameEquivalence((AHashMap<?,?>) other)) {
+            return withMergedTrie((AHashMap<?,?>) other, (left, right) -> {
+                //noinspection unchecked
+                final V merged = f.apply((V) left.getValue(), (V) right.getValue());
+                if (merged == left.getValue()) return left;
+                if (merged == right.getValue()) return right;
+                //noinspection unchecked
+                return entry((K) left.getKey(), merged);
+            });
+        }
+        return (AHashMap<K,V>) super.plusAll(other, f);
+    }
+
+    private AHashMap<K,V> withMergedTrie(AHashMap<?,?> other, CompactHashMap.EntryMerger<MapEntryWithEquals> merger) {
+        final CompactHashMap<MapEntryWithEquals> result = compactHashMap.union0(other.compactHashMap, 0, merger);
+        if (result == compactHashMap) return this;
+        //noinspection unchecked
+        if (result == other.compactHashMap) return (AHashMap<K, V>) other;
+        return new AHashMap<>(result, equivalence);
+    }
+
+    /**
+     * Removes all entries for a number of keys from this map. If {@code keys} is the {@link #keySet()} of another {@link AHashMap},
+     *  this works on both maps' hash tries node by node, reusing sub-tries that are not present in the other map by reference.
+     *
+     * <p> Keys are matched using this map's equivalence, even if {@code keys} compares its elements differently, as in
+     *  {@link #retainKeys(Collection)}.
+     *
+     * @param keys the keys whose entries are removed
+     * @return the (potentially) modified map
+     */
+    @Override public AHashMap<K, V> minusAll (Iterable<? extends K> keys) {
+        final AHashMap<?,?> other = underlyingAHashMap(keys);
+        if (other != null) {
+            return withTrie(compactHashMap.diff0(other.compactHashMap, 0));
+        }
+        return (AHashMap<K,V>) super.minusAll(keys);
+    }
+
+    /**
+     * Removes all entries whose keys are not contained in a given collection. If {@code keys} is the {@link #keySet()} of another
+     *  {@link AHashMap}, this works on both maps' hash tries node by node, skipping sub-tries that are present in only one of the
+     *  maps without looking at their entries.
+     *
+     * <p> Keys are matched using this map's equivalence, even if {@code keys} compares its elements differently: the result
+     *  contains the entries whose keys are equivalent to some element of {@code keys}. So {@code retainKeys} and
+     *  {@link #minusAll(Iterable)} always split this map into two disjoint parts.
+     *
+     * @param keys the keys whose entries are retained
+     * @return the (potentially) modified map
+     */
+    @Override public AHashMap<K, V> retainKeys (Collection<? extends K> keys) {
+        final AHashMap<?,?> other = underlyingAHashMap(keys);
+        if (other != null) {
+            return withTrie(compactHashMap.intersect0(other.compactHashMap, 0));
+        }
+        final AHashSet<K> retained = AHashSet.<K>builder(equivalence).addAll(keys).build();
+        return filterKeys(retained::contains);
+    }
+
+    /**
+     * Returns the differences between this map and another map. If the other map is an {@link AHashMap} as well, this compares both
+     *  maps' hash tries node by node and skips sub-tries they share, so comparing two versions of a map costs time proportional to the
+     *  changes rather than to the maps' size.
+     *
+     * @param other the map this map is compared with
+     * @return an iterator over the changes that turn this map into the other map
+     */
+    @Override public AIterator<AMapChange<K,V>> diff (AMap<K,V> other) {
+        if (other instanceof AHashMap && hasSameEquivalence((AHashMap<K,V>) other)) {
+            final List<AMapChange<K,V>> result = new ArrayList<>();
+            //noinspection unchecked
+            compactHashMap.changes0(((AHashMap<K,V>) other).compactHashMap, 0, (a, b) -> {
+                if (a == null) result.add(AMapChange.added((K) b.getKey(), (V) b.getValue()));
+                else if (b == null) result.add(AMapChange.removed((K) a.getKey(), (V) a.getValue()));
+                else result.add(AMapChange.changed((K) a.getKey(), (V) a.getValue(), (V) b.getValue()));
+            });
+            return AIterator.wrap(result.iterator());
+        }
+        return super.diff(other);
+    }
+
+    private AHashMap<?,?> underlyingAHashMap(Iterable<?> keys) {
+        if (keys instanceof AMapSupport.KeySet && ((AMapSupport.KeySet<?>) keys).getMap() instanceof AHashMap) {
+            final AHashMap<?,?> result = (AHashMap<?, ?>) ((AMapSupport.KeySet<?>) keys).getMap();
+            if (hasSameEquivalence(result)) return result;
+        }
+        return null;
+    }
+
+    private AHashMap<K,V> withTrie(CompactHashMap<MapEntryWithEquals> compactHashMap) {
+        if (compactHashMap == this.compactHashMap) return this;
+        return new AHashMap<>(compactHashMap, equivalence);
     }
 
 
+    /**
+     * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an AHashMap. For parallel streams,
+     *  the partial results are merged structurally, which takes time proportional to their overlap rather than their size. If
+     *  there are several entries with the same key, the last of them (in the stream's encounter order) wins.
+     *
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return a {@link Collector} to collect a stream's entries into an AHashMap
+     */
+    public static <K,V> Collector<Entry<K,V>, Builder<K,V>, AHashMap<K,V>> streamCollector() {
+        return Collector.of(AHashMap::builder, Builder::add, Builder::merge, Builder::build);
+    }
+
     /**
      * Returns a new {@link ACollectionBuilder} for building an AHashMap efficiently and in a generic manner.
      *
@@ -197,7 +502,19 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
      * @return an new {@link ACollectionBuilder}
      */
     public static <K,V> Builder<K,V> builder() {
-        return new Builder<>();
+        return new Builder<>(AEquivalence.equality());
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an AHashMap that compares its keys using a given {@link AEquivalence}.
+     *
+     * @param equivalence the equivalence for comparing keys
+     * @param <K> the builder's key type
+     * @param <V> the builder's value type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <K,V> Builder<K,V> builder(AEquivalence<? super K> equivalence) {
+        return new Builder<>(equivalence);
     }
 
     @Override public int size () {
@@ -220,13 +537,49 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
 
     @Override public boolean containsKey (Object key) {
         //noinspection unchecked
-        MapEntryWithEquals result = new MapEntryWithEquals<>((K) key, (V) null);
+        MapEntryWithEquals result = entry((K) key, null);
         return compactHashMap.get0(result, 0) != null;
     }
 
+    /**
+     * Same as {@link #containsKey(Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the key's
+     *  hash code.
+     *
+     * @param key the prehashed key
+     * @return true if and only if the map contains an entry for the key
+     */
+    public boolean containsKeyPrehashed (PrehashedKey<? extends K> key) {
+        return compactHashMap.get0(entry(key, null), 0) != null;
+    }
+
+    /**
+     * Same as {@link #get(Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the key's hash code.
+     *
+     * @param key the prehashed key
+     * @return the value for the key, or null if the map contains no entry for the key
+     */
+    public V getPrehashed (PrehashedKey<? extends K> key) {
+        //noinspection unchecked
+        final MapEntryWithEquals<K,V> raw = compactHashMap.get0(entry(key, null), 0);
+        return raw != null ? raw.getValue() : null;
+    }
+
+    /**
+     * Same as {@link #getOptional(Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the key's
+     *  hash code.
+     *
+     * @param key the prehashed key
+     * @return the value for the key, or {@link AOption#none()} if the map contains no entry for the key
+     */
+    public AOption<V> getOptionalPrehashed (PrehashedKey<? extends K> key) {
+        //noinspection unchecked
+        final MapEntryWithEquals<K,V> raw = compactHashMap.get0(entry(key, null), 0);
+        return AOption.of(raw).map(MapEntryWithEquals::getValue);
+    }
+
     @Override public V get (Object key) {
         //noinspection unchecked
-        MapEntryWithEquals<K,V> result = new MapEntryWithEquals<>((K) key, null);
+        MapEntryWithEquals<K,V> result = entry((K) key, null);
         //noinspection unchecked
         final MapEntryWithEquals<K,V> raw = compactHashMap.get0(result, 0);
         if (raw != null)
@@ -237,7 +590,7 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
 
     @Override public AOption<V> getOptional (K key) {
         //noinspection unchecked
-        MapEntryWithEquals result = new MapEntryWithEquals<>(key, (V) null);
+        MapEntryWithEquals result = entry(key, null);
         //noinspection unchecked
         final MapEntryWithEquals<K,V> raw = compactHashMap.get0(result, 0);
         return AOption.of(raw).map(MapEntryWithEquals::getValue);
@@ -248,6 +601,14 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         return (AIterator) compactHashMap.iterator();
     }
 
+    /**
+     * Returns a {@link Spliterator} that splits along the underlying hash trie's nodes, so parallel streams over an AHashMap
+     *  divide the work into parts of roughly equal (and exactly known) size.
+     */
+    @Override public Spliterator<Entry<K, V>> spliterator () {
+        return compactHashMap.<Entry<K, V>>spliterator(e -> e, Spliterator.NONNULL);
+    }
+
     @Override public AIterator<K> keysIterator () {
         return iterator().map(Entry::getKey); //TODO this can be optimized
     }
@@ -257,7 +618,7 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
     }
 
     @Override public AHashMap<K, V> filter (Predicate<Entry<K, V>> f) {
-        return AHashMap.fromIterator(iterator().filter(f));
+        return AHashMap.<K,V>builder(equivalence).addAll(iterator().filter(f)).build();
     }
 
     @Override public AHashMap<K, V> filterNot (Predicate<Entry<K, V>> f) {
@@ -287,7 +648,13 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
     }
 
     @Override public <V1> AHashMap<K, V1> mapValues (Function<V, V1> f) {
-        return (AHashMap<K,V1>) AMapDefaults.super.mapValues(f);
+        final Builder<K,V1> builder = builder(equivalence);
+        for (Entry<K,V> e: this) builder.add(e.getKey(), f.apply(e.getValue()));
+        return builder.build();
+    }
+
+    @Override public AHashMap<K, V> filterKeys (Predicate<K> f) {
+        return filter(e -> f.test(e.getKey()));
     }
 
     @Override public <K1> AMap<K1, AHashMap<K, V>> groupBy (Function<Entry<K, V>, K1> keyExtractor) {
@@ -315,21 +682,31 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         return new AMapSupport.EntrySet<>(this);
     }
 
+    /**
+     * A builder for {@link AHashMap}. It modifies the trie nodes it created itself in place rather than copying them on every
+     *  {@link #add(Object, Object)}, which saves most of the garbage of adding elements one by one. The nodes are 'sealed' when
+     *  {@link #build()} is called, so a built map is never affected by subsequent additions to the builder.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
     public static class Builder<K,V> implements ACollectionBuilder<Map.Entry<K,V>, AHashMap<K,V>> {
-        private AHashMap<K,V> result;
+        @SuppressWarnings("unchecked")
+        private CompactHashMap<MapEntryWithEquals> result = CompactHashMap.EMPTY;
+        private Object owner = new Object();
+        private final AEquivalence<? super K> equivalence;
 
-        Builder() {
-            this.result = empty();
+        Builder(AEquivalence<? super K> equivalence) {
+            this.equivalence = equivalence;
         }
 
         public Builder<K, V> add (K key, V value) {
-            result = result.plus(key, value);
+            result = result.updatedTransient(newEntry(equivalence, key, value), 0, owner);
             return this;
         }
 
         @Override public Builder<K, V> add (Entry<K, V> el) {
-            result = result.plus(el.getKey(), el.getValue());
-            return this;
+            return add(el.getKey(), el.getValue());
         }
 
         @Override public Builder<K, V> addAll (Iterator<? extends Entry<K, V>> it) {
@@ -346,13 +723,25 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         }
 
         @Override public AHashMap<K, V> build () {
-            return result;
+            owner = new Object(); // seal the nodes created so far
+            return new AHashMap<>(result, equivalence);
+        }
+
+        /**
+         * Adds another builder's entries by merging the two tries node by node, which is how {@link #streamCollector()} combines
+         *  the results of parallel tasks. The other builder's entries win for keys contained in both builders, and the other
+         *  builder must not be used afterwards.
+         */
+        Builder<K, V> merge (Builder<K, V> other) {
+            other.owner = new Object(); // seal the other builder's nodes because they become part of this builder's trie
+            result = result.union0(other.result, 0, CompactHashMap.keepRight());
+            return this;
         }
     }
 
 
     private static class MapEntryWithEquals<K,V> extends AbstractMap.SimpleImmutableEntry<K,V> implements CompactHashMap.EntryWithEquality {
-        private int keyHash = -123; // 'safe data race' - see String.hashCode() implementation for an explanation
+        int keyHash = -123; // 'safe data race' - see String.hashCode() implementation for an explanation
 
         MapEntryWithEquals (K key, V value) { super(key, value); }
 
@@ -361,24 +750,89 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
             return keyHash() == other.keyHash() && Objects.equals(getKey(), ((MapEntryWithEquals) other).getKey());
         }
 
-        private int improve(int hashCode) {
-            int h = hashCode + ~(hashCode << 9);
-            h = h ^ (h >>> 14);
-            h = h + (h << 4);
-            return h ^ (h >>> 10);
+        /**
+         * @return the key's hash code before spreading
+         */
+        int rawKeyHash () {
+            return Objects.hashCode(getKey());
         }
 
-
         @Override public int keyHash () {
             if (keyHash == -123) {
-                keyHash = improve(Objects.hashCode(getKey()));
+                keyHash = CompactHashMap.spread(rawKeyHash());
             }
             return keyHash;
         }
+
+        @Override public Object key () {
+            return getKey();
+        }
+
+        @Override public boolean hasEqualContent (CompactHashMap.EntryWithEquality other) {
+            return hasEqualKey(other) && Objects.equals(getValue(), ((MapEntryWithEquals) other).getValue());
+        }
+
+        @Override public int contentHash () {
+            return hashCode();
+        }
+    }
+
+    /**
+     * A map entry comparing keys based on an {@link AEquivalence}. Its key must not be used for ordering entries in collision nodes
+     *  because that ordering would be based on {@link Comparable#compareTo(Object)}, so {@link #key()} returns {@code null}.
+     */
+    private static class MapEntryWithEquivalence<K,V> extends MapEntryWithEquals<K,V> {
+        final AEquivalence<? super K> equivalence;
+
+        MapEntryWithEquivalence (K key, V value, AEquivalence<? super K> equivalence) {
+            super(key, value);
+            this.equivalence = equivalence;
+        }
+
+        @Override public boolean hasEqualKey (CompactHashMap.EntryWithEquality other) {
+            //noinspection unchecked
+            return keyHash() == other.keyHash() && equivalence.equivalent(getKey(), ((MapEntryWithEquals<K,?>) other).getKey());
+        }
+
+        @Override int rawKeyHash () {
+            return equivalence.hash(getKey());
+        }
+
+        @Override public Object key () {
+            return null;
+        }
+
+        @Override public int contentHash () {
+            return rawKeyHash() ^ Objects.hashCode(getValue());
+        }
+    }
+
+    /**
+     * An entry created from a {@link PrehashedKey}, caching its key's hash code before spreading as well so that maintaining the
+     *  map's aggregate hash code does not call the key's {@code hashCode()} method. Regular entries do not cache it to save memory.
+     */
+    private static class PrehashedMapEntry<K,V> extends MapEntryWithEquivalence<K,V> {
+        private final int rawKeyHash;
+
+        PrehashedMapEntry (K key, V value, AEquivalence<? super K> equivalence, int rawKeyHash, int keyHash) {
+            super(key, value, equivalence);
+            this.rawKeyHash = rawKeyHash;
+            this.keyHash = keyHash;
+        }
+
+        @Override int rawKeyHash () {
+            return rawKeyHash;
+        }
+
+        @Override public Object key () {
+            // entries with the default equivalence must be ordered in collision nodes like all other entries in the map
+            return equivalence == AEquivalence.equality() ? getKey() : null;
+        }
     }
 
     /**
-     * proxy class to allow deserializing an immutable hash map without relying on hash codes remaining the same
+     * proxy class to allow deserializing an immutable hash map without relying on hash codes remaining the same. It is used for maps
+     *  with {@link AEquivalence#equality()} and keeps the serialized form that predates support for other equivalences.
      */
     private static class SerializationProxy implements Serializable {
         private transient AHashMap<?,?> orig;
@@ -390,24 +844,58 @@ public class AHashMap<K,V> extends AbstractImmutableMap<K,V> implements ACollect
         private static final long serialVersionUID = 2L;
 
         private void writeObject(ObjectOutputStream oos) throws IOException {
-            oos.writeInt(orig.size());
-            for (Map.Entry<?,?> e: orig) {
-                oos.writeObject(e.getKey());
-                oos.writeObject(e.getValue());
-            }
+            writeEntries(orig, oos);
         }
 
         private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
-            final Builder<Object,Object> builder = builder();
-            final int size = ois.readInt();
-            for (int i=0; i<size; i++) {
-                builder.add(ois.readObject(), ois.readObject());
-            }
-            orig = builder.build();
+            orig = readEntries(builder(), ois);
         }
 
         private Object readResolve() {
             return orig;
         }
     }
+
+    /**
+     * proxy class for maps with an equivalence other than {@link AEquivalence#equality()}, writing the equivalence before the entries
+     */
+    private static class EquivalenceSerializationProxy implements Serializable {
+        private transient AHashMap<?,?> orig;
+
+        EquivalenceSerializationProxy (AHashMap<?,?> orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeObject(orig.equivalence);
+            writeEntries(orig, oos);
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            //noinspection unchecked
+            orig = readEntries(builder((AEquivalence<Object>) ois.readObject()), ois);
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+
+    private static void writeEntries (AHashMap<?,?> map, ObjectOutputStream oos) throws IOException {
+        oos.writeInt(map.size());
+        for (Map.Entry<?,?> e: map) {
+            oos.writeObject(e.getKey());
+            oos.writeObject(e.getValue());
+        }
+    }
+
+    private static AHashMap<?,?> readEntries (Builder<Object,Object> builder, ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        final int size = ois.readInt();
+        for (int i=0; i<size; i++) {
+            builder.add(ois.readObject(), ois.readObject());
+        }
+        return builder.build();
+    }
 }
@@ -7,6 +7,7 @@ import com.ajjpj.acollections.internal.ACollectionDefaults;
 import com.ajjpj.acollections.internal.ACollectionSupport;
 import com.ajjpj.acollections.internal.ASetDefaults;
 import com.ajjpj.acollections.internal.ASetSupport;
+import com.ajjpj.acollections.util.AEquivalence;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -42,13 +43,20 @@ import java.util.stream.Collector;
  *
  * <p> This class has static factory methods (Java 9 style) for convenience creating instances.
  *
+ * <p> Elements are compared based on {@link Object#equals(Object)} and {@link Object#hashCode()} by default. Passing an
+ *  {@link AEquivalence} to {@link #empty(AEquivalence)} or {@link #builder(AEquivalence)} creates a set that compares its elements in
+ *  a different way (e.g. by identity) without wrapping them. Sets derived from such a set by adding, removing or filtering elements use
+ *  the same equivalence, and its {@link #hashCode()} is based on the equivalence's hash codes.
+ *
  * <p> Implementation note: This is a port of Scala's standard library {@code HashMap}. It uses some optimization ideas from
- *      the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>.
+ *      the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>, and it stores trie nodes in the compact
+ *      CHAMP encoding with entries inlined in their nodes.
  *
  * @param <T> the set's element type
  */
 public class AHashSet<T> extends AbstractImmutableCollection<T> implements ACollectionDefaults<T, AHashSet<T>>, ASetDefaults<T, AHashSet<T>>, Serializable {
     private final CompactHashMap<EqualsSetEntry<T>> compactHashMap;
+    private final AEquivalence<? super T> equivalence;
 
     /**
      * Creates an empty {@link AHashSet}.
@@ -59,7 +67,19 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
      * @return an empty {@link AHashSet}
      */
     public static<T> AHashSet<T> empty() {
-        return new AHashSet<>(CompactHashMap.empty());
+        return new AHashSet<>(CompactHashMap.empty(), AEquivalence.equality());
+    }
+
+    /**
+     * Creates an empty {@link AHashSet} that compares its elements using a given {@link AEquivalence} rather than
+     *  {@link Object#equals(Object)}. Sets derived from it by adding or removing elements use the same equivalence.
+     *
+     * @param equivalence the equivalence for comparing elements
+     * @param <T> the new set's element type
+     * @return an empty {@link AHashSet}
+     */
+    public static<T> AHashSet<T> empty(AEquivalence<? super T> equivalence) {
+        return new AHashSet<>(CompactHashMap.empty(), equivalence);
     }
 
     /**
@@ -199,23 +219,105 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
                 .build();
     }
 
-    private AHashSet (CompactHashMap<EqualsSetEntry<T>> compactHashMap) {
+    /**
+     * Creates a new {@link AHashSet} from a {@link Collection}'s elements, using several threads for large collections. The
+     *  elements are partitioned by their hash codes, and the partitions' parts of the hash trie are built by separate tasks
+     *  in the common {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @param coll the {@link Collection} from which the new set is initialized
+     * @param <T> the set's element type
+     * @return the new set
+     */
+    public static <T> AHashSet<T> fromParallel(Collection<T> coll) {
+        return new AHashSet<>(CompactHashMap.fromParallel(coll.toArray(), EqualsSetEntry<T>::new), AEquivalence.equality());
+    }
+
+    private AHashSet (CompactHashMap<EqualsSetEntry<T>> compactHashMap, AEquivalence<? super T> equivalence) {
         this.compactHashMap = compactHashMap;
+        this.equivalence = equivalence;
+    }
+
+    /**
+     * @return the {@link AEquivalence} this set uses for comparing elements
+     */
+    public AEquivalence<? super T> equivalence () {
+        return equivalence;
+    }
+
+    private EqualsSetEntry<T> entry (T el) {
+        return newEntry(equivalence, el);
+    }
+
+    private static <T> EqualsSetEntry<T> newEntry (AEquivalence<? super T> equivalence, T el) {
+        if (equivalence == AEquivalence.equality()) return new EqualsSetEntry<>(el);
+        return new EquivalenceSetEntry<>(el, equivalence);
+    }
+
+    /**
+     * @return true if and only if the other collection is an AHashSet that compares elements in the same way, so that both sets'
+     *         tries can be combined node by node
+     */
+    private boolean isAHashSetWithSameEquivalence (Iterable<?> that) {
+        return that instanceof AHashSet && equivalence.equals(((AHashSet<?>) that).equivalence);
     }
 
     protected Object writeReplace() {
-        return new SerializationProxy(this);
+        if (equivalence == AEquivalence.equality()) return new SerializationProxy(this);
+        return new EquivalenceSerializationProxy(this);
     }
 
     @Override public <U> ACollectionBuilder<U, AHashSet<U>> newBuilder() {
-        return new Builder<>();
+        return builder();
     }
 
+    /**
+     * Compares this set to another object as specified by {@link Set#equals(Object)}. If the other object is an {@link AHashSet} as
+     *  well, this compares the hash tries node by node: sub-tries shared by both sets are recognized by identity, and the aggregate
+     *  hash codes maintained by all nodes allow rejecting most mismatches without looking at individual elements.
+     */
     @Override public boolean equals (Object o) {
+        if (isAHashSetWithSameEquivalence((Iterable<?>) o)) {
+            //noinspection unchecked
+            return compactHashMap.hasEqualContent(((AHashSet<T>) o).compactHashMap, 0);
+        }
         return ASetSupport.equals(this, o);
     }
+
+    /**
+     * Returns the hash code as specified by {@link Set#hashCode()}. The trie nodes maintain their elements' aggregate hash code
+     *  incrementally, so this takes constant time. Elements' hash codes must therefore not change while they are stored in the set,
+     *  which is necessary for hash based collections anyway.
+     */
     @Override public int hashCode() {
-        return ASetSupport.hashCode(this);
+        return compactHashMap.contentHash();
+    }
+
+    /**
+     * Returns statistics on this set's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this set's hash trie
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this set's internal structure, including the number of bytes it shares with another version of the
+     *  set (e.g. a set from which this set was derived by adding or removing elements), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the set with which shared bytes are determined
+     * @return statistics on this set's hash trie
+     */
+    public CollectionStats stats (AHashSet<T> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        otherVersion.compactHashMap.registerNodes(collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        final int numEntryReferences = equivalence == AEquivalence.equality() ? 1 : 2;
+        compactHashMap.collectStats(collector, 0, CollectionStats.objectBytes(numEntryReferences, 0));
+        return collector.build(size());
     }
 
     @Override public String toString () {
@@ -227,40 +329,141 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
     }
 
     @Override public AHashSet<T> plus (T o) {
-        return new AHashSet<>(compactHashMap.updated0(new EqualsSetEntry<>(o), 0));
+        return new AHashSet<>(compactHashMap.updated0(entry(o), 0), equivalence);
     }
 
     @Override public AHashSet<T> minus (T o) {
-        return new AHashSet<>(compactHashMap.removed0(new EqualsSetEntry<>(o), 0));
+        return new AHashSet<>(compactHashMap.removed0(entry(o), 0), equivalence);
     }
 
     @Override public boolean contains (Object o) {
         //noinspection unchecked
-        return compactHashMap.get0(new EqualsSetEntry<>((T)o), 0) != null;
+        return compactHashMap.get0(entry((T)o), 0) != null;
+    }
+
+    /**
+     * Creates an entry for a prehashed element, using the handle's cached hash code if it was computed for this set's equivalence.
+     */
+    private EqualsSetEntry<T> entry (PrehashedKey<? extends T> o) {
+        if (o.isValidFor(equivalence)) return new PrehashedSetEntry<>(o.key(), equivalence, o.rawHash(), o.keyHash());
+        return entry(o.key());
+    }
+
+    /**
+     * Same as {@link #plus(Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the element's
+     *  hash code. If the element is added, its entry keeps that hash code, so later operations on it do not compute it either.
+     *
+     * @param o the prehashed element
+     * @return a set containing the element
+     */
+    public AHashSet<T> plusPrehashed (PrehashedKey<? extends T> o) {
+        return new AHashSet<>(compactHashMap.updated0(entry(o), 0), equivalence);
     }
 
+    /**
+     * Same as {@link #contains(Object)}, but using the hash code cached in a {@link PrehashedKey} rather than computing the
+     *  element's hash code.
+     *
+     * @param o the prehashed element
+     * @return true if and only if the set contains the element
+     */
+    public boolean containsPrehashed (PrehashedKey<? extends T> o) {
+        return compactHashMap.get0(entry(o), 0) != null;
+    }
+
+    /**
+     * Returns the union of this set and another collection. If the other collection is an {@link AHashSet} as well, this merges the
+     *  hash tries node by node, reusing sub-tries that are present in only one of the sets (or identical in both) by reference.
+     *
+     * @param that the collection whose elements are added to this set
+     * @return a set containing all elements of both this set and the other collection
+     */
     @Override public AHashSet<T> union (Iterable<? extends T> that) {
+        if (isAHashSetWithSameEquivalence(that)) {
+            //noinspection unchecked
+            final AHashSet<T> other = (AHashSet<T>) that;
+            final CompactHashMap<EqualsSetEntry<T>> result = compactHashMap.union0(other.compactHashMap, 0, CompactHashMap.keepLeft());
+            return result == other.compactHashMap ? other : withCompactHashMap(result);
+        }
+
         AHashSet<T> result = this;
         for (T o: that)
             result = result.plus(o);
         return result;
     }
 
+    /**
+     * Returns the intersection of this set and another set. If the other set is an {@link AHashSet} as well, this works node by node,
+     *  skipping sub-tries that are present in only one of the sets without looking at their elements.
+     *
+     * <p> Elements are matched using this set's equivalence, even if the other set compares its elements differently: the result
+     *  contains this set's elements that are equivalent to some element of the other set. So {@code intersect} and {@link #diff(Set)}
+     *  always split this set into two disjoint parts.
+     *
+     * @param that the other set
+     * @return a set containing all elements that are contained in both this set and the other set
+     */
     @Override public AHashSet<T> intersect (Set<T> that) {
-        return filter(that::contains);
+        return withCompactHashMap(compactHashMap.intersect0(withSameEquivalence(that).compactHashMap, 0));
     }
 
+    /**
+     * Returns this set without the elements of another set. If the other set is an {@link AHashSet} as well, this works node by node,
+     *  reusing sub-tries that are not present in the other set by reference.
+     *
+     * <p> Like {@link #intersect(Set)}, this matches elements using this set's equivalence: the result contains this set's elements
+     *  that are not equivalent to any element of the other set.
+     *
+     * @param that the set whose elements are removed
+     * @return a set containing this set's elements that are not contained in the other set
+     */
     @Override public AHashSet<T> diff (Set<T> that) {
-        AHashSet<T> result = this;
-        for (T o: that)
-            result = result.minus(o);
-        return result;
+        return withCompactHashMap(compactHashMap.diff0(withSameEquivalence(that).compactHashMap, 0));
+    }
+
+    /**
+     * @return the other collection as an AHashSet with this set's equivalence, copying its elements if necessary
+     */
+    private AHashSet<T> withSameEquivalence (Iterable<T> that) {
+        //noinspection unchecked
+        if (isAHashSetWithSameEquivalence(that)) return (AHashSet<T>) that;
+        return AHashSet.<T>builder(equivalence).addAll(that).build();
+    }
+
+    /**
+     * Returns an iterator over all elements contained in exactly one of this set and another set. If the other set is an
+     *  {@link AHashSet} as well, this compares both sets' hash tries node by node and skips sub-tries they share, so comparing two
+     *  versions of a set costs time proportional to the differences rather than to the sets' size.
+     *
+     * @param that the set this set is compared with
+     * @return an iterator over the elements contained in exactly one of the sets
+     */
+    @Override public AIterator<T> symmetricDiff (Set<T> that) {
+        if (isAHashSetWithSameEquivalence(that)) {
+            final List<T> result = new ArrayList<>();
+            compactHashMap.changes0(((AHashSet<T>) that).compactHashMap, 0, (a, b) -> result.add(a != null ? a.el : b.el));
+            return AIterator.wrap(result.iterator());
+        }
+        return ASetDefaults.super.symmetricDiff(that);
+    }
+
+    private AHashSet<T> withCompactHashMap(CompactHashMap<EqualsSetEntry<T>> compactHashMap) {
+        if (compactHashMap == this.compactHashMap) return this;
+        return new AHashSet<>(compactHashMap, equivalence);
     }
 
     @Override public AIterator<T> iterator () {
         return compactHashMap.iterator().map(e -> e.el);
     }
 
+    /**
+     * Returns a {@link Spliterator} that splits along the underlying hash trie's nodes, so parallel streams over an AHashSet
+     *  divide the work into parts of roughly equal (and exactly known) size.
+     */
+    @Override public Spliterator<T> spliterator () {
+        return compactHashMap.spliterator(e -> e.el, 0);
+    }
+
     @Override public boolean isEmpty () {
         return compactHashMap.isEmpty();
     }
@@ -278,7 +481,9 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
     }
 
     @Override public AHashSet<T> filter (Predicate<T> f) {
-        return ACollectionDefaults.super.filter(f);
+        final Builder<T> builder = builder(equivalence);
+        for (T o: this) if (f.test(o)) builder.add(o);
+        return builder.build();
     }
 
     @Override public AHashSet<T> filterNot (Predicate<T> f) {
@@ -299,7 +504,8 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
 
 
     /**
-     * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an AHashSet.
+     * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an AHashSet. For parallel streams,
+     *  the partial results are merged structurally, which takes time proportional to their overlap rather than their size.
      *
      * @param <T> the stream's element type
      * @return a {@link Collector} to collect a stream's elements into an AHashSet
@@ -307,10 +513,7 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
     public static <T> Collector<T, Builder<T>, AHashSet<T>> streamCollector() {
         final Supplier<Builder<T>> supplier = AHashSet::builder;
         final BiConsumer<Builder<T>, T> accumulator = Builder::add;
-        final BinaryOperator<Builder<T>> combiner = (b1, b2) -> {
-            b1.addAll(b2.build());
-            return b1;
-        };
+        final BinaryOperator<Builder<T>> combiner = Builder::merge;
         final Function<Builder<T>, AHashSet<T>> finisher = Builder::build;
 
         return Collector.of(supplier, accumulator, combiner, finisher);
@@ -323,20 +526,55 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
      * @return an new {@link ACollectionBuilder}
      */
     public static <T> Builder<T> builder() {
-        return new Builder<>();
+        return new Builder<>(AEquivalence.equality());
     }
 
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an AHashSet that compares its elements using a given {@link AEquivalence}.
+     *
+     * @param equivalence the equivalence for comparing elements
+     * @param <T> the builder's element type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <T> Builder<T> builder(AEquivalence<? super T> equivalence) {
+        return new Builder<>(equivalence);
+    }
+
+    /**
+     * A builder for {@link AHashSet}. It modifies the trie nodes it created itself in place rather than copying them on every
+     *  {@link #add(Object)}, which saves most of the garbage of adding elements one by one. The nodes are 'sealed' when
+     *  {@link #build()} is called, so a built set is never affected by subsequent additions to the builder.
+     *
+     * @param <T> the element type
+     */
     public static class Builder<T> implements ACollectionBuilder<T, AHashSet<T>> {
         @SuppressWarnings("unchecked")
         CompactHashMap<EqualsSetEntry<T>> result = CompactHashMap.EMPTY;
+        private Object owner = new Object();
+        private final AEquivalence<? super T> equivalence;
+
+        Builder (AEquivalence<? super T> equivalence) {
+            this.equivalence = equivalence;
+        }
 
         @Override public ACollectionBuilder<T, AHashSet<T>> add (T el) {
-            result = result.updated0(new EqualsSetEntry<>(el), 0);
+            result = result.updatedTransient(newEntry(equivalence, el), 0, owner);
             return this;
         }
 
         @Override public AHashSet<T> build () {
-            return new AHashSet<>(result);
+            owner = new Object(); // seal the nodes created so far
+            return new AHashSet<>(result, equivalence);
+        }
+
+        /**
+         * Adds another builder's elements by merging the two tries node by node, which is how {@link #streamCollector()} combines
+         *  the results of parallel tasks. The other builder must not be used afterwards.
+         */
+        Builder<T> merge (Builder<T> other) {
+            other.owner = new Object(); // seal the other builder's nodes because they become part of this builder's trie
+            result = result.union0(other.result, 0, CompactHashMap.keepRight());
+            return this;
         }
     }
 
@@ -352,10 +590,87 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
         }
 
         @Override public int keyHash () {
+            return CompactHashMap.spread(Objects.hashCode(el));
+        }
+
+        @Override public Object key () {
+            return el;
+        }
+
+        @Override public boolean hasEqualContent (CompactHashMap.EntryWithEquality other) {
+            return hasEqualKey(other);
+        }
+
+        @Override public int contentHash () {
             return Objects.hashCode(el);
         }
     }
 
+    private static class EquivalenceSetEntry<T> extends EqualsSetEntry<T> {
+        final AEquivalence<? super T> equivalence;
+
+        EquivalenceSetEntry (T el, AEquivalence<? super T> equivalence) {
+            super(el);
+            this.equivalence = equivalence;
+        }
+
+        @Override public boolean hasEqualKey (CompactHashMap.EntryWithEquality other) {
+            //noinspection unchecked
+            return equivalence.equivalent(el, ((EqualsSetEntry<T>) other).el);
+        }
+
+        @Override public int keyHash () {
+            return CompactHashMap.spread(equivalence.hash(el));
+        }
+
+        @Override public Object key () {
+            // elements are not ordered in collision nodes because their natural ordering may be inconsistent with the equivalence
+            return null;
+        }
+
+        @Override public int contentHash () {
+            return equivalence.hash(el);
+        }
+    }
+
+    /**
+     * An entry that caches its element's hash code, created from a {@link PrehashedKey}. Regular entries do not cache it to save
+     *  memory.
+     */
+    private static class PrehashedSetEntry<T> extends EqualsSetEntry<T> {
+        final AEquivalence<? super T> equivalence;
+        final int rawHash;
+        final int keyHash;
+
+        PrehashedSetEntry (T el, AEquivalence<? super T> equivalence, int rawHash, int keyHash) {
+            super(el);
+            this.equivalence = equivalence;
+            this.rawHash = rawHash;
+            this.keyHash = keyHash;
+        }
+
+        @Override public boolean hasEqualKey (CompactHashMap.EntryWithEquality other) {
+            //noinspection unchecked
+            return equivalence.equivalent(el, ((EqualsSetEntry<T>) other).el);
+        }
+
+        @Override public int keyHash () {
+            return keyHash;
+        }
+
+        @Override public Object key () {
+            return equivalence == AEquivalence.equality() ? el : null;
+        }
+
+        @Override public int contentHash () {
+            return rawHash;
+        }
+    }
+
+    /**
+     * proxy class for sets with {@link AEquivalence#equality()}, keeping the serialized form that predates support for other
+     *  equivalences
+     */
     private static class SerializationProxy implements Serializable {
         private static final long serialVersionUID = 123L;
 
@@ -366,23 +681,57 @@ public class AHashSet<T> extends AbstractImmutableCollection<T> implements AColl
         }
 
         private void writeObject(ObjectOutputStream oos) throws IOException {
-            oos.writeInt(orig.size());
-            for (Object o: orig) {
-                oos.writeObject(o);
-            }
+            writeElements(orig, oos);
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            orig = readElements(builder(), ois);
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+
+    /**
+     * proxy class for sets with an equivalence other than {@link AEquivalence#equality()}, writing the equivalence before the elements
+     */
+    private static class EquivalenceSerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient AHashSet<?> orig;
+
+        EquivalenceSerializationProxy (AHashSet<?> orig) {
+            this.orig = orig;
+        }
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeObject(orig.equivalence);
+            writeElements(orig, oos);
         }
 
         private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
-            final Builder<Object> builder = builder();
-            final int size = ois.readInt();
-            for (int i=0; i<size; i++) {
-                builder.add(ois.readObject());
-            }
-            orig = builder.build();
+            //noinspection unchecked
+            orig = readElements(builder((AEquivalence<Object>) ois.readObject()), ois);
         }
 
         private Object readResolve() {
             return orig;
         }
     }
+
+    private static void writeElements (AHashSet<?> set, ObjectOutputStream oos) throws IOException {
+        oos.writeInt(set.size());
+        for (Object o: set) {
+            oos.writeObject(o);
+        }
+    }
+
+    private static AHashSet<?> readElements (Builder<Object> builder, ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        final int size = ois.readInt();
+        for (int i=0; i<size; i++) {
+            builder.add(ois.readObject());
+        }
+        return builder.build();
+    }
 }
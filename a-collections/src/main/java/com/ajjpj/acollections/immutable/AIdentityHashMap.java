@@ -0,0 +1,65 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.util.AEquivalence;
+
+import java.util.Map;
+
+
+/**
+ * This class has static factory methods for immutable maps that compare their keys by identity rather than by
+ *  {@link Object#equals(Object)}, similar to {@link java.util.IdentityHashMap}. The maps are regular {@link AHashMap} instances using
+ *  {@link AEquivalence#identity()}, and maps derived from them by adding or removing entries compare keys by identity as well.
+ *
+ * <p> This is useful e.g. for canonicalization or interning tables, or for attaching data to objects whose {@code equals()} method
+ *  is expensive or does not fit, and it does not require wrapping every key in an identity-based wrapper object.
+ */
+public final class AIdentityHashMap {
+    private AIdentityHashMap () {
+    }
+
+    /**
+     * Creates an empty {@link AHashMap} that compares its keys by identity.
+     *
+     * @param <K> the new map's key type
+     * @param <V> the new map's value type
+     * @return an empty {@link AHashMap}
+     */
+    public static <K,V> AHashMap<K,V> empty() {
+        return AHashMap.empty(AEquivalence.identity());
+    }
+
+    /**
+     * Creates a new {@link AHashMap} that compares its keys by identity, based on a {@link java.util.Map}'s elements.
+     *
+     * @param m the {@link Map} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> AHashMap<K,V> fromMap(Map<K,V> m) {
+        return AHashMap.fromMap(m, AEquivalence.identity());
+    }
+
+    /**
+     * Creates a new {@link AHashMap} that compares its keys by identity, based on an {@link Iterable}'s elements.
+     *
+     * @param coll the {@link Iterable} from which the new map is initialized
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <K,V> AHashMap<K,V> from(Iterable<? extends Map.Entry<K,V>> coll) {
+        return AHashMap.<K,V>builder(AEquivalence.identity()).addAll(coll).build();
+    }
+
+    /**
+     * Returns a new {@link AHashMap.Builder} for building an {@link AHashMap} that compares its keys by identity.
+     *
+     * @param <K> the map's key type
+     * @param <V> the map's value type
+     * @return an new builder
+     */
+    public static <K,V> AHashMap.Builder<K,V> builder() {
+        return AHashMap.builder(AEquivalence.identity());
+    }
+}
@@ -0,0 +1,340 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.ASetDefaults;
+import com.ajjpj.acollections.internal.ASetSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+
+/**
+ * This class implements immutable sets of primitive {@code int} values using a hash trie. It stores elements as primitive values, so
+ *  the {@code int} based methods like {@link #plus(int)}, {@link #minus(int)}, {@link #contains(int)} or {@link #intIterator()} do
+ *  not box elements, and an element requires no objects of its own.
+ *
+ * <p> AIntHashSet implements {@link com.ajjpj.acollections.ASet ASet&lt;Integer&gt;}, so it can be used wherever a set of
+ *  {@link Integer} is expected. Those methods box and unbox elements. Operations that may change the element type (like
+ *  {@link #map(Function)}) return an {@link AHashSet}. The set does not support {@code null} elements.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.Set}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Implementation note: This set uses the same hash trie as {@link AIntHashMap}, without storing values.
+ */
+public class AIntHashSet extends AbstractImmutableCollection<Integer> implements ACollectionDefaults<Integer, AIntHashSet>, ASetDefaults<Integer, AIntHashSet>, Serializable {
+    private static final AIntHashSet EMPTY = new AIntHashSet(CompactIntMap.emptySet());
+
+    private final CompactPrimitiveMap<int[],Object> root;
+
+    private AIntHashSet (CompactPrimitiveMap<int[],Object> root) {
+        this.root = root;
+    }
+
+    /**
+     * Convenience method for creating an empty {@link AIntHashSet}.
+     *
+     * @return an empty {@link AIntHashSet}
+     */
+    public static AIntHashSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new {@link AIntHashSet} with the given elements.
+     *
+     * @param values the new set's elements
+     * @return the new set
+     */
+    public static AIntHashSet of(int... values) {
+        return builder().addAll(values).build();
+    }
+
+    /**
+     * Creates a new {@link AIntHashSet} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new set is initialized
+     * @return the new set
+     */
+    public static AIntHashSet from(Iterable<Integer> that) {
+        return builder().addAll(that).build();
+    }
+
+    /**
+     * Creates a new {@link AIntHashSet} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new set is initialized
+     * @return the new set
+     */
+    public static AIntHashSet fromIterator(Iterator<Integer> it) {
+        return builder().addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link AIntHashSet} based on an {@link IntStream}'s elements.
+     *
+     * @param stream the stream from which the new set is initialized
+     * @return the new set
+     */
+    public static AIntHashSet from(IntStream stream) {
+        return stream.collect(AIntHashSet::builder, Builder::addInt, (b1, b2) -> b1.addAll(b2.build())).build();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return ASetSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return ASetSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(AIntHashSet.class, this);
+    }
+
+    @Override public <U> ACollectionBuilder<U, AHashSet<U>> newBuilder () {
+        return AHashSet.builder();
+    }
+
+    @Override public int size () {
+        return root.size();
+    }
+
+    @Override public boolean isEmpty () {
+        return root.size() == 0;
+    }
+
+    /**
+     * Returns a new set with an additional element, without boxing it.
+     *
+     * @param value the new element
+     * @return the new set
+     */
+    public AIntHashSet plus (int value) {
+        return withRoot(root.updated(value, null, 0));
+    }
+    @Override public AIntHashSet plus (Integer o) {
+        return plus(o.intValue());
+    }
+
+    /**
+     * Returns a new set without an element, without boxing it.
+     *
+     * @param value the element to remove
+     * @return the new set
+     */
+    public AIntHashSet minus (int value) {
+        return withRoot(root.removed(value, 0));
+    }
+    @Override public AIntHashSet minus (Integer o) {
+        return o == null ? this : minus(o.intValue());
+    }
+
+    /**
+     * Checks if the set contains an element, without boxing it.
+     *
+     * @param value the element
+     * @return true if and only if the set contains {@code value}
+     */
+    public boolean contains (int value) {
+        return root.getOrElse(value, AbstractPrimitiveKeyMap.NOT_FOUND) != AbstractPrimitiveKeyMap.NOT_FOUND;
+    }
+    @Override public boolean contains (Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    private AIntHashSet withRoot (CompactPrimitiveMap<int[],Object> root) {
+        if (root == this.root) return this;
+        return root.size() == 0 ? EMPTY : new AIntHashSet(root);
+    }
+
+    @Override public AIntHashSet union (Iterable<? extends Integer> that) {
+        if (that instanceof AIntHashSet && ((AIntHashSet) that).size() > size()) {
+            return ((AIntHashSet) that).union(this);
+        }
+
+        AIntHashSet result = this;
+        if (that instanceof AIntHashSet) {
+            for (PrimitiveIterator.OfInt it = ((AIntHashSet) that).intIterator(); it.hasNext(); ) result = result.plus(it.nextInt());
+        }
+        else {
+            for (Integer o: that) result = result.plus(o.intValue());
+        }
+        return result;
+    }
+
+    @Override public AIntHashSet intersect (Set<Integer> that) {
+        return filterInt(that instanceof AIntHashSet ? ((AIntHashSet) that)::contains : that::contains);
+    }
+
+    @Override public AIntHashSet diff (Set<Integer> that) {
+        AIntHashSet result = this;
+        for (Integer o: that) result = result.minus(o);
+        return result;
+    }
+
+    /**
+     * Returns a set with the elements that match a given predicate, without boxing them.
+     *
+     * @param f the predicate
+     * @return the new set
+     */
+    public AIntHashSet filterInt (IntPredicate f) {
+        final Builder builder = builder();
+        for (PrimitiveIterator.OfInt it = intIterator(); it.hasNext(); ) {
+            final int value = it.nextInt();
+            if (f.test(value)) builder.addInt(value);
+        }
+        return builder.build();
+    }
+    @Override public AIntHashSet filter (Predicate<Integer> f) {
+        return filterInt(f::test);
+    }
+    @Override public AIntHashSet filterNot (Predicate<Integer> f) {
+        return filterInt(x -> !f.test(x));
+    }
+
+    /**
+     * Returns an iterator over this set's elements that does not box them.
+     *
+     * @return an iterator over this set's elements
+     */
+    public PrimitiveIterator.OfInt intIterator () {
+        return new PrimitiveIterator.OfInt() {
+            final CompactPrimitiveMap.Cursor<Object> cursor = new CompactPrimitiveMap.Cursor<>(root);
+            boolean hasNext = cursor.advance();
+
+            @Override public boolean hasNext () {
+                return hasNext;
+            }
+
+            @Override public int nextInt () {
+                if (! hasNext) throw new NoSuchElementException();
+                final int result = (int) cursor.key();
+                hasNext = cursor.advance();
+                return result;
+            }
+        };
+    }
+
+    @Override public AIterator<Integer> iterator () {
+        return new CompactPrimitiveMap.CursorIterator<Object, Integer>(root) {
+            @Override Integer current () {
+                return (int) cursor.key();
+            }
+        };
+    }
+
+    /**
+     * @return a new array with this set's elements
+     */
+    public int[] toIntArray () {
+        final int[] result = new int[size()];
+        int idx = 0;
+        for (PrimitiveIterator.OfInt it = intIterator(); it.hasNext(); ) result[idx++] = it.nextInt();
+        return result;
+    }
+
+    @Override public <U> AHashSet<U> map (Function<Integer, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> AHashSet<U> flatMap (Function<Integer, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> AHashSet<U> collect (Predicate<Integer> filter, Function<Integer, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public <K> AMap<K, AIntHashSet> groupBy (Function<Integer, K> keyExtractor) {
+        return ACollectionDefaults.super.groupBy(keyExtractor);
+    }
+
+    @Override public boolean containsAll (Collection<?> c) {
+        return ACollectionDefaults.super.containsAll(c);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an AIntHashSet efficiently and in a generic manner.
+     *
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements ACollectionBuilder<Integer, AIntHashSet> {
+        private CompactPrimitiveMap<int[],Object> result = CompactIntMap.emptySet();
+
+        public Builder addInt (int value) {
+            result = result.updated(value, null, 0);
+            return this;
+        }
+        @Override public Builder add (Integer el) {
+            return addInt(el);
+        }
+
+        public Builder addAll (int[] values) {
+            for (int v: values) addInt(v);
+            return this;
+        }
+        @Override public Builder addAll (Iterator<? extends Integer> it) {
+            while (it.hasNext()) addInt(it.next());
+            return this;
+        }
+        @Override public Builder addAll (Iterable<? extends Integer> coll) {
+            if (coll instanceof AIntHashSet) {
+                for (PrimitiveIterator.OfInt it = ((AIntHashSet) coll).intIterator(); it.hasNext(); ) addInt(it.nextInt());
+                return this;
+            }
+            return addAll(coll.iterator());
+        }
+
+        @Override public AIntHashSet build () {
+            return result.size() == 0 ? EMPTY : new AIntHashSet(result);
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient AIntHashSet orig;
+
+        SerializationProxy (AIntHashSet orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (PrimitiveIterator.OfInt it = orig.intIterator(); it.hasNext(); ) {
+                oos.writeInt(it.nextInt());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException {
+            final Builder builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.addInt(ois.readInt());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AListDefaults;
+import com.ajjpj.acollections.internal.AListSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * AIntVector is an immutable vector of primitive {@code int} values. It stores its elements in {@code int[]} arrays rather than as
+ *  {@link Integer} objects, which takes a fraction of the memory of an {@code AVector<Integer>} and allows scanning the elements
+ *  without following a reference per element. The {@code int} based methods like {@link #getInt(int)}, {@link #appendInt(int)},
+ *  {@link #updatedInt(int, int)}, {@link #intIterator()}, {@link #intStream()} or {@link #sum()} do not box elements.
+ *
+ * <p> AIntVector implements {@link AList AList&lt;Integer&gt;}, so it can be used wherever a list of {@link Integer} is expected.
+ *  Those methods box and unbox elements. Operations that may change the element type (like {@link #map(Function)}) return an
+ *  {@link AVector}.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.List}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Implementation note: The elements are stored in blocks of 32, and the blocks are the elements of an {@link AVector}. So
+ *  AIntVector shares AVector's performance characteristics, i.e. effectively constant time random access, updates, append and prepend.
+ */
+public class AIntVector extends AbstractImmutableCollection<Integer> implements AListDefaults<Integer, AList<Integer>>, RandomAccess, Serializable {
+    private static final IntFunction<int[]> NEW_BLOCK = int[]::new;
+    private static final AIntVector EMPTY = new AIntVector(PrimitiveBlocks.empty(NEW_BLOCK));
+
+    private final PrimitiveBlocks<int[]> data;
+
+    private AIntVector (PrimitiveBlocks<int[]> data) {
+        this.data = data;
+    }
+
+    /**
+     * Convenience method for creating an empty {@link AIntVector}.
+     *
+     * @return an empty {@link AIntVector}
+     */
+    public static AIntVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new {@link AIntVector} with the given elements.
+     *
+     * @param values the new vector's elements
+     * @return the new vector
+     */
+    public static AIntVector of(int... values) {
+        return builder().addAll(values).build();
+    }
+
+    /**
+     * Creates a new {@link AIntVector} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new vector is initialized
+     * @return the new vector
+     */
+    public static AIntVector from(Iterable<Integer> that) {
+        return fromIterator(that.iterator());
+    }
+
+    /**
+     * Creates a new {@link AIntVector} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new vector is initialized
+     * @return the new vector
+     */
+    public static AIntVector fromIterator(Iterator<Integer> it) {
+        return builder().addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link AIntVector} based on an {@link IntStream}'s elements.
+     *
+     * @param stream the stream from which the new vector is initialized
+     * @return the new vector
+     */
+    public static AIntVector from(IntStream stream) {
+        return stream.collect(AIntVector::builder, Builder::addInt, (b1, b2) -> b1.addAll(b2.build())).build();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return AListSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return AListSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(AIntVector.class, this);
+    }
+
+    @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
+        return AVector.builder();
+    }
+
+    @Override public int size () {
+        return data.size;
+    }
+
+    @Override public boolean isEmpty () {
+        return data.size == 0;
+    }
+
+    /**
+     * Returns the element at a given index without boxing it.
+     *
+     * @param index the element's index
+     * @return the element at the given index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int getInt (int index) {
+        final int pos = data.position(index);
+        return data.block(pos)[pos & PrimitiveBlocks.BLOCK_MASK];
+    }
+    @Override public Integer get (int index) {
+        return getInt(index);
+    }
+
+    /**
+     * Returns a new vector with an element appended at the end, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public AIntVector appendInt (int value) {
+        final int[] block = data.blockForAppend();
+        block[data.endPosition() & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new AIntVector(data.appended(block));
+    }
+    @Override public AIntVector append (Integer o) {
+        return appendInt(o);
+    }
+
+    /**
+     * Returns a new vector with an element prepended at the start, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public AIntVector prependInt (int value) {
+        final int[] block = data.blockForPrepend();
+        block[(data.offset-1) & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new AIntVector(data.prepended(block));
+    }
+    @Override public AIntVector prepend (Integer o) {
+        return prependInt(o);
+    }
+
+    /**
+     * Returns a new vector with the element at a given index replaced, without boxing it.
+     *
+     * @param index the index of the element to replace
+     * @param value the new element
+     * @return the new vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public AIntVector updatedInt (int index, int value) {
+        final int pos = data.position(index);
+        final int[] block = data.copyOfBlock(pos);
+        block[pos & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new AIntVector(data.withBlock(pos, block));
+    }
+    @Override public AIntVector updated (int idx, Integer o) {
+        return updatedInt(idx, o);
+    }
+
+    @Override public AIntVector concat (Iterator<? extends Integer> that) {
+        final Builder builder = builder().addAll(this);
+        while (that.hasNext()) builder.addInt(that.next());
+        return builder.build();
+    }
+    /**
+     * Concatenating two AIntVectors shares blocks of both vectors rather than copying their elements wherever possible, in particular
+     *  if this vector's size is a multiple of 32.
+     */
+    @Override public AIntVector concat (Iterable<? extends Integer> that) {
+        if (that instanceof AIntVector) return wrap(data.concat(((AIntVector) that).data));
+        return builder().addAll(this).addAll(that).build();
+    }
+
+    @Override public AIntVector take (int n) {
+        return wrap(data.take(n));
+    }
+    @Override public AIntVector drop (int n) {
+        return wrap(data.drop(n));
+    }
+    @Override public AIntVector takeRight (int n) {
+        if (n <= 0) return empty();
+        return drop(size() - n);
+    }
+    @Override public AIntVector dropRight (int n) {
+        if (n <= 0) return this;
+        return take(size() - n);
+    }
+    @Override public AIntVector slice (int from, int to) {
+        return drop(Math.max(from, 0)).take(to - Math.max(from, 0));
+    }
+    @Override public AList<Integer> subList (int fromIndex, int toIndex) {
+        return AListSupport.subList(this, fromIndex, toIndex);
+    }
+
+    @Override public AIntVector reverse () {
+        final Builder builder = builder();
+        for (int i=size()-1; i>=0; i--) builder.addInt(getInt(i));
+        return builder.build();
+    }
+
+    /**
+     * Returns a vector with the elements that match a given predicate, without boxing them.
+     *
+     * @param f the predicate
+     * @return the new vector
+     */
+    public AIntVector filterInt (IntPredicate f) {
+        final Builder builder = builder();
+        for (PrimitiveIterator.OfInt it = intIterator(); it.hasNext(); ) {
+            final int value = it.nextInt();
+            if (f.test(value)) builder.addInt(value);
+        }
+        return builder.build();
+    }
+    @Override public AIntVector filter (Predicate<Integer> f) {
+        return filterInt(f::test);
+    }
+    @Override public AIntVector filterNot (Predicate<Integer> f) {
+        return filterInt(x -> !f.test(x));
+    }
+
+    /**
+     * @return the sum of this vector's elements as a {@code long}, so it does not overflow
+     */
+    public long sum () {
+        long result = 0;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final int[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result += block[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest element, boxing only the result.
+     */
+    @Override public Integer min () {
+        if (isEmpty()) throw new NoSuchElementException();
+        int result = Integer.MAX_VALUE;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final int[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result = Math.min(result, block[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the largest element, boxing only the result.
+     */
+    @Override public Integer max () {
+        if (isEmpty()) throw new NoSuchElementException();
+        int result = Integer.MIN_VALUE;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final int[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result = Math.max(result, block[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new array with this vector's elements
+     */
+    public int[] toIntArray () {
+        final int[] result = new int[size()];
+        data.copyTo(result);
+        return result;
+    }
+
+    /**
+     * Returns an iterator over this vector's elements that does not box them.
+     *
+     * @return an iterator over this vector's elements
+     */
+    public PrimitiveIterator.OfInt intIterator () {
+        return new PrimitiveIterator.OfInt() {
+            final Iterator<int[]> blockIt = data.blocks.iterator();
+            int[] block;
+            int idx = PrimitiveBlocks.BLOCK_SIZE;
+            int next = data.offset;
+            int remaining = data.size;
+
+            @Override public boolean hasNext () {
+                return remaining > 0;
+            }
+
+            @Override public int nextInt () {
+                if (remaining == 0) throw new NoSuchElementException();
+                if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                    block = blockIt.next();
+                    idx = next;
+                    next = 0;
+                }
+                remaining -= 1;
+                return block[idx++];
+            }
+        };
+    }
+
+    /**
+     * @return a sequential {@link IntStream} of this vector's elements
+     */
+    public IntStream intStream () {
+        return StreamSupport.intStream(Spliterators.spliterator(intIterator(), size(), Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL), false);
+    }
+
+    @Override public AIterator<Integer> iterator () {
+        final PrimitiveIterator.OfInt it = intIterator();
+        return new AbstractAIterator<Integer>() {
+            @Override public boolean hasNext () {
+                return it.hasNext();
+            }
+
+            @Override public Integer next () {
+                return it.nextInt();
+            }
+        };
+    }
+
+    @Override public AIterator<Integer> reverseIterator () {
+        return new AbstractAIterator<Integer>() {
+            int nextIdx = size()-1;
+
+            @Override public boolean hasNext () {
+                return nextIdx >= 0;
+            }
+
+            @Override public Integer next () {
+                if (!hasNext()) throw new NoSuchElementException();
+                return getInt(nextIdx--);
+            }
+        };
+    }
+
+    @Override public <U> AVector<U> map (Function<Integer, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> flatMap (Function<Integer, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> collect (Predicate<Integer> filter, Function<Integer, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public boolean addAll (int index, Collection<? extends Integer> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Integer set (int index, Integer element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void add (int index, Integer element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Integer remove (int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static AIntVector wrap (PrimitiveBlocks<int[]> data) {
+        return data.size == 0 ? EMPTY : new AIntVector(data);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an AIntVector efficiently and in a generic manner.
+     *
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements ACollectionBuilder<Integer, AIntVector> {
+        private final AVector.Builder<int[]> blocks = AVector.builder();
+        private int[] block = new int[PrimitiveBlocks.BLOCK_SIZE];
+        private int idx = 0;
+        private int size = 0;
+        private boolean wasBuilt = false;
+
+        public Builder addInt (int value) {
+            if (wasBuilt) throw new IllegalStateException();
+            if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                blocks.add(block);
+                block = new int[PrimitiveBlocks.BLOCK_SIZE];
+                idx = 0;
+            }
+            block[idx++] = value;
+            size += 1;
+            return this;
+        }
+        @Override public Builder add (Integer el) {
+            return addInt(el);
+        }
+
+        public Builder addAll (int[] values) {
+            for (int v: values) addInt(v);
+            return this;
+        }
+        @Override public Builder addAll (Iterator<? extends Integer> it) {
+            while (it.hasNext()) addInt(it.next());
+            return this;
+        }
+        @Override public Builder addAll (Iterable<? extends Integer> coll) {
+            if (coll instanceof AIntVector) {
+                for (PrimitiveIterator.OfInt it = ((AIntVector) coll).intIterator(); it.hasNext(); ) addInt(it.nextInt());
+                return this;
+            }
+            return addAll(coll.iterator());
+        }
+
+        @Override public AIntVector build () {
+            if (wasBuilt) throw new IllegalStateException();
+            wasBuilt = true;
+
+            if (size == 0) return empty();
+            blocks.add(block);
+            return new AIntVector(PrimitiveBlocks.of(blocks.build(), size, NEW_BLOCK));
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient AIntVector orig;
+
+        SerializationProxy (AIntVector orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (PrimitiveIterator.OfInt it = orig.intIterator(); it.hasNext(); ) {
+                oos.writeInt(it.nextInt());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException {
+            final Builder builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.addInt(ois.readInt());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
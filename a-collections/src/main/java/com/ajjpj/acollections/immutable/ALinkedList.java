@@ -209,7 +209,7 @@ public abstract class ALinkedList<T> extends AbstractImmutableCollection<T> impl
                 .addAll(that)
                 .build();
     }
-    @Override public AList<T> concat (Iterable<? extends T> that) {
+    @Override public ALinkedList<T> concat (Iterable<? extends T> that) {
         return concat(that.iterator());
     }
 
@@ -306,11 +306,38 @@ public abstract class ALinkedList<T> extends AbstractImmutableCollection<T> impl
         return toVector().reverseIterator();
     }
 
+    /**
+     * Returns a list with a range of this list's elements in O(toIndex) time. A range that extends to the end of this list is one of
+     *  its tails and is returned without copying; other ranges copy just their own elements.
+     */
     @Override public ALinkedList<T> subList (int fromIndex, int toIndex) {
-        if (fromIndex < 0) throw new IndexOutOfBoundsException();
-        final ALinkedList<T> result = drop(fromIndex).take(toIndex - fromIndex);
-        if (result.size() != toIndex - fromIndex) throw new IndexOutOfBoundsException();
-        return result;
+        if (fromIndex < 0 || fromIndex > toIndex) throw new IndexOutOfBoundsException();
+        ALinkedList<T> start = this;
+        for (int i=0; i<fromIndex; i++) {
+            if (start.isEmpty()) throw new IndexOutOfBoundsException();
+            start = start.tail();
+        }
+        ALinkedList<T> end = start;
+        for (int i=fromIndex; i<toIndex; i++) {
+            if (end.isEmpty()) throw new IndexOutOfBoundsException();
+            end = end.tail();
+        }
+        return end.isEmpty() ? start : start.take(toIndex - fromIndex);
+    }
+
+    /**
+     * Like {@link #subList(int, int)}, this shares a range that extends to the end of this list instead of copying it.
+     */
+    @Override public ALinkedList<T> slice (int from, int to) {
+        final ALinkedList<T> start = drop(from);
+        final int size = to - Math.max(from, 0);
+        if (size <= 0) return empty();
+
+        ALinkedList<T> end = start;
+        for (int i=0; i<size && end.nonEmpty(); i++) {
+            end = end.tail();
+        }
+        return end.isEmpty() ? start : start.take(size);
     }
 
     @Override public boolean addAll (int index, Collection<? extends T> c) {
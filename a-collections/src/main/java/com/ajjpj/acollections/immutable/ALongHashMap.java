@@ -0,0 +1,375 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.AMapDefaults;
+import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AOption;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * This class implements immutable maps with primitive {@code long} keys using a hash trie. It stores keys as primitive values, so
+ *  adding or looking up an entry through the {@code long} based methods like {@link #plusLong(long, Object)} or {@link #get(long)} does
+ *  not box keys or allocate entry objects. This makes it a good fit for lookup tables indexed by numeric IDs.
+ *
+ * <p> ALongHashMap implements {@link AMap AMap&lt;Long,V&gt;}, so it can be used wherever a map with {@link Long} keys is
+ *  expected. Those methods box and unbox keys, and iterating over the map's entries creates {@link java.util.Map.Entry} instances on
+ *  the fly. The map does not support {@code null} keys.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.Map}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> So instances of ALongHashMap rely on methods like {@link #plusLong(long, Object)} or {@link #minus(long)} that return the modified
+ *  collection to add or remove entries. For details and sample code, see {@link AMap}.
+ *
+ * <p> Implementation note: The trie uses the same CHAMP node encoding as {@link AHashMap}, storing keys in {@code long[]} arrays.
+ *
+ * @param <V> the map's value type
+ */
+public class ALongHashMap<V> extends AbstractPrimitiveKeyMap<Long,V,long[]> implements ACollectionDefaults<Map.Entry<Long,V>, ALongHashMap<V>>, AMapDefaults<Long,V,ALongHashMap<V>>, Serializable {
+    /**
+     * Convenience method for creating an empty {@link ALongHashMap}. This can later be modified by calling {@link #plusLong(long,Object)} or
+     * {@link #minus(long)}. For creating a map with known elements, calling one of the {@code of} factory methods is usually more concise.
+     *
+     * @param <V> the new map's value type
+     * @return an empty {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> empty() {
+        return new ALongHashMap<>(CompactLongMap.empty());
+    }
+
+    /**
+     * Creates a new {@link ALongHashMap} based on a {@link java.util.Map}'s elements.
+     *
+     * @param m the {@link Map} from which the new map is initialized
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <V> ALongHashMap<V> fromMap(Map<Long,V> m) {
+        return from(m.entrySet());
+    }
+
+    /**
+     * Creates a new {@link ALongHashMap} based on an {@link Iterable}'s elements.
+     *
+     * @param coll the {@link Iterable} from which the new map is initialized
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <V> ALongHashMap<V> from(Iterable<? extends Map.Entry<Long,V>> coll) {
+        return ALongHashMap.<V>builder().addAll(coll).build();
+    }
+
+    /**
+     * Creates a new {@link ALongHashMap} based on an {@link Iterator}'s elements.
+     *
+     * @param it the {@link Iterator} from which the new map is initialized
+     * @param <V> the map's value type
+     * @return the new map
+     */
+    public static <V> ALongHashMap<V> fromIterator(Iterator<? extends Entry<Long,V>> it) {
+        return ALongHashMap.<V> builder().addAll(it).build();
+    }
+
+    /**
+     * This is an alias for {@link #empty()} for consistency with Java 9 conventions - it creates an empty {@link ALongHashMap}.
+     *
+     * @param <V> the map's value type
+     * @return an empty {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> of() {
+        return empty();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ALongHashMap} with exactly one entry.
+     *
+     * @param k1 the single entry's key
+     * @param v1 the single entry's value
+     * @param <V> the map's value type
+     * @return the new {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> of(long k1, V v1) {
+        return ALongHashMap.<V>builder().add(k1, v1).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ALongHashMap} with exactly two entries.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param <V> the map's value type
+     * @return the new {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> of(long k1, V v1, long k2, V v2) {
+        return ALongHashMap.<V>builder().add(k1, v1).add(k2, v2).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ALongHashMap} with three entries.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param k3 the third entry's key
+     * @param v3 the third entry's value
+     * @param <V> the map's value type
+     * @return the new {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> of(long k1, V v1, long k2, V v2, long k3, V v3) {
+        return ALongHashMap.<V>builder().add(k1, v1).add(k2, v2).add(k3,v3).build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ALongHashMap} with four entries.
+     *
+     * @param k1 the first entry's key
+     * @param v1 the first entry's value
+     * @param k2 the second entry's key
+     * @param v2 the second entry's value
+     * @param k3 the third entry's key
+     * @param v3 the third entry's value
+     * @param k4 the fourth entry's key
+     * @param v4 the fourth entry's value
+     * @param <V> the map's value type
+     * @return the new {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> of(long k1, V v1, long k2, V v2, long k3, V v3, long k4, V v4) {
+        return ALongHashMap.<V>builder().add(k1, v1).add(k2, v2).add(k3,v3).add(k4,v4).build();
+    }
+
+    /**
+     * This is an alias for {@link #from(Iterable)} for consistency with Java 9 conventions - it creates an ALongHashMap from an Iterable of
+     * {@link Map.Entry}.
+     *
+     * @param coll the entries
+     * @param <V> the map's value type
+     * @return the new {@link ALongHashMap}
+     */
+    public static <V> ALongHashMap<V> ofEntries(Iterable<Map.Entry<Long,V>> coll) {
+        return from(coll);
+    }
+
+    private ALongHashMap (CompactPrimitiveMap<long[],V> root) {
+        super(root);
+    }
+
+    @Override Long boxKey (long key) {
+        return key;
+    }
+
+    protected Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new map with an additional entry, replacing an existing entry for the same key. This method does not box the key.
+     *
+     * <p> This method has a name of its own because an overload of {@link #plus(Long, Object)} would be ambiguous for calls with a
+     *  boxed value.
+     *
+     * @param key   the new entry's key
+     * @param value the new entry's value
+     * @return the modified map
+     */
+    public ALongHashMap<V> plusLong (long key, V value) {
+        final CompactPrimitiveMap<long[],V> rootNew = root.updated(key, value, 0);
+        return rootNew == root ? this : new ALongHashMap<>(rootNew);
+    }
+    @Override public ALongHashMap<V> plus (Long key, V value) {
+        return plusLong(key.longValue(), value);
+    }
+
+    /**
+     * Returns a new map without the entry for a given key. This method does not box the key.
+     *
+     * @param key the key whose entry is removed
+     * @return the modified map
+     */
+    public ALongHashMap<V> minus (long key) {
+        final CompactPrimitiveMap<long[],V> rootNew = root.removed(key, 0);
+        return rootNew == root ? this : new ALongHashMap<>(rootNew);
+    }
+    @Override public ALongHashMap<V> minus (Long key) {
+        return key == null ? this : minus(key.longValue());
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ALongHashMap efficiently and in a generic manner.
+     *
+     * @param <V> the builder's value type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Checks if the map contains an entry for a given key. This method does not box the key.
+     *
+     * @param key the key
+     * @return true if and only if there is an entry for {@code key}
+     */
+    public boolean containsKey (long key) {
+        return root.getOrElse(key, NOT_FOUND) != NOT_FOUND;
+    }
+    @Override public boolean containsKey (Object key) {
+        return key instanceof Long && containsKey(((Long) key).longValue());
+    }
+
+    /**
+     * Returns the value for a given key, or {@code null} if there is no entry for the key. This method does not box the key.
+     *
+     * @param key the key
+     * @return the value for {@code key}, or {@code null}
+     */
+    public V get (long key) {
+        //noinspection unchecked
+        return (V) root.getOrElse(key, null);
+    }
+    @Override public V get (Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    /**
+     * Returns the value for a given key as an {@link AOption}. This method does not box the key.
+     *
+     * @param key the key
+     * @return the value for {@code key}, or {@link AOption#none()} if there is no entry for the key
+     */
+    public AOption<V> getOptional (long key) {
+        final Object raw = root.getOrElse(key, NOT_FOUND);
+        //noinspection unchecked
+        return raw == NOT_FOUND ? AOption.none() : AOption.some((V) raw);
+    }
+    @Override public AOption<V> getOptional (Long key) {
+        return key == null ? AOption.none() : getOptional(key.longValue());
+    }
+
+    /**
+     * Returns an iterator over this map's keys that does not box them.
+     *
+     * @return an iterator over this map's keys
+     */
+    public PrimitiveIterator.OfLong longKeysIterator () {
+        return new PrimitiveIterator.OfLong() {
+            final CompactPrimitiveMap.Cursor<V> cursor = new CompactPrimitiveMap.Cursor<>(root);
+            boolean hasNext = cursor.advance();
+
+            @Override public boolean hasNext () {
+                return hasNext;
+            }
+
+            @Override public long nextLong () {
+                if (! hasNext) throw new NoSuchElementException();
+                final long result = cursor.key();
+                hasNext = cursor.advance();
+                return result;
+            }
+        };
+    }
+
+    @Override public ALongHashMap<V> filter (Predicate<Entry<Long, V>> f) {
+        return ALongHashMap.fromIterator(iterator().filter(f));
+    }
+
+    @Override public ALongHashMap<V> filterNot (Predicate<Entry<Long, V>> f) {
+        return filter(f.negate());
+    }
+
+    /**
+     * Returns a builder for {@link ALongHashMap}. This works only if the requested key type is {@link Long}, which is the case for all
+     *  generic operations creating maps with the same keys as this map.
+     */
+    @Override public <K1, V1> ACollectionBuilder<Entry<K1, V1>, ? extends ACollectionOps<Entry<K1, V1>>> newEntryBuilder () {
+        //noinspection unchecked
+        return (ACollectionBuilder) builder();
+    }
+
+    @Override public <V1> ALongHashMap<V1> mapValues (Function<V, V1> f) {
+        return (ALongHashMap<V1>) AMapDefaults.super.mapValues(f);
+    }
+
+    @Override public <K1> AMap<K1, ALongHashMap<V>> groupBy (Function<Entry<Long, V>, K1> keyExtractor) {
+        //noinspection unchecked
+        return (AMap<K1, ALongHashMap<V>>) AMapSupport.groupBy(this, keyExtractor);
+    }
+
+    /**
+     * A builder for {@link ALongHashMap}.
+     *
+     * @param <V> the value type
+     */
+    public static class Builder<V> implements ACollectionBuilder<Map.Entry<Long,V>, ALongHashMap<V>> {
+        private CompactPrimitiveMap<long[],V> result = CompactLongMap.empty();
+
+        Builder() {
+        }
+
+        public Builder<V> add (long key, V value) {
+            result = result.updated(key, value, 0);
+            return this;
+        }
+
+        @Override public Builder<V> add (Entry<Long, V> el) {
+            return add(el.getKey(), el.getValue());
+        }
+
+        @Override public Builder<V> addAll (Iterator<? extends Entry<Long, V>> it) {
+            while (it.hasNext()) add(it.next());
+            return this;
+        }
+
+        @Override public Builder<V> addAll (Iterable<? extends Entry<Long, V>> coll) {
+            return addAll(coll.iterator());
+        }
+
+        @Override public Builder<V> addAll (Entry<Long, V>[] coll) {
+            return addAll(Arrays.asList(coll).iterator());
+        }
+
+        @Override public ALongHashMap<V> build () {
+            return new ALongHashMap<>(result);
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient ALongHashMap<?> orig;
+
+        SerializationProxy (ALongHashMap<?> orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (CompactPrimitiveMap.Cursor<?> cursor = new CompactPrimitiveMap.Cursor<>(orig.root); cursor.advance(); ) {
+                oos.writeLong(cursor.key());
+                oos.writeObject(cursor.value());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            final Builder<Object> builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.add(ois.readLong(), ois.readObject());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
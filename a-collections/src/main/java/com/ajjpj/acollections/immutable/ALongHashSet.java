@@ -0,0 +1,340 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.ASetDefaults;
+import com.ajjpj.acollections.internal.ASetSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+
+
+/**
+ * This class implements immutable sets of primitive {@code long} values using a hash trie. It stores elements as primitive values, so
+ *  the {@code long} based methods like {@link #plus(long)}, {@link #minus(long)}, {@link #contains(long)} or {@link #longIterator()} do
+ *  not box elements, and an element requires no objects of its own.
+ *
+ * <p> ALongHashSet implements {@link com.ajjpj.acollections.ASet ASet&lt;Long&gt;}, so it can be used wherever a set of
+ *  {@link Long} is expected. Those methods box and unbox elements. Operations that may change the element type (like
+ *  {@link #map(Function)}) return an {@link AHashSet}. The set does not support {@code null} elements.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.Set}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Implementation note: This set uses the same hash trie as {@link ALongHashMap}, without storing values.
+ */
+public class ALongHashSet extends AbstractImmutableCollection<Long> implements ACollectionDefaults<Long, ALongHashSet>, ASetDefaults<Long, ALongHashSet>, Serializable {
+    private static final ALongHashSet EMPTY = new ALongHashSet(CompactLongMap.emptySet());
+
+    private final CompactPrimitiveMap<long[],Object> root;
+
+    private ALongHashSet (CompactPrimitiveMap<long[],Object> root) {
+        this.root = root;
+    }
+
+    /**
+     * Convenience method for creating an empty {@link ALongHashSet}.
+     *
+     * @return an empty {@link ALongHashSet}
+     */
+    public static ALongHashSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new {@link ALongHashSet} with the given elements.
+     *
+     * @param values the new set's elements
+     * @return the new set
+     */
+    public static ALongHashSet of(long... values) {
+        return builder().addAll(values).build();
+    }
+
+    /**
+     * Creates a new {@link ALongHashSet} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new set is initialized
+     * @return the new set
+     */
+    public static ALongHashSet from(Iterable<Long> that) {
+        return builder().addAll(that).build();
+    }
+
+    /**
+     * Creates a new {@link ALongHashSet} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new set is initialized
+     * @return the new set
+     */
+    public static ALongHashSet fromIterator(Iterator<Long> it) {
+        return builder().addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link ALongHashSet} based on an {@link LongStream}'s elements.
+     *
+     * @param stream the stream from which the new set is initialized
+     * @return the new set
+     */
+    public static ALongHashSet from(LongStream stream) {
+        return stream.collect(ALongHashSet::builder, Builder::addLong, (b1, b2) -> b1.addAll(b2.build())).build();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return ASetSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return ASetSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(ALongHashSet.class, this);
+    }
+
+    @Override public <U> ACollectionBuilder<U, AHashSet<U>> newBuilder () {
+        return AHashSet.builder();
+    }
+
+    @Override public int size () {
+        return root.size();
+    }
+
+    @Override public boolean isEmpty () {
+        return root.size() == 0;
+    }
+
+    /**
+     * Returns a new set with an additional element, without boxing it.
+     *
+     * @param value the new element
+     * @return the new set
+     */
+    public ALongHashSet plus (long value) {
+        return withRoot(root.updated(value, null, 0));
+    }
+    @Override public ALongHashSet plus (Long o) {
+        return plus(o.longValue());
+    }
+
+    /**
+     * Returns a new set without an element, without boxing it.
+     *
+     * @param value the element to remove
+     * @return the new set
+     */
+    public ALongHashSet minus (long value) {
+        return withRoot(root.removed(value, 0));
+    }
+    @Override public ALongHashSet minus (Long o) {
+        return o == null ? this : minus(o.longValue());
+    }
+
+    /**
+     * Checks if the set contains an element, without boxing it.
+     *
+     * @param value the element
+     * @return true if and only if the set contains {@code value}
+     */
+    public boolean contains (long value) {
+        return root.getOrElse(value, AbstractPrimitiveKeyMap.NOT_FOUND) != AbstractPrimitiveKeyMap.NOT_FOUND;
+    }
+    @Override public boolean contains (Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    private ALongHashSet withRoot (CompactPrimitiveMap<long[],Object> root) {
+        if (root == this.root) return this;
+        return root.size() == 0 ? EMPTY : new ALongHashSet(root);
+    }
+
+    @Override public ALongHashSet union (Iterable<? extends Long> that) {
+        if (that instanceof ALongHashSet && ((ALongHashSet) that).size() > size()) {
+            return ((ALongHashSet) that).union(this);
+        }
+
+        ALongHashSet result = this;
+        if (that instanceof ALongHashSet) {
+            for (PrimitiveIterator.OfLong it = ((ALongHashSet) that).longIterator(); it.hasNext(); ) result = result.plus(it.nextLong());
+        }
+        else {
+            for (Long o: that) result = result.plus(o.longValue());
+        }
+        return result;
+    }
+
+    @Override public ALongHashSet intersect (Set<Long> that) {
+        return filterLong(that instanceof ALongHashSet ? ((ALongHashSet) that)::contains : that::contains);
+    }
+
+    @Override public ALongHashSet diff (Set<Long> that) {
+        ALongHashSet result = this;
+        for (Long o: that) result = result.minus(o);
+        return result;
+    }
+
+    /**
+     * Returns a set with the elements that match a given predicate, without boxing them.
+     *
+     * @param f the predicate
+     * @return the new set
+     */
+    public ALongHashSet filterLong (LongPredicate f) {
+        final Builder builder = builder();
+        for (PrimitiveIterator.OfLong it = longIterator(); it.hasNext(); ) {
+            final long value = it.nextLong();
+            if (f.test(value)) builder.addLong(value);
+        }
+        return builder.build();
+    }
+    @Override public ALongHashSet filter (Predicate<Long> f) {
+        return filterLong(f::test);
+    }
+    @Override public ALongHashSet filterNot (Predicate<Long> f) {
+        return filterLong(x -> !f.test(x));
+    }
+
+    /**
+     * Returns an iterator over this set's elements that does not box them.
+     *
+     * @return an iterator over this set's elements
+     */
+    public PrimitiveIterator.OfLong longIterator () {
+        return new PrimitiveIterator.OfLong() {
+            final CompactPrimitiveMap.Cursor<Object> cursor = new CompactPrimitiveMap.Cursor<>(root);
+            boolean hasNext = cursor.advance();
+
+            @Override public boolean hasNext () {
+                return hasNext;
+            }
+
+            @Override public long nextLong () {
+                if (! hasNext) throw new NoSuchElementException();
+                final long result = cursor.key();
+                hasNext = cursor.advance();
+                return result;
+            }
+        };
+    }
+
+    @Override public AIterator<Long> iterator () {
+        return new CompactPrimitiveMap.CursorIterator<Object, Long>(root) {
+            @Override Long current () {
+                return cursor.key();
+            }
+        };
+    }
+
+    /**
+     * @return a new array with this set's elements
+     */
+    public long[] toLongArray () {
+        final long[] result = new long[size()];
+        int idx = 0;
+        for (PrimitiveIterator.OfLong it = longIterator(); it.hasNext(); ) result[idx++] = it.nextLong();
+        return result;
+    }
+
+    @Override public <U> AHashSet<U> map (Function<Long, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> AHashSet<U> flatMap (Function<Long, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> AHashSet<U> collect (Predicate<Long> filter, Function<Long, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public <K> AMap<K, ALongHashSet> groupBy (Function<Long, K> keyExtractor) {
+        return ACollectionDefaults.super.groupBy(keyExtractor);
+    }
+
+    @Override public boolean containsAll (Collection<?> c) {
+        return ACollectionDefaults.super.containsAll(c);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ALongHashSet efficiently and in a generic manner.
+     *
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements ACollectionBuilder<Long, ALongHashSet> {
+        private CompactPrimitiveMap<long[],Object> result = CompactLongMap.emptySet();
+
+        public Builder addLong (long value) {
+            result = result.updated(value, null, 0);
+            return this;
+        }
+        @Override public Builder add (Long el) {
+            return addLong(el);
+        }
+
+        public Builder addAll (long[] values) {
+            for (long v: values) addLong(v);
+            return this;
+        }
+        @Override public Builder addAll (Iterator<? extends Long> it) {
+            while (it.hasNext()) addLong(it.next());
+            return this;
+        }
+        @Override public Builder addAll (Iterable<? extends Long> coll) {
+            if (coll instanceof ALongHashSet) {
+                for (PrimitiveIterator.OfLong it = ((ALongHashSet) coll).longIterator(); it.hasNext(); ) addLong(it.nextLong());
+                return this;
+            }
+            return addAll(coll.iterator());
+        }
+
+        @Override public ALongHashSet build () {
+            return result.size() == 0 ? EMPTY : new ALongHashSet(result);
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient ALongHashSet orig;
+
+        SerializationProxy (ALongHashSet orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (PrimitiveIterator.OfLong it = orig.longIterator(); it.hasNext(); ) {
+                oos.writeLong(it.nextLong());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException {
+            final Builder builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.addLong(ois.readLong());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
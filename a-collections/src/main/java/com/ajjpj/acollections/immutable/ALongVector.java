@@ -0,0 +1,479 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AListDefaults;
+import com.ajjpj.acollections.internal.AListSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * ALongVector is an immutable vector of primitive {@code long} values. It stores its elements in {@code long[]} arrays rather than as
+ *  {@link Long} objects, which takes a fraction of the memory of an {@code AVector<Long>} and allows scanning the elements
+ *  without following a reference per element. The {@code long} based methods like {@link #getLong(int)}, {@link #appendLong(long)},
+ *  {@link #updatedLong(int, long)}, {@link #longIterator()}, {@link #longStream()} or {@link #sum()} do not box elements.
+ *
+ * <p> ALongVector implements {@link AList AList&lt;Long&gt;}, so it can be used wherever a list of {@link Long} is expected.
+ *  Those methods box and unbox elements. Operations that may change the element type (like {@link #map(Function)}) return an
+ *  {@link AVector}.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.List}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Implementation note: The elements are stored in blocks of 32, and the blocks are the elements of an {@link AVector}. So
+ *  ALongVector shares AVector's performance characteristics, i.e. effectively constant time random access, updates, append and prepend.
+ */
+public class ALongVector extends AbstractImmutableCollection<Long> implements AListDefaults<Long, AList<Long>>, RandomAccess, Serializable {
+    private static final IntFunction<long[]> NEW_BLOCK = long[]::new;
+    private static final ALongVector EMPTY = new ALongVector(PrimitiveBlocks.empty(NEW_BLOCK));
+
+    private final PrimitiveBlocks<long[]> data;
+
+    private ALongVector (PrimitiveBlocks<long[]> data) {
+        this.data = data;
+    }
+
+    /**
+     * Convenience method for creating an empty {@link ALongVector}.
+     *
+     * @return an empty {@link ALongVector}
+     */
+    public static ALongVector empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new {@link ALongVector} with the given elements.
+     *
+     * @param values the new vector's elements
+     * @return the new vector
+     */
+    public static ALongVector of(long... values) {
+        return builder().addAll(values).build();
+    }
+
+    /**
+     * Creates a new {@link ALongVector} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ALongVector from(Iterable<Long> that) {
+        return fromIterator(that.iterator());
+    }
+
+    /**
+     * Creates a new {@link ALongVector} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ALongVector fromIterator(Iterator<Long> it) {
+        return builder().addAll(it).build();
+    }
+
+    /**
+     * Creates a new {@link ALongVector} based on an {@link LongStream}'s elements.
+     *
+     * @param stream the stream from which the new vector is initialized
+     * @return the new vector
+     */
+    public static ALongVector from(LongStream stream) {
+        return stream.collect(ALongVector::builder, Builder::addLong, (b1, b2) -> b1.addAll(b2.build())).build();
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return AListSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return AListSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(ALongVector.class, this);
+    }
+
+    @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
+        return AVector.builder();
+    }
+
+    @Override public int size () {
+        return data.size;
+    }
+
+    @Override public boolean isEmpty () {
+        return data.size == 0;
+    }
+
+    /**
+     * Returns the element at a given index without boxing it.
+     *
+     * @param index the element's index
+     * @return the element at the given index
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public long getLong (int index) {
+        final int pos = data.position(index);
+        return data.block(pos)[pos & PrimitiveBlocks.BLOCK_MASK];
+    }
+    @Override public Long get (int index) {
+        return getLong(index);
+    }
+
+    /**
+     * Returns a new vector with an element appended at the end, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public ALongVector appendLong (long value) {
+        final long[] block = data.blockForAppend();
+        block[data.endPosition() & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ALongVector(data.appended(block));
+    }
+    @Override public ALongVector append (Long o) {
+        return appendLong(o);
+    }
+
+    /**
+     * Returns a new vector with an element prepended at the start, without boxing it.
+     *
+     * @param value the new element
+     * @return the new vector
+     */
+    public ALongVector prependLong (long value) {
+        final long[] block = data.blockForPrepend();
+        block[(data.offset-1) & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ALongVector(data.prepended(block));
+    }
+    @Override public ALongVector prepend (Long o) {
+        return prependLong(o);
+    }
+
+    /**
+     * Returns a new vector with the element at a given index replaced, without boxing it.
+     *
+     * @param index the index of the element to replace
+     * @param value the new element
+     * @return the new vector
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public ALongVector updatedLong (int index, long value) {
+        final int pos = data.position(index);
+        final long[] block = data.copyOfBlock(pos);
+        block[pos & PrimitiveBlocks.BLOCK_MASK] = value;
+        return new ALongVector(data.withBlock(pos, block));
+    }
+    @Override public ALongVector updated (int idx, Long o) {
+        return updatedLong(idx, o);
+    }
+
+    @Override public ALongVector concat (Iterator<? extends Long> that) {
+        final Builder builder = builder().addAll(this);
+        while (that.hasNext()) builder.addLong(that.next());
+        return builder.build();
+    }
+    /**
+     * Concatenating two ALongVectors shares blocks of both vectors rather than copying their elements wherever possible, in particular
+     *  if this vector's size is a multiple of 32.
+     */
+    @Override public ALongVector concat (Iterable<? extends Long> that) {
+        if (that instanceof ALongVector) return wrap(data.concat(((ALongVector) that).data));
+        return builder().addAll(this).addAll(that).build();
+    }
+
+    @Override public ALongVector take (int n) {
+        return wrap(data.take(n));
+    }
+    @Override public ALongVector drop (int n) {
+        return wrap(data.drop(n));
+    }
+    @Override public ALongVector takeRight (int n) {
+        if (n <= 0) return empty();
+        return drop(size() - n);
+    }
+    @Override public ALongVector dropRight (int n) {
+        if (n <= 0) return this;
+        return take(size() - n);
+    }
+    @Override public ALongVector slice (int from, int to) {
+        return drop(Math.max(from, 0)).take(to - Math.max(from, 0));
+    }
+    @Override public AList<Long> subList (int fromIndex, int toIndex) {
+        return AListSupport.subList(this, fromIndex, toIndex);
+    }
+
+    @Override public ALongVector reverse () {
+        final Builder builder = builder();
+        for (int i=size()-1; i>=0; i--) builder.addLong(getLong(i));
+        return builder.build();
+    }
+
+    /**
+     * Returns a vector with the elements that match a given predicate, without boxing them.
+     *
+     * @param f the predicate
+     * @return the new vector
+     */
+    public ALongVector filterLong (LongPredicate f) {
+        final Builder builder = builder();
+        for (PrimitiveIterator.OfLong it = longIterator(); it.hasNext(); ) {
+            final long value = it.nextLong();
+            if (f.test(value)) builder.addLong(value);
+        }
+        return builder.build();
+    }
+    @Override public ALongVector filter (Predicate<Long> f) {
+        return filterLong(f::test);
+    }
+    @Override public ALongVector filterNot (Predicate<Long> f) {
+        return filterLong(x -> !f.test(x));
+    }
+
+    /**
+     * @return the sum of this vector's elements
+     */
+    public long sum () {
+        long result = 0;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final long[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result += block[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest element, boxing only the result.
+     */
+    @Override public Long min () {
+        if (isEmpty()) throw new NoSuchElementException();
+        long result = Long.MAX_VALUE;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final long[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result = Math.min(result, block[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the largest element, boxing only the result.
+     */
+    @Override public Long max () {
+        if (isEmpty()) throw new NoSuchElementException();
+        long result = Long.MIN_VALUE;
+        for (int b=0; b<data.numBlocks(); b++) {
+            final long[] block = data.blocks.get(b);
+            for (int i=data.blockStart(b), end=data.blockEnd(b); i<end; i++) result = Math.max(result, block[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new array with this vector's elements
+     */
+    public long[] toLongArray () {
+        final long[] result = new long[size()];
+        data.copyTo(result);
+        return result;
+    }
+
+    /**
+     * Returns an iterator over this vector's elements that does not box them.
+     *
+     * @return an iterator over this vector's elements
+     */
+    public PrimitiveIterator.OfLong longIterator () {
+        return new PrimitiveIterator.OfLong() {
+            final Iterator<long[]> blockIt = data.blocks.iterator();
+            long[] block;
+            int idx = PrimitiveBlocks.BLOCK_SIZE;
+            int next = data.offset;
+            int remaining = data.size;
+
+            @Override public boolean hasNext () {
+                return remaining > 0;
+            }
+
+            @Override public long nextLong () {
+                if (remaining == 0) throw new NoSuchElementException();
+                if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                    block = blockIt.next();
+                    idx = next;
+                    next = 0;
+                }
+                remaining -= 1;
+                return block[idx++];
+            }
+        };
+    }
+
+    /**
+     * @return a sequential {@link LongStream} of this vector's elements
+     */
+    public LongStream longStream () {
+        return StreamSupport.longStream(Spliterators.spliterator(longIterator(), size(), Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL), false);
+    }
+
+    @Override public AIterator<Long> iterator () {
+        final PrimitiveIterator.OfLong it = longIterator();
+        return new AbstractAIterator<Long>() {
+            @Override public boolean hasNext () {
+                return it.hasNext();
+            }
+
+            @Override public Long next () {
+                return it.nextLong();
+            }
+        };
+    }
+
+    @Override public AIterator<Long> reverseIterator () {
+        return new AbstractAIterator<Long>() {
+            int nextIdx = size()-1;
+
+            @Override public boolean hasNext () {
+                return nextIdx >= 0;
+            }
+
+            @Override public Long next () {
+                if (!hasNext()) throw new NoSuchElementException();
+                return getLong(nextIdx--);
+            }
+        };
+    }
+
+    @Override public <U> AVector<U> map (Function<Long, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> flatMap (Function<Long, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> AVector<U> collect (Predicate<Long> filter, Function<Long, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public boolean addAll (int index, Collection<? extends Long> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Long set (int index, Long element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void add (int index, Long element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public Long remove (int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static ALongVector wrap (PrimitiveBlocks<long[]> data) {
+        return data.size == 0 ? EMPTY : new ALongVector(data);
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ALongVector efficiently and in a generic manner.
+     *
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements ACollectionBuilder<Long, ALongVector> {
+        private final AVector.Builder<long[]> blocks = AVector.builder();
+        private long[] block = new long[PrimitiveBlocks.BLOCK_SIZE];
+        private int idx = 0;
+        private int size = 0;
+        private boolean wasBuilt = false;
+
+        public Builder addLong (long value) {
+            if (wasBuilt) throw new IllegalStateException();
+            if (idx == PrimitiveBlocks.BLOCK_SIZE) {
+                blocks.add(block);
+                block = new long[PrimitiveBlocks.BLOCK_SIZE];
+                idx = 0;
+            }
+            block[idx++] = value;
+            size += 1;
+            return this;
+        }
+        @Override public Builder add (Long el) {
+            return addLong(el);
+        }
+
+        public Builder addAll (long[] values) {
+            for (long v: values) addLong(v);
+            return this;
+        }
+        @Override public Builder addAll (Iterator<? extends Long> it) {
+            while (it.hasNext()) addLong(it.next());
+            return this;
+        }
+        @Override public Builder addAll (Iterable<? extends Long> coll) {
+            if (coll instanceof ALongVector) {
+                for (PrimitiveIterator.OfLong it = ((ALongVector) coll).longIterator(); it.hasNext(); ) addLong(it.nextLong());
+                return this;
+            }
+            return addAll(coll.iterator());
+        }
+
+        @Override public ALongVector build () {
+            if (wasBuilt) throw new IllegalStateException();
+            wasBuilt = true;
+
+            if (size == 0) return empty();
+            blocks.add(block);
+            return new ALongVector(PrimitiveBlocks.of(blocks.build(), size, NEW_BLOCK));
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient ALongVector orig;
+
+        SerializationProxy (ALongVector orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (PrimitiveIterator.OfLong it = orig.longIterator(); it.hasNext(); ) {
+                oos.writeLong(it.nextLong());
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException {
+            final Builder builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.addLong(ois.readLong());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
@@ -103,7 +103,7 @@ public class ARange extends AbstractImmutableCollection<Integer> implements ALis
     }
 
     @Override public AList<Integer> concat (Iterable<? extends Integer> that) {
-        return this.<Integer>newBuilder().addAll(this).addAll(that).build();
+        return AListSupport.concat(this, that);
     }
 
     @Override public AList<Integer> updated (int idx, Integer o) {
@@ -282,6 +282,13 @@ public class ARange extends AbstractImmutableCollection<Integer> implements ALis
         return indexOf(o);
     }
 
+    @Override public AList<Integer> slice (int from, int to) {
+        final int lo = Math.max(from, 0);
+        final int hi = Math.min(to, size());
+        if (hi <= lo) return AVector.empty();
+        return subList(lo, hi);
+    }
+
     @Override public AList<Integer> subList (int fromIndex, int toIndex) {
         if (fromIndex < 0 || toIndex > size()) throw new IndexOutOfBoundsException();
         if (fromIndex > toIndex) throw new IllegalArgumentException();
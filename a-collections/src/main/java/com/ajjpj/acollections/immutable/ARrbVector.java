@@ -0,0 +1,894 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AListDefaults;
+import com.ajjpj.acollections.internal.AListSupport;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.Collector;
+
+
+/**
+ * ARrbVector is an immutable {@link AList} that supports concatenation, splitting and insertion at arbitrary positions in
+ *  effectively logarithmic time, while retaining fast random access. It is the better choice over {@link AVector} for lists that
+ *  are frequently cut into pieces and put together again, e.g. lists of document chunks that are split and merged.
+ *
+ * <p> Since this is an immutable class, it does not support modifying methods from {@link java.util.List}: Those methods return
+ *  {@code boolean} or a previous element, but in order to "modify" an immutable collection, they would need to return the new collection
+ *  instance.
+ *
+ * <p> Performance Considerations:
+ * <ul>
+ *     <li> Time: {@link #get(int)}, {@link #updated(int, Object)}, {@link #append(Object)} and {@link #prepend(Object)} are O(log n)
+ *           with a base of (nearly) 32, i.e. effectively constant time. {@link #concat(Iterable) concatenating} two ARrbVectors,
+ *           {@link #take(int)}, {@link #drop(int)}, {@link #slice(int, int)}, {@link #inserted(int, Object)} and
+ *           {@link #patch(int, List, int)} are O(log n) as well, plus the time for converting the other collection if it is not an
+ *           ARrbVector. Appending and prepending single elements is slower than for {@link AVector} by a constant factor.
+ *     <li> Space: ARrbVector implements structural sharing: all operations copy only the nodes on the paths they modify, and
+ *           concatenation reuses all nodes except those along the seam between the two vectors.
+ * </ul>
+ *
+ * <p> Structural sharing is lost after serialization and deserialization.
+ *
+ * <p> Implementation note: This class is a relaxed radix balanced tree (RRB tree, see Bagwell and Rompf, "RRB-Trees: Efficient
+ *  Immutable Vectors") with a branching factor of 32. Unlike in {@link AVector}, nodes may have fewer than 32 children, and every
+ *  node stores the cumulative sizes of its children, so that vectors can be split and joined at arbitrary positions without
+ *  shifting all elements. Concatenation redistributes the nodes along the seam so that each node has at most two children fewer than
+ *  optimal, which keeps the tree shallow.
+ *
+ * @param <T> the element type
+ */
+public final class ARrbVector<T> extends AbstractImmutableCollection<T> implements AListDefaults<T, ARrbVector<T>>, RandomAccess, Serializable {
+    private static final int BRANCHING = 32;
+    private static final int LOG_BRANCHING = 5;
+
+    /**
+     * Concatenation leaves nodes alone if their number exceeds the optimal number by at most this value. Higher values make
+     *  concatenation faster, but lookup slower because the tree is less dense.
+     */
+    private static final int EXTRAS = 2;
+
+    private static final ARrbVector EMPTY = new ARrbVector<>(new Object[0], 0, 0);
+
+    /**
+     * Creates a new {@link ARrbVector} based on an Iterable's elements.
+     *
+     * @param that the Iterable from which the new list is initialized
+     * @param <T> the list's element type
+     * @return the new list
+     */
+    public static <T> ARrbVector<T> from(Iterable<T> that) {
+        return fromIterator(that.iterator());
+    }
+
+    /**
+     * Creates a new {@link ARrbVector} based on an array's elements.
+     *
+     * @param that the array from which the new list is initialized
+     * @param <T> the list's element type
+     * @return the new list
+     */
+    public static <T> ARrbVector<T> from(T[] that) {
+        return fromIterator(Arrays.asList(that).iterator());
+    }
+
+    /**
+     * Creates a new {@link ARrbVector} based on an iterator's elements.
+     *
+     * @param it the iterator from which the new list is initialized
+     * @param <T> the list's element type
+     * @return the new list
+     */
+    public static <T> ARrbVector<T> fromIterator(Iterator<T> it) {
+        return ARrbVector
+                .<T>builder()
+                .addAll(it)
+                .build();
+    }
+
+    /**
+     * Convenience method for creating an empty {@link ARrbVector}. For creating a list with known elements, calling one of the {@code of}
+     *  factory methods is a more concise alternative.
+     *
+     * @param <T> the new list's element type
+     * @return an empty {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> empty() {
+        //noinspection unchecked
+        return EMPTY;
+    }
+
+    /**
+     * This is an alias for {@link #empty()} for consistency with Java 9 conventions - it creates an empty {@link ARrbVector}.
+     *
+     * @param <T> the new list's element type
+     * @return an empty {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> of() {
+        return empty();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ARrbVector} with exactly one element.
+     *
+     * @param o the single element for the new list
+     * @param <T> the new list's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> of(T o) {
+        return ARrbVector
+                .<T>builder()
+                .add(o)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ARrbVector} with two elements.
+     *
+     * @param o1 the first element for the new list
+     * @param o2 the second element for the new list
+     * @param <T> the new list's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> of(T o1, T o2) {
+        return ARrbVector
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ARrbVector} with three elements.
+     *
+     * @param o1 the first element for the new list
+     * @param o2 the second element for the new list
+     * @param o3 the third element for the new list
+     * @param <T> the new list's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> of(T o1, T o2, T o3) {
+        return ARrbVector
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ARrbVector} with four elements.
+     *
+     * @param o1 the first element for the new list
+     * @param o2 the second element for the new list
+     * @param o3 the third element for the new list
+     * @param o4 the fourth element for the new list
+     * @param <T> the new list's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ARrbVector}
+     */
+    public static <T> ARrbVector<T> of(T o1, T o2, T o3, T o4) {
+        return ARrbVector
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .add(o4)
+                .build();
+    }
+
+    /**
+     * Convenience factory method creating an {@link ARrbVector} with more than four elements.
+     *
+     * @param o1 the first element for the new list
+     * @param o2 the second element for the new list
+     * @param o3 the third element for the new list
+     * @param o4 the fourth element for the new list
+     * @param o5 the fifth element for the new list
+     * @param others the (variable number of) additional elements
+     * @param <T> the new list's element type (can often be inferred from the parameter by the compiler)
+     * @return the new {@link ARrbVector}
+     */
+    @SafeVarargs public static <T> ARrbVector<T> of(T o1, T o2, T o3, T o4, T o5, T... others) {
+        return ARrbVector
+                .<T>builder()
+                .add(o1)
+                .add(o2)
+                .add(o3)
+                .add(o4)
+                .add(o5)
+                .addAll(others)
+                .build();
+    }
+
+    /**
+     * The root is a leaf (an {@code Object[]} holding between 1 and 32 elements) if the height is 0, and a {@link Node} otherwise.
+     *  The empty vector's root is an empty leaf.
+     */
+    private final Object root;
+    private final int height;
+    private final int size;
+
+    private ARrbVector (Object root, int height, int size) {
+        this.root = root;
+        this.height = height;
+        this.size = size;
+    }
+
+    /**
+     * Creates a vector from a tree, removing root nodes that have only a single child
+     */
+    private static <T> ARrbVector<T> collapsed (Object root, int height, int size) {
+        while (height > 0 && ((Node) root).children.length == 1) {
+            root = ((Node) root).children[0];
+            height -= 1;
+        }
+        return new ARrbVector<>(root, height, size);
+    }
+
+    @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+    @Override public boolean equals (Object o) {
+        return AListSupport.equals(this, o);
+    }
+
+    @Override public int hashCode () {
+        return AListSupport.hashCode(this);
+    }
+
+    @Override public String toString () {
+        return ACollectionSupport.toString(ARrbVector.class, this);
+    }
+
+    @Override public <U> Builder<U> newBuilder () {
+        return builder();
+    }
+
+    @Override public int size () {
+        return size;
+    }
+
+    @Override public boolean isEmpty () {
+        return size == 0;
+    }
+
+    @Override public T head () {
+        if (isEmpty()) throw new NoSuchElementException();
+        return get(0);
+    }
+
+    @Override public T get (int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+
+        Object n = root;
+        for (int h=height; h>0; h--) {
+            final Node node = (Node) n;
+            final int childIdx = node.childIndex(index, h);
+            if (childIdx > 0) index -= node.sizes[childIdx-1];
+            n = node.children[childIdx];
+        }
+        //noinspection unchecked
+        return (T) ((Object[]) n)[index];
+    }
+
+    @Override public ARrbVector<T> updated (int index, T o) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        return new ARrbVector<>(updated(root, height, index, o), height, size);
+    }
+
+    private static Object updated (Object n, int h, int index, Object o) {
+        if (h == 0) {
+            final Object[] result = ((Object[]) n).clone();
+            result[index] = o;
+            return result;
+        }
+        final Node node = (Node) n;
+        final int childIdx = node.childIndex(index, h);
+        final int childOffset = childIdx > 0 ? node.sizes[childIdx-1] : 0;
+        return node.withChild(childIdx, updated(node.children[childIdx], h-1, index - childOffset, o), 0);
+    }
+
+    @Override public ARrbVector<T> append (T o) {
+        if (isEmpty()) return new ARrbVector<>(new Object[] {o}, 0, 1);
+
+        final Object appended = appended(root, height, o);
+        if (appended != null) return new ARrbVector<>(appended, height, size+1);
+        return new ARrbVector<>(new Node(new Object[] {root, newPath(height, o)}, new int[] {size, size+1}), height+1, size+1);
+    }
+
+    /**
+     * @return the new subtree, or null if the subtree is full along its rightmost path
+     */
+    private static Object appended (Object n, int h, Object o) {
+        if (h == 0) {
+            final Object[] leaf = (Object[]) n;
+            if (leaf.length == BRANCHING) return null;
+            final Object[] result = Arrays.copyOf(leaf, leaf.length+1);
+            result[leaf.length] = o;
+            return result;
+        }
+
+        final Node node = (Node) n;
+        final int lastIdx = node.children.length - 1;
+        final Object appendedChild = appended(node.children[lastIdx], h-1, o);
+        if (appendedChild != null) return node.withChild(lastIdx, appendedChild, 1);
+        if (node.children.length == BRANCHING) return null;
+
+        final Object[] children = Arrays.copyOf(node.children, node.children.length+1);
+        children[children.length-1] = newPath(h-1, o);
+        final int[] sizes = Arrays.copyOf(node.sizes, node.sizes.length+1);
+        sizes[sizes.length-1] = sizes[sizes.length-2] + 1;
+        return new Node(children, sizes);
+    }
+
+    @Override public ARrbVector<T> prepend (T o) {
+        if (isEmpty()) return new ARrbVector<>(new Object[] {o}, 0, 1);
+
+        final Object prepended = prepended(root, height, o);
+        if (prepended != null) return new ARrbVector<>(prepended, height, size+1);
+        return new ARrbVector<>(new Node(new Object[] {newPath(height, o), root}, new int[] {1, size+1}), height+1, size+1);
+    }
+
+    /**
+     * @return the new subtree, or null if the subtree is full along its leftmost path
+     */
+    private static Object prepended (Object n, int h, Object o) {
+        if (h == 0) {
+            final Object[] leaf = (Object[]) n;
+            if (leaf.length == BRANCHING) return null;
+            final Object[] result = new Object[leaf.length+1];
+            result[0] = o;
+            System.arraycopy(leaf, 0, result, 1, leaf.length);
+            return result;
+        }
+
+        final Node node = (Node) n;
+        final Object prependedChild = prepended(node.children[0], h-1, o);
+        if (prependedChild != null) return node.withChild(0, prependedChild, 1);
+        if (node.children.length == BRANCHING) return null;
+
+        final Object[] children = new Object[node.children.length+1];
+        children[0] = newPath(h-1, o);
+        System.arraycopy(node.children, 0, children, 1, node.children.length);
+        final int[] sizes = new int[node.sizes.length+1];
+        for (int i=0; i<node.sizes.length; i++) {
+            sizes[i+1] = node.sizes[i] + 1;
+        }
+        sizes[0] = 1;
+        return new Node(children, sizes);
+    }
+
+    /**
+     * @return a subtree of a given height that contains a single element
+     */
+    private static Object newPath (int h, Object o) {
+        Object result = new Object[] {o};
+        for (int i=0; i<h; i++) {
+            result = new Node(new Object[] {result}, new int[] {1});
+        }
+        return result;
+    }
+
+    @Override public ARrbVector<T> take (int n) {
+        if (n <= 0) return empty();
+        if (n >= size) return this;
+        return collapsed(taken(root, height, n), height, n);
+    }
+
+    private static Object taken (Object n, int h, int num) {
+        if (h == 0) {
+            final Object[] leaf = (Object[]) n;
+            return num == leaf.length ? leaf : Arrays.copyOf(leaf, num);
+        }
+
+        final Node node = (Node) n;
+        final int childIdx = node.childIndex(num-1, h);
+        final int childOffset = childIdx > 0 ? node.sizes[childIdx-1] : 0;
+        final Object child = taken(node.children[childIdx], h-1, num - childOffset);
+
+        final Object[] children = Arrays.copyOf(node.children, childIdx+1);
+        children[childIdx] = child;
+        final int[] sizes = Arrays.copyOf(node.sizes, childIdx+1);
+        sizes[childIdx] = num;
+        return new Node(children, sizes);
+    }
+
+    @Override public ARrbVector<T> drop (int n) {
+        if (n <= 0) return this;
+        if (n >= size) return empty();
+        return collapsed(dropped(root, height, n), height, size - n);
+    }
+
+    private static Object dropped (Object n, int h, int num) {
+        if (h == 0) {
+            final Object[] leaf = (Object[]) n;
+            return Arrays.copyOfRange(leaf, num, leaf.length);
+        }
+
+        final Node node = (Node) n;
+        final int childIdx = node.childIndex(num, h);
+        final int childOffset = childIdx > 0 ? node.sizes[childIdx-1] : 0;
+        final Object child = childOffset == num ? node.children[childIdx] : dropped(node.children[childIdx], h-1, num - childOffset);
+
+        final Object[] children = Arrays.copyOfRange(node.children, childIdx, node.children.length);
+        children[0] = child;
+        final int[] sizes = new int[children.length];
+        for (int i=0; i<sizes.length; i++) {
+            sizes[i] = node.sizes[childIdx+i] - num;
+        }
+        return new Node(children, sizes);
+    }
+
+    @Override public ARrbVector<T> takeRight (int n) {
+        if (n <= 0) return empty();
+        return drop(size - n);
+    }
+
+    @Override public ARrbVector<T> dropRight (int n) {
+        if (n <= 0) return this;
+        return take(size - n);
+    }
+
+    @Override public ARrbVector<T> slice (int from, int to) {
+        return take(to).drop(from);
+    }
+
+    @Override public ARrbVector<T> subList (int fromIndex, int toIndex) {
+        if (fromIndex>toIndex || toIndex>size() || fromIndex<0)
+            throw new IndexOutOfBoundsException();
+        return slice(fromIndex, toIndex);
+    }
+
+    /**
+     * Returns a new ARrbVector with an additional element at a given index, shifting the element at that index and all subsequent
+     *  elements to the right. This is the persistent equivalent of {@link List#add(int, Object)}, and it takes O(log n) time.
+     *
+     * @param idx the index at which the element is inserted, between 0 and {@link #size()} (inclusive)
+     * @param o   the new element
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public ARrbVector<T> inserted (int idx, T o) {
+        if (idx < 0 || idx > size) throw new IndexOutOfBoundsException();
+        if (idx == 0) return prepend(o);
+        if (idx == size) return append(o);
+        return take(idx).append(o).concat(drop(idx));
+    }
+
+    /**
+     * Replaces a range of elements by the elements of another list in O(log n) time, plus the time for converting the patch to an
+     *  ARrbVector.
+     */
+    @Override public ARrbVector<T> patch (int idx, List<T> patch, int numReplaced) {
+        if (idx < 0 || idx > size || idx + Math.max(numReplaced, 0) > size) throw new IndexOutOfBoundsException();
+        return take(idx).concat(patch).concat(drop(idx + Math.max(numReplaced, 0)));
+    }
+
+    @Override public ARrbVector<T> concat (Iterator<? extends T> that) {
+        return concat(ARrbVector.<T>builder().addAll(that).build());
+    }
+
+    /**
+     * Concatenates this list with another collection. If the other collection is an ARrbVector, this takes O(log n) time and shares
+     *  the two vectors' nodes except along the seam. Other collections are converted to an ARrbVector first.
+     */
+    @Override public ARrbVector<T> concat (Iterable<? extends T> that) {
+        if (that instanceof ARrbVector) {
+            //noinspection unchecked
+            return concat((ARrbVector<T>) that);
+        }
+        return concat(that.iterator());
+    }
+
+    private ARrbVector<T> concat (ARrbVector<T> that) {
+        if (that.isEmpty()) return this;
+        if (this.isEmpty()) return that;
+        final Node concatenated = concatenated(root, height, that.root, that.height);
+        return collapsed(concatenated, Math.max(height, that.height) + 1, size + that.size);
+    }
+
+    /**
+     * Concatenates two subtrees, rebalancing the nodes along the seam.
+     *
+     * @return a node one level higher than the higher of the two subtrees, with one or two children
+     */
+    private static Node concatenated (Object left, int hl, Object right, int hr) {
+        if (hl > hr) {
+            final Node l = (Node) left;
+            return rebalanced(l, concatenated(l.children[l.children.length-1], hl-1, right, hr), null);
+        }
+        if (hl < hr) {
+            final Node r = (Node) right;
+            return rebalanced(null, concatenated(left, hl, r.children[0], hr-1), r);
+        }
+        if (hl == 0) {
+            final Object[] l = (Object[]) left;
+            final Object[] r = (Object[]) right;
+            if (l.length + r.length > BRANCHING) return Node.of(new Object[] {l, r});
+
+            final Object[] merged = Arrays.copyOf(l, l.length + r.length);
+            System.arraycopy(r, 0, merged, l.length, r.length);
+            return Node.of(new Object[] {merged});
+        }
+
+        final Node l = (Node) left;
+        final Node r = (Node) right;
+        return rebalanced(l, concatenated(l.children[l.children.length-1], hl-1, r.children[0], hr-1), r);
+    }
+
+    /**
+     * Combines the left node's children except the last one, the centre node's children and the right node's children except the
+     *  first one, redistributing them if there are more than necessary.
+     *
+     * @param left   a node, or null if the centre node was created from the right node alone
+     * @param centre the concatenation of the left node's last child with the right node's first child
+     * @param right  a node, or null if the centre node was created from the left node alone
+     * @return a node one level higher than the centre node, with one or two children
+     */
+    private static Node rebalanced (Node left, Node centre, Node right) {
+        final int numLeft = left == null ? 0 : left.children.length - 1;
+        final int numRight = right == null ? 0 : right.children.length - 1;
+
+        final Object[] all = new Object[numLeft + centre.children.length + numRight];
+        if (numLeft > 0) System.arraycopy(left.children, 0, all, 0, numLeft);
+        System.arraycopy(centre.children, 0, all, numLeft, centre.children.length);
+        if (numRight > 0) System.arraycopy(right.children, 1, all, numLeft + centre.children.length, numRight);
+
+        final Object[] redistributed = redistributed(all);
+        if (redistributed.length <= BRANCHING) return Node.of(new Object[] {Node.of(redistributed)});
+        return Node.of(new Object[] {
+                Node.of(Arrays.copyOfRange(redistributed, 0, BRANCHING)),
+                Node.of(Arrays.copyOfRange(redistributed, BRANCHING, redistributed.length))
+        });
+    }
+
+    /**
+     * Merges the contents of underfull subtrees into their neighbours until there are at most {@link #EXTRAS} more subtrees than
+     *  necessary. Subtrees that are not affected are reused.
+     *
+     * @param subtrees leaves or nodes of the same height
+     * @return the original array if no redistribution is necessary, or a new array of leaves or nodes
+     */
+    private static Object[] redistributed (Object[] subtrees) {
+        final int[] counts = new int[subtrees.length];
+        int total = 0;
+        for (int i=0; i<subtrees.length; i++) {
+            counts[i] = slots(subtrees[i]).length;
+            total += counts[i];
+        }
+
+        final int optimal = (total + BRANCHING - 1) / BRANCHING;
+        int newLength = subtrees.length;
+        if (newLength <= optimal + EXTRAS) return subtrees;
+
+        // plan the new distribution: skip full subtrees, and spread the next subtree's content over its successors
+        int i = 0;
+        while (newLength > optimal + EXTRAS) {
+            while (counts[i] == BRANCHING) i += 1;
+
+            int remaining = counts[i];
+            do {
+                final int newCount = Math.min(remaining + counts[i+1], BRANCHING);
+                remaining = remaining + counts[i+1] - newCount;
+                counts[i] = newCount;
+                i += 1;
+            }
+            while (remaining > 0);
+
+            // the subtree at index i was merged into its predecessors completely
+            System.arraycopy(counts, i+1, counts, i, newLength - i - 1);
+            newLength -= 1;
+            i -= 1;
+        }
+
+        // execute the plan
+        final boolean isLeaf = ! (subtrees[0] instanceof Node);
+        final Object[] result = new Object[newLength];
+        int src = 0;
+        int srcOffset = 0;
+        for (int k=0; k<newLength; k++) {
+            if (srcOffset == 0 && slots(subtrees[src]).length == counts[k]) {
+                result[k] = subtrees[src++];
+                continue;
+            }
+
+            final Object[] newSlots = new Object[counts[k]];
+            int filled = 0;
+            while (filled < newSlots.length) {
+                final Object[] srcSlots = slots(subtrees[src]);
+                final int num = Math.min(newSlots.length - filled, srcSlots.length - srcOffset);
+                System.arraycopy(srcSlots, srcOffset, newSlots, filled, num);
+                filled += num;
+                srcOffset += num;
+                if (srcOffset == srcSlots.length) {
+                    src += 1;
+                    srcOffset = 0;
+                }
+            }
+            result[k] = isLeaf ? newSlots : Node.of(newSlots);
+        }
+        return result;
+    }
+
+    /**
+     * @return a leaf's elements or a node's children
+     */
+    private static Object[] slots (Object subtree) {
+        return subtree instanceof Node ? ((Node) subtree).children : (Object[]) subtree;
+    }
+
+    /**
+     * @return the number of elements in a subtree
+     */
+    private static int sizeOf (Object subtree) {
+        if (subtree instanceof Node) {
+            final int[] sizes = ((Node) subtree).sizes;
+            return sizes[sizes.length-1];
+        }
+        return ((Object[]) subtree).length;
+    }
+
+    @Override public AIterator<T> iterator () {
+        return new Itr<>(this, true);
+    }
+
+    @Override public AIterator<T> reverseIterator () {
+        return new Itr<>(this, false);
+    }
+
+    @Override public <U> ARrbVector<U> map (Function<T, U> f) {
+        return ACollectionSupport.map(newBuilder(), this, f);
+    }
+    @Override public <U> ARrbVector<U> flatMap (Function<T, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(newBuilder(), this, f);
+    }
+    @Override public <U> ARrbVector<U> collect (Predicate<T> filter, Function<T, U> f) {
+        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+    }
+
+    @Override public boolean addAll (int index, Collection<? extends T> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public T set (int index, T element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void add (int index, T element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public T remove (int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * A branch node. It stores its children's cumulative sizes, i.e. {@code sizes[i]} is the number of elements in the children
+     *  0 to i.
+     */
+    private static final class Node {
+        final Object[] children;
+        final int[] sizes;
+
+        Node (Object[] children, int[] sizes) {
+            this.children = children;
+            this.sizes = sizes;
+        }
+
+        static Node of (Object[] children) {
+            final int[] sizes = new int[children.length];
+            int size = 0;
+            for (int i=0; i<children.length; i++) {
+                size += sizeOf(children[i]);
+                sizes[i] = size;
+            }
+            return new Node(children, sizes);
+        }
+
+        /**
+         * @param index the index of an element relative to this node
+         * @param h     this node's height
+         * @return the index of the child containing the element
+         */
+        int childIndex (int index, int h) {
+            // every child has at most 32^h elements, so this is a lower bound, and the exact index for nodes that are not relaxed
+            final int shift = LOG_BRANCHING * h;
+            int result = shift < 31 ? index >>> shift : 0;
+            while (sizes[result] <= index) result += 1;
+            return result;
+        }
+
+        /**
+         * @return a copy of this node with a replaced child, and the sizes adjusted by a given delta from that child onward
+         */
+        Node withChild (int childIdx, Object child, int sizeDelta) {
+            final Object[] newChildren = children.clone();
+            newChildren[childIdx] = child;
+            int[] newSizes = sizes;
+            if (sizeDelta != 0) {
+                newSizes = sizes.clone();
+                for (int i=childIdx; i<newSizes.length; i++) {
+                    newSizes[i] += sizeDelta;
+                }
+            }
+            return new Node(newChildren, newSizes);
+        }
+    }
+
+    /**
+     * Iterates over a vector's elements leaf by leaf, keeping track of the path from the root to the current leaf
+     */
+    private static class Itr<T> extends AbstractAIterator<T> {
+        private final boolean forward;
+        private final Node[] path;
+        private final int[] pathIndices;
+        private Object[] leaf;
+        private int leafIdx;
+        private int remaining;
+
+        Itr (ARrbVector<T> v, boolean forward) {
+            this.forward = forward;
+            this.path = new Node[v.height];
+            this.pathIndices = new int[v.height];
+            this.remaining = v.size;
+            descend(v.root, v.height);
+        }
+
+        /**
+         * Moves to the first (or last) leaf of a subtree
+         */
+        private void descend (Object n, int h) {
+            while (h > 0) {
+                final Node node = (Node) n;
+                final int idx = forward ? 0 : node.children.length - 1;
+                path[h-1] = node;
+                pathIndices[h-1] = idx;
+                n = node.children[idx];
+                h -= 1;
+            }
+            leaf = (Object[]) n;
+            leafIdx = forward ? 0 : leaf.length - 1;
+        }
+
+        private void nextLeaf () {
+            int h = 1;
+            while (true) {
+                final int idx = pathIndices[h-1] + (forward ? 1 : -1);
+                if (idx >= 0 && idx < path[h-1].children.length) {
+                    pathIndices[h-1] = idx;
+                    descend(path[h-1].children[idx], h-1);
+                    return;
+                }
+                h += 1;
+            }
+        }
+
+        @Override public boolean hasNext () {
+            return remaining > 0;
+        }
+
+        @Override public T next () {
+            if (remaining == 0) throw new NoSuchElementException();
+            if (leafIdx < 0 || leafIdx >= leaf.length) nextLeaf();
+            remaining -= 1;
+            //noinspection unchecked
+            return (T) leaf[forward ? leafIdx++ : leafIdx--];
+        }
+    }
+
+    /**
+     * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an ARrbVector.
+     *
+     * @param <T> the stream's element type
+     * @return a {@link Collector} to collect a stream's elements into an ARrbVector
+     */
+    public static <T> Collector<T, Builder<T>, ARrbVector<T>> streamCollector() {
+        final Supplier<Builder<T>> supplier = ARrbVector::builder;
+        final BiConsumer<Builder<T>, T> accumulator = Builder::add;
+        final BinaryOperator<Builder<T>> combiner = (b1, b2) -> {
+            b1.addAll(b2.build());
+            return b1;
+        };
+        final Function<Builder<T>, ARrbVector<T>> finisher = Builder::build;
+
+        return Collector.of(supplier, accumulator, combiner, finisher);
+    }
+
+    /**
+     * Returns a new {@link ACollectionBuilder} for building an ARrbVector efficiently and in a generic manner.
+     *
+     * @param <T> the builder's element type
+     * @return an new {@link ACollectionBuilder}
+     */
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * The builder fills leaves completely and creates the tree bottom-up, so the resulting vector is not relaxed.
+     */
+    public static class Builder<T> implements ACollectionBuilder<T, ARrbVector<T>> {
+        private final List<Object[]> leaves = new ArrayList<>();
+        private Object[] leaf = new Object[BRANCHING];
+        private int leafSize = 0;
+        private int size = 0;
+        private boolean wasBuilt = false;
+
+        public Builder<T> add (T o) {
+            if (wasBuilt) throw new IllegalStateException();
+            if (leafSize == BRANCHING) {
+                leaves.add(leaf);
+                leaf = new Object[BRANCHING];
+                leafSize = 0;
+            }
+            leaf[leafSize++] = o;
+            size += 1;
+            return this;
+        }
+        public Builder<T> addAll (Iterator<? extends T> it) {
+            while(it.hasNext()) add(it.next());
+            return this;
+        }
+        public Builder<T> addAll (Iterable<? extends T> coll) {
+            return addAll(coll.iterator());
+        }
+
+        public ARrbVector<T> build () {
+            if (wasBuilt) throw new IllegalStateException();
+            wasBuilt = true;
+
+            if (size == 0) return empty();
+            leaves.add(leafSize == BRANCHING ? leaf : Arrays.copyOf(leaf, leafSize));
+
+            Object[] level = leaves.toArray();
+            int height = 0;
+            while (level.length > 1) {
+                final Object[] parents = new Object[(level.length + BRANCHING - 1) / BRANCHING];
+                for (int i=0; i<parents.length; i++) {
+                    parents[i] = Node.of(Arrays.copyOfRange(level, i*BRANCHING, Math.min(level.length, (i+1)*BRANCHING)));
+                }
+                level = parents;
+                height += 1;
+            }
+            return new ARrbVector<>(level[0], height, size);
+        }
+    }
+
+    private static class SerializationProxy implements Serializable {
+        private transient ARrbVector<?> orig;
+
+        SerializationProxy (ARrbVector<?> orig) {
+            this.orig = orig;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream oos) throws IOException {
+            oos.writeInt(orig.size());
+            for (Object o: orig) {
+                oos.writeObject(o);
+            }
+        }
+
+        private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+            final Builder<Object> builder = builder();
+            final int size = ois.readInt();
+            for (int i=0; i<size; i++) {
+                builder.add(ois.readObject());
+            }
+            orig = builder.build();
+        }
+
+        private Object readResolve() {
+            return orig;
+        }
+    }
+}
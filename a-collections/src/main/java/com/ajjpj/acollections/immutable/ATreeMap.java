@@ -9,6 +9,7 @@ import com.ajjpj.acollections.util.AOption;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -59,7 +60,7 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         return new ATreeMap<>(null, comparator);
     }
 
-    private ATreeMap (RedBlackTree.Tree<K,V> root, Comparator<? super K> comparator) {
+    ATreeMap (RedBlackTree.Tree<K,V> root, Comparator<? super K> comparator) {
         this.root = root;
         this.comparator = comparator;
     }
@@ -266,20 +267,187 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         }
     }
     @Override public ATreeMap<K,V> plus (K key, V value) {
+        if (root != null && comparator.compare(key, RedBlackTree.greatest(root).key) > 0) {
+            // fast path for appending beyond the greatest key, e.g. for time series: no comparisons on the way down
+            return new ATreeMap<>(RedBlackTree.append(root, key, value), comparator);
+        }
         return new ATreeMap<>(RedBlackTree.update(root, key, value, true, comparator), comparator);
     }
     @Override public ATreeMap<K,V> minus (K key) {
         if (!RedBlackTree.contains(root, key, comparator)) return this;
         return new ATreeMap<>(RedBlackTree.delete(root, key, comparator), comparator);
     }
+
+    /**
+     * Adds another map's entries to this map, replacing entries for existing keys. This works on both maps' trees, splitting and
+     *  joining them rather than adding entries one at a time, and reuses subtrees that do not overlap with the other map's keys. If
+     *  the other map is not an {@link ATreeMap} with the same comparator, its entries are sorted into a tree first. This takes
+     *  O(m log(n/m + 1)) time for maps of sizes m and n with m &lt;= n.
+     *
+     * @param other the map whose entries are added to this map
+     * @param <K1> the other map's key type
+     * @param <V1> the other map's value type
+     * @return the map with the new entries
+     */
+    @Override public <K1 extends K, V1 extends V> ATreeMap<K,V> plusAll (Map<K1, V1> other) {
+        return withRoot(RedBlackTree.union(root, treeOf(other), null, comparator));
+    }
+
+    /**
+     * Adds another map's entries to this map, using a function to determine the resulting value for keys contained in both maps. This
+     *  works on both maps' trees like {@link #plusAll(Map)}, and the function is called only for keys that are contained in both maps.
+     *
+     * @param other the map whose entries are added to this map
+     * @param f     the function determining the resulting value if both maps contain a key; it is called with this map's value
+     *              and the other map's value
+     * @return the map with the new entries
+     */
+    @Override public ATreeMap<K,V> plusAll (Map<? extends K, ? extends V> other, BiFunction<V, V, V> f) {
+        return withRoot(RedBlackTree.union(root, treeOf(other), f, comparator));
+    }
+
+    /**
+     * Removes all entries for a number of keys from this map. This works on the trees of this map and of the keys, reusing subtrees
+     *  of this map that do not contain any of the keys, in O(m log(n/m + 1)) time for m keys and a map of size n with m &lt;= n.
+     *  If the keys are not an {@link ATreeSet} or an {@link ATreeMap}'s {@link #keySet()} with the same comparator, they are sorted into
+     *  a tree first.
+     *
+     * @param keys the keys whose entries are removed
+     * @return the (potentially) modified map
+     */
+    @Override public ATreeMap<K,V> minusAll (Iterable<? extends K> keys) {
+        final RedBlackTree.Tree<K,?> other = sameOrderTree(keys);
+        return withRoot(RedBlackTree.diff(root, other != null ? other : keysTreeOf(keys), comparator));
+    }
+
+    /**
+     * Removes all entries whose keys are not contained in a given collection. If the keys are an {@link ATreeSet} or an
+     *  {@link ATreeMap}'s {@link #keySet()} with the same comparator, this works on both trees in O(m log(n/m + 1)) time.
+     *
+     * @param keys the keys whose entries are retained
+     * @return the (potentially) modified map
+     */
+    @Override public ATreeMap<K,V> retainKeys (Collection<? extends K> keys) {
+        final RedBlackTree.Tree<K,?> other = sameOrderTree(keys);
+        if (other != null || keys.isEmpty()) return withRoot(RedBlackTree.intersect(root, other, comparator));
+        return filterKeys(keys::contains);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedBlackTree.Tree<K,V> treeOf (Map<? extends K, ? extends V> other) {
+        if (other instanceof ATreeMap && Objects.equals(comparator, ((ATreeMap<?,?>) other).comparator)) {
+            return ((ATreeMap<K,V>) other).root;
+        }
+        final RedBlackTree.Builder<K,V> builder = new RedBlackTree.Builder<>(comparator, true);
+        for (Map.Entry<? extends K, ? extends V> e: other.entrySet()) builder.add(e.getKey(), e.getValue());
+        return builder.build();
+    }
+
+    /**
+     * @return the tree of an {@link ATreeSet} or the key set of an {@link ATreeMap} with the same comparator as this map, or null
+     */
+    @SuppressWarnings("unchecked")
+    private RedBlackTree.Tree<K,?> sameOrderTree (Iterable<? extends K> keys) {
+        if (keys instanceof ATreeSet && Objects.equals(comparator, ((ATreeSet<?>) keys).comparator())) {
+            return ((ATreeSet<K>) keys).root();
+        }
+        if (keys instanceof AMapSupport.SortedKeySet && ((AMapSupport.SortedKeySet<?>) keys).getMap() instanceof ATreeMap) {
+            final ATreeMap<K,?> map = (ATreeMap<K, ?>) ((AMapSupport.SortedKeySet<?>) keys).getMap();
+            if (Objects.equals(comparator, map.comparator)) return map.root;
+        }
+        return null;
+    }
+
+    private RedBlackTree.Tree<K,Object> keysTreeOf (Iterable<? extends K> keys) {
+        final RedBlackTree.Builder<K,Object> builder = new RedBlackTree.Builder<>(comparator, false);
+        for (K key: keys) builder.add(key, null);
+        return builder.build();
+    }
+
+    RedBlackTree.Tree<K,V> root () {
+        return root;
+    }
+
+    private ATreeMap<K,V> withRoot (RedBlackTree.Tree<K,V> newRoot) {
+        if (newRoot == root) return this;
+        return new ATreeMap<>(newRoot, comparator);
+    }
+
+    /**
+     * Adds, replaces or removes the entry for a given key based on its current value. This traverses the tree only once, and it
+     *  returns this map itself if {@code f} returns the existing value (by identity), or no value for a missing key.
+     *
+     * @param key the key whose entry is updated
+     * @param f   the function determining the new value, or {@link AOption#none()} to remove the entry
+     * @return the (potentially) modified map
+     */
+    @Override public ATreeMap<K,V> updatedWith (K key, Function<AOption<V>, AOption<V>> f) {
+        final RedBlackTree.Tree<K,V> rootNew = RedBlackTree.updateWith(root, key, f, comparator);
+        if (rootNew == root) return this;
+        return new ATreeMap<>(rootNew, comparator);
+    }
+    /**
+     * Returns the differences between this map and another map. If the other map is an {@link ATreeMap} with the same comparator,
+     *  this traverses both trees in parallel and skips subtrees they share, so comparing two versions of a map costs time roughly
+     *  proportional to the changes rather than to the maps' size. The changes are returned in ascending key order in that case.
+     *
+     * @param other the map this map is compared with
+     * @return an iterator over the changes that turn this map into the other map
+     */
+    @Override public AIterator<AMapChange<K,V>> diff (AMap<K,V> other) {
+        if (other instanceof ATreeMap && Objects.equals(comparator, ((ATreeMap<K,V>) other).comparator)) {
+            return RedBlackTree.changesIterator(root, ((ATreeMap<K,V>) other).root, comparator, (a, b) -> {
+                if (a == null) return AMapChange.added(b.key, b.value);
+                if (b == null) return AMapChange.removed(a.key, a.value);
+                return AMapChange.changed(a.key, a.value, b.value);
+            });
+        }
+        return super.diff(other);
+    }
+
     @Override public AIterator<Entry<K,V>> iterator() {
         return RedBlackTree.iterator(root, AOption.none(), true, AOption.none(), false, comparator);
     }
 
+    /**
+     * Returns a {@link Spliterator} that splits this map at the middle of its remaining entries, using the tree's subtree
+     *  sizes. All parts' sizes are known exactly.
+     */
+    @Override public Spliterator<Entry<K,V>> spliterator () {
+        return RedBlackTree.spliterator(root, comparator);
+    }
+
     @Override public int size() {
         return RedBlackTree.count(root);
     }
 
+    /**
+     * Returns statistics on this map's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this map's red-black tree
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this map's internal structure, including the number of bytes it shares with another version of the
+     *  map (e.g. a map from which this map was derived by adding or removing entries), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the map with which shared bytes are determined
+     * @return statistics on this map's red-black tree
+     */
+    public CollectionStats stats (ATreeMap<K,V> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        RedBlackTree.registerNodes(otherVersion.root, collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        RedBlackTree.collectStats(root, collector, 0);
+        return collector.build(size());
+    }
+
     @Override public boolean contains (Object o) {
         return AMapSupport.containsEntry(this, o);
     }
@@ -393,6 +561,18 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         return AOption.some(RedBlackTree.greatest(root).entry());
     }
 
+    @Override public Entry<K, V> entryAtRank (int rank) {
+        return RedBlackTree.nth(root, rank).entry();
+    }
+
+    @Override public K getByIndex (int index) {
+        return RedBlackTree.nth(root, index).key;
+    }
+
+    @Override public int indexOf (K key) {
+        return RedBlackTree.indexOf(root, key, comparator);
+    }
+
     @Override public AIterator<K> keysIterator () {
         return keysIterator(AOption.none(), true, AOption.none(), false);
     }
@@ -466,29 +646,50 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         throw new UnsupportedOperationException("mutable operation not supported for immutable collection");
     }
 
+    /**
+     * Returns a copy of this map with the reversed comparator. This takes O(n) time: the copy's tree is the mirror image of this
+     *  map's tree, so its keys need not be sorted again.
+     */
     @Override public ATreeMap<K, V> descendingMap () {
-        return ATreeMap.from(this, comparator.reversed());
+        return new ATreeMap<>(RedBlackTree.mirrored(root), comparator.reversed());
     }
 
     @Override public ASortedSet<K> navigableKeySet () {
         return keySet();
     }
 
+    /**
+     * Returns a view of this map's keys in descending order. Creating the view takes constant time, and the view works on this map's
+     *  tree rather than copying the keys.
+     */
     @Override public ASortedSet<K> descendingKeySet () {
-        return descendingMap().keySet();
+        return new TreeMapView<>(this, AOption.none(), true, AOption.none(), false, true).keySet();
     }
 
+    /**
+     * Returns a view of this map's entries with keys in a given range. Creating the view takes O(log n) time to determine the range's
+     *  ranks, and the view works on this map's tree rather than copying the entries. Use {@link #range(AOption, boolean, AOption, boolean)}
+     *  for an {@link ATreeMap} with just these entries.
+     */
     @Override public ASortedMap<K, V> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
         if(comparator.compare(fromKey, toKey) > 0) throw new IllegalArgumentException();
-        return new ATreeMap<>(RedBlackTree.range(root, fromKey, fromInclusive, toKey, toInclusive, comparator), comparator);
+        return new TreeMapView<>(this, AOption.some(fromKey), fromInclusive, AOption.some(toKey), toInclusive, false);
     }
 
+    /**
+     * Returns a view of this map's entries with keys less than (or equal to) a given key. Creating the view takes O(log n) time, and
+     *  the view works on this map's tree rather than copying the entries.
+     */
     @Override public ASortedMap<K, V> headMap (K toKey, boolean inclusive) {
-        return new ATreeMap<>(RedBlackTree.to(root, toKey, inclusive, comparator), comparator);
+        return new TreeMapView<>(this, AOption.none(), true, AOption.some(toKey), inclusive, false);
     }
 
+    /**
+     * Returns a view of this map's entries with keys greater than (or equal to) a given key. Creating the view takes O(log n) time,
+     *  and the view works on this map's tree rather than copying the entries.
+     */
     @Override public ASortedMap<K, V> tailMap (K fromKey, boolean inclusive) {
-        return new ATreeMap<>(RedBlackTree.from(root, fromKey, inclusive, comparator), comparator);
+        return new TreeMapView<>(this, AOption.some(fromKey), inclusive, AOption.none(), false, false);
     }
 
     @Override public ASortedMap<K, V> subMap (K fromKey, K toKey) {
@@ -518,20 +719,27 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         return new Builder(comparator());
     }
 
+    /**
+     * A builder for {@link ATreeMap}. It collects entries and builds a balanced tree from them in a single step, which takes linear time
+     *  if the entries are added in ascending key order (e.g. when they are read from another sorted map or from a database query with
+     *  an {@code ORDER BY} clause), and sorts them only once otherwise. If there are several entries with the same key, the last one wins.
+     */
     public static class Builder<K,V> implements ACollectionBuilder<Map.Entry<K,V>, ATreeMap<K,V>> {
-        private ATreeMap<K,V> result;
+        private final RedBlackTree.Builder<K,V> builder;
+        private final Comparator<? super K> comparator;
 
         Builder (Comparator<? super K> comparator) {
-            this.result = ATreeMap.empty(comparator);
+            this.builder = new RedBlackTree.Builder<>(comparator, true);
+            this.comparator = comparator;
         }
 
         public Builder<K, V> add (K key, V value) {
-            result = result.plus(key, value);
+            builder.add(key, value);
             return this;
         }
 
         @Override public Builder<K, V> add (Entry<K, V> el) {
-            result = result.plus(el.getKey(), el.getValue());
+            builder.add(el.getKey(), el.getValue());
             return this;
         }
 
@@ -549,7 +757,7 @@ public class ATreeMap<K,V> extends AbstractImmutableMap<K,V> implements ASortedM
         }
 
         @Override public ATreeMap<K, V> build () {
-            return result;
+            return new ATreeMap<>(builder.build(), comparator);
         }
     }
 }
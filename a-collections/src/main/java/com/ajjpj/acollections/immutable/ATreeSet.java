@@ -3,6 +3,7 @@ package com.ajjpj.acollections.immutable;
 import com.ajjpj.acollections.*;
 import com.ajjpj.acollections.internal.ACollectionDefaults;
 import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AMapSupport;
 import com.ajjpj.acollections.internal.ASetDefaults;
 import com.ajjpj.acollections.internal.ASetSupport;
 import com.ajjpj.acollections.util.AOption;
@@ -289,26 +290,101 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return AHashSet.from(this);
     }
     @Override public ATreeSet<T> plus (T o) {
+        if (root != null && comparator.compare(o, RedBlackTree.greatest(root).key) > 0) {
+            // fast path for appending beyond the greatest element: no comparisons on the way down
+            return new ATreeSet<>(RedBlackTree.append(root, o, null), comparator);
+        }
         return new ATreeSet<>(RedBlackTree.update(root, o, null, true, comparator), comparator);
     }
     @Override public ATreeSet<T> minus (T o) {
         return new ATreeSet<>(RedBlackTree.delete(root, o, comparator), comparator);
     }
 
+    /**
+     * Returns the union of this set and another collection. If the other collection is an {@link ATreeSet} with the same comparator,
+     *  this works on both sets' trees, splitting and joining them rather than adding elements one at a time, and reusing subtrees
+     *  that do not overlap with the other set. Other collections' elements are sorted into a tree first. This takes
+     *  O(m log(n/m + 1)) time for sets of sizes m and n with m &lt;= n. For elements contained in both, the other collection's element
+     *  is used.
+     */
     @Override public ATreeSet<T> union (Iterable<? extends T> that) {
-        ATreeSet<T> result = this;
-        for (T o: that) result = result.plus(o);
-        return result;
+        final RedBlackTree.Tree<T,Object> other;
+        if (that instanceof ATreeSet && Objects.equals(comparator, ((ATreeSet<?>) that).comparator)) {
+            //noinspection unchecked
+            other = ((ATreeSet<T>) that).root;
+        }
+        else {
+            other = treeOf(that);
+        }
+        return withRoot(RedBlackTree.union(root, other, null, comparator));
     }
 
+    /**
+     * Returns the intersection of this set and another set. If the other set is an {@link ATreeSet} or the key set of an
+     *  {@link ATreeMap} with the same comparator, this works on both trees in O(m log(n/m + 1)) time for sets of sizes m and n with
+     *  m &lt;= n. Otherwise, this checks for each of this set's elements whether the other set contains it.
+     */
     @Override public ATreeSet<T> intersect (Set<T> that) {
+        final RedBlackTree.Tree<T,?> other = sameOrderTree(that);
+        if (other != null || that.isEmpty()) return withRoot(RedBlackTree.intersect(root, other, comparator));
         return filter(that::contains);
     }
 
+    /**
+     * Returns the elements of this set that are not contained in another set. This works on both sets' trees, splitting and joining
+     *  them and reusing subtrees of this set that do not overlap with the other set, in O(m log(n/m + 1)) time for sets of sizes m and
+     *  n with m &lt;= n. If the other set is not an {@link ATreeSet} or the key set of an {@link ATreeMap} with the same comparator,
+     *  its elements are sorted into a tree first.
+     */
     @Override public ATreeSet<T> diff (Set<T> that) {
-        ATreeSet<T> result = this;
-        for (T o: that) result = result.minus(o);
-        return result;
+        final RedBlackTree.Tree<T,?> other = sameOrderTree(that);
+        return withRoot(RedBlackTree.diff(root, other != null ? other : treeOf(that), comparator));
+    }
+
+    /**
+     * @return the tree of an {@link ATreeSet} or the key set of an {@link ATreeMap} with the same comparator as this set, or null
+     */
+    private RedBlackTree.Tree<T,?> sameOrderTree (Iterable<? extends T> that) {
+        if (that instanceof ATreeSet && Objects.equals(comparator, ((ATreeSet<?>) that).comparator)) {
+            //noinspection unchecked
+            return ((ATreeSet<T>) that).root;
+        }
+        if (that instanceof AMapSupport.SortedKeySet && ((AMapSupport.SortedKeySet<?>) that).getMap() instanceof ATreeMap) {
+            //noinspection unchecked
+            final ATreeMap<T,?> map = (ATreeMap<T, ?>) ((AMapSupport.SortedKeySet<?>) that).getMap();
+            if (Objects.equals(comparator, map.comparator())) return map.root();
+        }
+        return null;
+    }
+
+    private RedBlackTree.Tree<T,Object> treeOf (Iterable<? extends T> that) {
+        final RedBlackTree.Builder<T,Object> builder = new RedBlackTree.Builder<>(comparator, false);
+        for (T o: that) builder.add(o, null);
+        return builder.build();
+    }
+
+    RedBlackTree.Tree<T,Object> root () {
+        return root;
+    }
+
+    private ATreeSet<T> withRoot (RedBlackTree.Tree<T,Object> newRoot) {
+        if (newRoot == root) return this;
+        return new ATreeSet<>(newRoot, comparator);
+    }
+
+    /**
+     * Returns an iterator over all elements contained in exactly one of this set and another set, in ascending order. If the other
+     *  set is an {@link ATreeSet} with the same comparator, this traverses both trees in parallel and skips subtrees they share, so
+     *  comparing two versions of a set costs time roughly proportional to the differences rather than to the sets' size.
+     *
+     * @param that the set this set is compared with
+     * @return an iterator over the elements contained in exactly one of the sets
+     */
+    @Override public AIterator<T> symmetricDiff (Set<T> that) {
+        if (that instanceof ATreeSet && Objects.equals(comparator, ((ATreeSet<T>) that).comparator)) {
+            return RedBlackTree.changesIterator(root, ((ATreeSet<T>) that).root, comparator, (a, b) -> a != null ? a.key : b.key);
+        }
+        return ASetDefaults.super.symmetricDiff(that);
     }
 
     @Override public int countInRange (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
@@ -356,6 +432,14 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return raw == null ? AOption.none() : AOption.some(raw.key);
     }
 
+    @Override public T getByIndex (int index) {
+        return RedBlackTree.nth(root, index).key;
+    }
+
+    @Override public int indexOf (T o) {
+        return RedBlackTree.indexOf(root, o, comparator);
+    }
+
     @Override public AIterator<T> iterator (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
         return RedBlackTree.keysIterator(root, from, fromInclusive, to, toInclusive, comparator);
     }
@@ -364,6 +448,14 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return RedBlackTree.keysIterator(root, AOption.none(), true, AOption.none(), false, comparator);
     }
 
+    /**
+     * Returns a {@link Spliterator} that splits this set at the middle of its remaining elements, using the tree's subtree
+     *  sizes. All parts' sizes are known exactly.
+     */
+    @Override public Spliterator<T> spliterator () {
+        return RedBlackTree.keysSpliterator(root, comparator);
+    }
+
     @Override public <U> ACollectionBuilder<U, ATreeSet<U>> newBuilder () {
         //noinspection unchecked
         return new Builder<U>((Comparator) comparator); //TODO this is somewhat hacky - better way?
@@ -401,6 +493,33 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return RedBlackTree.count(root);
     }
 
+    /**
+     * Returns statistics on this set's internal structure, see {@link CollectionStats}.
+     *
+     * @return statistics on this set's red-black tree
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this set's internal structure, including the number of bytes it shares with another version of the
+     *  set (e.g. a set from which this set was derived by adding or removing elements), see {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the set with which shared bytes are determined
+     * @return statistics on this set's red-black tree
+     */
+    public CollectionStats stats (ATreeSet<T> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        RedBlackTree.registerNodes(otherVersion.root, collector);
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        RedBlackTree.collectStats(root, collector, 0);
+        return collector.build(size());
+    }
+
     @Override public boolean contains (Object o) {
         //noinspection unchecked
         return RedBlackTree.lookup(root, (T) o, comparator) != null;
@@ -418,16 +537,26 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return ACollectionDefaults.super.containsAll(c);
     }
 
-    @Override public ATreeSet<T> subSet (T fromElement, T toElement) {
-        return (ATreeSet<T>) ASortedSet.super.subSet(fromElement, toElement);
+    /**
+     * Returns a view of this set's elements in a given range, like {@link #subSet(Object, boolean, Object, boolean)}. Use
+     *  {@link #range(AOption, boolean, AOption, boolean)} for an {@link ATreeSet} with just these elements.
+     */
+    @Override public ASortedSet<T> subSet (T fromElement, T toElement) {
+        return view(AOption.some(fromElement), true, AOption.some(toElement), false, false);
     }
 
-    @Override public ATreeSet<T> headSet (T toElement) {
-        return (ATreeSet<T>) ASortedSet.super.headSet(toElement);
+    /**
+     * Returns a view of this set's elements that are less than a given element, like {@link #headSet(Object, boolean)}.
+     */
+    @Override public ASortedSet<T> headSet (T toElement) {
+        return view(AOption.none(), true, AOption.some(toElement), false, false);
     }
 
-    @Override public ATreeSet<T> tailSet (T fromElement) { //TODO test this
-        return (ATreeSet<T>) ASortedSet.super.tailSet(fromElement);
+    /**
+     * Returns a view of this set's elements that are greater than or equal to a given element, like {@link #tailSet(Object, boolean)}.
+     */
+    @Override public ASortedSet<T> tailSet (T fromElement) {
+        return view(AOption.some(fromElement), true, AOption.none(), false, false);
     }
 
     //TODO test these
@@ -461,24 +590,48 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         throw new UnsupportedOperationException("mutable operation on an immutable collection");
     }
 
+    /**
+     * Returns a view of this set in descending order. This takes constant time, and the view works on this set's tree rather than
+     *  copying it.
+     */
     @Override public ASortedSet<T> descendingSet () {
-        return ATreeSet.from(this, comparator.reversed());
+        return view(AOption.none(), true, AOption.none(), false, true);
     }
 
     @Override public AIterator<T> descendingIterator () {
         return RedBlackTree.reverseKeysIterator(root, AOption.none(), true, AOption.none(), false, comparator);
     }
 
+    /**
+     * Returns a view of this set's elements in a given range. Creating the view takes O(log n) time to determine the range's ranks,
+     *  and the view works on this set's tree rather than copying the elements.
+     */
     @Override public ASortedSet<T> subSet (T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
-        return new ATreeSet<>(RedBlackTree.range(root, fromElement, fromInclusive, toElement, toInclusive, comparator), comparator);
+        return view(AOption.some(fromElement), fromInclusive, AOption.some(toElement), toInclusive, false);
     }
 
+    /**
+     * Returns a view of this set's elements that are less than (or equal to) a given element. Creating the view takes O(log n) time,
+     *  and the view works on this set's tree rather than copying the elements.
+     */
     @Override public ASortedSet<T> headSet (T toElement, boolean inclusive) {
-        return new ATreeSet<>(RedBlackTree.to(root, toElement, inclusive, comparator), comparator);
+        return view(AOption.none(), true, AOption.some(toElement), inclusive, false);
     }
 
+    /**
+     * Returns a view of this set's elements that are greater than (or equal to) a given element. Creating the view takes O(log n)
+     *  time, and the view works on this set's tree rather than copying the elements.
+     */
     @Override public ASortedSet<T> tailSet (T fromElement, boolean inclusive) {
-        return new ATreeSet<>(RedBlackTree.from(root, fromElement, inclusive, comparator), comparator);
+        return view(AOption.some(fromElement), inclusive, AOption.none(), false, false);
+    }
+
+    /**
+     * A set view is the key set of a map view, both sharing this set's tree
+     */
+    private ASortedSet<T> view (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive, boolean descending) {
+        final ATreeMap<T,Object> map = new ATreeMap<>(root, comparator);
+        return new AMapSupport.SortedKeySet<>(new TreeMapView<>(map, from, fromInclusive, to, toInclusive, descending));
     }
 
     /**
@@ -499,21 +652,26 @@ public class ATreeSet<T> extends AbstractImmutableCollection<T> implements ASort
         return Collector.of(supplier, accumulator, combiner, finisher);
     }
 
+    /**
+     * A builder for {@link ATreeSet}. It collects elements and builds a balanced tree from them in a single step, which takes linear time
+     *  if the elements are added in ascending order, and sorts them only once otherwise.
+     */
     public static class Builder<T> implements ACollectionBuilder<T,ATreeSet<T>> {
-        private RedBlackTree.Tree<T,Object> root = null;
+        private final RedBlackTree.Builder<T,Object> builder;
         private final Comparator<? super T> comparator;
 
         public Builder (Comparator<? super T> comparator) {
+            this.builder = new RedBlackTree.Builder<>(comparator, false);
             this.comparator = comparator;
         }
 
         @Override public ACollectionBuilder<T, ATreeSet<T>> add (T el) {
-            root = RedBlackTree.update(root, el, null, true, comparator);
+            builder.add(el, null);
             return this;
         }
 
         @Override public ATreeSet<T> build () {
-            return new ATreeSet<>(root, comparator);
+            return new ATreeSet<>(builder.build(), comparator);
         }
     }
 }
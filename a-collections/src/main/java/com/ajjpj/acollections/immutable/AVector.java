@@ -22,7 +22,11 @@ import java.util.stream.Collector;
  *  instance.
  *
  * <p> So instances of this class rely on methods like {@link #prepend(Object)}, {@link #append(Object)}, {@link #tail()}, {@link #withoutLast()}
- *  or {@link #updated(int, Object)} for adding / removing / modifying entries. For examples, see {@link AList}.
+ *  or {@link #updated(int, Object)} for adding / removing / modifying entries. For examples, see {@link AList}. For applying a batch
+ *  of modifications, {@link #withMutations(Consumer)} is more efficient because it does not copy arrays for every single modification.
+ *  For lists that are frequently concatenated, split or modified in the middle, {@link ARrbVector} is the better alternative: it
+ *  does these in O(log n) rather than O(n) time. For large vectors of {@code int}, {@code long} or {@code double} values,
+ *  {@link AIntVector}, {@link ALongVector} and {@link ADoubleVector} store the elements without boxing them.
  *
  * <p> Implementation note: This class is ported from Scala's standard library 'Vector'. It is backed by a little
  *  endian bit-mapped vector trie with a branching factor of 32.  Locality is very good, but not
@@ -192,7 +196,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         return this;
     }
 
-    private final VectorPointer<T> pointer = new VectorPointer<T>();
+    private final VectorPointer<T> pointer;
 
     private final int startIndex;
     private final int endIndex;
@@ -201,9 +205,32 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
     private boolean dirty = false;
 
     AVector (int startIndex, int endIndex, int focus) {
+        this(startIndex, endIndex, focus, new VectorPointer<>());
+    }
+
+    private AVector (int startIndex, int endIndex, int focus, VectorPointer<T> pointer) {
         this.startIndex = startIndex;
         this.endIndex = endIndex;
         this.focus = focus;
+        this.pointer = pointer;
+    }
+
+    /**
+     * Creates a vector that is derived from this vector by appending, prepending or updating elements. Its pointer is of the same
+     *  kind as this vector's pointer, so vectors derived inside a {@link Transient} copy only arrays the transient does not own.
+     */
+    private AVector<T> derived (int startIndex, int endIndex, int focus) {
+        return new AVector<>(startIndex, endIndex, focus, pointer.newPointer());
+    }
+
+    /**
+     * @return a copy of this vector that uses a given pointer, sharing all arrays with this vector
+     */
+    private AVector<T> withPointer (VectorPointer<T> pointer) {
+        final AVector<T> result = new AVector<>(startIndex, endIndex, focus, pointer);
+        result.pointer.initFrom(this.pointer);
+        result.dirty = dirty;
+        return result;
     }
 
     @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
@@ -215,6 +242,73 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         return AListSupport.hashCode(this);
     }
 
+    /**
+     * Returns statistics on this vector's internal structure, see {@link CollectionStats}. The nodes are the vector's arrays:
+     *  'leaf' arrays holding elements and 'branch' arrays holding other arrays. Vectors created by dropping or taking elements
+     *  retain all arrays of the original vector that they still share.
+     *
+     * @return statistics on this vector's arrays
+     */
+    public CollectionStats stats () {
+        return stats(new CollectionStats.Collector());
+    }
+
+    /**
+     * Returns statistics on this vector's internal structure, including the number of bytes it shares with another version of
+     *  the vector (e.g. a vector from which this vector was derived by appending or updating elements), see
+     *  {@link CollectionStats#sharedBytes()}.
+     *
+     * @param otherVersion the vector with which shared bytes are determined
+     * @return statistics on this vector's arrays
+     */
+    public CollectionStats stats (AVector<T> otherVersion) {
+        final CollectionStats.Collector collector = new CollectionStats.Collector();
+        otherVersion.forEachArray((arr, level, depth) -> collector.registerOtherVersionNode(arr));
+        return stats(collector);
+    }
+
+    private CollectionStats stats (CollectionStats.Collector collector) {
+        forEachArray((arr, level, depth) -> {
+            if (level == 0) {
+                collector.addNode(arr, "leaf", depth, arr.length, CollectionStats.arrayBytes(arr.length));
+            }
+            else {
+                int numChildren = 0;
+                for (Object child: arr) if (child != null) numChildren += 1;
+                collector.addNode(arr, "branch", depth, numChildren, CollectionStats.arrayBytes(arr.length));
+            }
+        });
+        return collector.build(size());
+    }
+
+    private interface ArrayVisitor {
+        void visit(Object[] arr, int level, int depth);
+    }
+
+    /**
+     * Visits each array reachable from this vector exactly once. Starting at the top-level display is not sufficient because the
+     *  displays on the path to the focus may not be linked from their parents yet.
+     */
+    private void forEachArray(ArrayVisitor visitor) {
+        if (pointer.depth == 0) return;
+
+        final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Object[][] displays = {pointer.display0, pointer.display1, pointer.display2, pointer.display3, pointer.display4, pointer.display5};
+        for (int level=pointer.depth-1; level>=0; level--) {
+            forEachArray(displays[level], level, pointer.depth-1 - level, visitor, visited);
+        }
+    }
+    private static void forEachArray(Object[] arr, int level, int depth, ArrayVisitor visitor, Set<Object> visited) {
+        if (arr == null || !visited.add(arr)) return;
+
+        visitor.visit(arr, level, depth);
+        if (level > 0) {
+            for (Object child: arr) {
+                forEachArray((Object[]) child, level-1, depth+1, visitor, visited);
+            }
+        }
+    }
+
     @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder() {
         return builder();
     }
@@ -231,18 +325,89 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         return endIndex - startIndex;
     }
 
-    private void initIterator(Itr<T> s) {
+    private void initIterator(VectorPointer<T> s, int from) {
         s.initFrom(pointer);
         if (dirty) s.stabilize(focus);
-        if (s.depth > 1) s.gotoPos(startIndex, startIndex ^ focus);
+        if (s.depth > 1) s.gotoPos(from, from ^ focus);
     }
 
     @Override public AIterator<T> iterator() {
         final Itr<T> s = new Itr<T>(startIndex, endIndex);
-        initIterator(s);
+        initIterator(s, startIndex);
         return s;
     }
 
+    /**
+     * @return a {@link LeafItr} positioned at this vector's first leaf; must only be called for non-empty vectors
+     */
+    private LeafItr<T> leafIterator() {
+        final LeafItr<T> s = new LeafItr<>(startIndex, endIndex);
+        initIterator(s, startIndex);
+        return s;
+    }
+
+    /**
+     * Returns a {@link Spliterator} that splits this AVector's index range at leaf block boundaries, so each part traverses its own
+     *  leaf arrays. All parts' sizes are known exactly.
+     */
+    @Override public Spliterator<T> spliterator () {
+        return new VectorSpliterator(startIndex, endIndex);
+    }
+
+    private class VectorSpliterator implements Spliterator<T> {
+        private int from;
+        private final int to;
+        private Itr<T> itr; // created lazily when traversal starts
+
+        VectorSpliterator (int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override public Spliterator<T> trySplit () {
+            if (itr != null) return null;
+
+            final int mid = (from + (to - from) / 2) & ~31;
+            if (mid <= from) return null;
+
+            final VectorSpliterator prefix = new VectorSpliterator(from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        private Itr<T> itr() {
+            if (itr == null) {
+                itr = new Itr<>(from, to);
+                if (from < to) initIterator(itr, from);
+            }
+            return itr;
+        }
+
+        @Override public boolean tryAdvance (Consumer<? super T> action) {
+            final Itr<T> itr = itr();
+            if (! itr.hasNext()) return false;
+            from += 1;
+            action.accept(itr.next());
+            return true;
+        }
+
+        @Override public void forEachRemaining (Consumer<? super T> action) {
+            final Itr<T> itr = itr();
+            while (itr.hasNext()) {
+                action.accept(itr.next());
+            }
+            from = to;
+        }
+
+        @Override public long estimateSize () {
+            return to - from;
+        }
+
+        @Override public int characteristics () {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+        }
+    }
+
     /**
      *
      * Without knowing that's size, we have now way to determine whether element-wise appending is faster than rebuilding the AVector or not.
@@ -299,15 +464,89 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         };
     }
 
+    /**
+     * Applies a function to this vector's elements, walking the leaf arrays directly rather than going through an iterator and a
+     *  builder. The result has the same offset in its first leaf as this vector, so every leaf is mapped to a pre-sized destination
+     *  leaf of identical shape.
+     */
     @Override public <U> AVector<U> map (Function<T, U> f) {
-        return ACollectionSupport.map(newBuilder(), this, f);
+        if (isEmpty()) return empty();
+
+        final LeafItr<T> src = leafIterator();
+        final VectorPointer<U> dest = new VectorPointer<>();
+        dest.depth = 1;
+        dest.display0 = new Object[32];
+        int destBlockIndex = 0;
+
+        while (true) {
+            final Object[] srcLeaf = src.display0;
+            final Object[] destLeaf = dest.display0;
+            for (int i=src.from; i<src.to; i++) {
+                //noinspection unchecked
+                destLeaf[i] = f.apply((T) srcLeaf[i]);
+            }
+            if (! src.hasNextLeaf()) break;
+            src.nextLeaf();
+            final int newBlockIndex = destBlockIndex + 32;
+            dest.gotoNextBlockStartWritable(newBlockIndex, destBlockIndex ^ newBlockIndex);
+            destBlockIndex = newBlockIndex;
+        }
+
+        final int newStartIndex = startIndex & 31;
+        final AVector<U> s = new AVector<>(newStartIndex, newStartIndex + size(), 0);
+        s.pointer.initFrom(dest);
+        if (dest.depth > 1) s.pointer.gotoPos(0, destBlockIndex);
+        return s;
     }
     @Override public <U> AVector<U> flatMap(Function<T, Iterable<U>> f) {
         return ACollectionSupport.flatMap(newBuilder(), this, f);
     }
 
+    /**
+     * Returns the elements matching a predicate. This walks the leaf arrays directly, copying runs of matching elements with
+     *  {@link System#arraycopy(Object, int, Object, int, int)}. If all elements match, this vector is returned.
+     */
+    @Override public AVector<T> filter (Predicate<T> f) {
+        if (isEmpty()) return this;
+
+        final Builder<T> builder = builder();
+        boolean removedAny = false;
+
+        final LeafItr<T> src = leafIterator();
+        while (true) {
+            final Object[] leaf = src.display0;
+            int runStart = src.from;
+            for (int i=src.from; i<src.to; i++) {
+                //noinspection unchecked
+                if (! f.test((T) leaf[i])) {
+                    builder.addAll(leaf, runStart, i);
+                    runStart = i+1;
+                    removedAny = true;
+                }
+            }
+            builder.addAll(leaf, runStart, src.to);
+            if (! src.hasNextLeaf()) break;
+            src.nextLeaf();
+        }
+        return removedAny ? builder.build() : this;
+    }
+
     @Override public <U> AVector<U> collect (Predicate<T> filter, Function<T, U> f) {
-        return ACollectionSupport.collect(newBuilder(), this, filter, f);
+        if (isEmpty()) return empty();
+
+        final Builder<U> builder = builder();
+        final LeafItr<T> src = leafIterator();
+        while (true) {
+            final Object[] leaf = src.display0;
+            for (int i=src.from; i<src.to; i++) {
+                //noinspection unchecked
+                final T o = (T) leaf[i];
+                if (filter.test(o)) builder.add(f.apply(o));
+            }
+            if (! src.hasNextLeaf()) break;
+            src.nextLeaf();
+        }
+        return builder.build();
     }
 
     @Override public boolean addAll (int index, Collection<? extends T> c) {
@@ -326,10 +565,19 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         throw new UnsupportedOperationException();
     }
 
-    @Override public List<T> subList (int fromIndex, int toIndex) {
-        if (fromIndex>toIndex || toIndex>size() || fromIndex<0)
-            throw new IndexOutOfBoundsException();
-        return dropRight(size()-toIndex).takeRight(toIndex-fromIndex); //TODO return a lazily materialized view
+    /**
+     * Returns a read-only view on a range of this vector's elements in O(1) time, without copying them. Operations that create a
+     *  structurally different list from the view (like {@link AList#append(Object)}) copy the view's elements into a new AVector.
+     */
+    @Override public AList<T> subList (int fromIndex, int toIndex) {
+        return AListSupport.subList(this, fromIndex, toIndex);
+    }
+
+    /**
+     * Returns a vector with a range of this vector's elements. The result shares this vector's arrays except those at its edges.
+     */
+    @Override public AVector<T> slice (int from, int to) {
+        return drop(Math.max(from, 0)).take(to - Math.max(from, 0));
     }
 
     // Ideally, clients will inline calls to map all the way down, including the iterator/builder methods.
@@ -381,7 +629,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
 
     @Override public AVector<T> updated(int index, T elem) {
         final int idx = checkRangeConvert(index);
-        final AVector<T> s = new AVector<>(startIndex, endIndex, idx);
+        final AVector<T> s = derived(startIndex, endIndex, idx);
         s.pointer.initFrom(pointer);
         s.dirty = dirty;
         s.gotoPosWritable(focus, idx, focus ^ idx);  // if dirty commit changes; go to new pos and prepare for writing
@@ -414,7 +662,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             final int lo = (startIndex - 1) & 31;
 
             if (startIndex != blockIndex + 32) {
-                final AVector<T> s = new AVector<>(startIndex - 1, endIndex, blockIndex);
+                final AVector<T> s = derived(startIndex - 1, endIndex, blockIndex);
                 s.pointer.initFrom(pointer);
                 s.dirty = dirty;
                 s.gotoPosWritable(focus, blockIndex, focus ^ blockIndex);
@@ -431,7 +679,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                     if (pointer.depth > 1) {
                         final int newBlockIndex = blockIndex + shift;
                         final int newFocus = focus + shift;
-                        final AVector<T> s = new AVector<>(startIndex - 1 + shift, endIndex + shift, newBlockIndex);
+                        final AVector<T> s = derived(startIndex - 1 + shift, endIndex + shift, newBlockIndex);
                         s.pointer.initFrom(pointer);
                         s.dirty = dirty;
                         s.shiftTopLevel(0, shiftBlocks); // shift right by n blocks
@@ -442,7 +690,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                         final int newBlockIndex = blockIndex + 32;
                         final int newFocus = focus;
 
-                        final AVector<T> s = new AVector<>(startIndex - 1 + shift, endIndex + shift, newBlockIndex);
+                        final AVector<T> s = derived(startIndex - 1 + shift, endIndex + shift, newBlockIndex);
                         s.pointer.initFrom(pointer);
                         s.dirty = dirty;
                         s.shiftTopLevel(0, shiftBlocks); // shift right by n elements
@@ -457,7 +705,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                     final int newBlockIndex = blockIndex + move;
                     final int newFocus = focus + move;
 
-                    final AVector<T> s = new AVector<>(startIndex - 1 + move, endIndex + move, newBlockIndex);
+                    final AVector<T> s = derived(startIndex - 1 + move, endIndex + move, newBlockIndex);
                     s.pointer.initFrom(pointer);
                     s.dirty = dirty;
                     s.gotoFreshPosWritable(newFocus, newBlockIndex, newFocus ^ newBlockIndex); // could optimize: we know it will create a whole branch
@@ -466,7 +714,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                 } else {
                     final int newFocus = focus;
 
-                    final AVector<T> s = new AVector<>(startIndex - 1, endIndex, blockIndex);
+                    final AVector<T> s = derived(startIndex - 1, endIndex, blockIndex);
                     s.pointer.initFrom(pointer);
                     s.dirty = dirty;
                     s.gotoFreshPosWritable(newFocus, blockIndex, newFocus ^ blockIndex);
@@ -477,9 +725,9 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             }
         } else {
             // empty vector, just insert single element at the back
-            final Object[] elems = new Object[32];
+            final Object[] elems = pointer.newArray();
             elems[31] = value;
-            final AVector<T> s = new AVector<>(31, 32, 0);
+            final AVector<T> s = derived(31, 32, 0);
             s.pointer.depth = 1;
             s.pointer.display0 = elems;
             return s;
@@ -492,7 +740,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             int lo = endIndex & 31;
 
             if (endIndex != blockIndex) {
-                final AVector<T> s = new AVector<>(startIndex, endIndex + 1, blockIndex);
+                final AVector<T> s = derived(startIndex, endIndex + 1, blockIndex);
                 s.pointer.initFrom(pointer);
                 s.dirty = dirty;
                 s.gotoPosWritable(focus, blockIndex, focus ^ blockIndex);
@@ -506,7 +754,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                     if (pointer.depth > 1) {
                         final int newBlockIndex = blockIndex - shift;
                         final int newFocus = focus - shift;
-                        final AVector<T> s = new AVector<>(startIndex - shift, endIndex + 1 - shift, newBlockIndex);
+                        final AVector<T> s = derived(startIndex - shift, endIndex + 1 - shift, newBlockIndex);
                         s.pointer.initFrom(pointer);
                         s.dirty = dirty;
                         s.shiftTopLevel(shiftBlocks, 0); // shift left by n blocks
@@ -517,7 +765,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                         final int newBlockIndex = blockIndex - 32;
                         final int newFocus = focus;
 
-                        final AVector<T> s = new AVector<>(startIndex - shift, endIndex + 1 - shift, newBlockIndex);
+                        final AVector<T> s = derived(startIndex - shift, endIndex + 1 - shift, newBlockIndex);
                         s.pointer.initFrom(pointer);
                         s.dirty = dirty;
                         s.shiftTopLevel(shiftBlocks, 0); // shift right by n elements
@@ -528,7 +776,7 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                 } else {
                     final int newFocus = focus;
 
-                    final AVector<T> s = new AVector<>(startIndex, endIndex + 1, blockIndex);
+                    final AVector<T> s = derived(startIndex, endIndex + 1, blockIndex);
                     s.pointer.initFrom(pointer);
                     s.dirty = dirty;
                     s.gotoFreshPosWritable(newFocus, blockIndex, newFocus ^ blockIndex);
@@ -538,9 +786,9 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
                 }
             }
         } else {
-            final Object[] elems = new Object[32];
+            final Object[] elems = pointer.newArray();
             elems[0] = value;
-            final AVector<T> s = new AVector<>(0, 1, 0);
+            final AVector<T> s = derived(0, 1, 0);
             s.pointer.depth = 1;
             s.pointer.display0 = elems;
             return s;
@@ -777,6 +1025,36 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
     }
 
 
+    /**
+     * Walks a vector's leaf arrays for bulk operations. {@link #display0} is the current leaf, and {@link #from} (inclusive) and
+     *  {@link #to} (exclusive) are the range of its elements that are part of the vector.
+     */
+    static class LeafItr<T> extends VectorPointer<T> {
+        private final int endIndex;
+        private int blockIndex;
+        int from;
+        int to;
+
+        LeafItr (int startIndex, int endIndex) {
+            this.endIndex = endIndex;
+            blockIndex = startIndex & ~31;
+            from = startIndex & 31;
+            to = Math.min(endIndex - blockIndex, 32);
+        }
+
+        boolean hasNextLeaf() {
+            return blockIndex + 32 < endIndex;
+        }
+
+        void nextLeaf() {
+            final int newBlockIndex = blockIndex + 32;
+            gotoNextBlockStart(newBlockIndex, blockIndex ^ newBlockIndex);
+            blockIndex = newBlockIndex;
+            from = 0;
+            to = Math.min(endIndex - blockIndex, 32);
+        }
+    }
+
     static class VectorPointer<T> implements Serializable {
         int depth = 0;
         Object[] display0 = null;
@@ -976,6 +1254,20 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             }
         }
 
+        /**
+         * @return a new, empty pointer of the same kind as this pointer
+         */
+        VectorPointer<T> newPointer() {
+            return new VectorPointer<>();
+        }
+
+        /**
+         * @return a new array for a freshly created block or branch
+         */
+        Object[] newArray() {
+            return new Object[32];
+        }
+
         // STUFF BELOW USED BY APPEND / UPDATE
         public Object[] copyOf(Object[] a) {
             final Object[] result = new Object[32];
@@ -1167,72 +1459,72 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             }
             else if (xor < (1 << 10)) { // level = 1
                 if (depth == 1) {
-                    display1 = new Object[32];
+                    display1 = newArray();
                     display1[(oldIndex >> 5) & 31] = display0;
                     depth += 1;
                 }
-                display0 = new Object[32];
+                display0 = newArray();
             }
             else if (xor < (1 << 15)) { // level = 2
                 if (depth == 2) {
-                    display2 = new Object[32];
+                    display2 = newArray();
                     display2[(oldIndex >> 10) & 31] = display1;
                     depth += 1;
                 }
                 display1 = (Object[]) display2[(newIndex >> 10) & 31];
-                if (display1 == null) display1 = new Object[32];
-                display0 = new Object[32];
+                if (display1 == null) display1 = newArray();
+                display0 = newArray();
             }
             else if (xor < (1 << 20)) { // level = 3
                 if (depth == 3) {
-                    display3 = new Object[32];
+                    display3 = newArray();
                     display3[(oldIndex >> 15) & 31] = display2;
-                    display2 = new Object[32];
-                    display1 = new Object[32];
+                    display2 = newArray();
+                    display1 = newArray();
                     depth += 1;
                 }
                 display2 = (Object[]) display3[(newIndex >> 15) & 31];
-                if (display2 == null) display2 = new Object[32];
+                if (display2 == null) display2 = newArray();
                 display1 = (Object[]) display2[(newIndex >> 10) & 31];
-                if (display1 == null) display1 = new Object[32];
-                display0 = new Object[32];
+                if (display1 == null) display1 = newArray();
+                display0 = newArray();
             }
             else if (xor < (1 << 25)) { // level = 4
                 if (depth == 4) {
-                    display4 = new Object[32];
+                    display4 = newArray();
                     display4[(oldIndex >> 20) & 31] = display3;
-                    display3 = new Object[32];
-                    display2 = new Object[32];
-                    display1 = new Object[32];
+                    display3 = newArray();
+                    display2 = newArray();
+                    display1 = newArray();
                     depth += 1;
                 }
                 display3 = (Object[]) display4[(newIndex >> 20) & 31];
-                if (display3 == null) display3 = new Object[32];
+                if (display3 == null) display3 = newArray();
                 display2 = (Object[]) display3[(newIndex >> 15) & 31];
-                if (display2 == null) display2 = new Object[32];
+                if (display2 == null) display2 = newArray();
                 display1 = (Object[]) display2[(newIndex >> 10) & 31];
-                if (display1 == null) display1 = new Object[32];
-                display0 = new Object[32];
+                if (display1 == null) display1 = newArray();
+                display0 = newArray();
             }
             else if (xor < (1 << 30)) { // level = 5
                 if (depth == 5) {
-                    display5 = new Object[32];
+                    display5 = newArray();
                     display5[(oldIndex >> 25) & 31] = display4;
-                    display4 = new Object[32];
-                    display3 = new Object[32];
-                    display2 = new Object[32];
-                    display1 = new Object[32];
+                    display4 = newArray();
+                    display3 = newArray();
+                    display2 = newArray();
+                    display1 = newArray();
                     depth += 1;
                 }
                 display4 = (Object[]) display5[(newIndex >> 25) & 31];
-                if (display4 == null) display4 = new Object[32];
+                if (display4 == null) display4 = newArray();
                 display3 = (Object[]) display4[(newIndex >> 20) & 31];
-                if (display3 == null) display3 = new Object[32];
+                if (display3 == null) display3 = newArray();
                 display2 = (Object[]) display3[(newIndex >> 15) & 31];
-                if (display2 == null) display2 = new Object[32];
+                if (display2 == null) display2 = newArray();
                 display1 = (Object[]) display2[(newIndex >> 10) & 31];
-                if (display1 == null) display1 = new Object[32];
-                display0 = new Object[32];
+                if (display1 == null) display1 = newArray();
+                display0 = newArray();
             }
             else { // level = 6
                 throw new IllegalArgumentException();
@@ -1247,6 +1539,32 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
         }
     }
 
+    /**
+     * Returns a {@link Transient} for appending, prepending and updating a batch of elements, starting with this vector's elements.
+     *  See {@link Transient} for details.
+     *
+     * @return a new {@link Transient} based on this vector
+     */
+    public Transient<T> toTransient () {
+        return new Transient<>(this);
+    }
+
+    /**
+     * Applies a batch of modifications to a {@link Transient} based on this vector, and returns the resulting vector. This is more
+     *  efficient than calling {@link #append(Object)}, {@link #prepend(Object)} or {@link #updated(int, Object)} repeatedly
+     *  because the modifications work on arrays owned by the transient in place rather than copying them:
+     *
+     * <p> {@code AVector<String> log = events.withMutations(t -> { for (Event e: batch) t.append(e.toString()); });}
+     *
+     * @param f the modifications
+     * @return a vector with the modifications applied
+     */
+    public AVector<T> withMutations (Consumer<Transient<T>> f) {
+        final Transient<T> t = toTransient();
+        f.accept(t);
+        return t.toVector();
+    }
+
     /**
      * Returns a {@link Collector} to collect {@link java.util.stream.Stream} elements into an AVector.
      *
@@ -1305,6 +1623,28 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             return this;
         }
 
+        /**
+         * Adds a range of an array's elements, copying them with {@link System#arraycopy(Object, int, Object, int, int)} rather
+         *  than one by one.
+         */
+        Builder<T> addAll(Object[] src, int from, int to) {
+            if (wasBuilt) throw new IllegalStateException();
+
+            while (from < to) {
+                if (lo >= pointer.display0.length) {
+                    int newBlockIndex = blockIndex + 32;
+                    pointer.gotoNextBlockStartWritable(newBlockIndex, blockIndex ^ newBlockIndex);
+                    blockIndex = newBlockIndex;
+                    lo = 0;
+                }
+                final int n = Math.min(to - from, pointer.display0.length - lo);
+                System.arraycopy(src, from, pointer.display0, lo, n);
+                lo += n;
+                from += n;
+            }
+            return this;
+        }
+
         public AVector<T> build() {
             if (wasBuilt) throw new IllegalStateException();
             wasBuilt = true;
@@ -1320,4 +1660,172 @@ public class AVector<T> extends AbstractImmutableCollection<T> implements AListD
             return s;
         }
     }
+
+    /**
+     * A Transient is a mutable, single-threaded view of a vector for applying a batch of modifications efficiently. Persistent
+     *  operations like {@link AVector#append(Object)} copy the arrays on the path to the modified element so that the original vector
+     *  remains unchanged. A Transient keeps track of the arrays it copied or created, and modifies those in place, so e.g. a series
+     *  of appends copies each array at most once instead of once per element.
+     *
+     * <p> {@link #toVector()} freezes the current state into a regular {@link AVector}. The Transient can be used after that, but it
+     *  does not own any arrays anymore: they are part of the returned vector, so further modifications copy them again.
+     *
+     * <p> A Transient is not thread safe, and it does not modify the vector it was created from.
+     *
+     * @param <T> the element type
+     */
+    public static class Transient<T> {
+        /**
+         * The number of arrays the transient remembers as owned. The arrays it modifies are those on the path to the current position,
+         *  so a small cache is enough. Forgetting an array only means that it is copied again when it is modified.
+         */
+        private static final int OWNED_CACHE_SIZE = 64;
+
+        private Object[][] owned = new Object[OWNED_CACHE_SIZE][];
+
+        // the current state, as in AVector
+        private VectorPointer<T> pointer;
+        private int startIndex;
+        private int endIndex;
+        private int focus;
+        private boolean dirty;
+
+        /**
+         * true if the current block is writable in place, i.e. the structure is dirty and the transient owns the block's array
+         */
+        private boolean blockWritable;
+
+        Transient (AVector<T> vector) {
+            adopt(vector.withPointer(new TransientPointer<>(this)));
+        }
+
+        Object[] own (Object[] array) {
+            owned[System.identityHashCode(array) & (OWNED_CACHE_SIZE - 1)] = array;
+            return array;
+        }
+
+        boolean owns (Object[] array) {
+            return owned[System.identityHashCode(array) & (OWNED_CACHE_SIZE - 1)] == array;
+        }
+
+        private AVector<T> current () {
+            final AVector<T> result = new AVector<>(startIndex, endIndex, focus, pointer);
+            result.dirty = dirty;
+            return result;
+        }
+
+        private void adopt (AVector<T> vector) {
+            pointer = vector.pointer;
+            startIndex = vector.startIndex;
+            endIndex = vector.endIndex;
+            focus = vector.focus;
+            dirty = vector.dirty;
+            blockWritable = dirty && pointer.display0 != null && owns(pointer.display0);
+        }
+
+        public int size () {
+            return endIndex - startIndex;
+        }
+
+        public boolean isEmpty () {
+            return endIndex == startIndex;
+        }
+
+        public T get (int index) {
+            final int idx = index + startIndex;
+            if (index < 0 || idx >= endIndex) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return pointer.getElem(idx, idx ^ focus);
+        }
+
+        public Transient<T> append (T value) {
+            final int blockIndex = endIndex & ~31;
+            if (blockWritable && endIndex != blockIndex && (focus ^ blockIndex) < 32) {
+                // same as AVector.append(), but writing the current block in place
+                pointer.display0[endIndex & 31] = value;
+                endIndex += 1;
+                focus = blockIndex;
+            }
+            else {
+                adopt(current().append(value));
+            }
+            return this;
+        }
+
+        public Transient<T> appendAll (Iterable<? extends T> values) {
+            for (T o: values) append(o);
+            return this;
+        }
+
+        public Transient<T> prepend (T value) {
+            final int blockIndex = (startIndex - 1) & ~31;
+            if (blockWritable && startIndex != endIndex && startIndex != blockIndex + 32 && (focus ^ blockIndex) < 32) {
+                pointer.display0[(startIndex - 1) & 31] = value;
+                startIndex -= 1;
+                focus = blockIndex;
+            }
+            else {
+                adopt(current().prepend(value));
+            }
+            return this;
+        }
+
+        /**
+         * Replaces the element at a given index.
+         *
+         * @param index the index
+         * @param value the new element
+         * @return this Transient
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public Transient<T> set (int index, T value) {
+            final int idx = index + startIndex;
+            if (index < 0 || idx >= endIndex) throw new IndexOutOfBoundsException(String.valueOf(index));
+            if (blockWritable && (focus ^ idx) < 32) {
+                pointer.display0[idx & 31] = value;
+                focus = idx;
+            }
+            else {
+                adopt(current().updated(index, value));
+            }
+            return this;
+        }
+
+        /**
+         * Returns the current elements as a regular {@link AVector}. After this call, the Transient does not own any arrays so that
+         *  further modifications do not affect the returned vector.
+         *
+         * @return the current elements as a vector
+         */
+        public AVector<T> toVector () {
+            owned = new Object[OWNED_CACHE_SIZE][];
+            blockWritable = false;
+            if (isEmpty()) return empty();
+            return current().withPointer(new VectorPointer<>());
+        }
+    }
+
+    /**
+     * A pointer for vectors inside a {@link Transient}, copying only arrays that the transient does not own yet and registering
+     *  all arrays it copies or creates as owned.
+     */
+    private static class TransientPointer<T> extends VectorPointer<T> {
+        private final Transient<T> owner;
+
+        TransientPointer (Transient<T> owner) {
+            this.owner = owner;
+        }
+
+        @Override VectorPointer<T> newPointer () {
+            return new TransientPointer<>(owner);
+        }
+
+        @Override Object[] newArray () {
+            return owner.own(super.newArray());
+        }
+
+        @Override public Object[] copyOf (Object[] a) {
+            if (owner.owns(a)) return a;
+            return owner.own(super.copyOf(a));
+        }
+    }
 }
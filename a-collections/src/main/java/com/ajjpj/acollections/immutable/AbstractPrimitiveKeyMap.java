@@ -0,0 +1,117 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AMapSupport;
+
+import java.util.AbstractMap;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * The functionality {@link AIntHashMap} and {@link ALongHashMap} share: everything that does not depend on the primitive key type
+ *  beyond boxing keys.
+ *
+ * @param <K> the boxed key type
+ * @param <V> the value type
+ * @param <A> the trie's key array type
+ */
+abstract class AbstractPrimitiveKeyMap<K,V,A> extends AbstractImmutableMap<K,V> {
+    static final Object NOT_FOUND = new Object();
+
+    final CompactPrimitiveMap<A,V> root;
+
+    AbstractPrimitiveKeyMap (CompactPrimitiveMap<A,V> root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the boxed representation of a key stored in the trie
+     */
+    abstract K boxKey (long key);
+
+    @Override public int size () {
+        return root.size();
+    }
+
+    @Override public boolean isEmpty() {
+        return root.size() == 0;
+    }
+
+    @Override public AVector<Entry<K, V>> toVector () {
+        return AVector.from(this);
+    }
+    @Override public ALinkedList<Entry<K, V>> toLinkedList () {
+        return ALinkedList.from(this);
+    }
+    @Override public AHashSet<Entry<K, V>> toSet () {
+        return AHashSet.from(this);
+    }
+
+    @Override public AIterator<Entry<K, V>> iterator () {
+        return new CompactPrimitiveMap.CursorIterator<V, Entry<K, V>>(root) {
+            @Override Entry<K, V> current () {
+                return new AbstractMap.SimpleImmutableEntry<>(boxKey(cursor.key()), cursor.value());
+            }
+        };
+    }
+
+    @Override public AIterator<K> keysIterator () {
+        return new CompactPrimitiveMap.CursorIterator<V, K>(root) {
+            @Override K current () {
+                return boxKey(cursor.key());
+            }
+        };
+    }
+
+    @Override public AIterator<V> valuesIterator () {
+        return new CompactPrimitiveMap.CursorIterator<V, V>(root) {
+            @Override V current () {
+                return cursor.value();
+            }
+        };
+    }
+
+    @Override public AMap<K, V> withDefaultValue (V defaultValue) {
+        return AMapSupport.wrapMapWithDefaultValue(this, new AMapSupport.SerializableConstantFunction<>(defaultValue));
+    }
+
+    @Override public AMap<K, V> withDerivedDefaultValue (Function<K, V> defaultProvider) {
+        return AMapSupport.wrapMapWithDefaultValue(this, defaultProvider);
+    }
+
+    @Override public <U> ACollection<U> map (Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.map(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> flatMap (Function<Entry<K, V>, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> collect (Predicate<Entry<K, V>> filter, Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.collect(AVector.builder(), this, filter, f);
+    }
+
+    @Override public boolean contains (Object o) {
+        return AMapSupport.containsEntry(this, o);
+    }
+
+    @Override public boolean containsValue (Object value) {
+        for (AIterator<V> it = valuesIterator(); it.hasNext(); ) {
+            if (Objects.equals(it.next(), value)) return true;
+        }
+        return false;
+    }
+
+    @Override public ASet<K> keySet () {
+        return new AMapSupport.KeySet<>(this);
+    }
+
+    @Override public ACollection<V> values () {
+        return new AMapSupport.ValuesCollection<>(this);
+    }
+
+    @Override public ASet<Entry<K, V>> entrySet () {
+        return new AMapSupport.EntrySet<>(this);
+    }
+}
@@ -0,0 +1,787 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.util.AOption;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+
+/**
+ * A persistent B+ tree, the common implementation of {@link ABTreeMap} and {@link ABTreeSet}. Entries are stored in leaves holding up
+ *  to {@link #MAX_WIDTH} keys and values in arrays; inner nodes hold up to {@link #MAX_WIDTH} children, the separator keys between them
+ *  and the children's cumulative entry counts. All leaves have the same depth, and all nodes except the root have at least
+ *  {@link #MIN_WIDTH} entries or children. An empty tree is represented by {@code null}.
+ *
+ * <p> Modifications copy the nodes on the path from the root to the affected leaf and share all other nodes with the original tree, like
+ *  {@link RedBlackTree}. But a lookup visits about log<sub>32</sub>(n) nodes instead of log<sub>2</sub>(n), and it searches each node
+ *  in a contiguous array, so it has far fewer dependent pointer loads. The cumulative counts allow finding entries by rank, which is
+ *  what iteration over a range, {@code countInRange}, {@code drop} and {@code take} are based on.
+ */
+class BTree {
+    static final int MAX_WIDTH = 32;
+    static final int MIN_WIDTH = MAX_WIDTH / 2;
+
+    static final class Node {
+        /**
+         * For leaves, the entries' keys. For inner nodes the separators between children: all keys in {@code children[i]} are less than
+         *  {@code keys[i]}, and all keys in {@code children[i+1]} are greater than or equal to it.
+         */
+        final Object[] keys;
+        final Object[] values;   // leaves of maps only
+        final Node[] children;   // inner nodes only
+        final int[] counts;      // inner nodes only: counts[i] is the number of entries in children[0] to children[i]
+
+        private Node (Object[] keys, Object[] values, Node[] children, int[] counts) {
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+            this.counts = counts;
+        }
+
+        boolean isLeaf () {
+            return children == null;
+        }
+
+        /**
+         * @return the number of entries for leaves, or the number of children for inner nodes
+         */
+        int width () {
+            return children == null ? keys.length : children.length;
+        }
+
+        int size () {
+            return children == null ? keys.length : counts[counts.length-1];
+        }
+    }
+
+    private static Node leaf (Object[] keys, Object[] values) {
+        return new Node(keys, values, null, null);
+    }
+
+    private static Node inner (Object[] keys, Node[] children) {
+        final int[] counts = new int[children.length];
+        int count = 0;
+        for (int i=0; i<children.length; i++) {
+            count += children[i].size();
+            counts[i] = count;
+        }
+        return new Node(keys, null, children, counts);
+    }
+
+    static int size (Node root) {
+        return root == null ? 0 : root.size();
+    }
+
+    private static int height (Node node) {
+        int result = 0;
+        while (!node.isLeaf()) {
+            node = node.children[0];
+            result += 1;
+        }
+        return result;
+    }
+
+    //------------------------------------ lookup ------------------------------------
+
+    /**
+     * @return the index of the key in the leaf, or {@code -(insertionPoint + 1)} if the leaf does not contain it
+     */
+    @SuppressWarnings("unchecked")
+    private static <A> int indexInLeaf (Node leaf, A key, Comparator<? super A> ordering) {
+        final Object[] keys = leaf.keys;
+        int lo = 0;
+        int hi = keys.length - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int cmp = ordering.compare((A) keys[mid], key);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * @return the index of the child whose range of keys contains the key
+     */
+    @SuppressWarnings("unchecked")
+    private static <A> int childIndex (Node node, A key, Comparator<? super A> ordering) {
+        final Object[] keys = node.keys;
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ordering.compare(key, (A) keys[mid]) < 0) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    private static <A> Node leafFor (Node node, A key, Comparator<? super A> ordering) {
+        while (!node.isLeaf()) {
+            node = node.children[childIndex(node, key, ordering)];
+        }
+        return node;
+    }
+
+    static <A> boolean contains (Node root, A key, Comparator<? super A> ordering) {
+        return root != null && indexInLeaf(leafFor(root, key, ordering), key, ordering) >= 0;
+    }
+
+    /**
+     * @return the value for the key, or {@code defaultValue} if the tree does not contain it
+     */
+    @SuppressWarnings("unchecked")
+    static <A, B> B getOrElse (Node root, A key, B defaultValue, Comparator<? super A> ordering) {
+        if (root == null) return defaultValue;
+        final Node leaf = leafFor(root, key, ordering);
+        final int idx = indexInLeaf(leaf, key, ordering);
+        return idx >= 0 ? (B) leaf.values[idx] : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A, B> AOption<B> get (Node root, A key, Comparator<? super A> ordering) {
+        if (root == null) return AOption.none();
+        final Node leaf = leafFor(root, key, ordering);
+        final int idx = indexInLeaf(leaf, key, ordering);
+        return idx >= 0 ? AOption.some((B) leaf.values[idx]) : AOption.none();
+    }
+
+    /**
+     * @return the number of entries with keys less than the given key or, if {@code inclusive} is true, less than or equal to it
+     */
+    static <A> int rank (Node root, A key, boolean inclusive, Comparator<? super A> ordering) {
+        if (root == null) return 0;
+        int result = 0;
+        Node node = root;
+        while (!node.isLeaf()) {
+            final int idx = childIndex(node, key, ordering);
+            if (idx > 0) result += node.counts[idx-1];
+            node = node.children[idx];
+        }
+        final int idx = indexInLeaf(node, key, ordering);
+        if (idx >= 0) return result + idx + (inclusive ? 1 : 0);
+        return result - idx - 1;
+    }
+
+    /**
+     * @return the number of keys less than the given key if the tree contains it, or -1 otherwise
+     */
+    static <A> int indexOf (Node root, A key, Comparator<? super A> ordering) {
+        if (root == null) return -1;
+        int result = 0;
+        Node node = root;
+        while (!node.isLeaf()) {
+            final int idx = childIndex(node, key, ordering);
+            if (idx > 0) result += node.counts[idx-1];
+            node = node.children[idx];
+        }
+        final int idx = indexInLeaf(node, key, ordering);
+        return idx >= 0 ? result + idx : -1;
+    }
+
+    /**
+     * @return the rank of the first entry in a range with an optional lower bound
+     */
+    static <A> int fromRank (Node root, AOption<A> from, boolean fromInclusive, Comparator<? super A> ordering) {
+        return from.isDefined() ? rank(root, from.get(), !fromInclusive, ordering) : 0;
+    }
+
+    /**
+     * @return the rank after the last entry in a range with an optional upper bound
+     */
+    static <A> int toRank (Node root, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
+        return to.isDefined() ? rank(root, to.get(), toInclusive, ordering) : size(root);
+    }
+
+    private static int childForRank (Node node, int rank) {
+        final int[] counts = node.counts;
+        int lo = 0;
+        int hi = counts.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (counts[mid] > rank) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    private static int offset (Node node, int childIdx) {
+        return childIdx == 0 ? 0 : node.counts[childIdx-1];
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A> A keyAt (Node root, int rank) {
+        if (rank < 0 || rank >= size(root)) throw new IndexOutOfBoundsException(String.valueOf(rank));
+        Node node = root;
+        while (!node.isLeaf()) {
+            final int idx = childForRank(node, rank);
+            rank -= offset(node, idx);
+            node = node.children[idx];
+        }
+        return (A) node.keys[rank];
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A, B> Map.Entry<A, B> entryAt (Node root, int rank) {
+        if (rank < 0 || rank >= size(root)) throw new IndexOutOfBoundsException(String.valueOf(rank));
+        Node node = root;
+        while (!node.isLeaf()) {
+            final int idx = childForRank(node, rank);
+            rank -= offset(node, idx);
+            node = node.children[idx];
+        }
+        return new AbstractMap.SimpleImmutableEntry<>((A) node.keys[rank], (B) node.values[rank]);
+    }
+
+    //------------------------------------ adding and removing entries ------------------------------------
+
+    /**
+     * Adds an entry or replaces the entry with the same key. This returns the tree itself if it contains the same key and value
+     *  instances already.
+     *
+     * @param values true for maps, false for sets
+     */
+    static <A, B> Node updated (Node root, A key, B value, boolean values, Comparator<? super A> ordering) {
+        if (root == null) return leaf(new Object[] {key}, values ? new Object[] {value} : null);
+        final Object[] overflow = new Object[2];
+        return withNewRoot(upd(root, key, value, false, ordering, overflow), overflow);
+    }
+
+    /**
+     * Adds an entry with a key that is greater than all keys in the tree, without comparing keys on the way down.
+     */
+    static <A, B> Node appended (Node root, A key, B value, boolean values) {
+        if (root == null) return leaf(new Object[] {key}, values ? new Object[] {value} : null);
+        final Object[] overflow = new Object[2];
+        return withNewRoot(upd(root, key, value, true, null, overflow), overflow);
+    }
+
+    /**
+     * @param overflow the second half of a node that was split, and the separator key between the halves; both are null if the
+     *                 node was not split
+     */
+    private static Node withNewRoot (Node node, Object[] overflow) {
+        if (overflow[0] == null) return node;
+        return inner(new Object[] {overflow[1]}, new Node[] {node, (Node) overflow[0]});
+    }
+
+    /**
+     * @param overflow is set to the second half of the resulting node and the separator key if the node is split
+     */
+    private static <A, B> Node upd (Node node, A key, B value, boolean append, Comparator<? super A> ordering, Object[] overflow) {
+        if (node.isLeaf()) {
+            final int idx = append ? -(node.keys.length + 1) : indexInLeaf(node, key, ordering);
+            if (idx >= 0) {
+                if (node.keys[idx] == key && (node.values == null || node.values[idx] == value)) return node;
+                return leaf(replaced(node.keys, idx, key), node.values == null ? null : replaced(node.values, idx, value));
+            }
+            final int pos = -idx - 1;
+            return splitIfOverfull(leaf(inserted(node.keys, pos, key), node.values == null ? null : inserted(node.values, pos, value)), overflow);
+        }
+
+        final int idx = append ? node.children.length - 1 : childIndex(node, key, ordering);
+        final Node child = node.children[idx];
+        final Node newChild = upd(child, key, value, append, ordering, overflow);
+        if (overflow[0] == null) {
+            if (newChild == child) return node;
+            return withChild(node, idx, newChild);
+        }
+        final Node newSibling = (Node) overflow[0];
+        final Object separator = overflow[1];
+        overflow[0] = overflow[1] = null;
+        return splitIfOverfull(inner(inserted(node.keys, idx, separator), inserted(replaced(node.children, idx, newChild), idx+1, newSibling)), overflow);
+    }
+
+    /**
+     * Removes the entry with a given key, returning the tree itself if it does not contain the key.
+     */
+    static <A> Node removed (Node root, A key, Comparator<? super A> ordering) {
+        if (root == null) return null;
+        final Node result = del(root, key, ordering);
+        if (result == root) return root;
+        return normalizedRoot(result);
+    }
+
+    /**
+     * A root may have fewer entries or children than other nodes, but an inner root with a single child is replaced by the child, and
+     *  an empty root by {@code null}.
+     */
+    private static Node normalizedRoot (Node node) {
+        while (!node.isLeaf() && node.children.length == 1) node = node.children[0];
+        return node.width() == 0 ? null : node;
+    }
+
+    private static <A> Node del (Node node, A key, Comparator<? super A> ordering) {
+        if (node.isLeaf()) {
+            final int idx = indexInLeaf(node, key, ordering);
+            if (idx < 0) return node;
+            return leaf(removed(node.keys, idx), node.values == null ? null : removed(node.values, idx));
+        }
+
+        final int idx = childIndex(node, key, ordering);
+        final Node child = node.children[idx];
+        final Node newChild = del(child, key, ordering);
+        if (newChild == child) return node;
+        if (newChild.width() >= MIN_WIDTH) return withChild(node, idx, newChild);
+
+        // the child is underfull: merge it with a sibling, or move entries over from the sibling if they do not fit into one node
+        final int leftIdx = idx > 0 ? idx - 1 : idx;
+        final Node left = idx > 0 ? node.children[idx-1] : newChild;
+        final Node right = idx > 0 ? newChild : node.children[idx+1];
+        final Object[] overflow = new Object[2];
+        final Node merged = splitIfOverfull(concatSiblings(left, node.keys[leftIdx], right), overflow);
+        if (overflow[0] == null) {
+            return inner(removed(node.keys, leftIdx), replaced(removed(node.children, leftIdx+1), leftIdx, merged));
+        }
+        final Node[] children = node.children.clone();
+        children[leftIdx] = merged;
+        children[leftIdx+1] = (Node) overflow[0];
+        return inner(replaced(node.keys, leftIdx, overflow[1]), children);
+    }
+
+    private static Node withChild (Node node, int idx, Node newChild) {
+        final int delta = newChild.size() - node.children[idx].size();
+        final int[] counts = node.counts.clone();
+        for (int i=idx; i<counts.length; i++) counts[i] += delta;
+        return new Node(node.keys, null, replaced(node.children, idx, newChild), counts);
+    }
+
+    /**
+     * Combines two neighbouring nodes of the same height into one, which may be too wide and need to be split afterwards.
+     */
+    private static Node concatSiblings (Node left, Object separator, Node right) {
+        if (left.isLeaf()) {
+            return leaf(concat(left.keys, right.keys), left.values == null ? null : concat(left.values, right.values));
+        }
+        final Object[] keys = Arrays.copyOf(left.keys, left.keys.length + 1 + right.keys.length);
+        keys[left.keys.length] = separator;
+        System.arraycopy(right.keys, 0, keys, left.keys.length + 1, right.keys.length);
+        return inner(keys, concat(left.children, right.children));
+    }
+
+    /**
+     * Splits a node that is wider than {@link #MAX_WIDTH} into two halves, each of which has at least {@link #MIN_WIDTH} entries or
+     *  children.
+     *
+     * @param overflow is set to the second half and the separator key between the halves if the node is split
+     * @return the node itself if it is not too wide, or its first half
+     */
+    private static Node splitIfOverfull (Node node, Object[] overflow) {
+        final int width = node.width();
+        if (width <= MAX_WIDTH) return node;
+
+        final int leftWidth = width / 2;
+        if (node.isLeaf()) {
+            overflow[0] = leaf(Arrays.copyOfRange(node.keys, leftWidth, width), node.values == null ? null : Arrays.copyOfRange(node.values, leftWidth, width));
+            overflow[1] = node.keys[leftWidth];
+            return leaf(Arrays.copyOf(node.keys, leftWidth), node.values == null ? null : Arrays.copyOf(node.values, leftWidth));
+        }
+        overflow[0] = inner(Arrays.copyOfRange(node.keys, leftWidth, width-1), Arrays.copyOfRange(node.children, leftWidth, width));
+        overflow[1] = node.keys[leftWidth-1];
+        return inner(Arrays.copyOf(node.keys, leftWidth-1), Arrays.copyOf(node.children, leftWidth));
+    }
+
+    //------------------------------------ building and slicing ------------------------------------
+
+    /**
+     * Builds a tree bottom-up from entries sorted by key, filling all nodes evenly.
+     */
+    static Node fromSorted (Object[] keys, Object[] values, int size) {
+        if (size == 0) return null;
+
+        final int numLeaves = (size + MAX_WIDTH - 1) / MAX_WIDTH;
+        Node[] level = new Node[numLeaves];
+        Object[] smallestKeys = new Object[numLeaves];
+        for (int i=0; i<numLeaves; i++) {
+            final int from = (int) ((long) size * i / numLeaves);
+            final int to = (int) ((long) size * (i+1) / numLeaves);
+            level[i] = leaf(Arrays.copyOfRange(keys, from, to), values == null ? null : Arrays.copyOfRange(values, from, to));
+            smallestKeys[i] = keys[from];
+        }
+
+        while (level.length > 1) {
+            final int numNodes = (level.length + MAX_WIDTH - 1) / MAX_WIDTH;
+            final Node[] nextLevel = new Node[numNodes];
+            final Object[] nextSmallestKeys = new Object[numNodes];
+            for (int i=0; i<numNodes; i++) {
+                final int from = (int) ((long) level.length * i / numNodes);
+                final int to = (int) ((long) level.length * (i+1) / numNodes);
+                nextLevel[i] = inner(Arrays.copyOfRange(smallestKeys, from+1, to), Arrays.copyOfRange(level, from, to));
+                nextSmallestKeys[i] = smallestKeys[from];
+            }
+            level = nextLevel;
+            smallestKeys = nextSmallestKeys;
+        }
+        return level[0];
+    }
+
+    /**
+     * Returns a tree with the entries whose ranks are in a given range. Nodes that are entirely inside the range are reused, and only
+     *  nodes along the range's boundaries are copied, so this takes logarithmic time.
+     *
+     * @param from  the first rank in the range
+     * @param until the rank after the last one in the range
+     */
+    static Node slice (Node root, int from, int until) {
+        final int size = size(root);
+        if (from < 0) from = 0;
+        if (until > size) until = size;
+        if (from >= until) return null;
+        if (from == 0 && until == size) return root;
+        return normalizedRoot(doSlice(root, height(root), from, until, new int[1]));
+    }
+
+    /**
+     * @param resultHeight is set to the resulting tree's height
+     */
+    private static Node doSlice (Node node, int height, int from, int until, int[] resultHeight) {
+        if (from == 0 && until == node.size()) {
+            resultHeight[0] = height;
+            return node;
+        }
+        if (node.isLeaf()) {
+            resultHeight[0] = 0;
+            return leaf(Arrays.copyOfRange(node.keys, from, until), node.values == null ? null : Arrays.copyOfRange(node.values, from, until));
+        }
+
+        final int firstIdx = childForRank(node, from);
+        final int lastIdx = childForRank(node, until-1);
+        final int firstOffset = offset(node, firstIdx);
+        if (firstIdx == lastIdx) return doSlice(node.children[firstIdx], height-1, from - firstOffset, until - firstOffset, resultHeight);
+
+        // the first and the last child are sliced, and the children in between are kept as they are
+        Node result = doSlice(node.children[firstIdx], height-1, from - firstOffset, node.children[firstIdx].size(), resultHeight);
+        int h = resultHeight[0];
+        if (lastIdx - firstIdx == 2) {
+            result = concat(result, h, node.keys[firstIdx], node.children[firstIdx+1], height-1, resultHeight);
+            h = resultHeight[0];
+        }
+        else if (lastIdx - firstIdx > 2) {
+            final Node middle = inner(Arrays.copyOfRange(node.keys, firstIdx+1, lastIdx-1), Arrays.copyOfRange(node.children, firstIdx+1, lastIdx));
+            result = concat(result, h, node.keys[firstIdx], middle, height, resultHeight);
+            h = resultHeight[0];
+        }
+        final Node last = doSlice(node.children[lastIdx], height-1, 0, until - offset(node, lastIdx), resultHeight);
+        return concat(result, h, node.keys[lastIdx-1], last, resultHeight[0], resultHeight);
+    }
+
+    /**
+     * Concatenates two trees of arbitrary heights, where all keys in {@code left} are less than {@code separator} and all keys in
+     *  {@code right} are greater than or equal to it. The shorter tree is merged with the node of the same height on the taller tree's
+     *  outer spine, so the roots of both trees may be underfull. This takes time proportional to the difference in height.
+     *
+     * @param resultHeight is set to the resulting tree's height
+     */
+    private static Node concat (Node left, int leftHeight, Object separator, Node right, int rightHeight, int[] resultHeight) {
+        final Object[] overflow = new Object[2];
+        final Node result;
+        if (leftHeight == rightHeight) {
+            result = splitIfOverfull(concatSiblings(left, separator, right), overflow);
+        }
+        else if (leftHeight > rightHeight) {
+            result = concatRight(left, leftHeight, separator, right, rightHeight, overflow);
+        }
+        else {
+            result = concatLeft(left, leftHeight, separator, right, rightHeight, overflow);
+        }
+        resultHeight[0] = Math.max(leftHeight, rightHeight) + (overflow[0] != null ? 1 : 0);
+        return withNewRoot(result, overflow);
+    }
+
+    private static Node concatRight (Node node, int height, Object separator, Node right, int rightHeight, Object[] overflow) {
+        final int lastIdx = node.children.length - 1;
+        final Node last = node.children[lastIdx];
+        final Node newLast = (height-1 == rightHeight)
+                ? splitIfOverfull(concatSiblings(last, separator, right), overflow)
+                : concatRight(last, height-1, separator, right, rightHeight, overflow);
+        if (overflow[0] == null) return withChild(node, lastIdx, newLast);
+
+        final Node newSibling = (Node) overflow[0];
+        final Object newSeparator = overflow[1];
+        overflow[0] = overflow[1] = null;
+        return splitIfOverfull(inner(inserted(node.keys, lastIdx, newSeparator), inserted(replaced(node.children, lastIdx, newLast), lastIdx+1, newSibling)), overflow);
+    }
+
+    private static Node concatLeft (Node left, int leftHeight, Object separator, Node node, int height, Object[] overflow) {
+        final Node first = node.children[0];
+        final Node newFirst = (height-1 == leftHeight)
+                ? splitIfOverfull(concatSiblings(left, separator, first), overflow)
+                : concatLeft(left, leftHeight, separator, first, height-1, overflow);
+        if (overflow[0] == null) return withChild(node, 0, newFirst);
+
+        final Node newSibling = (Node) overflow[0];
+        final Object newSeparator = overflow[1];
+        overflow[0] = overflow[1] = null;
+        return splitIfOverfull(inner(inserted(node.keys, 0, newSeparator), inserted(replaced(node.children, 0, newFirst), 1, newSibling)), overflow);
+    }
+
+    //------------------------------------ array helpers ------------------------------------
+
+    private static <T> T[] replaced (T[] arr, int idx, T el) {
+        final T[] result = arr.clone();
+        result[idx] = el;
+        return result;
+    }
+
+    private static <T> T[] inserted (T[] arr, int idx, T el) {
+        final T[] result = Arrays.copyOf(arr, arr.length + 1);
+        System.arraycopy(arr, idx, result, idx+1, arr.length - idx);
+        result[idx] = el;
+        return result;
+    }
+
+    private static <T> T[] removed (T[] arr, int idx) {
+        final T[] result = Arrays.copyOf(arr, arr.length - 1);
+        System.arraycopy(arr, idx+1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    private static <T> T[] concat (T[] a, T[] b) {
+        final T[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    //------------------------------------ iteration ------------------------------------
+
+    /**
+     * Extracts an iterator's element from an entry in a leaf.
+     */
+    interface LeafAccessor<R> {
+        R get (Node leaf, int idx);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A, B> LeafAccessor<Map.Entry<A, B>> entries () {
+        return (leaf, idx) -> new AbstractMap.SimpleImmutableEntry<>((A) leaf.keys[idx], (B) leaf.values[idx]);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <A> LeafAccessor<A> keys () {
+        return (leaf, idx) -> (A) leaf.keys[idx];
+    }
+
+    @SuppressWarnings("unchecked")
+    static <B> LeafAccessor<B> values () {
+        return (leaf, idx) -> (B) leaf.values[idx];
+    }
+
+    /**
+     * @return an iterator over the entries with ranks from {@code from} (inclusive) to {@code to} (exclusive), in ascending or
+     *  descending order
+     */
+    static <R> AIterator<R> iterator (Node root, int from, int to, boolean ascending, LeafAccessor<R> f) {
+        return new RankIterator<>(root, from, to, ascending, f);
+    }
+
+    /**
+     * @param comparator the elements' ordering if the spliterator's elements are sorted, or {@code null} otherwise
+     */
+    static <R> Spliterator<R> spliterator (Node root, LeafAccessor<R> f, int characteristics, Comparator<? super R> comparator) {
+        return new RankSpliterator<>(root, 0, size(root), f, characteristics, comparator);
+    }
+
+    /**
+     * The path from the root to an entry, which can move to the neighbouring leaves. Callers must not move beyond the first or last leaf.
+     */
+    private static class Cursor {
+        private final Node[] path;    // path[0] is the root, path[path.length-1] the current leaf
+        private final int[] indices;  // indices[i] is the index of path[i+1] in path[i]
+        Node leaf;
+        int idx;
+
+        Cursor (Node root, int rank) {
+            final int height = height(root);
+            path = new Node[height + 1];
+            indices = new int[height];
+
+            Node node = root;
+            for (int level=0; level<height; level++) {
+                path[level] = node;
+                final int childIdx = childForRank(node, rank);
+                rank -= offset(node, childIdx);
+                indices[level] = childIdx;
+                node = node.children[childIdx];
+            }
+            path[height] = node;
+            leaf = node;
+            idx = rank;
+        }
+
+        void next () {
+            idx += 1;
+            if (idx < leaf.keys.length) return;
+
+            int level = indices.length - 1;
+            while (indices[level] == path[level].children.length - 1) level -= 1;
+            indices[level] += 1;
+            descend(level, true);
+            idx = 0;
+        }
+
+        void previous () {
+            idx -= 1;
+            if (idx >= 0) return;
+
+            int level = indices.length - 1;
+            while (indices[level] == 0) level -= 1;
+            indices[level] -= 1;
+            descend(level, false);
+            idx = leaf.keys.length - 1;
+        }
+
+        private void descend (int level, boolean leftmost) {
+            for (; level < indices.length; level++) {
+                final Node child = path[level].children[indices[level]];
+                path[level+1] = child;
+                if (level+1 < indices.length) indices[level+1] = leftmost ? 0 : child.children.length - 1;
+            }
+            leaf = path[indices.length];
+        }
+    }
+
+    private static class RankIterator<R> extends AbstractAIterator<R> {
+        private final Node root;
+        private final boolean ascending;
+        private final LeafAccessor<R> f;
+        private final int first;
+        private int remaining;
+        private Cursor cursor; // created lazily, positioned at the element returned last
+
+        RankIterator (Node root, int from, int to, boolean ascending, LeafAccessor<R> f) {
+            this.root = root;
+            this.ascending = ascending;
+            this.f = f;
+            this.first = ascending ? from : to - 1;
+            this.remaining = Math.max(0, to - from);
+        }
+
+        @Override public boolean hasNext () {
+            return remaining > 0;
+        }
+
+        @Override public R next () {
+            if (remaining <= 0) throw new NoSuchElementException();
+            if (cursor == null) cursor = new Cursor(root, first);
+            else if (ascending) cursor.next();
+            else cursor.previous();
+            remaining -= 1;
+            return f.get(cursor.leaf, cursor.idx);
+        }
+    }
+
+    /**
+     * A spliterator over a range of ranks. It splits the range at its middle, and each part finds its starting point in logarithmic time.
+     */
+    private static class RankSpliterator<R> implements Spliterator<R> {
+        private final Node root;
+        private int from;
+        private final int to;
+        private final LeafAccessor<R> f;
+        private final int characteristics;
+        private final Comparator<? super R> comparator;
+
+        private Cursor cursor; // created lazily when traversal starts, positioned at the element returned next
+
+        /**
+         * @param characteristics characteristics in addition to {@link Spliterator#ORDERED}, {@link Spliterator#SIZED},
+         *                        {@link Spliterator#SUBSIZED} and {@link Spliterator#IMMUTABLE}
+         * @param comparator      the elements' ordering if the spliterator's elements are sorted, or {@code null} otherwise
+         */
+        RankSpliterator (Node root, int from, int to, LeafAccessor<R> f, int characteristics, Comparator<? super R> comparator) {
+            this.root = root;
+            this.from = from;
+            this.to = to;
+            this.f = f;
+            this.comparator = comparator;
+            this.characteristics = characteristics | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE |
+                    (comparator != null ? Spliterator.SORTED : 0);
+        }
+
+        @Override public Spliterator<R> trySplit () {
+            if (cursor != null || to - from < 2) return null;
+
+            final int mid = from + (to - from) / 2;
+            final RankSpliterator<R> prefix = new RankSpliterator<>(root, from, mid, f, characteristics, comparator);
+            from = mid;
+            return prefix;
+        }
+
+        @Override public boolean tryAdvance (Consumer<? super R> action) {
+            if (from >= to) return false;
+            if (cursor == null) cursor = new Cursor(root, from);
+            action.accept(f.get(cursor.leaf, cursor.idx));
+            from += 1;
+            if (from < to) cursor.next();
+            return true;
+        }
+
+        @Override public void forEachRemaining (Consumer<? super R> action) {
+            if (from >= to) return;
+            if (cursor == null) cursor = new Cursor(root, from);
+            while (true) {
+                // consume the rest of the current leaf directly from its array
+                final Node leaf = cursor.leaf;
+                final int end = Math.min(leaf.keys.length, cursor.idx + (to - from));
+                for (int i=cursor.idx; i<end; i++) {
+                    action.accept(f.get(leaf, i));
+                }
+                from += end - cursor.idx;
+                if (from >= to) return;
+                cursor.idx = leaf.keys.length - 1;
+                cursor.next();
+            }
+        }
+
+        @Override public long estimateSize () {
+            return Math.max(0, to - from);
+        }
+
+        @Override public int characteristics () {
+            return characteristics;
+        }
+
+        @Override public Comparator<? super R> getComparator () {
+            if (comparator == null) throw new IllegalStateException();
+            return comparator;
+        }
+    }
+
+    //------------------------------------ statistics ------------------------------------
+
+    static void collectStats (Node node, CollectionStats.Collector collector, int depth) {
+        if (node == null) return;
+        if (node.isLeaf()) {
+            final long valuesBytes = node.values == null ? 0 : CollectionStats.arrayBytes(node.values.length);
+            collector.addNode(node, "BTreeLeaf", depth, node.keys.length, CollectionStats.objectBytes(4, 0) + CollectionStats.arrayBytes(node.keys.length) + valuesBytes);
+            return;
+        }
+        collector.addNode(node, "BTreeInner", depth, node.children.length,
+                CollectionStats.objectBytes(4, 0) + CollectionStats.arrayBytes(node.keys.length) + 2 * CollectionStats.arrayBytes(node.children.length));
+        for (Node child: node.children) collectStats(child, collector, depth + 1);
+    }
+
+    static void registerNodes (Node node, CollectionStats.Collector collector) {
+        if (node == null) return;
+        collector.registerOtherVersionNode(node);
+        if (!node.isLeaf()) {
+            for (Node child: node.children) registerNodes(child, collector);
+        }
+    }
+
+    /**
+     * Collects entries for a new tree and builds the tree bottom-up in linear time, see {@link SortingBuilder}.
+     */
+    static class Builder<A, B> extends SortingBuilder<A, B, Node> {
+        Builder (Comparator<? super A> ordering, boolean withValues) {
+            super(ordering, withValues);
+        }
+
+        @Override Node fromSorted (Object[] keys, Object[] values, int size) {
+            return BTree.fromSorted(keys, values, size);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AMap;
+
+import java.util.*;
+
+
+/**
+ * Statistics on the internal structure of a persistent collection, e.g. for exporting them to a metrics system or for finding
+ *  pathological shapes. They are created by the {@code stats()} methods of {@link AHashMap}, {@link AHashSet}, {@link AVector},
+ *  {@link ATreeMap} and {@link ATreeSet}.
+ *
+ * <p> A collection's structure consists of nodes: the trie nodes of a hash map or set, the arrays of a vector, or the tree nodes of
+ *  a tree map or set. Entry objects that wrap a hash map's keys and values count as part of the nodes they are stored in.
+ *
+ * <p> Sizes in bytes are estimates, assuming a 64 bit JVM with compressed references (12 byte object headers, 4 byte references,
+ *  8 byte alignment). They include the collection's internal objects, but not its elements (or keys and values) because those
+ *  may well be referenced from elsewhere.
+ */
+public final class CollectionStats {
+    private final int size;
+    private final AMap<String,Integer> nodeCountsByType;
+    private final AVector<Integer> depthHistogram;
+    private final int collisionNodeCount;
+    private final long numSlots;
+    private final long retainedBytes;
+    private final long sharedBytes;
+
+    private CollectionStats (int size, AMap<String, Integer> nodeCountsByType, AVector<Integer> depthHistogram, int collisionNodeCount,
+                             long numSlots, long retainedBytes, long sharedBytes) {
+        this.size = size;
+        this.nodeCountsByType = nodeCountsByType;
+        this.depthHistogram = depthHistogram;
+        this.collisionNodeCount = collisionNodeCount;
+        this.numSlots = numSlots;
+        this.retainedBytes = retainedBytes;
+        this.sharedBytes = sharedBytes;
+    }
+
+    /**
+     * @return the collection's number of elements
+     */
+    public int size () {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes per node type, e.g. {@code "HashTrieMap"} or {@code "leaf"}
+     */
+    public AMap<String, Integer> nodeCountsByType () {
+        return nodeCountsByType;
+    }
+
+    /**
+     * @return the total number of nodes
+     */
+    public int nodeCount () {
+        int result = 0;
+        for (int n: nodeCountsByType.values()) result += n;
+        return result;
+    }
+
+    /**
+     * @return the number of nodes per depth: the element at index {@code i} is the number of nodes at depth {@code i}, the root
+     *         having depth 0
+     */
+    public AVector<Integer> depthHistogram () {
+        return depthHistogram;
+    }
+
+    /**
+     * @return the depth of the deepest node, or -1 if there are no nodes
+     */
+    public int maxDepth () {
+        return depthHistogram.size() - 1;
+    }
+
+    /**
+     * @return the number of hash collision nodes, i.e. nodes holding keys with identical hash codes. This is always 0 for collections
+     *         that are not hash based.
+     */
+    public int collisionNodeCount () {
+        return collisionNodeCount;
+    }
+
+    /**
+     * @return the average number of used slots per node, i.e. of elements (or entries) and child nodes stored directly in a node
+     */
+    public double averageFanOut () {
+        final int nodeCount = nodeCount();
+        return nodeCount == 0 ? 0 : (double) numSlots / nodeCount;
+    }
+
+    /**
+     * @return the estimated number of bytes retained by the collection's internal structure, excluding the elements themselves
+     */
+    public long retainedBytes () {
+        return retainedBytes;
+    }
+
+    /**
+     * @return the estimated number of bytes of the collection's internal structure that are shared with the other version these
+     *         statistics were created for, or 0 if there was no other version
+     */
+    public long sharedBytes () {
+        return sharedBytes;
+    }
+
+    @Override public String toString () {
+        return "CollectionStats{" +
+                "size=" + size +
+                ", nodeCountsByType=" + nodeCountsByType +
+                ", depthHistogram=" + depthHistogram +
+                ", collisionNodeCount=" + collisionNodeCount +
+                ", averageFanOut=" + averageFanOut() +
+                ", retainedBytes=" + retainedBytes +
+                ", sharedBytes=" + sharedBytes +
+                '}';
+    }
+
+    //------------------------------------ size estimates ------------------------------------
+
+    private static final int OBJECT_HEADER_BYTES = 12;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private static long align (long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @return the estimated size of an object with the given number of reference fields and int (or smaller) fields
+     */
+    static long objectBytes (int numReferences, int numInts) {
+        return align(OBJECT_HEADER_BYTES + REFERENCE_BYTES * numReferences + 4 * numInts);
+    }
+
+    /**
+     * @return the estimated size of an array of references with the given length
+     */
+    static long arrayBytes (int length) {
+        return align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * length);
+    }
+
+    //------------------------------------ collecting statistics ------------------------------------
+
+    /**
+     * Accumulates statistics while a collection's structure is traversed. For statistics relative to another version, the other
+     *  version's nodes are registered first with {@link #registerOtherVersionNode(Object)}, and nodes that are also part of the
+     *  other version count as shared.
+     */
+    static class Collector {
+        private final SortedMap<String,Integer> nodeCountsByType = new TreeMap<>();
+        private final List<Integer> depthHistogram = new ArrayList<>();
+        private int collisionNodeCount;
+        private long numSlots;
+        private long retainedBytes;
+        private long sharedBytes;
+
+        private final Set<Object> otherVersionNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        void registerOtherVersionNode (Object node) {
+            otherVersionNodes.add(node);
+        }
+
+        /**
+         * @param node     the node itself, compared by identity with the other version's nodes
+         * @param type     the node's type, e.g. {@code "HashTrieMap"}
+         * @param depth    the node's depth, the root having depth 0
+         * @param numSlots the number of elements (or entries) and child nodes stored directly in the node
+         * @param bytes    the estimated size of the node, including entry objects owned by it
+         */
+        void addNode (Object node, String type, int depth, int numSlots, long bytes) {
+            nodeCountsByType.merge(type, 1, Integer::sum);
+            while (depthHistogram.size() <= depth) depthHistogram.add(0);
+            depthHistogram.set(depth, depthHistogram.get(depth) + 1);
+            this.numSlots += numSlots;
+            retainedBytes += bytes;
+            if (otherVersionNodes.contains(node)) sharedBytes += bytes;
+        }
+
+        void addCollisionNode () {
+            collisionNodeCount += 1;
+        }
+
+        CollectionStats build (int size) {
+            return new CollectionStats(size, ATreeMap.fromMap(nodeCountsByType), AVector.from(depthHistogram), collisionNodeCount,
+                    numSlots, retainedBytes, sharedBytes);
+        }
+    }
+}
@@ -2,26 +2,124 @@ package com.ajjpj.acollections.immutable;
 
 import com.ajjpj.acollections.AIterator;
 import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.util.AOption;
 
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
 
 
 /**
  * Implementation note: This class in particular is an optimization idea from
- *  the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>.
+ *  the <a href="https://github.com/andrewoma/dexx">Dexx collections library</a>. Trie nodes use the CHAMP encoding, see
+ *  {@link HashTrieMap}.
  */
 class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
     interface EntryWithEquality {
         boolean hasEqualKey(EntryWithEquality other);
         int keyHash();
+
+        /**
+         * @return the entry's key (or a set's element): collision nodes use it to order their entries if it is {@link Comparable}.
+         *         Entries whose equality is not based on {@link Object#equals(Object)} return {@code null} so that they are never
+         *         ordered.
+         */
+        Object key();
+
+        /**
+         * @return true if and only if the other entry has an equal key and - for map entries - an equal value
+         */
+        boolean hasEqualContent(EntryWithEquality other);
+
+        /**
+         * @return this entry's contribution to the collection's {@link Object#hashCode()}, which is the sum of all entries'
+         *         contributions as specified by {@link Set#hashCode()} and {@link Map#hashCode()}
+         */
+        int contentHash();
     }
 
     protected static final CompactHashMap EMPTY = new CompactHashMap();
 
+    /**
+     * The name of the system property that configures seeded hash spreading, see {@link #spread(int)}.
+     */
+    static final String HASH_SEED_PROPERTY = "com.ajjpj.acollections.hashSeed";
+
+    private static final boolean IS_SEEDED;
+    private static final int HASH_SEED;
+    static {
+        final String seed = System.getProperty(HASH_SEED_PROPERTY);
+        IS_SEEDED = seed != null;
+        if (seed == null) HASH_SEED = 0;
+        else if ("random".equals(seed)) HASH_SEED = new SecureRandom().nextInt();
+        else HASH_SEED = Integer.parseInt(seed);
+    }
+
+    /**
+     * Spreads a key's hash code before it is used for locating the key in the trie. By default, this is a fixed function. If the
+     *  system property {@value #HASH_SEED_PROPERTY} is set - either to an int value or to {@code random} for a seed that is
+     *  chosen randomly at startup - the function depends on that seed. This protects against 'hash flooding', i.e. keys that
+     *  were chosen to share long hash prefixes and thus create deep tries, because the prefixes depend on the seed. Keys with
+     *  identical hash codes collide regardless of the seed, which is mitigated by collision nodes ordering Comparable keys.
+     *
+     * <p> The seed is the same for all collections in a JVM, so structural operations can rely on collections having the same trie
+     *  layout for the same keys. Serialized collections do not depend on the seed because they are re-hashed on deserialization.
+     */
+    static int spread(int hashCode) {
+        return IS_SEEDED ? spread(hashCode, HASH_SEED) : improve(hashCode);
+    }
+
+    static int spread(int hashCode, int seed) {
+        int h = (hashCode ^ seed) * 0x9e3779b9;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int improve(int hashCode) {
+        int h = hashCode + ~(hashCode << 9);
+        h = h ^ (h >>> 14);
+        h = h + (h << 4);
+        return h ^ (h >>> 10);
+    }
+
     public AIterator<X> iterator() {
         return AIterator.empty();
     }
 
+    /**
+     * Adds this (sub-)trie's nodes to collection statistics.
+     *
+     * @param entryBytes the estimated size of a single entry object
+     */
+    void collectStats(CollectionStats.Collector collector, int depth, long entryBytes) {
+    }
+
+    /**
+     * Registers this (sub-)trie's nodes as the other version's nodes for computing shared bytes.
+     */
+    void registerNodes(CollectionStats.Collector collector) {
+    }
+
+    /**
+     * Returns a {@link Spliterator} over this trie's entries that splits along the trie structure, see {@link TrieSpliterator}.
+     *
+     * @param f               maps entries to the spliterator's elements
+     * @param characteristics characteristics in addition to {@link Spliterator#SIZED}, {@link Spliterator#SUBSIZED},
+     *                        {@link Spliterator#DISTINCT} and {@link Spliterator#IMMUTABLE}
+     */
+    <T> Spliterator<T> spliterator(Function<X,T> f, int characteristics) {
+        final Object[] slots = this instanceof HashTrieMap ? ((HashTrieMap<X>) this).content : isEmpty() ? new Object[0] : new Object[] {this};
+        return new TrieSpliterator<>(slots, 0, slots.length, size(), f,
+                characteristics | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT | Spliterator.IMMUTABLE);
+    }
+
     public int size() {
         return 0;
     }
@@ -29,138 +127,761 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
         return true;
     }
 
+    /**
+     * @return the sum of all entries' {@link EntryWithEquality#contentHash()}, which is maintained incrementally by all nodes
+     */
+    public int contentHash() {
+        return 0;
+    }
+
+    /**
+     * Compares two (sub-)tries for equal contents. Shared sub-tries are recognized by identity, and sub-tries with different
+     *  sizes or content hashes are rejected without looking at their entries.
+     */
+    boolean hasEqualContent(CompactHashMap<X> that, int level) {
+        if (this == that) return true;
+        if (this.size() != that.size() || this.contentHash() != that.contentHash()) return false;
+
+        if (this instanceof HashTrieMap && that instanceof HashTrieMap) {
+            final HashTrieMap<X> a = (HashTrieMap<X>) this;
+            final HashTrieMap<X> b = (HashTrieMap<X>) that;
+            if (a.dataMap == b.dataMap && a.nodeMap == b.nodeMap) {
+                for (int i=0; i<a.content.length; i++) {
+                    final Object fromA = a.content[i];
+                    final Object fromB = b.content[i];
+                    if (fromA instanceof CompactHashMap) {
+                        //noinspection unchecked
+                        if (! ((CompactHashMap<X>) fromA).hasEqualContent((CompactHashMap<X>) fromB, level + 5)) return false;
+                    }
+                    else {
+                        if (! ((EntryWithEquality) fromA).hasEqualContent((EntryWithEquality) fromB)) return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        // fallback, e.g. for collision nodes: both tries have the same size, so it is sufficient to look up this trie's entries
+        for (AIterator<X> it = iterator(); it.hasNext(); ) {
+            final X kv = it.next();
+            final X other = that.get0(kv, level);
+            if (other == null || ! kv.hasEqualContent(other)) return false;
+        }
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     public static <K, V, X extends EntryWithEquality> CompactHashMap<X> empty() {
         return EMPTY;
     }
 
+    /**
+     * Below this number of entries, {@link #fromParallel(Object[], Function)} builds the trie sequentially because the overhead
+     *  of parallelization outweighs its benefits.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Builds a trie from a large number of entries in parallel: the entries are partitioned by their root level slot (i.e. the
+     *  lowest five bits of their hash), each of the 32 sub-tries is built by a separate fork-join task, and the root node is
+     *  assembled from the sub-tries at the end. Creating the entries (which typically involves hashing the keys) is done in
+     *  parallel as well. If several entries have the same key, the last one wins, as it does when building sequentially.
+     *
+     * @param source  the elements from which the entries are created
+     * @param toEntry creates an entry from one of the elements
+     */
+    static <T, X extends EntryWithEquality> CompactHashMap<X> fromParallel(Object[] source, Function<T,X> toEntry) {
+        final int n = source.length;
+        if (n < PARALLEL_THRESHOLD) {
+            final Object owner = new Object();
+            CompactHashMap<X> result = empty();
+            for (Object o: source) {
+                //noinspection unchecked
+                result = result.updatedTransient(toEntry.apply((T) o), 0, owner);
+            }
+            return result;
+        }
+
+        final Object[] entries = new Object[n];
+        final byte[] masks = new byte[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            //noinspection unchecked
+            final X kv = toEntry.apply((T) source[i]);
+            entries[i] = kv;
+            masks[i] = (byte) mask(kv.keyHash(), 0);
+        });
+
+        // partition the entries by their root level slot, preserving their order
+        final int[] offsets = new int[33];
+        for (byte mask: masks) offsets[mask + 1] += 1;
+        for (int mask=0; mask<32; mask++) offsets[mask + 1] += offsets[mask];
+        final int[] nextIdx = Arrays.copyOf(offsets, 32);
+        final Object[] partitioned = new Object[n];
+        for (int i=0; i<n; i++) {
+            partitioned[nextIdx[masks[i]]++] = entries[i];
+        }
+
+        final Object[] subTries = new Object[32];
+        IntStream.range(0, 32).parallel().forEach(mask -> {
+            final Object owner = new Object(); // this owner token is discarded afterwards, sealing the sub-trie
+            CompactHashMap<X> sub = empty();
+            for (int i=offsets[mask]; i<offsets[mask + 1]; i++) {
+                //noinspection unchecked
+                sub = sub.updatedTransient((X) partitioned[i], 5, owner);
+            }
+            subTries[mask] = sub;
+        });
+
+        final TrieAssembler<X> result = new TrieAssembler<>(-1);
+        for (int mask=0; mask<32; mask++) {
+            result.add(bitpos(mask), subTries[mask]);
+        }
+        return result.build(null, null);
+    }
+
     protected X get0(X kv, int level) {
         return null;
     }
 
     protected CompactHashMap<X> updated0(X kv, int level) {
-        return new HashMap1<>(kv);
+        return HashTrieMap.singleton(kv, level, null);
     }
 
     protected CompactHashMap<X> removed0(X kv, int level) { // entry instead of key as an optimization
         return this;
     }
 
-    // utility method to create a HashTrieMap from two leaf CompactHashMaps (HashMap1 or CompactHashMapCollision1) with non-colliding hash code)
-    static <X extends EntryWithEquality> HashTrieMap<X> makeHashTrieMap(int hash0, CompactHashMap<X> elem0, int hash1, CompactHashMap<X> elem1, int level, int size) {
-        int index0 = (hash0 >>> level) & 0x1f;
-        int index1 = (hash1 >>> level) & 0x1f;
-        if (index0 != index1) {
-            int bitmap = (1 << index0) | (1 << index1);
-            @SuppressWarnings("unchecked")
-            Object[] elems = new Object[2];
-            if (index0 < index1) {
-                elems[0] = elem0;
-                elems[1] = elem1;
-            } else {
-                elems[0] = elem1;
-                elems[1] = elem0;
+    /**
+     * Updates the entry for a given key in a single traversal: {@code f} is called with the existing entry for {@code probe}'s key
+     *  (or {@code null} if there is none) and returns the new entry, or {@code null} to remove the entry. The new entry must have
+     *  the same key as {@code probe}. If {@code f} returns the existing entry (or {@code null} for a missing key), the trie itself
+     *  is returned.
+     */
+    protected CompactHashMap<X> updatedWith0(X probe, int level, UnaryOperator<X> f) {
+        final X kv = f.apply(null);
+        return kv == null ? this : HashTrieMap.singleton(kv, level, null);
+    }
+
+    /**
+     * This is the 'transient' variant of {@link #updated0(EntryWithEquality, int)}: Nodes that were created with the same (non-null)
+     *  {@code owner} are modified in place rather than copied. This is intended for builders only: a builder uses a fresh owner
+     *  token and replaces it when it hands out its result, so nodes reachable from a published map are never modified afterwards.
+     */
+    protected CompactHashMap<X> updatedTransient(X kv, int level, Object owner) {
+        return HashTrieMap.singleton(kv, level, owner);
+    }
+
+    static int mask(int hash, int level) {
+        return (hash >>> level) & 0x1f;
+    }
+    static int bitpos(int mask) {
+        return 1 << mask;
+    }
+
+    // utility method to create a sub-trie from two entries with different keys, either as a (nested) HashTrieMap or - for
+    //  a full 32-bit hash collision - as a HashMapCollision1
+    static <X extends EntryWithEquality> CompactHashMap<X> mergeTwoEntries(X kv0, X kv1, int level, Object owner) {
+        final int hash0 = kv0.keyHash();
+        final int hash1 = kv1.keyHash();
+        if (hash0 == hash1) {
+            // 32-bit hash collision (rare, but not impossible)
+            return HashMapCollision1.fromList(hash0, CompactListMap.<X>empty().updated(kv0).updated(kv1));
+        }
+
+        final int mask0 = mask(hash0, level);
+        final int mask1 = mask(hash1, level);
+        if (mask0 != mask1) {
+            final Object[] content = mask0 < mask1 ? new Object[] {kv0, kv1} : new Object[] {kv1, kv0};
+            return new HashTrieMap<>(bitpos(mask0) | bitpos(mask1), 0, content, 2, kv0.contentHash() + kv1.contentHash(), owner);
+        }
+        else {
+            final CompactHashMap<X> node = mergeTwoEntries(kv0, kv1, level + 5, owner);
+            return new HashTrieMap<>(0, bitpos(mask0), new Object[] {node}, 2, node.contentHash(), owner);
+        }
+    }
+
+    // utility method to create a sub-trie from an existing (collision) node and an entry with a different hash code
+    static <X extends EntryWithEquality> HashTrieMap<X> mergeNodeAndEntry(int hash0, CompactHashMap<X> node0, X kv1, int level) {
+        final int mask0 = mask(hash0, level);
+        final int mask1 = mask(kv1.keyHash(), level);
+        if (mask0 != mask1) {
+            return new HashTrieMap<>(bitpos(mask1), bitpos(mask0), new Object[] {kv1, node0}, node0.size() + 1, node0.contentHash() + kv1.contentHash(), null);
+        }
+        else {
+            final HashTrieMap<X> node = mergeNodeAndEntry(hash0, node0, kv1, level + 5);
+            return new HashTrieMap<>(0, bitpos(mask0), new Object[] {node}, node.size(), node.contentHash(), null);
+        }
+    }
+
+    /**
+     * Determines the resulting entry when both tries of a {@link #union0(CompactHashMap, int, EntryMerger)} contain an entry for
+     *  the same key.
+     */
+    interface EntryMerger<X> {
+        X merge(X left, X right);
+
+        /**
+         * @return true if and only if merging an entry with itself always returns that entry: identical sub-tries can then be
+         *         reused without looking at their entries
+         */
+        default boolean isIdempotent() {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <X extends EntryWithEquality> EntryMerger<X> keepLeft() {
+        return KEEP_LEFT;
+    }
+    @SuppressWarnings("unchecked")
+    static <X extends EntryWithEquality> EntryMerger<X> keepRight() {
+        return KEEP_RIGHT;
+    }
+
+    private static final EntryMerger KEEP_LEFT = new EntryMerger() {
+        @Override public Object merge (Object left, Object right) {
+            return left;
+        }
+        @Override public boolean isIdempotent () {
+            return true;
+        }
+    };
+    private static final EntryMerger KEEP_RIGHT = new EntryMerger() {
+        @Override public Object merge (Object left, Object right) {
+            return right;
+        }
+        @Override public boolean isIdempotent () {
+            return true;
+        }
+    };
+
+    /**
+     * Returns the union of two (sub-)tries at a given level. Sub-tries that occur in only one of the tries are reused by reference,
+     *  and so are identical sub-tries if the merger is idempotent. For keys contained in both tries, {@code merger} determines the
+     *  resulting entry.
+     */
+    CompactHashMap<X> union0(CompactHashMap<X> that, int level, EntryMerger<X> merger) {
+        if ((this == that && merger.isIdempotent()) || that.isEmpty()) return this;
+        if (this.isEmpty()) return that;
+
+        if (! (this instanceof HashTrieMap) || ! (that instanceof HashTrieMap)) {
+            // at least one of them is a collision node, so there are only few entries to add individually
+            if (that instanceof HashMapCollision1) {
+                CompactHashMap<X> result = this;
+                for (AIterator<X> it = that.iterator(); it.hasNext(); ) {
+                    result = result.mergedWith(it.next(), level, merger, false);
+                }
+                return result;
+            }
+            CompactHashMap<X> result = that;
+            for (AIterator<X> it = this.iterator(); it.hasNext(); ) {
+                result = result.mergedWith(it.next(), level, merger, true);
+            }
+            return result;
+        }
+
+        final HashTrieMap<X> a = (HashTrieMap<X>) this;
+        final HashTrieMap<X> b = (HashTrieMap<X>) that;
+        final int bits = a.dataMap | a.nodeMap | b.dataMap | b.nodeMap;
+        final TrieAssembler<X> result = new TrieAssembler<>(bits);
+
+        for (int remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            final int bitpos = Integer.lowestOneBit(remaining);
+            final Object fromA = a.slot(bitpos);
+            final Object fromB = b.slot(bitpos);
+
+            if (fromB == null) {
+                result.add(bitpos, fromA);
+            }
+            else if (fromA == null) {
+                result.add(bitpos, fromB);
+            }
+            else if (fromA instanceof CompactHashMap) {
+                //noinspection unchecked
+                final CompactHashMap<X> nodeA = (CompactHashMap<X>) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.union0((CompactHashMap<X>) fromB, level + 5, merger));
+                }
+                else {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.mergedWith((X) fromB, level + 5, merger, false));
+                }
+            }
+            else {
+                //noinspection unchecked
+                final X kv = (X) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    result.add(bitpos, ((CompactHashMap<X>) fromB).mergedWith(kv, level + 5, merger, true));
+                }
+                else {
+                    //noinspection unchecked
+                    final X other = (X) fromB;
+                    result.add(bitpos, kv.hasEqualKey(other) ? merger.merge(kv, other) : mergeTwoEntries(kv, other, level + 5, null));
+                }
             }
-            return new HashTrieMap<>(bitmap, elems, size);
-        } else {
-            @SuppressWarnings("unchecked")
-            Object[] elems = new Object[1];
-            int bitmap = (1 << index0);
-            elems[0] = makeHashTrieMap(hash0, elem0, hash1, elem1, level + 5, size);
-            return new HashTrieMap<>(bitmap, elems, size);
         }
+        return result.build(a, b);
     }
 
-    static class HashMap1<X extends EntryWithEquality> extends CompactHashMap<X> {
-        private final X kv;
+    /**
+     * Adds a single entry to this (sub-)trie, using {@code merger} if there is an entry for the same key already.
+     *
+     * @param kvIsLeft determines if the new entry is passed to the merger as the left or the right entry
+     */
+    private CompactHashMap<X> mergedWith(X kv, int level, EntryMerger<X> merger, boolean kvIsLeft) {
+        final X existing = get0(kv, level);
+        if (existing == null) return updated0(kv, level);
+
+        final X merged = kvIsLeft ? merger.merge(kv, existing) : merger.merge(existing, kv);
+        return merged == existing ? this : updated0(merged, level);
+    }
 
-        HashMap1(X kv) {
-            this.kv = kv;
+    /**
+     * Returns the intersection of two (sub-)tries at a given level, keeping the entries from {@code this}. Sub-tries are reused by
+     *  reference where possible, and sub-tries present in only one of the tries are skipped without looking at their contents.
+     */
+    CompactHashMap<X> intersect0(CompactHashMap<X> that, int level) {
+        if (this == that || this.isEmpty()) return this;
+        if (that.isEmpty()) return empty();
+
+        if (! (this instanceof HashTrieMap) || ! (that instanceof HashTrieMap)) {
+            // at least one of them is a collision node, so there are only few entries to check individually
+            final List<X> kept = new ArrayList<>();
+            if (this instanceof HashMapCollision1) {
+                for (AIterator<X> it = this.iterator(); it.hasNext(); ) {
+                    final X kv = it.next();
+                    if (that.get0(kv, level) != null) kept.add(kv);
+                }
+                if (kept.size() == size()) return this;
+            }
+            else {
+                for (AIterator<X> it = that.iterator(); it.hasNext(); ) {
+                    final X kv = it.next();
+                    final X mine = this.get0(kv, level);
+                    if (mine != null) kept.add(mine);
+                }
+            }
+            CompactHashMap<X> result = empty();
+            for (X kv: kept) {
+                result = result.updated0(kv, level);
+            }
+            return result;
         }
 
-        @Override public int size() {
-            return 1;
+        final HashTrieMap<X> a = (HashTrieMap<X>) this;
+        final HashTrieMap<X> b = (HashTrieMap<X>) that;
+        final int bits = (a.dataMap | a.nodeMap) & (b.dataMap | b.nodeMap);
+        final TrieAssembler<X> result = new TrieAssembler<>(bits);
+
+        for (int remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            final int bitpos = Integer.lowestOneBit(remaining);
+            final Object fromA = a.slot(bitpos);
+            final Object fromB = b.slot(bitpos);
+
+            if (fromA instanceof CompactHashMap) {
+                //noinspection unchecked
+                final CompactHashMap<X> nodeA = (CompactHashMap<X>) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.intersect0((CompactHashMap<X>) fromB, level + 5));
+                }
+                else {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.get0((X) fromB, level + 5));
+                }
+            }
+            else {
+                //noinspection unchecked
+                final X kv = (X) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    if (((CompactHashMap<X>) fromB).get0(kv, level + 5) != null) result.add(bitpos, kv);
+                }
+                else {
+                    //noinspection unchecked
+                    if (kv.hasEqualKey((X) fromB)) result.add(bitpos, kv);
+                }
+            }
         }
-        @Override public boolean isEmpty() {
-            return false;
+        return result.build(a, null);
+    }
+
+    /**
+     * Returns the entries of {@code this} (sub-)trie whose keys are not contained in {@code that}. Sub-tries are reused by reference
+     *  where possible, and sub-tries present only in {@code that} are skipped without looking at their contents.
+     */
+    CompactHashMap<X> diff0(CompactHashMap<X> that, int level) {
+        if (this == that) return empty();
+        if (this.isEmpty() || that.isEmpty()) return this;
+
+        if (! (this instanceof HashTrieMap) || ! (that instanceof HashTrieMap)) {
+            // at least one of them is a collision node, so there are only few entries to check individually
+            if (this instanceof HashMapCollision1) {
+                CompactHashMap<X> result = this;
+                for (AIterator<X> it = this.iterator(); it.hasNext(); ) {
+                    final X kv = it.next();
+                    if (that.get0(kv, level) != null) result = result.removed0(kv, level);
+                }
+                return result;
+            }
+            CompactHashMap<X> result = this;
+            for (AIterator<X> it = that.iterator(); it.hasNext(); ) {
+                result = result.removed0(it.next(), level);
+            }
+            return result;
         }
 
-        @Override protected X get0(X kv, int level) {
-            if (this.kv.hasEqualKey(kv))
-                return this.kv;
-            else
-                return null;
+        final HashTrieMap<X> a = (HashTrieMap<X>) this;
+        final HashTrieMap<X> b = (HashTrieMap<X>) that;
+        final int bits = a.dataMap | a.nodeMap;
+        final TrieAssembler<X> result = new TrieAssembler<>(bits);
+
+        for (int remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            final int bitpos = Integer.lowestOneBit(remaining);
+            final Object fromA = a.slot(bitpos);
+            final Object fromB = b.slot(bitpos);
+
+            if (fromB == null) {
+                result.add(bitpos, fromA);
+            }
+            else if (fromA instanceof CompactHashMap) {
+                //noinspection unchecked
+                final CompactHashMap<X> nodeA = (CompactHashMap<X>) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.diff0((CompactHashMap<X>) fromB, level + 5));
+                }
+                else {
+                    //noinspection unchecked
+                    result.add(bitpos, nodeA.removed0((X) fromB, level + 5));
+                }
+            }
+            else {
+                //noinspection unchecked
+                final X kv = (X) fromA;
+                if (fromB instanceof CompactHashMap) {
+                    //noinspection unchecked
+                    if (((CompactHashMap<X>) fromB).get0(kv, level + 5) == null) result.add(bitpos, kv);
+                }
+                else {
+                    //noinspection unchecked
+                    if (! kv.hasEqualKey((X) fromB)) result.add(bitpos, kv);
+                }
+            }
         }
+        return result.build(a, null);
+    }
 
-        @Override protected CompactHashMap<X> updated0(X kv, int level) {
-            if (this.kv.hasEqualKey(kv)) {
-                return new HashMap1<>(kv);
-            } else {
-                if (kv.keyHash() != this.kv.keyHash()) {
-                    // they have different hashes, but may collide at this level - find a level at which they don't
-                    return makeHashTrieMap(this.kv.keyHash(), this, kv.keyHash(), new HashMap1<>(kv), level, 2);
-                } else {
-                    // 32-bit hash collision (rare, but not impossible)
-                    return new HashMapCollision1<>(kv.keyHash(), CompactListMap.<X>empty().updated(this.kv).updated(kv));
+    /**
+     * Reports the differences between two (sub-)tries at a given level to {@code consumer}: it is called with an entry from
+     *  {@code this} and {@code null} for keys contained only in {@code this}, with {@code null} and an entry from {@code that} for
+     *  keys contained only in {@code that}, and with both entries for keys whose entries differ in content. Identical sub-tries are
+     *  skipped without looking at their contents, so the cost is proportional to the number of nodes that differ.
+     */
+    void changes0(CompactHashMap<X> that, int level, BiConsumer<X,X> consumer) {
+        if (this == that) return;
+
+        if (! (this instanceof HashTrieMap) || ! (that instanceof HashTrieMap)) {
+            // at least one of them is empty or a collision node, so there are only few entries in one of them
+            for (AIterator<X> it = this.iterator(); it.hasNext(); ) {
+                final X kv = it.next();
+                final X other = that.get0(kv, level);
+                if (other == null) consumer.accept(kv, null);
+                else if (other != kv && ! kv.hasEqualContent(other)) consumer.accept(kv, other);
+            }
+            for (AIterator<X> it = that.iterator(); it.hasNext(); ) {
+                final X kv = it.next();
+                if (this.get0(kv, level) == null) consumer.accept(null, kv);
+            }
+            return;
+        }
+
+        final HashTrieMap<X> a = (HashTrieMap<X>) this;
+        final HashTrieMap<X> b = (HashTrieMap<X>) that;
+        final int bits = a.dataMap | a.nodeMap | b.dataMap | b.nodeMap;
+
+        for (int remaining = bits; remaining != 0; remaining &= remaining - 1) {
+            final int bitpos = Integer.lowestOneBit(remaining);
+            final Object fromA = a.slot(bitpos);
+            final Object fromB = b.slot(bitpos);
+            if (fromA == fromB) continue;
+
+            if (fromA instanceof CompactHashMap || fromB instanceof CompactHashMap) {
+                CompactHashMap.<X>asTrie(fromA, level + 5).changes0(asTrie(fromB, level + 5), level + 5, consumer);
+            }
+            else {
+                //noinspection unchecked
+                final X kvA = (X) fromA;
+                //noinspection unchecked
+                final X kvB = (X) fromB;
+                if (kvA == null) consumer.accept(null, kvB);
+                else if (kvB == null) consumer.accept(kvA, null);
+                else if (! kvA.hasEqualKey(kvB)) {
+                    consumer.accept(kvA, null);
+                    consumer.accept(null, kvB);
                 }
+                else if (! kvA.hasEqualContent(kvB)) consumer.accept(kvA, kvB);
             }
         }
+    }
 
-        @Override protected CompactHashMap<X> removed0(X entry, int level) {
-            if (this.kv.hasEqualKey(entry))
-                return CompactHashMap.empty();
-            else
-                return this;
+    /**
+     * @return the sub-trie stored in a slot, wrapping an inlined entry in a singleton node and returning an empty trie for an empty slot
+     */
+    private static <X extends EntryWithEquality> CompactHashMap<X> asTrie(Object slot, int level) {
+        if (slot == null) return empty();
+        //noinspection unchecked
+        if (slot instanceof CompactHashMap) return (CompactHashMap<X>) slot;
+        //noinspection unchecked
+        return HashTrieMap.singleton((X) slot, level, null);
+    }
+
+    /**
+     * Helper for assembling a new HashTrieMap slot by slot in ascending bit order. Sub-tries with a single entry are inlined as
+     *  entries to keep the trie in canonical form.
+     */
+    private static class TrieAssembler<X extends EntryWithEquality> {
+        private final Object[] entries;
+        private final Object[] nodes;
+        private int dataMap;
+        private int nodeMap;
+        private int numEntries;
+        private int numNodes;
+        private int size;
+        private int contentHash;
+
+        TrieAssembler(int candidateBits) {
+            final int maxSlots = Integer.bitCount(candidateBits);
+            entries = new Object[maxSlots];
+            nodes = new Object[maxSlots];
         }
 
-        @Override public AIterator<X> iterator() {
-            return AIterator.single(kv);
+        /**
+         * @param entryOrNode an entry, a sub-trie or {@code null} for an empty slot
+         */
+        void add(int bitpos, Object entryOrNode) {
+            if (entryOrNode == null) return;
+
+            if (entryOrNode instanceof CompactHashMap) {
+                //noinspection unchecked
+                final CompactHashMap<X> node = (CompactHashMap<X>) entryOrNode;
+                switch (node.size()) {
+                    case 0:
+                        return;
+                    case 1:
+                        add(bitpos, ((HashTrieMap) node).content[0]);
+                        return;
+                    default:
+                        nodeMap |= bitpos;
+                        nodes[numNodes++] = node;
+                        size += node.size();
+                        contentHash += node.contentHash();
+                }
+            }
+            else {
+                dataMap |= bitpos;
+                entries[numEntries++] = entryOrNode;
+                size += 1;
+                contentHash += ((EntryWithEquality) entryOrNode).contentHash();
+            }
+        }
+
+        /**
+         * @param candidate1 an original trie: if the result has the same content, that trie is returned
+         * @param candidate2 another original trie (or {@code null}) that is returned if the result has the same content
+         */
+        CompactHashMap<X> build(HashTrieMap<X> candidate1, HashTrieMap<X> candidate2) {
+            if (size == 0) return empty();
+            if (hasSameContent(candidate1)) return candidate1;
+            if (hasSameContent(candidate2)) return candidate2;
+
+            final Object[] content = new Object[numEntries + numNodes];
+            System.arraycopy(entries, 0, content, 0, numEntries);
+            System.arraycopy(nodes, 0, content, numEntries, numNodes);
+            return new HashTrieMap<>(dataMap, nodeMap, content, size, contentHash, null);
+        }
+
+        private boolean hasSameContent(HashTrieMap<X> candidate) {
+            if (candidate == null || candidate.dataMap != dataMap || candidate.nodeMap != nodeMap) return false;
+            for (int i=0; i<numEntries; i++) {
+                if (candidate.content[i] != entries[i]) return false;
+            }
+            for (int i=0; i<numNodes; i++) {
+                if (candidate.content[numEntries + i] != nodes[i]) return false;
+            }
+            return true;
         }
     }
 
+    /**
+     * A node for entries whose keys have the same (full 32-bit) hash code. Small collision nodes keep their entries in a list, but
+     *  large ones keep them in a {@link RedBlackTree} ordered by key if all keys are {@link Comparable} and of the same class, so
+     *  that lookups do not degrade to linear time if many keys share a hash code (e.g. due to deliberately chosen keys).
+     *
+     * <p> Keys whose {@link Comparable#compareTo(Object)} is inconsistent with {@link Object#equals(Object)} fall back to the list
+     *  representation as soon as two different keys compare as equal.
+     */
     static class HashMapCollision1<X extends EntryWithEquality> extends CompactHashMap<X> {
+        static final int TREEIFY_THRESHOLD = 8;
+        static final int UNTREEIFY_THRESHOLD = 6;
+
+        @SuppressWarnings("unchecked")
+        private static final Comparator<Object> KEY_ORDER = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+
         private final int hash;
-        private final CompactListMap<X> kvs;
+        private final CompactListMap<X> kvs; // null if the entries are stored in 'tree'
+        private final RedBlackTree.Tree<Object,X> tree; // null if the entries are stored in 'kvs'
+        private final int size;
+        private final int contentHash;
 
-        HashMapCollision1(int hash, CompactListMap<X> kvs) {
-            this.hash = hash; //TODO look up hash?
+        private HashMapCollision1(int hash, CompactListMap<X> kvs, RedBlackTree.Tree<Object,X> tree, int size, int contentHash) {
+            this.hash = hash;
             this.kvs = kvs;
+            this.tree = tree;
+            this.size = size;
+            this.contentHash = contentHash;
+        }
+
+        /**
+         * Creates a collision node from a list of entries, storing them in a tree if there are sufficiently many and their keys
+         *  are mutually comparable.
+         */
+        static <X extends EntryWithEquality> HashMapCollision1<X> fromList(int hash, CompactListMap<X> kvs) {
+            int size = 0;
+            int contentHash = 0;
+            boolean isComparable = true;
+            final Object firstKey = kvs.head().key();
+            for (CompactListMap<X> m = kvs; m.nonEmpty(); m = m.tail()) {
+                size += 1;
+                contentHash += m.head().contentHash();
+                isComparable = isComparable && isComparableWith(firstKey, m.head().key());
+            }
+
+            if (size < TREEIFY_THRESHOLD || !isComparable) {
+                return new HashMapCollision1<>(hash, kvs, null, size, contentHash);
+            }
+
+            RedBlackTree.Tree<Object,X> tree = null;
+            for (CompactListMap<X> m = kvs; m.nonEmpty(); m = m.tail()) {
+                final X kv = m.head();
+                if (RedBlackTree.lookup(tree, kv.key(), KEY_ORDER) != null) {
+                    // compareTo is inconsistent with equals for these keys
+                    return new HashMapCollision1<>(hash, kvs, null, size, contentHash);
+                }
+                tree = RedBlackTree.update(tree, kv.key(), kv, true, KEY_ORDER);
+            }
+            return new HashMapCollision1<>(hash, null, tree, size, contentHash);
+        }
+
+        private static boolean isComparableWith(Object firstKey, Object key) {
+            return key instanceof Comparable && firstKey != null && key.getClass() == firstKey.getClass();
+        }
+
+        /**
+         * @return true if and only if the tree contains an entry whose key compares as equal to {@code kv}'s key but is not equal
+         */
+        private boolean isInconsistentWithTree(X kv) {
+            if (! isComparableWith(tree.key, kv.key())) return true;
+            final RedBlackTree.Tree<Object,X> existing = RedBlackTree.lookup(tree, kv.key(), KEY_ORDER);
+            return existing != null && ! existing.value.hasEqualKey(kv);
+        }
+
+        private CompactListMap<X> toList() {
+            if (kvs != null) return kvs;
+            CompactListMap<X> result = CompactListMap.empty();
+            for (AIterator<X> it = iterator(); it.hasNext(); ) {
+                result = result.prepended(it.next());
+            }
+            return result;
         }
 
         @Override public int size() {
-            return kvs.size();
+            return size;
         }
         @Override public boolean isEmpty () {
             return false;
         }
+        @Override public int contentHash () {
+            return contentHash;
+        }
 
         @Override protected X get0(X kv, int level) {
             if (hash != kv.keyHash()) return null;
-            return kvs.get(kv);
+            if (tree == null) return kvs.get(kv);
+
+            if (! isComparableWith(tree.key, kv.key())) return null; // all keys in the tree are comparable
+            final RedBlackTree.Tree<Object,X> existing = RedBlackTree.lookup(tree, kv.key(), KEY_ORDER);
+            return existing != null && existing.value.hasEqualKey(kv) ? existing.value : null;
         }
 
         @Override protected CompactHashMap<X> updated0(X kv, int level) {
             final int hash = kv.keyHash();
-            if (hash == this.hash) {
-                return new HashMapCollision1<>(hash, kvs.updated(kv));
-            } else {
-                return makeHashTrieMap(this.hash, this, hash, new HashMap1<>(kv), level, size() + 1);
+            if (hash != this.hash) {
+                return mergeNodeAndEntry(this.hash, this, kv, level);
             }
+
+            if (tree == null || isInconsistentWithTree(kv)) {
+                return fromList(hash, toList().updated(kv));
+            }
+
+            final RedBlackTree.Tree<Object,X> existing = RedBlackTree.lookup(tree, kv.key(), KEY_ORDER);
+            final int sizeNew = existing == null ? size + 1 : size;
+            final int contentHashNew = contentHash + kv.contentHash() - (existing == null ? 0 : existing.value.contentHash());
+            return new HashMapCollision1<>(hash, null, RedBlackTree.update(tree, kv.key(), kv, true, KEY_ORDER), sizeNew, contentHashNew);
+        }
+
+        @Override protected CompactHashMap<X> updatedWith0(X probe, int level, UnaryOperator<X> f) {
+            final X existing = get0(probe, level);
+            final X kv = f.apply(existing);
+            if (kv == existing) return this;
+            return kv == null ? removed0(probe, level) : updated0(kv, level);
+        }
+
+        @Override protected CompactHashMap<X> updatedTransient(X kv, int level, Object owner) {
+            return updated0(kv, level);
         }
 
         @Override protected CompactHashMap<X> removed0(X entry, int level) {
-            if (entry.keyHash() == this.hash) {
-                final CompactListMap<X> m = kvs.removed(entry);
-                if (m.isEmpty()) return CompactHashMap.empty();
-                if (m.tail().isEmpty()) return new HashMap1<>(m.head());
-                return new HashMapCollision1<>(hash, m);
+            if (entry.keyHash() != this.hash) return this;
+
+            final X existing = get0(entry, level);
+            if (existing == null) return this;
+            if (size == 2) {
+                // the parent node inlines the remaining entry
+                for (AIterator<X> it = iterator(); it.hasNext(); ) {
+                    final X kv = it.next();
+                    if (kv != existing) return HashTrieMap.singleton(kv, level, null);
+                }
             }
-            else {
-                return this;
+
+            if (tree == null) {
+                return new HashMapCollision1<>(hash, kvs.removed(entry), null, size - 1, contentHash - existing.contentHash());
+            }
+            final HashMapCollision1<X> result = new HashMapCollision1<>(hash, null, RedBlackTree.delete(tree, entry.key(), KEY_ORDER),
+                    size - 1, contentHash - existing.contentHash());
+            if (result.size < UNTREEIFY_THRESHOLD) {
+                return new HashMapCollision1<>(hash, result.toList(), null, result.size, result.contentHash);
             }
+            return result;
+        }
+
+        @Override void collectStats (CollectionStats.Collector collector, int depth, long entryBytes) {
+            final long nodeBytes = tree != null ? CollectionStats.objectBytes(4, 1) : CollectionStats.objectBytes(2, 0);
+            collector.addNode(this, "HashMapCollision1", depth, size, CollectionStats.objectBytes(2, 3) + size * (nodeBytes + entryBytes));
+            collector.addCollisionNode();
+        }
+
+        @Override void registerNodes (CollectionStats.Collector collector) {
+            collector.registerOtherVersionNode(this);
         }
 
         @Override public AIterator<X> iterator() {
+            if (tree != null) {
+                return RedBlackTree.valuesIterator(tree, AOption.none(), true, AOption.none(), false, KEY_ORDER);
+            }
+
             return new AbstractAIterator<X>() {
                 CompactListMap<X> next = kvs;
 
@@ -191,6 +912,9 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
             return ! nonEmpty();
         }
         abstract boolean nonEmpty(); // is way more efficient than size()
+        CompactListMap<X> prepended(X entry) {
+            return new CompactListMap.Node<>(entry, this);
+        }
         abstract CompactListMap<X> updated(X entry);
         abstract CompactListMap<X> removed(X entry); // only key is used - 'entry' is used as an optimization
 
@@ -296,15 +1020,46 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
     }
 
 
+    /**
+     * A trie node using the CHAMP encoding (see Steindorfer / Vinju, "Optimizing Hash-Array Mapped Tries for Fast and Lean Immutable
+     *  JVM Collections"): entries are stored inline in the node, and there are separate bitmaps for entries and sub-nodes. The
+     *  {@code content} array holds the entries first, followed by the sub-nodes, each in bitmap order.
+     *
+     * <p> The trie is kept in canonical form: a sub-node always holds at least two entries, so removing an entry moves a remaining single
+     *  entry back into its parent.
+     *
+     * <p> The fields are not final because a builder may modify the nodes it owns in place (see
+     *  {@link #updatedTransient(EntryWithEquality, int, Object)}). They are never modified after the builder's result was wrapped in
+     *  an {@link AHashMap} or {@link AHashSet}, and the final fields there guarantee safe publication.
+     */
     static class HashTrieMap<X extends EntryWithEquality> extends CompactHashMap<X> {
-        private final int bitmap;
-        private final Object[] elems;
-        private final int size;
-
-        HashTrieMap(int bitmap, Object[] elems, int size) {
-            this.bitmap = bitmap;
-            this.elems = elems;
+        private int dataMap;
+        private int nodeMap;
+        private Object[] content;
+        private int size;
+        private int contentHash;
+        private final Object owner;
+
+        HashTrieMap(int dataMap, int nodeMap, Object[] content, int size, int contentHash, Object owner) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
             this.size = size;
+            this.contentHash = contentHash;
+            this.owner = owner;
+        }
+
+        static <X extends EntryWithEquality> HashTrieMap<X> singleton(X kv, int level, Object owner) {
+            return new HashTrieMap<>(bitpos(mask(kv.keyHash(), level)), 0, new Object[] {kv}, 1, kv.contentHash(), owner);
+        }
+
+        /**
+         * A singleton node's bitmap depends on the level, so this returns a singleton node that is valid at a given level.
+         */
+        private HashTrieMap<X> atLevel(int level) {
+            final X kv = getEntry(0);
+            if (dataMap == bitpos(mask(kv.keyHash(), level))) return this;
+            return singleton(kv, level, null);
         }
 
         @Override public int size() {
@@ -313,106 +1068,389 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
         @Override public boolean isEmpty () {
             return false;
         }
+        @Override public int contentHash () {
+            return contentHash;
+        }
 
-        Object[] getElems() {
-            return elems;
+        Object[] getContent() {
+            return content;
         }
 
-        private CompactHashMap<X> getElem(int index) {
+        int payloadArity() {
+            return Integer.bitCount(dataMap);
+        }
+        int nodeArity() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        private int dataIndex(int bitpos) {
+            return Integer.bitCount(dataMap & (bitpos - 1));
+        }
+        private int nodeIndex(int bitpos) {
+            return payloadArity() + Integer.bitCount(nodeMap & (bitpos - 1));
+        }
+
+        private X getEntry(int index) {
             //noinspection unchecked
-            return (CompactHashMap<X>) elems[index];
+            return (X) content[index];
+        }
+        private CompactHashMap<X> getNode(int index) {
+            //noinspection unchecked
+            return (CompactHashMap<X>) content[index];
         }
 
         @Override protected X get0(X kv, int level) {
-            final int index = (kv.keyHash() >>> level) & 0x1f;
-            final int mask = (1 << index);
-            if (bitmap == -1) {
-                return getElem(index & 0x1f).get0(kv, level + 5);
-            }
-            else if ((bitmap & mask) != 0) {
-                final int offset = Integer.bitCount(bitmap & (mask - 1));
-                return getElem(offset).get0(kv, level + 5);
+            final int bitpos = bitpos(mask(kv.keyHash(), level));
+            if ((dataMap & bitpos) != 0) {
+                final X candidate = getEntry(dataIndex(bitpos));
+                return candidate.hasEqualKey(kv) ? candidate : null;
             }
-            else {
-                return null;
+            if ((nodeMap & bitpos) != 0) {
+                return getNode(nodeIndex(bitpos)).get0(kv, level + 5);
             }
+            return null;
         }
 
         @Override protected CompactHashMap<X> updated0(X kv, int level) {
-            final int index = (kv.keyHash() >>> level) & 0x1f;
-            final int mask = (1 << index);
-            final int offset = Integer.bitCount(bitmap & (mask - 1));
-            if ((bitmap & mask) != 0) {
-                final CompactHashMap<X> sub = getElem(offset);
+            final int bitpos = bitpos(mask(kv.keyHash(), level));
+            if ((dataMap & bitpos) != 0) {
+                final int idx = dataIndex(bitpos);
+                final X existing = getEntry(idx);
+                if (existing == kv) {
+                    return this;
+                }
+                else if (existing.hasEqualKey(kv)) {
+                    return copyAndSetEntry(idx, kv);
+                }
+                else {
+                    return copyAndMigrateFromInlineToNode(bitpos, mergeTwoEntries(existing, kv, level + 5, null));
+                }
+            }
+            else if ((nodeMap & bitpos) != 0) {
+                final int idx = nodeIndex(bitpos);
+                final CompactHashMap<X> sub = getNode(idx);
                 final CompactHashMap<X> subNew = sub.updated0(kv, level + 5);
-                if (subNew.equals(sub)) {
+                if (subNew == sub) {
                     return this;
                 }
                 else {
-                    @SuppressWarnings("unchecked")
-                    final Object[] elemsNew = new Object[elems.length];
-                    System.arraycopy(elems, 0, elemsNew, 0, elems.length);
-                    elemsNew[offset] = subNew;
-                    return new HashTrieMap<>(bitmap, elemsNew, size + (subNew.size() - sub.size()));
+                    return copyAndSetNode(idx, subNew, size + (subNew.size() - sub.size()));
                 }
             }
             else {
-                @SuppressWarnings("unchecked")
-                final Object[] elemsNew = new Object[elems.length + 1];
-                System.arraycopy(elems, 0, elemsNew, 0, offset);
-                elemsNew[offset] = new HashMap1<>(kv);
-                System.arraycopy(elems, offset, elemsNew, offset + 1, elems.length - offset);
-                return new HashTrieMap<>(bitmap | mask, elemsNew, size + 1);
+                return copyAndInsertEntry(bitpos, kv);
             }
         }
 
         @Override protected CompactHashMap<X> removed0(X kv, int level) {
-            final int index = (kv.keyHash() >>> level) & 0x1f;
-            final int mask = (1 << index);
-            final int offset = Integer.bitCount(bitmap & (mask - 1));
-            if ((bitmap & mask) != 0) {
-                final CompactHashMap<X> sub = getElem(offset);
+            final int hash = kv.keyHash();
+            final int bitpos = bitpos(mask(hash, level));
+            if ((dataMap & bitpos) != 0) {
+                final int idx = dataIndex(bitpos);
+                if (! getEntry(idx).hasEqualKey(kv)) {
+                    return this;
+                }
+
+                if (size == 1) {
+                    return CompactHashMap.empty();
+                }
+                if (size == 2 && nodeMap == 0) {
+                    // The remaining entry is usually inlined by the parent node. Creating the singleton with a bitmap for this
+                    //  level keeps it valid if it is the root or is used for further operations at this level.
+                    return singleton(getEntry(1 - idx), level, null);
+                }
+                return copyAndRemoveEntry(bitpos, idx);
+            }
+            else if ((nodeMap & bitpos) != 0) {
+                final int idx = nodeIndex(bitpos);
+                final CompactHashMap<X> sub = getNode(idx);
                 final CompactHashMap<X> subNew = sub.removed0(kv, level + 5);
-                if (subNew.equals(sub)) {
+                if (subNew == sub) {
                     return this;
                 }
-                else if (subNew.size() == 0) {
-                    int bitmapNew = bitmap ^ mask;
-                    if (bitmapNew != 0) {
-                        @SuppressWarnings("unchecked")
-                        final Object[] elemsNew = new Object[elems.length - 1];
-                        System.arraycopy(elems, 0, elemsNew, 0, offset);
-                        System.arraycopy(elems, offset + 1, elemsNew, offset, elems.length - offset - 1);
-                        final int sizeNew = size - sub.size();
-                        if (elemsNew.length == 1 && !(elemsNew[0] instanceof HashTrieMap)) {
-                            //noinspection unchecked
-                            return (CompactHashMap<X>) elemsNew[0];
-                        }
-                        else {
-                            return new HashTrieMap<>(bitmapNew, elemsNew, sizeNew);
-                        }
-                    } else {
+
+                if (subNew.size() == 1) {
+                    if (size == 2) {
+                        // this node has no other content, so the single remaining entry is propagated upwards
+                        //noinspection unchecked
+                        return ((HashTrieMap<X>) subNew).atLevel(level);
+                    }
+                    //noinspection unchecked
+                    return copyAndMigrateFromNodeToInline(bitpos, idx, (X) ((HashTrieMap) subNew).content[0]);
+                }
+                return copyAndSetNode(idx, subNew, size + (subNew.size() - sub.size()));
+            }
+            else {
+                return this;
+            }
+        }
+
+        @Override protected CompactHashMap<X> updatedWith0(X probe, int level, UnaryOperator<X> f) {
+            final int bitpos = bitpos(mask(probe.keyHash(), level));
+            if ((dataMap & bitpos) != 0) {
+                final int idx = dataIndex(bitpos);
+                final X existing = getEntry(idx);
+                if (existing.hasEqualKey(probe)) {
+                    final X kv = f.apply(existing);
+                    if (kv == existing) {
+                        return this;
+                    }
+                    if (kv != null) {
+                        return copyAndSetEntry(idx, kv);
+                    }
+
+                    if (size == 1) {
                         return CompactHashMap.empty();
                     }
+                    if (size == 2 && nodeMap == 0) {
+                        return singleton(getEntry(1 - idx), level, null);
+                    }
+                    return copyAndRemoveEntry(bitpos, idx);
+                }
+
+                final X kv = f.apply(null);
+                if (kv == null) {
+                    return this;
+                }
+                return copyAndMigrateFromInlineToNode(bitpos, mergeTwoEntries(existing, kv, level + 5, null));
+            }
+            else if ((nodeMap & bitpos) != 0) {
+                final int idx = nodeIndex(bitpos);
+                final CompactHashMap<X> sub = getNode(idx);
+                final CompactHashMap<X> subNew = sub.updatedWith0(probe, level + 5, f);
+                if (subNew == sub) {
+                    return this;
+                }
+
+                if (subNew.size() == 1) {
+                    // an entry was removed from the sub-node, see removed0()
+                    if (size == 2) {
+                        //noinspection unchecked
+                        return ((HashTrieMap<X>) subNew).atLevel(level);
+                    }
+                    //noinspection unchecked
+                    return copyAndMigrateFromNodeToInline(bitpos, idx, (X) ((HashTrieMap) subNew).content[0]);
                 }
-                else if (elems.length == 1 && !(subNew instanceof HashTrieMap)) {
-                    return subNew;
+                return copyAndSetNode(idx, subNew, size + (subNew.size() - sub.size()));
+            }
+            else {
+                final X kv = f.apply(null);
+                if (kv == null) {
+                    return this;
+                }
+                return copyAndInsertEntry(bitpos, kv);
+            }
+        }
+
+        @Override protected CompactHashMap<X> updatedTransient(X kv, int level, Object owner) {
+            if (this.owner != owner) {
+                return new HashTrieMap<X>(dataMap, nodeMap, content.clone(), size, contentHash, owner).updatedTransient(kv, level, owner);
+            }
+
+            final int bitpos = bitpos(mask(kv.keyHash(), level));
+            if ((dataMap & bitpos) != 0) {
+                final int idx = dataIndex(bitpos);
+                final X existing = getEntry(idx);
+                if (existing.hasEqualKey(kv)) {
+                    content[idx] = kv;
+                    contentHash += kv.contentHash() - existing.contentHash();
                 }
                 else {
-                    @SuppressWarnings("unchecked")
-                    final Object[] elemsNew = new Object[elems.length];
-                    System.arraycopy(elems, 0, elemsNew, 0, elems.length);
-                    elemsNew[offset] = subNew;
-                    final int sizeNew = size + (subNew.size() - sub.size());
-                    return new HashTrieMap<>(bitmap, elemsNew, sizeNew);
-                }
-            } else {
-                return this;
+                    // migrate the existing entry to a new sub-node - the content array keeps its length
+                    final int idxNew = payloadArity() - 1 + Integer.bitCount(nodeMap & (bitpos - 1));
+                    System.arraycopy(content, idx + 1, content, idx, idxNew - idx);
+                    content[idxNew] = mergeTwoEntries(existing, kv, level + 5, owner);
+                    dataMap ^= bitpos;
+                    nodeMap |= bitpos;
+                    size += 1;
+                    contentHash += kv.contentHash();
+                }
+            }
+            else if ((nodeMap & bitpos) != 0) {
+                final int idx = nodeIndex(bitpos);
+                final CompactHashMap<X> sub = getNode(idx);
+                // read size and hash before the call because it may modify 'sub' in place
+                final int subSizeOld = sub.size();
+                final int subHashOld = sub.contentHash();
+                final CompactHashMap<X> subNew = sub.updatedTransient(kv, level + 5, owner);
+                content[idx] = subNew;
+                size += subNew.size() - subSizeOld;
+                contentHash += subNew.contentHash() - subHashOld;
+            }
+            else {
+                final int idx = dataIndex(bitpos);
+                final Object[] contentNew = new Object[content.length + 1];
+                System.arraycopy(content, 0, contentNew, 0, idx);
+                contentNew[idx] = kv;
+                System.arraycopy(content, idx, contentNew, idx + 1, content.length - idx);
+                content = contentNew;
+                dataMap |= bitpos;
+                size += 1;
+                contentHash += kv.contentHash();
             }
+            return this;
+        }
+
+        /**
+         * @return the entry or sub-node at a given bit position, or {@code null} if there is neither
+         */
+        Object slot(int bitpos) {
+            if ((dataMap & bitpos) != 0) return content[dataIndex(bitpos)];
+            if ((nodeMap & bitpos) != 0) return content[nodeIndex(bitpos)];
+            return null;
+        }
+
+        private HashTrieMap<X> copyAndSetEntry(int idx, X kv) {
+            final Object[] contentNew = content.clone();
+            contentNew[idx] = kv;
+            return new HashTrieMap<>(dataMap, nodeMap, contentNew, size, contentHash + kv.contentHash() - getEntry(idx).contentHash(), null);
+        }
+
+        private HashTrieMap<X> copyAndSetNode(int idx, CompactHashMap<X> node, int sizeNew) {
+            final Object[] contentNew = content.clone();
+            contentNew[idx] = node;
+            return new HashTrieMap<>(dataMap, nodeMap, contentNew, sizeNew, contentHash + node.contentHash() - getNode(idx).contentHash(), null);
+        }
+
+        private HashTrieMap<X> copyAndInsertEntry(int bitpos, X kv) {
+            final int idx = dataIndex(bitpos);
+            final Object[] contentNew = new Object[content.length + 1];
+            System.arraycopy(content, 0, contentNew, 0, idx);
+            contentNew[idx] = kv;
+            System.arraycopy(content, idx, contentNew, idx + 1, content.length - idx);
+            return new HashTrieMap<>(dataMap | bitpos, nodeMap, contentNew, size + 1, contentHash + kv.contentHash(), null);
+        }
+
+        private HashTrieMap<X> copyAndRemoveEntry(int bitpos, int idx) {
+            final Object[] contentNew = new Object[content.length - 1];
+            System.arraycopy(content, 0, contentNew, 0, idx);
+            System.arraycopy(content, idx + 1, contentNew, idx, content.length - idx - 1);
+            return new HashTrieMap<>(dataMap ^ bitpos, nodeMap, contentNew, size - 1, contentHash - getEntry(idx).contentHash(), null);
+        }
+
+        private HashTrieMap<X> copyAndMigrateFromInlineToNode(int bitpos, CompactHashMap<X> node) {
+            final int idxOld = dataIndex(bitpos);
+            final int idxNew = payloadArity() - 1 + Integer.bitCount(nodeMap & (bitpos - 1));
+
+            final Object[] contentNew = new Object[content.length];
+            System.arraycopy(content, 0, contentNew, 0, idxOld);
+            System.arraycopy(content, idxOld + 1, contentNew, idxOld, idxNew - idxOld);
+            contentNew[idxNew] = node;
+            System.arraycopy(content, idxNew + 1, contentNew, idxNew + 1, content.length - idxNew - 1);
+            return new HashTrieMap<>(dataMap ^ bitpos, nodeMap | bitpos, contentNew, size + 1, contentHash - getEntry(idxOld).contentHash() + node.contentHash(), null);
+        }
+
+        private HashTrieMap<X> copyAndMigrateFromNodeToInline(int bitpos, int idxOld, X kv) {
+            final int idxNew = dataIndex(bitpos);
+
+            final Object[] contentNew = new Object[content.length];
+            System.arraycopy(content, 0, contentNew, 0, idxNew);
+            contentNew[idxNew] = kv;
+            System.arraycopy(content, idxNew, contentNew, idxNew + 1, idxOld - idxNew);
+            System.arraycopy(content, idxOld + 1, contentNew, idxOld + 1, content.length - idxOld - 1);
+            return new HashTrieMap<>(dataMap | bitpos, nodeMap ^ bitpos, contentNew, size - 1, contentHash - getNode(idxOld).contentHash() + kv.contentHash(), null);
         }
 
         @Override public AIterator<X> iterator() {
-            return new Itr<>(elems);
+            return new Itr<>(content);
+        }
+
+        @Override void collectStats (CollectionStats.Collector collector, int depth, long entryBytes) {
+            final int numEntries = payloadArity();
+            collector.addNode(this, "HashTrieMap", depth, content.length,
+                    CollectionStats.objectBytes(2, 4) + CollectionStats.arrayBytes(content.length) + numEntries * entryBytes);
+            for (int i=numEntries; i<content.length; i++) {
+                getNode(i).collectStats(collector, depth + 1, entryBytes);
+            }
+        }
+
+        @Override void registerNodes (CollectionStats.Collector collector) {
+            collector.registerOtherVersionNode(this);
+            for (int i=payloadArity(); i<content.length; i++) {
+                getNode(i).registerNodes(collector);
+            }
+        }
+    }
+
+    /**
+     * A spliterator over a range of a trie node's slots, i.e. its entries and sub-nodes. It splits the range in two parts with
+     *  roughly the same number of entries, and if there is only a single sub-node left, it continues with that sub-node's slots.
+     *  All parts' sizes are known exactly.
+     */
+    static class TrieSpliterator<X extends EntryWithEquality, T> implements Spliterator<T> {
+        private Object[] slots;
+        private int from;
+        private int to;
+        private long remaining;
+        private final Function<X,T> f;
+        private final int characteristics;
+
+        private Itr<X> itr; // created lazily when traversal starts
+
+        TrieSpliterator (Object[] slots, int from, int to, long size, Function<X,T> f, int characteristics) {
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+            this.remaining = size;
+            this.f = f;
+            this.characteristics = characteristics;
+        }
+
+        private static long sizeOf(Object slot) {
+            return slot instanceof CompactHashMap ? ((CompactHashMap<?>) slot).size() : 1;
+        }
+
+        @Override public Spliterator<T> trySplit () {
+            if (itr != null) return null;
+
+            while (to - from == 1 && slots[from] instanceof HashTrieMap) {
+                slots = ((HashTrieMap<?>) slots[from]).content;
+                from = 0;
+                to = slots.length;
+            }
+            if (to - from < 2) return null;
+
+            int mid = from;
+            long prefixSize = 0;
+            do {
+                prefixSize += sizeOf(slots[mid]);
+                mid += 1;
+            }
+            while (mid < to - 1 && 2*prefixSize < remaining);
+
+            final TrieSpliterator<X,T> prefix = new TrieSpliterator<>(slots, from, mid, prefixSize, f, characteristics);
+            from = mid;
+            remaining -= prefixSize;
+            return prefix;
+        }
+
+        private Itr<X> itr() {
+            if (itr == null) itr = new Itr<>(Arrays.copyOfRange(slots, from, to));
+            return itr;
+        }
+
+        @Override public boolean tryAdvance (Consumer<? super T> action) {
+            final Itr<X> itr = itr();
+            if (! itr.hasNext()) return false;
+            remaining -= 1;
+            action.accept(f.apply(itr.next()));
+            return true;
+        }
+
+        @Override public void forEachRemaining (Consumer<? super T> action) {
+            final Itr<X> itr = itr();
+            while (itr.hasNext()) {
+                action.accept(f.apply(itr.next()));
+            }
+            remaining = 0;
+        }
+
+        @Override public long estimateSize () {
+            return remaining;
+        }
+
+        @Override public int characteristics () {
+            return characteristics;
         }
     }
 
@@ -454,7 +1492,7 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
                     Object object = current.objects[current.pos++];
                     if (object instanceof HashTrieMap) {
                         stack.push(current);
-                        current = new Snapshot(((HashTrieMap) object).getElems(), 0);
+                        current = new Snapshot(((HashTrieMap) object).getContent(), 0);
                     }
                     else if (object instanceof HashMapCollision1) {
                         //noinspection unchecked
@@ -463,7 +1501,7 @@ class CompactHashMap<X extends CompactHashMap.EntryWithEquality> {
                     }
                     else {
                         //noinspection unchecked
-                        next = (X) ((HashMap1)object).kv;
+                        next = (X) object;
                     }
                 }
             }
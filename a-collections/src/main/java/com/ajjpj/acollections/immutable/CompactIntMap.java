@@ -0,0 +1,61 @@
+package com.ajjpj.acollections.immutable;
+
+
+/**
+ * A {@link CompactPrimitiveMap} with primitive {@code int} keys stored in {@code int[]} arrays, used by {@link AIntHashMap} and
+ *  {@link AIntHashSet}. Keys are widened to {@code long} for the trie algorithms.
+ */
+final class CompactIntMap<V> extends CompactPrimitiveMap<int[],V> {
+    private static final int[] NO_KEYS = new int[0];
+
+    @SuppressWarnings("unchecked")
+    private static final CompactIntMap EMPTY = new CompactIntMap<>(0, 0, NO_KEYS, NO_VALUES, NO_NODES, 0);
+    @SuppressWarnings("unchecked")
+    private static final CompactIntMap EMPTY_SET = new CompactIntMap<>(0, 0, NO_KEYS, null, NO_NODES, 0);
+
+    private CompactIntMap (int dataMap, int nodeMap, int[] keys, Object[] values, CompactPrimitiveMap<int[],V>[] nodes, int size) {
+        super(dataMap, nodeMap, keys, values, nodes, size);
+    }
+
+    static <V> CompactIntMap<V> empty() {
+        //noinspection unchecked
+        return EMPTY;
+    }
+
+    static CompactIntMap<Object> emptySet() {
+        //noinspection unchecked
+        return EMPTY_SET;
+    }
+
+    @Override CompactPrimitiveMap<int[],V> newNode (int dataMap, int nodeMap, int[] keys, Object[] values, CompactPrimitiveMap<int[],V>[] nodes, int size) {
+        return new CompactIntMap<>(dataMap, nodeMap, keys, values, nodes, size);
+    }
+
+    @Override long keyAt (int idx) {
+        return keys[idx];
+    }
+
+    @Override int[] noKeys () {
+        return NO_KEYS;
+    }
+    @Override int[] keysOf (long key) {
+        return new int[] {(int) key};
+    }
+    @Override int[] keysOf (long key0, long key1) {
+        return new int[] {(int) key0, (int) key1};
+    }
+
+    @Override int[] keysWith (int idx, long key) {
+        final int[] result = new int[keys.length + 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        result[idx] = (int) key;
+        System.arraycopy(keys, idx, result, idx + 1, keys.length - idx);
+        return result;
+    }
+    @Override int[] keysWithout (int idx) {
+        final int[] result = new int[keys.length - 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        System.arraycopy(keys, idx + 1, result, idx, keys.length - idx - 1);
+        return result;
+    }
+}
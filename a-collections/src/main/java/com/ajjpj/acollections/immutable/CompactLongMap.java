@@ -0,0 +1,61 @@
+package com.ajjpj.acollections.immutable;
+
+
+/**
+ * A {@link CompactPrimitiveMap} with primitive {@code long} keys stored in {@code long[]} arrays, used by {@link ALongHashMap} and
+ *  {@link ALongHashSet}.
+ */
+final class CompactLongMap<V> extends CompactPrimitiveMap<long[],V> {
+    private static final long[] NO_KEYS = new long[0];
+
+    @SuppressWarnings("unchecked")
+    private static final CompactLongMap EMPTY = new CompactLongMap<>(0, 0, NO_KEYS, NO_VALUES, NO_NODES, 0);
+    @SuppressWarnings("unchecked")
+    private static final CompactLongMap EMPTY_SET = new CompactLongMap<>(0, 0, NO_KEYS, null, NO_NODES, 0);
+
+    private CompactLongMap (int dataMap, int nodeMap, long[] keys, Object[] values, CompactPrimitiveMap<long[],V>[] nodes, int size) {
+        super(dataMap, nodeMap, keys, values, nodes, size);
+    }
+
+    static <V> CompactLongMap<V> empty() {
+        //noinspection unchecked
+        return EMPTY;
+    }
+
+    static CompactLongMap<Object> emptySet() {
+        //noinspection unchecked
+        return EMPTY_SET;
+    }
+
+    @Override CompactPrimitiveMap<long[],V> newNode (int dataMap, int nodeMap, long[] keys, Object[] values, CompactPrimitiveMap<long[],V>[] nodes, int size) {
+        return new CompactLongMap<>(dataMap, nodeMap, keys, values, nodes, size);
+    }
+
+    @Override long keyAt (int idx) {
+        return keys[idx];
+    }
+
+    @Override long[] noKeys () {
+        return NO_KEYS;
+    }
+    @Override long[] keysOf (long key) {
+        return new long[] {key};
+    }
+    @Override long[] keysOf (long key0, long key1) {
+        return new long[] {key0, key1};
+    }
+
+    @Override long[] keysWith (int idx, long key) {
+        final long[] result = new long[keys.length + 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        result[idx] = key;
+        System.arraycopy(keys, idx, result, idx + 1, keys.length - idx);
+        return result;
+    }
+    @Override long[] keysWithout (int idx) {
+        final long[] result = new long[keys.length - 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        System.arraycopy(keys, idx + 1, result, idx, keys.length - idx - 1);
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AbstractAIterator;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A hash trie with primitive keys, used by {@link AIntHashMap}, {@link ALongHashMap}, {@link AIntHashSet} and {@link ALongHashSet}.
+ *  It uses the same CHAMP node encoding as {@link CompactHashMap}, but it stores keys in a primitive array and values in a separate
+ *  array, so an entry requires no objects of its own. Sets have no values array at all, i.e. {@link #values} is {@code null} in all
+ *  of a set's nodes.
+ *
+ * <p> The key itself serves as the hash code. Different keys have different hash codes, so there are no collision nodes, and dense
+ *  keys (e.g. IDs) result in tries with densely populated nodes.
+ *
+ * <p> This class contains the trie algorithms, working on keys as {@code long} values. Subclasses provide the key arrays:
+ *  {@link CompactIntMap} stores keys in an {@code int[]}, widening them for the trie algorithms, and {@link CompactLongMap} stores
+ *  them in a {@code long[]}.
+ *
+ * @param <A> the key array type, i.e. {@code int[]} or {@code long[]}
+ * @param <V> the value type
+ */
+abstract class CompactPrimitiveMap<A,V> {
+    static final Object[] NO_VALUES = new Object[0];
+    static final CompactPrimitiveMap[] NO_NODES = new CompactPrimitiveMap[0];
+
+    /**
+     * The maximum depth of a trie: 64 bit keys are consumed five bits per level
+     */
+    static final int MAX_DEPTH = 13;
+
+    private final int dataMap;
+    private final int nodeMap;
+    final A keys;
+    final Object[] values;
+    private final CompactPrimitiveMap<A,V>[] nodes;
+    private final int size;
+
+    CompactPrimitiveMap (int dataMap, int nodeMap, A keys, Object[] values, CompactPrimitiveMap<A,V>[] nodes, int size) {
+        this.dataMap = dataMap;
+        this.nodeMap = nodeMap;
+        this.keys = keys;
+        this.values = values;
+        this.nodes = nodes;
+        this.size = size;
+    }
+
+    abstract CompactPrimitiveMap<A,V> newNode (int dataMap, int nodeMap, A keys, Object[] values, CompactPrimitiveMap<A,V>[] nodes, int size);
+
+    /**
+     * @return the key at a given index in this node's {@link #keys}
+     */
+    abstract long keyAt (int idx);
+
+    abstract A noKeys ();
+    abstract A keysOf (long key);
+    abstract A keysOf (long key0, long key1);
+
+    /**
+     * @return a copy of this node's {@link #keys} with an additional key at a given index
+     */
+    abstract A keysWith (int idx, long key);
+
+    /**
+     * @return a copy of this node's {@link #keys} without the key at a given index
+     */
+    abstract A keysWithout (int idx);
+
+    private boolean isSet () {
+        return values == null;
+    }
+
+    private Object valueAt (int idx) {
+        return values == null ? null : values[idx];
+    }
+
+    private CompactPrimitiveMap<A,V> singleton (long key, Object value, int shift) {
+        //noinspection unchecked
+        return newNode(bitpos(key, shift), 0, keysOf(key), isSet() ? null : new Object[] {value}, NO_NODES, 1);
+    }
+
+    private static int bitpos (long key, int shift) {
+        return 1 << (int) ((key >>> shift) & 0x1f);
+    }
+    private int dataIndex (int bitpos) {
+        return Integer.bitCount(dataMap & (bitpos - 1));
+    }
+    private int nodeIndex (int bitpos) {
+        return Integer.bitCount(nodeMap & (bitpos - 1));
+    }
+
+    int size () {
+        return size;
+    }
+
+    /**
+     * @return the value stored for {@code key}, or {@code notFound} if there is no entry for {@code key}. For sets, this returns
+     *         {@code null} if the key is present.
+     */
+    Object getOrElse (long key, Object notFound) {
+        CompactPrimitiveMap<A,V> node = this;
+        for (int shift=0; ; shift += 5) {
+            final int bitpos = bitpos(key, shift);
+            if ((node.dataMap & bitpos) != 0) {
+                final int idx = node.dataIndex(bitpos);
+                return node.keyAt(idx) == key ? node.valueAt(idx) : notFound;
+            }
+            if ((node.nodeMap & bitpos) == 0) {
+                return notFound;
+            }
+            node = node.nodes[node.nodeIndex(bitpos)];
+        }
+    }
+
+    CompactPrimitiveMap<A,V> updated (long key, V value, int shift) {
+        final int bitpos = bitpos(key, shift);
+        if ((dataMap & bitpos) != 0) {
+            final int idx = dataIndex(bitpos);
+            if (keyAt(idx) == key) {
+                if (isSet() || values[idx] == value) return this;
+                final Object[] valuesNew = values.clone();
+                valuesNew[idx] = value;
+                return newNode(dataMap, nodeMap, keys, valuesNew, nodes, size);
+            }
+
+            // migrate the existing entry to a new sub-node
+            final CompactPrimitiveMap<A,V> node = mergeTwoEntries(keyAt(idx), valueAt(idx), key, value, shift + 5);
+            return newNode(dataMap ^ bitpos, nodeMap | bitpos, keysWithout(idx), removeAt(values, idx),
+                    insertAt(nodes, nodeIndex(bitpos), node), size + 1);
+        }
+        if ((nodeMap & bitpos) != 0) {
+            final int idx = nodeIndex(bitpos);
+            final CompactPrimitiveMap<A,V> sub = nodes[idx];
+            final CompactPrimitiveMap<A,V> subNew = sub.updated(key, value, shift + 5);
+            if (subNew == sub) return this;
+
+            final CompactPrimitiveMap<A,V>[] nodesNew = nodes.clone();
+            nodesNew[idx] = subNew;
+            return newNode(dataMap, nodeMap, keys, values, nodesNew, size + (subNew.size - sub.size));
+        }
+
+        final int idx = dataIndex(bitpos);
+        return newNode(dataMap | bitpos, nodeMap, keysWith(idx, key), insertAt(values, idx, value), nodes, size + 1);
+    }
+
+    CompactPrimitiveMap<A,V> removed (long key, int shift) {
+        final int bitpos = bitpos(key, shift);
+        if ((dataMap & bitpos) != 0) {
+            final int idx = dataIndex(bitpos);
+            if (keyAt(idx) != key) return this;
+
+            if (size == 1) return newNode(0, 0, noKeys(), isSet() ? null : NO_VALUES, NO_NODES, 0);
+            if (size == 2 && nodeMap == 0) {
+                // the remaining entry is usually inlined by the parent node, but this node may be the root
+                return singleton(keyAt(1 - idx), valueAt(1 - idx), shift);
+            }
+            return newNode(dataMap ^ bitpos, nodeMap, keysWithout(idx), removeAt(values, idx), nodes, size - 1);
+        }
+        if ((nodeMap & bitpos) != 0) {
+            final int idx = nodeIndex(bitpos);
+            final CompactPrimitiveMap<A,V> sub = nodes[idx];
+            final CompactPrimitiveMap<A,V> subNew = sub.removed(key, shift + 5);
+            if (subNew == sub) return this;
+
+            if (subNew.size == 1) {
+                if (size == 2) {
+                    // this node has no other content, so the single remaining entry is propagated upwards
+                    return singleton(subNew.keyAt(0), subNew.valueAt(0), shift);
+                }
+                final int dataIdx = dataIndex(bitpos);
+                return newNode(dataMap | bitpos, nodeMap ^ bitpos, keysWith(dataIdx, subNew.keyAt(0)),
+                        insertAt(values, dataIdx, subNew.valueAt(0)), removeAt(nodes, idx), size - 1);
+            }
+            final CompactPrimitiveMap<A,V>[] nodesNew = nodes.clone();
+            nodesNew[idx] = subNew;
+            return newNode(dataMap, nodeMap, keys, values, nodesNew, size - 1);
+        }
+        return this;
+    }
+
+    private CompactPrimitiveMap<A,V> mergeTwoEntries (long key0, Object value0, long key1, Object value1, int shift) {
+        final int bitpos0 = bitpos(key0, shift);
+        final int bitpos1 = bitpos(key1, shift);
+        if (bitpos0 != bitpos1) {
+            // entries are stored in bitmap order
+            final boolean ordered = Integer.compareUnsigned(bitpos0, bitpos1) < 0;
+            //noinspection unchecked
+            return newNode(bitpos0 | bitpos1, 0,
+                    ordered ? keysOf(key0, key1) : keysOf(key1, key0),
+                    isSet() ? null : ordered ? new Object[] {value0, value1} : new Object[] {value1, value0},
+                    NO_NODES, 2);
+        }
+        //noinspection unchecked
+        final CompactPrimitiveMap<A,V>[] nodes = new CompactPrimitiveMap[] {mergeTwoEntries(key0, value0, key1, value1, shift + 5)};
+        return newNode(0, bitpos0, noKeys(), isSet() ? null : NO_VALUES, nodes, 2);
+    }
+
+    /**
+     * @return a copy of the array with an additional element, or {@code null} for a set's {@code null} values array
+     */
+    private static <T> T[] insertAt (T[] arr, int idx, T el) {
+        if (arr == null) return null;
+        final T[] result = Arrays.copyOf(arr, arr.length + 1);
+        System.arraycopy(arr, idx, result, idx + 1, arr.length - idx);
+        result[idx] = el;
+        return result;
+    }
+    private static <T> T[] removeAt (T[] arr, int idx) {
+        if (arr == null) return null;
+        final T[] result = Arrays.copyOf(arr, arr.length - 1);
+        System.arraycopy(arr, idx + 1, result, idx, arr.length - idx - 1);
+        return result;
+    }
+
+    /**
+     * A cursor traversing a trie's entries without allocating objects per entry: {@link #advance()} moves to the next entry, and
+     *  {@link #key()} and {@link #value()} give access to it.
+     */
+    static class Cursor<V> {
+        private final CompactPrimitiveMap<?,V>[] stack = new CompactPrimitiveMap[MAX_DEPTH + 1];
+        private final int[] nodePositions = new int[MAX_DEPTH + 1];
+        private int depth;
+
+        private CompactPrimitiveMap<?,V> current;
+        private int idx = -1;
+
+        Cursor (CompactPrimitiveMap<?,V> root) {
+            stack[0] = root;
+            current = root;
+        }
+
+        /**
+         * @return true if and only if there is a next entry, which then becomes the current entry
+         */
+        boolean advance () {
+            if (++idx < Integer.bitCount(current.dataMap)) return true;
+
+            while (depth >= 0) {
+                final CompactPrimitiveMap<?,V> node = stack[depth];
+                if (nodePositions[depth] < node.nodes.length) {
+                    final CompactPrimitiveMap<?,V> child = node.nodes[nodePositions[depth]++];
+                    depth += 1;
+                    stack[depth] = child;
+                    nodePositions[depth] = 0;
+                    current = child;
+                    idx = 0;
+                    if (child.dataMap != 0) return true;
+                }
+                else {
+                    depth -= 1;
+                }
+            }
+            return false;
+        }
+
+        long key () {
+            return current.keyAt(idx);
+        }
+        V value () {
+            //noinspection unchecked
+            return (V) current.valueAt(idx);
+        }
+    }
+
+    /**
+     * An iterator based on a {@link Cursor}, with {@link #current()} creating the element for the cursor's current entry.
+     */
+    static abstract class CursorIterator<V,T> extends AbstractAIterator<T> {
+        final Cursor<V> cursor;
+        private boolean hasNext;
+
+        CursorIterator (CompactPrimitiveMap<?,V> root) {
+            cursor = new Cursor<>(root);
+            hasNext = cursor.advance();
+        }
+
+        abstract T current ();
+
+        @Override public boolean hasNext () {
+            return hasNext;
+        }
+
+        @Override public T next () {
+            if (! hasNext) throw new NoSuchElementException();
+            final T result = current();
+            hasNext = cursor.advance();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.util.AEquivalence;
+
+
+/**
+ * A handle for a key (or set element) together with its hash code, for repeatedly looking up the same key in many
+ *  {@link AHashMap} or {@link AHashSet} instances (e.g. in different versions of the same map). The key's hash code is computed
+ *  and spread once when the handle is created, and the {@code PrehashedKey} methods like {@link AHashMap#getPrehashed(PrehashedKey)},
+ *  {@link AHashMap#containsKeyPrehashed(PrehashedKey)} or {@link AHashSet#containsPrehashed(PrehashedKey)} reuse it rather than calling the key's
+ *  {@code hashCode()} method again:
+ *
+ * <p> {@code final PrehashedKey<String> key = PrehashedKey.of(longCompositeKey);}
+ * <p> {@code for (AHashMap<String,Integer> version: versions) System.out.println(version.getPrehashed(key)); }
+ *
+ * <p> This pays off for keys with expensive {@code hashCode()} implementations that do not cache their results, e.g. records or
+ *  composite keys. A handle is tied to an {@link AEquivalence} because that determines the hash code; collections using a
+ *  different equivalence ignore the cached hash code and look up {@link #key()} the regular way.
+ *
+ * <p> A {@code PrehashedKey} is not equal to the key it wraps, and passing it to methods that take a key of type {@code Object}
+ *  (like {@link java.util.Map#get(Object)}) looks up the handle itself rather than the key. That is also why the methods taking a
+ *  {@code PrehashedKey} have names of their own rather than overloading {@code get} or {@code plus}, which would make calls
+ *  with a {@code null} key ambiguous.
+ *
+ * @param <K> the key's type
+ */
+public final class PrehashedKey<K> {
+    private final K key;
+    private final AEquivalence<? super K> equivalence;
+    private final int rawHash;
+    private final int keyHash;
+
+    private PrehashedKey (K key, AEquivalence<? super K> equivalence) {
+        this.key = key;
+        this.equivalence = equivalence;
+        this.rawHash = equivalence.hash(key);
+        this.keyHash = CompactHashMap.spread(rawHash);
+    }
+
+    /**
+     * Creates a handle for a key in collections comparing keys based on {@link Object#equals(Object)}, which is the default.
+     *
+     * @param key the key, may be null
+     * @param <K> the key's type
+     * @return the new handle
+     */
+    public static <K> PrehashedKey<K> of (K key) {
+        return new PrehashedKey<>(key, AEquivalence.equality());
+    }
+
+    /**
+     * Creates a handle for a key in collections comparing keys using a given {@link AEquivalence}.
+     *
+     * @param key         the key, may be null
+     * @param equivalence the equivalence of the collections the handle is used with
+     * @param <K> the key's type
+     * @return the new handle
+     */
+    public static <K> PrehashedKey<K> of (K key, AEquivalence<? super K> equivalence) {
+        return new PrehashedKey<>(key, equivalence);
+    }
+
+    /**
+     * @return the key
+     */
+    public K key () {
+        return key;
+    }
+
+    /**
+     * @return the equivalence the key's hash code was computed for
+     */
+    public AEquivalence<? super K> equivalence () {
+        return equivalence;
+    }
+
+    /**
+     * @return true if and only if the cached hash code is valid for a collection using a given equivalence
+     */
+    boolean isValidFor (AEquivalence<?> equivalence) {
+        return this.equivalence.equals(equivalence);
+    }
+
+    /**
+     * @return the key's hash code as returned by the equivalence
+     */
+    int rawHash () {
+        return rawHash;
+    }
+
+    /**
+     * @return the key's hash code after {@link CompactHashMap#spread(int) spreading}, i.e. as used for locating it in a hash trie
+     */
+    int keyHash () {
+        return keyHash;
+    }
+
+    @Override public boolean equals (Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final PrehashedKey<?> that = (PrehashedKey<?>) o;
+        //noinspection unchecked
+        return equivalence.equals(that.equivalence) && keyHash == that.keyHash && ((AEquivalence) equivalence).equivalent(key, that.key);
+    }
+
+    @Override public int hashCode () {
+        return rawHash;
+    }
+
+    @Override public String toString () {
+        return "PrehashedKey{" + key + "}";
+    }
+}
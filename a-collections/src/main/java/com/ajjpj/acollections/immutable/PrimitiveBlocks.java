@@ -0,0 +1,207 @@
+package com.ajjpj.acollections.immutable;
+
+import java.util.function.IntFunction;
+
+
+/**
+ * The storage shared by {@link AIntVector}, {@link ALongVector} and {@link ADoubleVector}: Elements are stored in primitive arrays
+ *  ('blocks') of length 32, and the blocks are the elements of an {@link AVector}. Only the first block's elements before
+ *  {@link #offset} and the last block's elements after {@code offset + size} are not part of the vector.
+ *
+ * <p> This class does the index arithmetic and all operations that work on entire blocks. It treats blocks as opaque arrays, so
+ *  reading and writing individual elements is left to the primitive vectors.
+ *
+ * @param <A> the block type, i.e. a primitive array type like {@code int[]}
+ */
+final class PrimitiveBlocks<A> {
+    static final int BLOCK_SIZE = 32;
+    static final int LOG_BLOCK_SIZE = 5;
+    static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    final AVector<A> blocks;
+    final int offset;
+    final int size;
+    private final IntFunction<A> newArray;
+
+    private PrimitiveBlocks (AVector<A> blocks, int offset, int size, IntFunction<A> newArray) {
+        this.blocks = blocks;
+        this.offset = offset;
+        this.size = size;
+        this.newArray = newArray;
+    }
+
+    static <A> PrimitiveBlocks<A> empty (IntFunction<A> newArray) {
+        return new PrimitiveBlocks<>(AVector.empty(), 0, 0, newArray);
+    }
+
+    /**
+     * @param blocks full blocks, except that the last block may contain less than 32 elements
+     */
+    static <A> PrimitiveBlocks<A> of (AVector<A> blocks, int size, IntFunction<A> newArray) {
+        return new PrimitiveBlocks<>(blocks, 0, size, newArray);
+    }
+
+    private PrimitiveBlocks<A> with (AVector<A> blocks, int offset, int size) {
+        return new PrimitiveBlocks<>(blocks, offset, size, newArray);
+    }
+
+    A newBlock () {
+        return newArray.apply(BLOCK_SIZE);
+    }
+
+    private A copyOf (A block) {
+        final A result = newBlock();
+        //noinspection SuspiciousSystemArraycopy
+        System.arraycopy(block, 0, result, 0, BLOCK_SIZE);
+        return result;
+    }
+
+    /**
+     * @return the position of the element with a given index, i.e. its index in the concatenation of all blocks
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    int position (int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+        return offset + index;
+    }
+
+    /**
+     * @return the block containing a given position; the element's index in this block is {@code position & BLOCK_MASK}
+     */
+    A block (int position) {
+        return blocks.get(position >>> LOG_BLOCK_SIZE);
+    }
+
+    /**
+     * @return a copy of the block containing a given position, for passing to {@link #withBlock(int, Object)} after modifying it
+     */
+    A copyOfBlock (int position) {
+        return copyOf(block(position));
+    }
+
+    PrimitiveBlocks<A> withBlock (int position, A block) {
+        return with(blocks.updated(position >>> LOG_BLOCK_SIZE, block), offset, size);
+    }
+
+    /**
+     * @return the position at which {@link #appended(Object)} adds an element
+     */
+    int endPosition () {
+        return offset + size;
+    }
+
+    /**
+     * @return a block for writing an appended element at {@code endPosition() & BLOCK_MASK} and then passing to {@link #appended(Object)}
+     */
+    A blockForAppend () {
+        return (endPosition() & BLOCK_MASK) == 0 ? newBlock() : copyOf(blocks.last());
+    }
+
+    PrimitiveBlocks<A> appended (A block) {
+        if ((endPosition() & BLOCK_MASK) == 0) return with(blocks.append(block), offset, size+1);
+        return with(blocks.updated(blocks.size()-1, block), offset, size+1);
+    }
+
+    /**
+     * @return a block for writing a prepended element at {@code (offset-1) & BLOCK_MASK} and then passing to {@link #prepended(Object)}
+     */
+    A blockForPrepend () {
+        return offset == 0 ? newBlock() : copyOf(blocks.head());
+    }
+
+    PrimitiveBlocks<A> prepended (A block) {
+        if (offset == 0) return with(blocks.prepend(block), BLOCK_SIZE-1, size+1);
+        return with(blocks.updated(0, block), offset-1, size+1);
+    }
+
+    PrimitiveBlocks<A> take (int n) {
+        if (n <= 0) return empty(newArray);
+        if (n >= size) return this;
+        return with(blocks.take((offset + n + BLOCK_SIZE - 1) >>> LOG_BLOCK_SIZE), offset, n);
+    }
+
+    PrimitiveBlocks<A> drop (int n) {
+        if (n <= 0) return this;
+        if (n >= size) return empty(newArray);
+        final int newStart = offset + n;
+        return with(blocks.drop(newStart >>> LOG_BLOCK_SIZE), newStart & BLOCK_MASK, size - n);
+    }
+
+    /**
+     * Concatenates two vectors' blocks. Blocks are shared rather than copied wherever the elements' positions in their blocks stay the
+     *  same, in particular if this vector ends at a block boundary and the other vector starts at one. Otherwise the other vector's
+     *  elements are copied into new blocks, a block at a time.
+     */
+    PrimitiveBlocks<A> concat (PrimitiveBlocks<A> that) {
+        if (that.size == 0) return this;
+        if (size == 0) return that;
+
+        final int end = endPosition() & BLOCK_MASK;
+        if (end == 0 && that.offset == 0) {
+            return with(blocks.concat(that.blocks), offset, size + that.size);
+        }
+        if (end == that.offset) {
+            // this vector's last block and the other vector's first block fit together, and the other vector's remaining blocks are shared
+            final A merged = copyOf(blocks.last());
+            final int num = Math.min(that.size, BLOCK_SIZE - end);
+            //noinspection SuspiciousSystemArraycopy
+            System.arraycopy(that.blocks.head(), end, merged, end, num);
+            return with(blocks.updated(blocks.size()-1, merged).concat(that.blocks.drop(1)), offset, size + that.size);
+        }
+
+        final AVector.Transient<A> result = blocks.toTransient();
+        A target = null;
+        int targetPos = end;
+        if (end != 0) {
+            target = copyOf(blocks.last());
+            result.set(result.size()-1, target);
+        }
+        for (int b=0; b<that.blocks.size(); b++) {
+            final A source = that.blocks.get(b);
+            for (int from=that.blockStart(b), to=that.blockEnd(b); from<to; ) {
+                if (targetPos == 0) {
+                    target = newBlock();
+                    result.append(target);
+                }
+                final int num = Math.min(to - from, BLOCK_SIZE - targetPos);
+                //noinspection SuspiciousSystemArraycopy
+                System.arraycopy(source, from, target, targetPos, num);
+                from += num;
+                targetPos = (targetPos + num) & BLOCK_MASK;
+            }
+        }
+        return with(result.toVector(), offset, size + that.size);
+    }
+
+    int numBlocks () {
+        return blocks.size();
+    }
+
+    /**
+     * @return the index of the first element in a given block that is part of the vector
+     */
+    int blockStart (int blockIndex) {
+        return blockIndex == 0 ? offset : 0;
+    }
+
+    /**
+     * @return the index after the last element in a given block that is part of the vector
+     */
+    int blockEnd (int blockIndex) {
+        return Math.min(BLOCK_SIZE, offset + size - (blockIndex << LOG_BLOCK_SIZE));
+    }
+
+    /**
+     * @param target an array of length {@link #size} to which the vector's elements are copied
+     */
+    void copyTo (A target) {
+        int pos = 0;
+        for (int b=0; b<blocks.size(); b++) {
+            final int start = blockStart(b);
+            final int num = blockEnd(b) - start;
+            //noinspection SuspiciousSystemArraycopy
+            System.arraycopy(blocks.get(b), start, target, pos, num);
+            pos += num;
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.ajjpj.acollections.util.AOption;
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 
 class RedBlackTree {
@@ -36,6 +38,54 @@ class RedBlackTree {
         return tree.count;
     }
 
+    /**
+     * @return a stack that is large enough to hold any path from the root into the tree: a red-black tree with n nodes is no
+     *  higher than 2*log2(n+1), so traversals need not allocate anything beyond this array
+     */
+    @SuppressWarnings("unchecked")
+    private static <A, B> Tree<A, B>[] newPathStack (Tree<A, B> root) {
+        return new Tree[2 * (32 - Integer.numberOfLeadingZeros(count(root)))];
+    }
+
+    /**
+     * @return the node with {@code n} smaller keys, found by descending based on the subtrees' counts
+     */
+    static <A, B> Tree<A, B> nth (Tree<A, B> tree, int n) {
+        if (n < 0 || n >= count(tree)) throw new IndexOutOfBoundsException(String.valueOf(n));
+        while (true) {
+            final int leftCount = count(tree.left);
+            if (n < leftCount) {
+                tree = tree.left;
+            }
+            else if (n == leftCount) {
+                return tree;
+            }
+            else {
+                n -= leftCount + 1;
+                tree = tree.right;
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys less than {@code x} if the tree contains {@code x}, or -1 otherwise
+     */
+    static <A> int indexOf (Tree<A, ?> tree, A x, Comparator<? super A> ordering) {
+        int result = 0;
+        while (tree != null) {
+            final int cmp = ordering.compare(x, tree.key);
+            if (cmp < 0) {
+                tree = tree.left;
+            }
+            else {
+                if (cmp == 0) return result + count(tree.left);
+                result += count(tree.left) + 1;
+                tree = tree.right;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Count all the nodes with keys greater than or equal to the lower bound and less than the upper bound.
      * The two bounds are optional.
@@ -64,10 +114,66 @@ class RedBlackTree {
         return blacken(upd(tree, k, v, overwrite, ordering));
     }
 
+    /**
+     * Adds an entry with a key that is greater than all keys in the tree, which is the same as {@link #update} for such a key but
+     *  walks down the right spine without comparing keys.
+     */
+    static <A, B> Tree<A, B> append (Tree<A, B> tree, A k, B v) {
+        return blacken(app(tree, k, v));
+    }
+
+    /**
+     * Builds a perfectly balanced tree from keys (and values) that are sorted in strictly ascending order, in O(n) time and without
+     *  comparing keys.
+     *
+     * @param values the values corresponding to the keys, or null if all values are null
+     */
+    static <A, B> Tree<A, B> fromSorted (Object[] keys, Object[] values, int size) {
+        // The tree is complete except for its deepest level. Nodes on that level are red and all others are black, so all paths
+        //  have the same number of black nodes and there are no red nodes with red children.
+        final int deepestLevel = 32 - Integer.numberOfLeadingZeros(size);
+        return fromSorted(keys, values, 0, size, 1, deepestLevel);
+    }
+
+    /**
+     * Returns a tree with the entries of both trees. For keys contained in both trees, the entry is taken from {@code t2}, or its
+     *  value is determined by {@code f} if that is not null. This splits one tree at the keys of the other and joins the results,
+     *  which takes O(m log(n/m + 1)) time for trees of sizes m and n with m &lt;= n, and reuses subtrees that do not overlap with the
+     *  other tree's keys.
+     */
+    static <A, B> Tree<A, B> union (Tree<A, B> t1, Tree<A, B> t2, BiFunction<B, B, B> f, Comparator<? super A> ordering) {
+        return blacken(doUnion(t1, height(t1), t2, height(t2), f, ordering, new int[1]));
+    }
+
+    /**
+     * Returns a tree with those entries of {@code t1} whose keys are contained in {@code t2}, in O(m log(n/m + 1)) time.
+     */
+    static <A, B> Tree<A, B> intersect (Tree<A, B> t1, Tree<A, ?> t2, Comparator<? super A> ordering) {
+        return blacken(doIntersect(t1, height(t1), t2, height(t2), ordering, new int[1]));
+    }
+
+    /**
+     * Returns a tree with those entries of {@code t1} whose keys are not contained in {@code t2}, in O(m log(n/m + 1)) time, reusing
+     *  subtrees of {@code t1} that do not overlap with {@code t2}'s keys.
+     */
+    static <A, B> Tree<A, B> diff (Tree<A, B> t1, Tree<A, ?> t2, Comparator<? super A> ordering) {
+        return blacken(doDiff(t1, height(t1), t2, height(t2), ordering, new int[1]));
+    }
+
     static <A, B> Tree<A, B> delete (Tree<A, B> tree, A k, Comparator<? super A> ordering) {
         return blacken(del(tree, k, ordering));
     }
 
+    /**
+     * Inserts, replaces or removes the value for a key in a single traversal: {@code f} is called with the existing value (if any)
+     *  and returns the new value, or {@link AOption#none()} to remove the entry. The tree is returned unchanged if {@code f} returns
+     *  the existing value (by identity) or no value for a missing key.
+     */
+    static <A, B> Tree<A, B> updateWith (Tree<A, B> tree, A k, Function<AOption<B>, AOption<B>> f, Comparator<? super A> ordering) {
+        final Tree<A, B> result = updWith(tree, k, f, ordering, new boolean[1]);
+        return result == tree ? tree : blacken(result);
+    }
+
     static <A, B> Tree<A, B> rangeImpl (Tree<A, B> tree, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
         if (from.isEmpty() && to.isEmpty()) return tree;
         if (from.isDefined() && to.isDefined()) return range(tree, from.get(), fromInclusive, to.get(), toInclusive, ordering);
@@ -133,6 +239,59 @@ class RedBlackTree {
         return new ReverseKeysIterator<>(tree, from, fromInclusive, to, toInclusive, ordering);
     }
 
+    static <A, B> AIterator<B> reverseValuesIterator (Tree<A, B> tree, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
+        return new ReverseValuesIterator<>(tree, from, fromInclusive, to, toInclusive, ordering);
+    }
+
+    static <A, B> Spliterator<Map.Entry<A, B>> spliterator (Tree<A, B> tree, Comparator<? super A> ordering) {
+        return spliterator(tree, 0, count(tree), ordering);
+    }
+
+    /**
+     * @return a spliterator over the entries with ranks from {@code fromRank} (inclusive) to {@code toRank} (exclusive)
+     */
+    static <A, B> Spliterator<Map.Entry<A, B>> spliterator (Tree<A, B> tree, int fromRank, int toRank, Comparator<? super A> ordering) {
+        return new RankSpliterator<>(tree, fromRank, toRank, Tree::entry, Spliterator.DISTINCT | Spliterator.NONNULL, Map.Entry.comparingByKey(ordering));
+    }
+
+    static <A> Spliterator<A> keysSpliterator (Tree<A, ?> tree, Comparator<? super A> ordering) {
+        return keysSpliterator(tree, 0, count(tree), ordering);
+    }
+
+    static <A> Spliterator<A> keysSpliterator (Tree<A, ?> tree, int fromRank, int toRank, Comparator<? super A> ordering) {
+        return new RankSpliterator<>(tree, fromRank, toRank, t -> t.key, Spliterator.DISTINCT, ordering);
+    }
+
+    static <A, B> Spliterator<B> valuesSpliterator (Tree<A, B> tree) {
+        return new RankSpliterator<>(tree, 0, count(tree), t -> t.value, 0, null);
+    }
+
+    /**
+     * Returns an iterator over the differences between two trees with the same ordering: {@code f} is called with a node from
+     *  {@code a} and {@code null} for keys contained only in {@code a}, with {@code null} and a node from {@code b} for keys
+     *  contained only in {@code b}, and with both nodes for keys whose values are not equal. Subtrees shared by both trees are
+     *  skipped, so the cost is roughly proportional to the number of differences (times the trees' height) if {@code b} is a
+     *  modified version of {@code a}.
+     */
+    static <A, B, R> AIterator<R> changesIterator (Tree<A, B> a, Tree<A, B> b, Comparator<? super A> ordering, BiFunction<Tree<A, B>, Tree<A, B>, R> f) {
+        return new ChangesIterator<>(a, b, ordering, f);
+    }
+
+    static void collectStats (Tree<?, ?> tree, CollectionStats.Collector collector, int depth) {
+        if (tree == null) return;
+        final int numChildren = (tree.left != null ? 1 : 0) + (tree.right != null ? 1 : 0);
+        collector.addNode(tree, tree instanceof RedTree ? "RedTree" : "BlackTree", depth, 1 + numChildren, CollectionStats.objectBytes(4, 1));
+        collectStats(tree.left, collector, depth + 1);
+        collectStats(tree.right, collector, depth + 1);
+    }
+
+    static void registerNodes (Tree<?, ?> tree, CollectionStats.Collector collector) {
+        if (tree == null) return;
+        collector.registerOtherVersionNode(tree);
+        registerNodes(tree.left, collector);
+        registerNodes(tree.right, collector);
+    }
+
     private static boolean isRedTree (Tree<?, ?> tree) {
         return tree instanceof RedTree;
     } //TODO polymorphic 'isRed()'?
@@ -176,6 +335,54 @@ class RedBlackTree {
         return tree;
     }
 
+    private static <A, B> Tree<A, B> app (Tree<A, B> tree, A k, B v) {
+        if (tree == null) return new RedTree<>(k, v, null, null);
+        return balanceRight(isBlackTree(tree), tree.key, tree.value, tree.left, app(tree.right, k, v));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <A, B> Tree<A, B> fromSorted (Object[] keys, Object[] values, int from, int until, int level, int deepestLevel) {
+        if (from >= until) return null;
+        final int mid = (from + until) >>> 1;
+        final Tree<A, B> left = fromSorted(keys, values, from, mid, level+1, deepestLevel);
+        final Tree<A, B> right = fromSorted(keys, values, mid+1, until, level+1, deepestLevel);
+        return mkTree(level != deepestLevel || level == 1, (A) keys[mid], values == null ? null : (B) values[mid], left, right);
+    }
+
+    /**
+     * @param removed is set to true if the entry was removed, determining how the path to it is rebalanced on the way up
+     */
+    private static <A, B> Tree<A, B> updWith (Tree<A, B> tree, A k, Function<AOption<B>, AOption<B>> f, Comparator<? super A> ordering, boolean[] removed) {
+        if (tree == null) {
+            final AOption<B> v = f.apply(AOption.none());
+            return v.isDefined() ? new RedTree<>(k, v.get(), null, null) : null;
+        }
+
+        final int cmp = ordering.compare(k, tree.key);
+        if (cmp < 0) {
+            final Tree<A, B> newLeft = updWith(tree.left, k, f, ordering, removed);
+            if (newLeft == tree.left) return tree;
+            if (! removed[0]) return balanceLeft(isBlackTree(tree), tree.key, tree.value, newLeft, tree.right);
+            if (isBlackTree(tree.left)) return del_balLeft(tree.key, tree.value, newLeft, tree.right);
+            return new RedTree<>(tree.key, tree.value, newLeft, tree.right);
+        }
+        if (cmp > 0) {
+            final Tree<A, B> newRight = updWith(tree.right, k, f, ordering, removed);
+            if (newRight == tree.right) return tree;
+            if (! removed[0]) return balanceRight(isBlackTree(tree), tree.key, tree.value, tree.left, newRight);
+            if (isBlackTree(tree.right)) return del_balRight(tree.key, tree.value, tree.left, newRight);
+            return new RedTree<>(tree.key, tree.value, tree.left, newRight);
+        }
+
+        final AOption<B> v = f.apply(AOption.some(tree.value));
+        if (v.isEmpty()) {
+            removed[0] = true;
+            return del_append(tree.left, tree.right);
+        }
+        if (v.get() == tree.value) return tree;
+        return mkTree(isBlackTree(tree), k, v.get(), tree.left, tree.right);
+    }
+
     private static <A, B> Tree<A, B> updNth (Tree<A, B> tree, int idx, A k, B v, boolean overwrite) {
         if (tree == null) return new RedTree<>(k, v, null, null);
         final int rank = count(tree.left) + 1;
@@ -332,6 +539,231 @@ class RedBlackTree {
         return rebalance(tree, newLeft, newRight);
     }
 
+    // The set operations below follow "Just Join for Parallel Ordered Sets" by Blelloch, Ferizovic and Sun. Joining two trees takes
+    //  time proportional to the difference of their black heights, so the heights are passed along rather than recomputed. A
+    //  tree's height is the black height it has after blackening its root; intermediate trees may have a red root with a red child.
+
+    private static int height (Tree<?, ?> tree) {
+        int result = isRedTree(tree) ? 1 : 0;
+        for (Tree<?, ?> t = tree; t != null; t = t.left) {
+            if (isBlackTree(t)) result += 1;
+        }
+        return result;
+    }
+
+    private static int childHeight (int parentHeight, Tree<?, ?> child) {
+        return parentHeight - 1 + (isRedTree(child) ? 1 : 0);
+    }
+
+    private static int joinedHeight (Tree<?, ?> joined, int leftHeight, int rightHeight) {
+        return Math.max(leftHeight, rightHeight) + (isRedTree(joined) ? 1 : 0);
+    }
+
+    /**
+     * @param resultHeight is set to the height of the resulting tree
+     */
+    private static <A, B> Tree<A, B> doUnion (Tree<A, B> t1, int h1, Tree<A, B> t2, int h2, BiFunction<B, B, B> f, Comparator<? super A> ordering, int[] resultHeight) {
+        if (t1 == null) {
+            resultHeight[0] = h2;
+            return t2;
+        }
+        if (t2 == null || (t1 == t2 && f == null)) {
+            resultHeight[0] = h1;
+            return t1;
+        }
+        if (t1 == t2) {
+            // a shared subtree, e.g. when merging two versions of the same tree: f must still be applied to each of its entries
+            resultHeight[0] = h1;
+            return mergedWithItself(t1, f);
+        }
+
+        final SplitResult<A, B> split = split(t1, h1, t2.key, ordering);
+        final Tree<A, B> newLeft = doUnion(split.left, split.leftHeight, t2.left, childHeight(h2, t2.left), f, ordering, resultHeight);
+        final int newLeftHeight = resultHeight[0];
+        final Tree<A, B> newRight = doUnion(split.right, split.rightHeight, t2.right, childHeight(h2, t2.right), f, ordering, resultHeight);
+        final int newRightHeight = resultHeight[0];
+
+        if (newLeft == t2.left && newRight == t2.right && (split.found == null || f == null)) {
+            resultHeight[0] = h2;
+            return t2;
+        }
+        final B value = (split.found != null && f != null) ? f.apply(split.found.value, t2.value) : t2.value;
+        if (split.found != null && newLeft == split.left && newRight == split.right && value == split.found.value) {
+            // t2 added nothing to t1, so t1 can be reused instead of joining its pieces back together
+            resultHeight[0] = h1;
+            return t1;
+        }
+        final Tree<A, B> result = join(newLeft, newLeftHeight, t2.key, value, newRight, newRightHeight);
+        resultHeight[0] = joinedHeight(result, newLeftHeight, newRightHeight);
+        return result;
+    }
+
+    /**
+     * Returns the mirror image of a tree, i.e. a tree with the same entries and colors in reversed key order. This is a valid tree
+     *  for the reversed ordering, and building it takes O(n) time without comparing keys.
+     */
+    static <A, B> Tree<A, B> mirrored (Tree<A, B> tree) {
+        if (tree == null) return null;
+        return mkTree(isBlackTree(tree), tree.key, tree.value, mirrored(tree.right), mirrored(tree.left));
+    }
+
+    /**
+     * Applies {@code f} to each entry's value paired with itself, keeping the tree's shape and colors (and therefore its height).
+     */
+    private static <A, B> Tree<A, B> mergedWithItself (Tree<A, B> tree, BiFunction<B, B, B> f) {
+        if (tree == null) return null;
+        return mkTree(isBlackTree(tree), tree.key, f.apply(tree.value, tree.value), mergedWithItself(tree.left, f), mergedWithItself(tree.right, f));
+    }
+
+    private static <A, B> Tree<A, B> doIntersect (Tree<A, B> t1, int h1, Tree<A, ?> t2, int h2, Comparator<? super A> ordering, int[] resultHeight) {
+        if (t1 == null || t2 == null) {
+            resultHeight[0] = 0;
+            return null;
+        }
+        if (t1 == t2) {
+            // a shared subtree, e.g. when intersecting two versions of the same tree
+            resultHeight[0] = h1;
+            return t1;
+        }
+
+        final SplitResult<A, B> split = split(t1, h1, t2.key, ordering);
+        final Tree<A, B> newLeft = doIntersect(split.left, split.leftHeight, t2.left, childHeight(h2, t2.left), ordering, resultHeight);
+        final int newLeftHeight = resultHeight[0];
+        final Tree<A, B> newRight = doIntersect(split.right, split.rightHeight, t2.right, childHeight(h2, t2.right), ordering, resultHeight);
+        final int newRightHeight = resultHeight[0];
+
+        if (split.found != null && newLeft == split.left && newRight == split.right) {
+            resultHeight[0] = h1;
+            return t1;
+        }
+        if (split.found == null) return join2(newLeft, newLeftHeight, newRight, newRightHeight, resultHeight);
+        final Tree<A, B> result = join(newLeft, newLeftHeight, split.found.key, split.found.value, newRight, newRightHeight);
+        resultHeight[0] = joinedHeight(result, newLeftHeight, newRightHeight);
+        return result;
+    }
+
+    private static <A, B> Tree<A, B> doDiff (Tree<A, B> t1, int h1, Tree<A, ?> t2, int h2, Comparator<? super A> ordering, int[] resultHeight) {
+        if (t1 == null || t2 == null) {
+            resultHeight[0] = h1;
+            return t1;
+        }
+        if (t1 == t2) {
+            resultHeight[0] = 0;
+            return null;
+        }
+
+        final SplitResult<A, B> split = split(t1, h1, t2.key, ordering);
+        final Tree<A, B> newLeft = doDiff(split.left, split.leftHeight, t2.left, childHeight(h2, t2.left), ordering, resultHeight);
+        final int newLeftHeight = resultHeight[0];
+        final Tree<A, B> newRight = doDiff(split.right, split.rightHeight, t2.right, childHeight(h2, t2.right), ordering, resultHeight);
+        final int newRightHeight = resultHeight[0];
+
+        if (split.found == null && newLeft == split.left && newRight == split.right) {
+            resultHeight[0] = h1;
+            return t1;
+        }
+        return join2(newLeft, newLeftHeight, newRight, newRightHeight, resultHeight);
+    }
+
+    private static class SplitResult<A, B> {
+        final Tree<A, B> left;
+        final int leftHeight;
+        final Tree<A, B> found;
+        final Tree<A, B> right;
+        final int rightHeight;
+
+        SplitResult (Tree<A, B> left, int leftHeight, Tree<A, B> found, Tree<A, B> right, int rightHeight) {
+            this.left = left;
+            this.leftHeight = leftHeight;
+            this.found = found;
+            this.right = right;
+            this.rightHeight = rightHeight;
+        }
+    }
+
+    /**
+     * Splits a tree into the entries with keys less than and greater than a given key, and the node for the key itself if there is
+     *  one. Subtrees that are entirely on one side are reused.
+     */
+    private static <A, B> SplitResult<A, B> split (Tree<A, B> tree, int height, A k, Comparator<? super A> ordering) {
+        if (tree == null) return new SplitResult<>(null, 0, null, null, 0);
+        final int leftHeight = childHeight(height, tree.left);
+        final int rightHeight = childHeight(height, tree.right);
+
+        final int cmp = ordering.compare(k, tree.key);
+        if (cmp == 0) return new SplitResult<>(tree.left, leftHeight, tree, tree.right, rightHeight);
+        if (cmp < 0) {
+            final SplitResult<A, B> s = split(tree.left, leftHeight, k, ordering);
+            final Tree<A, B> joined = join(s.right, s.rightHeight, tree.key, tree.value, tree.right, rightHeight);
+            return new SplitResult<>(s.left, s.leftHeight, s.found, joined, joinedHeight(joined, s.rightHeight, rightHeight));
+        }
+        final SplitResult<A, B> s = split(tree.right, rightHeight, k, ordering);
+        final Tree<A, B> joined = join(tree.left, leftHeight, tree.key, tree.value, s.left, s.leftHeight);
+        return new SplitResult<>(joined, joinedHeight(joined, leftHeight, s.leftHeight), s.found, s.right, s.rightHeight);
+    }
+
+    /**
+     * Splits off a tree's greatest entry, returning the remaining tree as {@link SplitResult#left} and the greatest entry's node as
+     *  {@link SplitResult#found}.
+     */
+    private static <A, B> SplitResult<A, B> splitLast (Tree<A, B> tree, int height) {
+        final int leftHeight = childHeight(height, tree.left);
+        if (tree.right == null) return new SplitResult<>(tree.left, leftHeight, tree, null, 0);
+
+        final SplitResult<A, B> s = splitLast(tree.right, childHeight(height, tree.right));
+        final Tree<A, B> joined = join(tree.left, leftHeight, tree.key, tree.value, s.left, s.leftHeight);
+        return new SplitResult<>(joined, joinedHeight(joined, leftHeight, s.leftHeight), s.found, null, 0);
+    }
+
+    /**
+     * Joins two trees and an entry in between, i.e. all keys in {@code left} are less than {@code k}, and all keys in {@code right}
+     *  are greater than {@code k}. The result is a valid tree except that it may have a red root with a red child.
+     */
+    private static <A, B> Tree<A, B> join (Tree<A, B> left, int leftHeight, A k, B v, Tree<A, B> right, int rightHeight) {
+        final Tree<A, B> blkLeft = blacken(left);
+        final Tree<A, B> blkRight = blacken(right);
+
+        if (leftHeight > rightHeight) return joinRight(blkLeft, k, v, blkRight, leftHeight, rightHeight);
+        if (leftHeight < rightHeight) return joinLeft(blkLeft, k, v, blkRight, leftHeight, rightHeight);
+        return new RedTree<>(k, v, blkLeft, blkRight);
+    }
+
+    /**
+     * Joins two trees without an entry in between.
+     *
+     * @param resultHeight is set to the height of the resulting tree
+     */
+    private static <A, B> Tree<A, B> join2 (Tree<A, B> left, int leftHeight, Tree<A, B> right, int rightHeight, int[] resultHeight) {
+        if (left == null) {
+            resultHeight[0] = rightHeight;
+            return right;
+        }
+        if (right == null) {
+            resultHeight[0] = leftHeight;
+            return left;
+        }
+        final SplitResult<A, B> s = splitLast(left, leftHeight);
+        final Tree<A, B> result = join(s.left, s.leftHeight, s.found.key, s.found.value, right, rightHeight);
+        resultHeight[0] = joinedHeight(result, s.leftHeight, rightHeight);
+        return result;
+    }
+
+    /**
+     * Descends the right spine of the higher tree {@code tree} to a black node with the same height as {@code right}, and joins
+     *  there. Red-red violations are repaired on the way up, except at the root.
+     */
+    private static <A, B> Tree<A, B> joinRight (Tree<A, B> tree, A k, B v, Tree<A, B> right, int height, int rightHeight) {
+        if (isRedTree(tree)) return new RedTree<>(tree.key, tree.value, tree.left, joinRight(tree.right, k, v, right, height, rightHeight));
+        if (height == rightHeight) return new RedTree<>(k, v, tree, right);
+        return balanceRight(true, tree.key, tree.value, tree.left, joinRight(tree.right, k, v, right, height-1, rightHeight));
+    }
+
+    private static <A, B> Tree<A, B> joinLeft (Tree<A, B> left, A k, B v, Tree<A, B> tree, int leftHeight, int height) {
+        if (isRedTree(tree)) return new RedTree<>(tree.key, tree.value, joinLeft(left, k, v, tree.left, leftHeight, height), tree.right);
+        if (height == leftHeight) return new RedTree<>(k, v, left, tree);
+        return balanceLeft(true, tree.key, tree.value, joinLeft(left, k, v, tree.left, leftHeight, height-1), tree.right);
+    }
+
     // The zipper returned might have been traversed left-most (always the left child)
     // or right-most (always the right child). Left trees are traversed right-most,
     // and right trees are traversed leftmost.
@@ -376,26 +808,27 @@ class RedBlackTree {
         int smallerDepth = 0;
 
         while (true) {
+            // the zippers contain the nodes that were descended from, not their children
             if (isBlackTree(left) && isBlackTree(right)) {
-                left = left.right;
-                right = right.left;
                 leftZipper = new NList<>(left, leftZipper);
                 rightZipper = new NList<>(right, rightZipper);
+                left = left.right;
+                right = right.left;
                 smallerDepth += 1;
             }
             else if (isRedTree(left) && isRedTree(right)) {
-                left = left.right;
-                right = right.left;
                 leftZipper = new NList<>(left, leftZipper);
                 rightZipper = new NList<>(right, rightZipper);
+                left = left.right;
+                right = right.left;
             }
             else if (isRedTree(right)) {
-                right = right.left;
                 rightZipper = new NList<>(right, rightZipper);
+                right = right.left;
             }
-            else if (isRedTree(left)) { //TODO different structure in Scala bytecode
-                left = left.right;
+            else if (isRedTree(left)) {
                 leftZipper = new NList<>(left, leftZipper);
+                left = left.right;
             }
             else {
                 if (left == null && right == null) return new CompareDepthResult<>(null, true, false, smallerDepth);
@@ -468,6 +901,20 @@ class RedBlackTree {
         }
     }
 
+    /**
+     * Collects entries for a new tree and builds the tree bottom-up in linear time rather than inserting entries one by one, see
+     *  {@link SortingBuilder}.
+     */
+    static class Builder<A, B> extends SortingBuilder<A, B, Tree<A, B>> {
+        Builder (Comparator<? super A> ordering, boolean withValues) {
+            super(ordering, withValues);
+        }
+
+        @Override Tree<A, B> fromSorted (Object[] keys, Object[] values, int size) {
+            return RedBlackTree.fromSorted(keys, values, size);
+        }
+    }
+
     static abstract class Tree<A, B> implements Serializable {
         final A key;
         final B value;
@@ -482,8 +929,12 @@ class RedBlackTree {
             this.count = 1 + count(left) + count(right);
         }
 
+        /**
+         * @return a new entry with this node's key and value. Entries that are handed out to callers must not be the nodes themselves:
+         *         a node references its entire subtree, which would be kept alive (and serialized) together with the entry.
+         */
         Map.Entry<A,B> entry() {
-            return new AbstractMap.SimpleImmutableEntry<>(key, value); //TODO make Tree implement Entry
+            return new AbstractMap.SimpleImmutableEntry<>(key, value);
         }
 
         abstract Tree<A, B> black ();
@@ -544,14 +995,17 @@ class RedBlackTree {
         private final boolean toInclusive;
         private final Comparator<? super A> ordering;
 
-        private final ArrayDeque<Tree<A,B>> stackOfNexts = new ArrayDeque<>();
+        private final Tree<A,B>[] stackOfNexts;
+        private int stackSize;
         private Tree<A, B> lookahead;
 
         TreeIterator (Tree<A, B> root, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
             this.to = to;
             this.toInclusive = toInclusive;
             this.ordering = ordering;
-            this.lookahead = checkUpperBoundForLookahead(from.map(f -> startFrom(root, f, fromInclusive)).orElseGet(() -> findLeftMostOrPopOnEmpty(root)));
+            this.stackOfNexts = newPathStack(root);
+            if (from.isDefined()) this.lookahead = checkUpperBoundForLookahead(startFrom(root, from.get(), fromInclusive));
+            else this.lookahead = checkUpperBoundForLookahead(findLeftMostOrPopOnEmpty(root));
         }
 
         private Tree<A,B> checkUpperBoundForLookahead(Tree<A,B> newLookahead) {
@@ -584,8 +1038,8 @@ class RedBlackTree {
         }
 
         private Tree<A, B> popNext () {
-            if (stackOfNexts.isEmpty()) return null;
-            return stackOfNexts.pop();
+            if (stackSize == 0) return null;
+            return stackOfNexts[--stackSize];
         }
 
 
@@ -608,7 +1062,7 @@ class RedBlackTree {
         }
 
         private Tree<A, B> goLeft (Tree<A, B> tree) {
-            stackOfNexts.push(tree);
+            stackOfNexts[stackSize++] = tree;
             return tree.left;
         }
 
@@ -617,6 +1071,113 @@ class RedBlackTree {
         }
     }
 
+    /**
+     * A spliterator over a range of ranks, i.e. of positions in iteration order. It splits the range at its middle, using the
+     *  subtrees' counts to find its starting point in logarithmic time, so all parts' sizes are known exactly.
+     */
+    private static class RankSpliterator<A, B, R> implements Spliterator<R> {
+        private final Tree<A, B> root;
+        private int from;
+        private final int to;
+        private final Function<Tree<A, B>, R> f;
+        private final int characteristics;
+        private final Comparator<? super R> comparator;
+
+        private Tree<A, B>[] stackOfNexts; // created lazily when traversal starts
+        private int stackSize;
+        private Tree<A, B> next;
+
+        /**
+         * @param characteristics characteristics in addition to {@link Spliterator#ORDERED}, {@link Spliterator#SIZED},
+         *                        {@link Spliterator#SUBSIZED} and {@link Spliterator#IMMUTABLE}
+         * @param comparator      the elements' ordering if the spliterator's elements are sorted, or {@code null} otherwise
+         */
+        RankSpliterator (Tree<A, B> root, int from, int to, Function<Tree<A, B>, R> f, int characteristics, Comparator<? super R> comparator) {
+            this.root = root;
+            this.from = from;
+            this.to = to;
+            this.f = f;
+            this.comparator = comparator;
+            this.characteristics = characteristics | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE |
+                    (comparator != null ? Spliterator.SORTED : 0);
+        }
+
+        @Override public Spliterator<R> trySplit () {
+            if (stackOfNexts != null || to - from < 2) return null;
+
+            final int mid = from + (to - from) / 2;
+            final RankSpliterator<A, B, R> prefix = new RankSpliterator<>(root, from, mid, f, characteristics, comparator);
+            from = mid;
+            return prefix;
+        }
+
+        private void startTraversal () {
+            stackOfNexts = newPathStack(root);
+            Tree<A, B> tree = root;
+            int rank = from;
+            while (tree != null) {
+                final int leftCount = count(tree.left);
+                if (rank < leftCount) {
+                    stackOfNexts[stackSize++] = tree;
+                    tree = tree.left;
+                }
+                else if (rank == leftCount) {
+                    next = tree;
+                    return;
+                }
+                else {
+                    rank -= leftCount + 1;
+                    tree = tree.right;
+                }
+            }
+        }
+
+        private Tree<A, B> advance () {
+            final Tree<A, B> result = next;
+            Tree<A, B> tree = result.right;
+            if (tree == null) {
+                next = stackSize > 0 ? stackOfNexts[--stackSize] : null;
+            }
+            else {
+                while (tree.left != null) {
+                    stackOfNexts[stackSize++] = tree;
+                    tree = tree.left;
+                }
+                next = tree;
+            }
+            from += 1;
+            return result;
+        }
+
+        @Override public boolean tryAdvance (Consumer<? super R> action) {
+            if (from >= to) return false;
+            if (stackOfNexts == null) startTraversal();
+            action.accept(f.apply(advance()));
+            return true;
+        }
+
+        @Override public void forEachRemaining (Consumer<? super R> action) {
+            if (from >= to) return;
+            if (stackOfNexts == null) startTraversal();
+            while (from < to) {
+                action.accept(f.apply(advance()));
+            }
+        }
+
+        @Override public long estimateSize () {
+            return to - from;
+        }
+
+        @Override public int characteristics () {
+            return characteristics;
+        }
+
+        @Override public Comparator<? super R> getComparator () {
+            if (comparator == null) throw new IllegalStateException();
+            return comparator;
+        }
+    }
+
     private static class EntriesIterator<A, B> extends TreeIterator<A, B, Map.Entry<A, B>> {
         EntriesIterator (Tree<A, B> root, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
             super(root, from, fromInclusive, to, toInclusive, ordering);
@@ -652,21 +1213,27 @@ class RedBlackTree {
         private final boolean toInclusive;
         private final Comparator<? super A> ordering;
 
-        private final ArrayDeque<Tree<A,B>> stackOfNexts = new ArrayDeque<>();
+        private final Tree<A,B>[] stackOfNexts;
+        private int stackSize;
         private Tree<A, B> lookahead;
 
         ReverseTreeIterator (Tree<A, B> root, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
             this.to = to;
             this.toInclusive = toInclusive;
             this.ordering = ordering;
-            this.lookahead = checkUpperBoundForLookahead(from.map(f -> startFrom(root, f, fromInclusive)).orElseGet(() -> findRightMostOrPopOnEmpty(root)));
+            this.stackOfNexts = newPathStack(root);
+            if (from.isDefined()) this.lookahead = checkLowerBoundForLookahead(startFrom(root, from.get(), fromInclusive));
+            else this.lookahead = checkLowerBoundForLookahead(findRightMostOrPopOnEmpty(root));
         }
 
-        private Tree<A,B> checkUpperBoundForLookahead(Tree<A,B> newLookahead) {
-            if (to.isEmpty()) return newLookahead;
+        /**
+         * Iterating in descending order, the iterator's 'to' is a lower bound
+         */
+        private Tree<A,B> checkLowerBoundForLookahead(Tree<A,B> newLookahead) {
+            if (to.isEmpty() || newLookahead == null) return newLookahead;
             final int cmp = ordering.compare(newLookahead.key, to.get());
-            if (toInclusive && cmp <= 0) return newLookahead;
-            if (!toInclusive && cmp < 0) return newLookahead;
+            if (toInclusive && cmp >= 0) return newLookahead;
+            if (!toInclusive && cmp > 0) return newLookahead;
             return null;
         }
 
@@ -677,7 +1244,7 @@ class RedBlackTree {
         @Override public R next () {
             if (lookahead == null) throw new NoSuchElementException("next on empty iterator");
             final Tree<A, B> oldLookahead = lookahead;
-            lookahead = checkUpperBoundForLookahead(findRightMostOrPopOnEmpty(goLeft(oldLookahead)));
+            lookahead = checkLowerBoundForLookahead(findRightMostOrPopOnEmpty(goLeft(oldLookahead)));
             return nextResult(oldLookahead);
         }
 
@@ -692,8 +1259,8 @@ class RedBlackTree {
         }
 
         private Tree<A, B> popNext () {
-            if (stackOfNexts.isEmpty()) return null;
-            return stackOfNexts.pop();
+            if (stackSize == 0) return null;
+            return stackOfNexts[--stackSize];
         }
 
         private Tree<A, B> startFrom (Tree<A,B> root, A key, boolean inclusive) {
@@ -713,7 +1280,7 @@ class RedBlackTree {
         }
 
         private Tree<A, B> goRight (Tree<A, B> tree) {
-            stackOfNexts.push(tree);
+            stackOfNexts[stackSize++] = tree;
             return tree.right;
         }
     }
@@ -728,6 +1295,148 @@ class RedBlackTree {
         }
     }
 
+    /**
+     * The remaining nodes of a tree in ascending key order, represented as a stack of subtrees and single nodes. Subtrees are
+     *  expanded only when needed, so two frontiers can skip a subtree they share without looking at its nodes.
+     */
+    private static class Frontier<A, B> {
+        private Tree<A, B>[] trees;
+        private boolean[] single;
+        private int size;
+
+        Frontier (Tree<A, B> root) {
+            //noinspection unchecked
+            trees = new Tree[16];
+            single = new boolean[16];
+            if (root != null) push(root, false);
+        }
+
+        private void push (Tree<A, B> tree, boolean isSingle) {
+            if (size == trees.length) {
+                trees = Arrays.copyOf(trees, 2*size);
+                single = Arrays.copyOf(single, 2*size);
+            }
+            trees[size] = tree;
+            single[size] = isSingle;
+            size += 1;
+        }
+
+        boolean isEmpty () {
+            return size == 0;
+        }
+        Tree<A, B> peek () {
+            return trees[size-1];
+        }
+        boolean isSingleAtTop () {
+            return single[size-1];
+        }
+        Tree<A, B> pop () {
+            size -= 1;
+            final Tree<A, B> result = trees[size];
+            trees[size] = null;
+            return result;
+        }
+
+        /**
+         * replaces the subtree at the top by its left subtree, its root node and its right subtree
+         */
+        void expand () {
+            final Tree<A, B> tree = pop();
+            if (tree.right != null) push(tree.right, false);
+            push(tree, true);
+            if (tree.left != null) push(tree.left, false);
+        }
+
+        Tree<A, B> popNode () {
+            while (! isSingleAtTop()) expand();
+            return pop();
+        }
+    }
+
+    private static class ChangesIterator<A, B, R> extends AbstractAIterator<R> {
+        private final Frontier<A, B> a;
+        private final Frontier<A, B> b;
+        private final Comparator<? super A> ordering;
+        private final BiFunction<Tree<A, B>, Tree<A, B>, R> f;
+
+        private R next;
+        private boolean hasLookahead;
+
+        ChangesIterator (Tree<A, B> a, Tree<A, B> b, Comparator<? super A> ordering, BiFunction<Tree<A, B>, Tree<A, B>, R> f) {
+            this.a = new Frontier<>(a);
+            this.b = new Frontier<>(b);
+            this.ordering = ordering;
+            this.f = f;
+        }
+
+        @Override public boolean hasNext () {
+            if (! hasLookahead) hasLookahead = advance();
+            return hasLookahead;
+        }
+
+        @Override public R next () {
+            if (! hasNext()) throw new NoSuchElementException("next on empty iterator");
+            hasLookahead = false;
+            final R result = next;
+            next = null;
+            return result;
+        }
+
+        private boolean advance () {
+            while (true) {
+                if (a.isEmpty() && b.isEmpty()) return false;
+                if (b.isEmpty()) {
+                    next = f.apply(a.popNode(), null);
+                    return true;
+                }
+                if (a.isEmpty()) {
+                    next = f.apply(null, b.popNode());
+                    return true;
+                }
+
+                final Tree<A, B> treeA = a.peek();
+                final Tree<A, B> treeB = b.peek();
+                if (! a.isSingleAtTop() && ! b.isSingleAtTop()) {
+                    if (treeA == treeB) {
+                        // shared subtree
+                        a.pop();
+                        b.pop();
+                    }
+                    else {
+                        // expanding the bigger subtree first gives smaller subtrees a chance to be matched as shared
+                        if (treeA.count >= treeB.count) a.expand();
+                        if (treeB.count >= treeA.count) b.expand();
+                    }
+                    continue;
+                }
+                if (! a.isSingleAtTop()) {
+                    a.expand();
+                    continue;
+                }
+                if (! b.isSingleAtTop()) {
+                    b.expand();
+                    continue;
+                }
+
+                final int cmp = ordering.compare(treeA.key, treeB.key);
+                if (cmp < 0) {
+                    next = f.apply(a.pop(), null);
+                    return true;
+                }
+                if (cmp > 0) {
+                    next = f.apply(null, b.pop());
+                    return true;
+                }
+                a.pop();
+                b.pop();
+                if (treeA.value != treeB.value && ! Objects.equals(treeA.value, treeB.value)) {
+                    next = f.apply(treeA, treeB);
+                    return true;
+                }
+            }
+        }
+    }
+
     private static class ReverseKeysIterator<A,B> extends ReverseTreeIterator<A,B,A> {
         public ReverseKeysIterator (Tree<A, B> root, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
             super(root, from, fromInclusive, to, toInclusive, ordering);
@@ -737,4 +1446,14 @@ class RedBlackTree {
             return tree.key;
         }
     }
+
+    private static class ReverseValuesIterator<A,B> extends ReverseTreeIterator<A,B,B> {
+        ReverseValuesIterator (Tree<A, B> root, AOption<A> from, boolean fromInclusive, AOption<A> to, boolean toInclusive, Comparator<? super A> ordering) {
+            super(root, from, fromInclusive, to, toInclusive, ordering);
+        }
+
+        @Override B nextResult (Tree<A, B> tree) {
+            return tree.value;
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package com.ajjpj.acollections.immutable;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+
+/**
+ * Collects entries for building a sorted tree in a single step. Entries added in ascending key order are stored as they are, so
+ *  building takes linear time; otherwise they are sorted once when the tree is built. If there are several entries with the same key,
+ *  the last one wins.
+ *
+ * @param <A> the key type
+ * @param <B> the value type
+ * @param <R> the type of the resulting tree
+ */
+abstract class SortingBuilder<A, B, R> {
+    private final Comparator<? super A> ordering;
+    private Object[] keys = new Object[16];
+    private Object[] values; // null for sets
+    private int size = 0;
+    private boolean isSorted = true;
+
+    SortingBuilder (Comparator<? super A> ordering, boolean withValues) {
+        this.ordering = ordering;
+        if (withValues) values = new Object[16];
+    }
+
+    /**
+     * Builds a tree from entries sorted by key.
+     *
+     * @param keys   the keys in ascending order, without duplicates
+     * @param values the values corresponding to the keys, or {@code null} for sets
+     * @param size   the number of entries, the arrays may be longer
+     */
+    abstract R fromSorted (Object[] keys, Object[] values, int size);
+
+    @SuppressWarnings("unchecked")
+    void add (A k, B v) {
+        if (size > 0 && isSorted) {
+            final int cmp = ordering.compare(k, (A) keys[size-1]);
+            if (cmp == 0) {
+                keys[size-1] = k;
+                if (values != null) values[size-1] = v;
+                return;
+            }
+            if (cmp < 0) isSorted = false;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2*size);
+            if (values != null) values = Arrays.copyOf(values, 2*size);
+        }
+        keys[size] = k;
+        if (values != null) values[size] = v;
+        size += 1;
+    }
+
+    R build () {
+        if (! isSorted) sort();
+        return fromSorted(keys, values, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sort () {
+        // Arrays.sort is stable, so for each key the last entry added is the last one in its run of equal keys
+        if (values == null) {
+            Arrays.sort(keys, 0, size, (o1, o2) -> ordering.compare((A) o1, (A) o2));
+        }
+        else {
+            final Object[] entries = new Object[size];
+            for (int i=0; i<size; i++) entries[i] = new AbstractMap.SimpleImmutableEntry<>(keys[i], values[i]);
+            Arrays.sort(entries, (o1, o2) -> ordering.compare(((Map.Entry<A,B>) o1).getKey(), ((Map.Entry<A,B>) o2).getKey()));
+            for (int i=0; i<size; i++) {
+                keys[i] = ((Map.Entry<A,B>) entries[i]).getKey();
+                values[i] = ((Map.Entry<A,B>) entries[i]).getValue();
+            }
+        }
+
+        int newSize = 0;
+        for (int i=0; i<size; i++) {
+            if (newSize > 0 && ordering.compare((A) keys[i], (A) keys[newSize-1]) == 0) newSize -= 1;
+            keys[newSize] = keys[i];
+            if (values != null) values[newSize] = values[i];
+            newSize += 1;
+        }
+        Arrays.fill(keys, newSize, size, null);
+        if (values != null) Arrays.fill(values, newSize, size, null);
+        size = newSize;
+        isSorted = true;
+    }
+}
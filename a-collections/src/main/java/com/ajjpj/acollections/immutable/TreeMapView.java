@@ -0,0 +1,383 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.ACollectionDefaults;
+import com.ajjpj.acollections.internal.ACollectionSupport;
+import com.ajjpj.acollections.internal.AMapDefaults;
+import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AOption;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+
+/**
+ * A view of the entries of an {@link ATreeMap} whose keys are in a given range, in ascending or descending key order. This is what
+ *  {@link ATreeMap#subMap(Object, boolean, Object, boolean)}, {@link ATreeMap#headMap(Object, boolean)} and
+ *  {@link ATreeMap#tailMap(Object, boolean)} return, and {@link ATreeMap#descendingKeySet()} and {@link ATreeSet}'s range and
+ *  descending sets are the key sets of such views. Creating a view takes O(log n) time for looking up the bounds' ranks, and
+ *  lookups, iteration, counting and rank based access work on the map's tree, using the bounds to restrict the traversal.
+ *
+ * <p> Methods that return a modified map (e.g. {@link #plus(Object, Object)} or {@link #minus(Object)}) copy the view's entries to a
+ *  new {@link ATreeMap} first and return that.
+ *
+ * <p> The bounds are in the underlying map's key order, regardless of whether this view is descending. Since the underlying tree
+ *  never changes, the ranks of the range's first and last entry in the underlying map are computed once when a view is created,
+ *  so {@link #size()} and index based access do not need to traverse the tree again.
+ */
+class TreeMapView<K,V> extends AbstractImmutableMap<K,V> implements ASortedMap<K,V>, ACollectionDefaults<Map.Entry<K,V>, ASortedMap<K,V>>, AMapDefaults<K,V,ASortedMap<K,V>>, Serializable {
+    private final ATreeMap<K,V> map;
+    private final AOption<K> from;
+    private final boolean fromInclusive;
+    private final AOption<K> to;
+    private final boolean toInclusive;
+    private final boolean descending;
+
+    /** the number of the underlying map's keys that are below this view's range */
+    private final int lowerRank;
+    /** the number of the underlying map's keys that are below this view's range or in it */
+    private final int upperRank;
+
+    TreeMapView (ATreeMap<K,V> map, AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive, boolean descending) {
+        this.map = map;
+        this.from = from;
+        this.fromInclusive = fromInclusive;
+        this.to = to;
+        this.toInclusive = toInclusive;
+        this.descending = descending;
+
+        this.lowerRank = from.isEmpty() ? 0 : RedBlackTree.countInRange(map.root(), AOption.none(), true, from, !fromInclusive, map.comparator());
+        final int belowUpperBound = to.isEmpty() ? map.size() : RedBlackTree.countInRange(map.root(), AOption.none(), true, to, toInclusive, map.comparator());
+        // bounds that exclude each other result in an empty view
+        this.upperRank = Math.max(lowerRank, belowUpperBound);
+    }
+
+    private TreeMapView (TreeMapView<K,V> orig, boolean descending) {
+        this.map = orig.map;
+        this.from = orig.from;
+        this.fromInclusive = orig.fromInclusive;
+        this.to = orig.to;
+        this.toInclusive = orig.toInclusive;
+        this.descending = descending;
+        this.lowerRank = orig.lowerRank;
+        this.upperRank = orig.upperRank;
+    }
+
+    private RedBlackTree.Tree<K,V> root () {
+        return map.root();
+    }
+    private Comparator<? super K> ordering () {
+        return map.comparator();
+    }
+
+    /**
+     * @return the underlying map's entries in this view's range, as an {@link ATreeMap} with this view's comparator
+     */
+    private ATreeMap<K,V> materialize () {
+        final ATreeMap<K,V> ascending = map.range(from, fromInclusive, to, toInclusive);
+        if (!descending) return ascending;
+        return ATreeMap.<K,V>builder(comparator()).addAll(RedBlackTree.reverseIterator(ascending.root(), AOption.none(), true, AOption.none(), false, ordering())).build();
+    }
+
+    /**
+     * Returns a view that is restricted to the intersection of this view's range and another range, both bounds of which are given in
+     *  this view's order.
+     */
+    private TreeMapView<K,V> subView (AOption<K> lower, boolean lowerInclusive, AOption<K> upper, boolean upperInclusive) {
+        if (descending) return narrowed(upper, upperInclusive, lower, lowerInclusive);
+        return narrowed(lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    private TreeMapView<K,V> narrowed (AOption<K> newFrom, boolean newFromInclusive, AOption<K> newTo, boolean newToInclusive) {
+        final int cmpFrom = newFrom.isEmpty() ? -1 : from.isEmpty() ? 1 : ordering().compare(newFrom.get(), from.get());
+        final int cmpTo = newTo.isEmpty() ? 1 : to.isEmpty() ? -1 : ordering().compare(newTo.get(), to.get());
+        return new TreeMapView<>(map,
+                cmpFrom > 0 ? newFrom : from, cmpFrom > 0 ? newFromInclusive : cmpFrom < 0 ? fromInclusive : fromInclusive && newFromInclusive,
+                cmpTo < 0 ? newTo : to, cmpTo < 0 ? newToInclusive : cmpTo > 0 ? toInclusive : toInclusive && newToInclusive,
+                descending);
+    }
+
+    private boolean isInRange (Object key) {
+        try {
+            //noinspection unchecked
+            final K k = (K) key;
+            if (from.isDefined()) {
+                final int cmp = ordering().compare(k, from.get());
+                if (cmp < 0 || (cmp == 0 && !fromInclusive)) return false;
+            }
+            if (to.isDefined()) {
+                final int cmp = ordering().compare(k, to.get());
+                if (cmp > 0 || (cmp == 0 && !toInclusive)) return false;
+            }
+            return true;
+        }
+        catch (Exception e) {
+            // handle 'wrong type' exceptions thrown by the comparator because Java's API weirdly accepts 'Object' rather than 'K' as the key's type...
+            return false;
+        }
+    }
+
+    /**
+     * @return the rank in the underlying map of the entry with a given index in this view's iteration order
+     */
+    private int rankInMap (int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return descending ? upperRank - 1 - index : lowerRank + index;
+    }
+
+    private Map.Entry<K,V> lowestEntry () {
+        return isEmpty() ? null : map.entryAtRank(lowerRank);
+    }
+    private Map.Entry<K,V> highestEntry () {
+        return isEmpty() ? null : map.entryAtRank(upperRank - 1);
+    }
+
+    private static <K> K keyOrNull (Map.Entry<K,?> e) {
+        return e != null ? e.getKey() : null;
+    }
+
+    @Override public Comparator<? super K> comparator () {
+        return descending ? map.comparator().reversed() : map.comparator();
+    }
+
+    @Override public V get (Object key) {
+        return isInRange(key) ? map.get(key) : null;
+    }
+    @Override public AOption<V> getOptional (K key) {
+        return isInRange(key) ? map.getOptional(key) : AOption.none();
+    }
+    @Override public boolean containsKey (Object key) {
+        return isInRange(key) && map.containsKey(key);
+    }
+    @Override public boolean containsValue (Object value) {
+        return valuesIterator().exists(v -> Objects.equals(v, value));
+    }
+    @Override public boolean contains (Object o) {
+        return AMapSupport.containsEntry(this, o);
+    }
+
+    @Override public ATreeMap<K,V> plus (K key, V value) {
+        return materialize().plus(key, value);
+    }
+    @Override public ATreeMap<K,V> minus (K key) {
+        return materialize().minus(key);
+    }
+    @Override public <K1 extends K, V1 extends V> ATreeMap<K,V> plusAll (Map<K1, V1> other) {
+        return materialize().plusAll(other);
+    }
+    @Override public ATreeMap<K,V> plusAll (Map<? extends K, ? extends V> other, BiFunction<V, V, V> f) {
+        return materialize().plusAll(other, f);
+    }
+    @Override public ATreeMap<K,V> minusAll (Iterable<? extends K> keys) {
+        return materialize().minusAll(keys);
+    }
+    @Override public ATreeMap<K,V> retainKeys (Collection<? extends K> keys) {
+        return materialize().retainKeys(keys);
+    }
+
+    @Override public ASortedMap<K, V> withDefaultValue (V defaultValue) {
+        return AMapSupport.wrapSortedMapWithDefaultValue(this, new AMapSupport.SerializableConstantFunction<>(defaultValue));
+    }
+    @Override public ASortedMap<K, V> withDerivedDefaultValue (Function<K, V> defaultProvider) {
+        return AMapSupport.wrapSortedMapWithDefaultValue(this, defaultProvider);
+    }
+
+    @Override public AIterator<Entry<K,V>> iterator () {
+        if (descending) return RedBlackTree.reverseIterator(root(), to, toInclusive, from, fromInclusive, ordering());
+        return RedBlackTree.iterator(root(), from, fromInclusive, to, toInclusive, ordering());
+    }
+    @Override public AIterator<K> keysIterator () {
+        if (descending) return RedBlackTree.reverseKeysIterator(root(), to, toInclusive, from, fromInclusive, ordering());
+        return RedBlackTree.keysIterator(root(), from, fromInclusive, to, toInclusive, ordering());
+    }
+    @Override public AIterator<V> valuesIterator () {
+        if (descending) return RedBlackTree.reverseValuesIterator(root(), to, toInclusive, from, fromInclusive, ordering());
+        return RedBlackTree.valuesIterator(root(), from, fromInclusive, to, toInclusive, ordering());
+    }
+
+    @Override public AIterator<Entry<K, V>> iterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return subView(from, fromInclusive, to, toInclusive).iterator();
+    }
+    @Override public AIterator<K> keysIterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return subView(from, fromInclusive, to, toInclusive).keysIterator();
+    }
+    @Override public AIterator<V> valuesIterator (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return subView(from, fromInclusive, to, toInclusive).valuesIterator();
+    }
+
+    @Override public Spliterator<Entry<K,V>> spliterator () {
+        if (descending) return Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        return RedBlackTree.spliterator(root(), lowerRank, upperRank, ordering());
+    }
+
+    @Override public int size () {
+        return upperRank - lowerRank;
+    }
+    @Override public boolean isEmpty () {
+        return upperRank == lowerRank;
+    }
+
+    @Override public <U> ACollection<U> map (Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.map(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> flatMap (Function<Entry<K, V>, Iterable<U>> f) {
+        return ACollectionSupport.flatMap(AVector.builder(), this, f);
+    }
+    @Override public <U> ACollection<U> collect (Predicate<Entry<K, V>> filter, Function<Entry<K, V>, U> f) {
+        return ACollectionSupport.collect(AVector.builder(), this, filter, f);
+    }
+
+    @Override public ATreeMap<K, V> filter (Predicate<Entry<K, V>> f) {
+        return ATreeMap.<K,V>builder(comparator()).addAll(iterator().filter(f)).build();
+    }
+    @Override public ATreeMap<K, V> filterNot (Predicate<Entry<K, V>> f) {
+        return filter(f.negate());
+    }
+    @Override public ATreeMap<K, V> filterKeys (Predicate<K> f) {
+        return filter(e -> f.test(e.getKey()));
+    }
+
+    @Override public <K1> AMap<K1, ASortedMap<K, V>> groupBy (Function<Entry<K, V>, K1> keyExtractor) {
+        //noinspection unchecked
+        return (AMap<K1, ASortedMap<K, V>>) AMapSupport.groupBy(this, keyExtractor);
+    }
+
+    @Override public ASortedSet<K> keySet () {
+        return new AMapSupport.SortedKeySet<>(this);
+    }
+    @Override public ACollection<V> values () {
+        return new AMapSupport.ValuesCollection<>(this);
+    }
+    @Override public ASortedSet<Entry<K, V>> entrySet () {
+        return new AMapSupport.SortedEntrySet<>(this);
+    }
+
+    @Override public int countInRange (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return subView(from, fromInclusive, to, toInclusive).size();
+    }
+    @Override public ASortedMap<K, V> range (AOption<K> from, boolean fromInclusive, AOption<K> to, boolean toInclusive) {
+        return subView(from, fromInclusive, to, toInclusive);
+    }
+
+    @Override public ATreeMap<K, V> drop (int n) {
+        return materialize().drop(n);
+    }
+    @Override public ATreeMap<K, V> take (int n) {
+        return materialize().take(n);
+    }
+    @Override public ATreeMap<K, V> slice (int from, int to) {
+        return materialize().slice(from, to);
+    }
+
+    @Override public AOption<Entry<K, V>> smallest () {
+        return AOption.of(firstEntry());
+    }
+    @Override public AOption<Entry<K, V>> greatest () {
+        return AOption.of(lastEntry());
+    }
+
+    @Override public Entry<K, V> entryAtRank (int rank) {
+        return map.entryAtRank(rankInMap(rank));
+    }
+    @Override public K getByIndex (int index) {
+        return RedBlackTree.nth(root(), rankInMap(index)).key;
+    }
+    @Override public int indexOf (K key) {
+        if (!isInRange(key)) return -1;
+        final int rank = RedBlackTree.indexOf(root(), key, ordering());
+        if (rank < 0) return -1;
+        return descending ? upperRank - 1 - rank : rank - lowerRank;
+    }
+
+    @Override public Entry<K, V> lowerEntry (K key) {
+        return subView(AOption.none(), true, AOption.some(key), false).lastEntry();
+    }
+    @Override public K lowerKey (K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+    @Override public Entry<K, V> floorEntry (K key) {
+        return subView(AOption.none(), true, AOption.some(key), true).lastEntry();
+    }
+    @Override public K floorKey (K key) {
+        return keyOrNull(floorEntry(key));
+    }
+    @Override public Entry<K, V> ceilingEntry (K key) {
+        return subView(AOption.some(key), true, AOption.none(), false).firstEntry();
+    }
+    @Override public K ceilingKey (K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+    @Override public Entry<K, V> higherEntry (K key) {
+        return subView(AOption.some(key), false, AOption.none(), false).firstEntry();
+    }
+    @Override public K higherKey (K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    @Override public Entry<K, V> firstEntry () {
+        return descending ? highestEntry() : lowestEntry();
+    }
+    @Override public Entry<K, V> lastEntry () {
+        return descending ? lowestEntry() : highestEntry();
+    }
+    @Override public K firstKey () {
+        final Entry<K,V> e = firstEntry();
+        if (e == null) throw new NoSuchElementException();
+        return e.getKey();
+    }
+    @Override public K lastKey () {
+        final Entry<K,V> e = lastEntry();
+        if (e == null) throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    @Override public Entry<K, V> pollFirstEntry () {
+        throw new UnsupportedOperationException("mutable operation not supported for immutable collection");
+    }
+    @Override public Entry<K, V> pollLastEntry () {
+        throw new UnsupportedOperationException("mutable operation not supported for immutable collection");
+    }
+
+    @Override public ASortedMap<K, V> descendingMap () {
+        if (descending && from.isEmpty() && to.isEmpty()) return map;
+        return new TreeMapView<>(this, !descending);
+    }
+    @Override public ASortedSet<K> navigableKeySet () {
+        return keySet();
+    }
+    @Override public ASortedSet<K> descendingKeySet () {
+        return descendingMap().keySet();
+    }
+
+    @Override public ASortedMap<K, V> subMap (K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (comparator().compare(fromKey, toKey) > 0) throw new IllegalArgumentException();
+        return subView(AOption.some(fromKey), fromInclusive, AOption.some(toKey), toInclusive);
+    }
+    @Override public ASortedMap<K, V> headMap (K toKey, boolean inclusive) {
+        return subView(AOption.none(), true, AOption.some(toKey), inclusive);
+    }
+    @Override public ASortedMap<K, V> tailMap (K fromKey, boolean inclusive) {
+        return subView(AOption.some(fromKey), inclusive, AOption.none(), false);
+    }
+    @Override public ASortedMap<K, V> subMap (K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+    @Override public ASortedMap<K, V> headMap (K toKey) {
+        return headMap(toKey, false);
+    }
+    @Override public ASortedMap<K, V> tailMap (K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override public <K1, V1> ACollectionBuilder<Entry<K1, V1>, ATreeMap<K1, V1>> newEntryBuilder () {
+        //noinspection unchecked
+        return new ATreeMap.Builder(comparator());
+    }
+
+    private Object writeReplace () {
+        return materialize();
+    }
+}
@@ -9,6 +9,7 @@ import com.ajjpj.acollections.immutable.AHashMap;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -38,6 +39,15 @@ public class ACollectionSupport {
         return result;
     }
 
+    /**
+     * @return the index of the element at quantile {@code q} in a sorted collection of a given size, using the nearest-rank method
+     */
+    public static int quantileIndex (double q, int size) {
+        if (! (q >= 0 && q <= 1)) throw new IllegalArgumentException("quantile must be between 0 and 1: " + q);
+        if (size == 0) throw new NoSuchElementException();
+        return Math.max(0, (int) Math.ceil(q * size) - 1);
+    }
+
     public static String toString(Class<?> baseClass, ACollectionOps<?> coll) {
         return coll.mkString(baseClass.getSimpleName() + "[", ", ", "]");
     }
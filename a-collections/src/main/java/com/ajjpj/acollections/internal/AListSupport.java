@@ -1,10 +1,18 @@
 package com.ajjpj.acollections.internal;
 
 
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AIterator;
 import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AbstractAIterator;
+import com.ajjpj.acollections.immutable.ALinkedList;
+import com.ajjpj.acollections.immutable.AVector;
+import com.ajjpj.acollections.immutable.AbstractImmutableCollection;
 
-import java.util.Iterator;
-import java.util.List;
+import java.io.Serializable;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 public class AListSupport {
     public static boolean equals(AList<?> l, Object o) {
@@ -34,4 +42,410 @@ public class AListSupport {
         return result;
     }
 
+    /**
+     * @return true if and only if an object is a list that can never change, so that views on it remain valid indefinitely
+     */
+    public static boolean isImmutableList (Object o) {
+        if (o instanceof SliceView) return ((SliceView<?>) o).isImmutable;
+        if (o instanceof ConcatView) return ((ConcatView<?>) o).isImmutable;
+        return o instanceof AList && o instanceof AbstractImmutableCollection;
+    }
+
+    /**
+     * @return true if a list's elements can be accessed by index efficiently, i.e. if it implements {@link RandomAccess} or is a
+     *         view on such lists
+     */
+    static boolean isRandomAccess (AList<?> l) {
+        if (l instanceof SliceView) return ((SliceView<?>) l).isRandomAccess;
+        if (l instanceof ConcatView) return ((ConcatView<?>) l).isRandomAccess;
+        return l instanceof RandomAccess;
+    }
+
+    /**
+     * Returns a read-only view on a list's elements from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive) in O(1) time
+     *  (O(fromIndex) for lists without random access), as specified by {@link List#subList(int, int)}.
+     *
+     * @throws IndexOutOfBoundsException if {@code fromIndex} or {@code toIndex} is out of range
+     */
+    public static <T> AList<T> subList (AList<T> l, int fromIndex, int toIndex) {
+        if (fromIndex>toIndex || toIndex>l.size() || fromIndex<0)
+            throw new IndexOutOfBoundsException();
+        return sliceView(l, fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Returns a read-only view on a list's elements, treating out-of-range bounds leniently as specified by {@link AList#slice(int, int)}
+     */
+    public static <T> AList<T> slice (AList<T> l, int from, int to) {
+        final int lo = Math.max(from, 0);
+        final int hi = Math.min(to, l.size());
+        if (hi <= lo) return AVector.empty();
+        return sliceView(l, lo, hi - lo);
+    }
+
+    private static <T> AList<T> sliceView (AList<T> l, int offset, int size) {
+        if (size == 0) return AVector.empty();
+        if (offset == 0 && size == l.size() && isImmutableList(l)) return l;
+
+        if (l instanceof SliceView) {
+            final SliceView<T> v = (SliceView<T>) l;
+            return new SliceView<>(v.inner, v.offset + offset, size);
+        }
+        if (l instanceof ALinkedList) {
+            // skip the leading elements once rather than in every iterator
+            return new SliceView<>(((ALinkedList<T>) l).drop(offset), 0, size);
+        }
+        return new SliceView<>(l, offset, size);
+    }
+
+    /**
+     * Returns a read-only view of two lists' concatenation in O(1) time if both lists are immutable, and falls back to copying
+     *  their elements into a new {@link AVector} otherwise.
+     */
+    public static <T> AList<T> concat (AList<T> l, Iterable<? extends T> that) {
+        if (! (isImmutableList(l) && isImmutableList(that))) {
+            return AVector.<T>builder().addAll(l).addAll(that).build();
+        }
+
+        //noinspection unchecked
+        final AList<T> r = (AList<T>) that;
+        if (r.isEmpty()) return l;
+        if (l.isEmpty()) return r;
+        return new ConcatView<>(l, r);
+    }
+
+    /**
+     * A read-only view on a contiguous range of another list's elements, e.g. a page of a large list. It is created in O(1) time,
+     *  and reading operations access the underlying list directly. Operations that create a structurally different list (like
+     *  {@link #append(Object)} or {@link #updated(int, Object)}) materialize the view's elements in a new {@link AVector}, while
+     *  {@link #take(int)}, {@link #drop(int)}, {@link #slice(int, int)} and {@link #subList(int, int)} return views again.
+     *
+     * <p> If the underlying list is mutable, this view reflects changes to its elements, but the view's size remains the same.
+     *  A view is serialized as an {@link AVector} holding its elements rather than with the underlying list.
+     */
+    static class SliceView<T> extends AbstractImmutableCollection<T> implements AListDefaults<T, AList<T>>, Serializable {
+        private final AList<T> inner;
+        private final int offset;
+        private final int size;
+        private final boolean isImmutable;
+        private final boolean isRandomAccess;
+
+        SliceView (AList<T> inner, int offset, int size) {
+            this.inner = inner;
+            this.offset = offset;
+            this.size = size;
+            this.isImmutable = isImmutableList(inner);
+            this.isRandomAccess = isRandomAccess(inner);
+        }
+
+        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+        @Override public boolean equals (Object o) {
+            return AListSupport.equals(this, o);
+        }
+
+        @Override public int hashCode () {
+            return AListSupport.hashCode(this);
+        }
+
+        @Override public String toString () {
+            return ACollectionSupport.toString(SliceView.class, this);
+        }
+
+        @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
+            return AVector.builder();
+        }
+
+        @Override public int size () {
+            return size;
+        }
+
+        @Override public boolean isEmpty () {
+            return size == 0;
+        }
+
+        @Override public T get (int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+            return inner.get(offset + index);
+        }
+
+        @Override public AIterator<T> iterator () {
+            if (isRandomAccess) {
+                return new AbstractAIterator<T>() {
+                    int nextIdx = 0;
+
+                    @Override public boolean hasNext () {
+                        return nextIdx < size;
+                    }
+
+                    @Override public T next () {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return inner.get(offset + nextIdx++);
+                    }
+                };
+            }
+
+            final AIterator<T> it = inner.iterator().drop(offset);
+            return new AbstractAIterator<T>() {
+                int remaining = size;
+
+                @Override public boolean hasNext () {
+                    return remaining > 0;
+                }
+
+                @Override public T next () {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    remaining -= 1;
+                    return it.next();
+                }
+            };
+        }
+
+        @Override public AIterator<T> reverseIterator () {
+            if (! isRandomAccess) return toVector().reverseIterator();
+
+            return new AbstractAIterator<T>() {
+                int nextIdx = size-1;
+
+                @Override public boolean hasNext () {
+                    return nextIdx >= 0;
+                }
+
+                @Override public T next () {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return inner.get(offset + nextIdx--);
+                }
+            };
+        }
+
+        @Override public AList<T> prepend (T o) {
+            return toVector().prepend(o);
+        }
+
+        @Override public AList<T> append (T o) {
+            return toVector().append(o);
+        }
+
+        @Override public AList<T> concat (Iterator<? extends T> that) {
+            return toVector().concat(that);
+        }
+
+        @Override public AList<T> concat (Iterable<? extends T> that) {
+            return AListSupport.concat(this, that);
+        }
+
+        @Override public AList<T> updated (int idx, T o) {
+            return toVector().updated(idx, o);
+        }
+
+        @Override public AList<T> take (int n) {
+            return AListSupport.slice(this, 0, n);
+        }
+
+        @Override public AList<T> takeRight (int n) {
+            return AListSupport.slice(this, size - Math.max(n, 0), size);
+        }
+
+        @Override public AList<T> drop (int n) {
+            return AListSupport.slice(this, n, size);
+        }
+
+        @Override public AList<T> dropRight (int n) {
+            return AListSupport.slice(this, 0, size - Math.max(n, 0));
+        }
+
+        @Override public AList<T> slice (int from, int to) {
+            return AListSupport.slice(this, from, to);
+        }
+
+        @Override public AList<T> subList (int fromIndex, int toIndex) {
+            return AListSupport.subList(this, fromIndex, toIndex);
+        }
+
+        @Override public <U> AList<U> map (Function<T, U> f) {
+            return ACollectionSupport.map(newBuilder(), this, f);
+        }
+
+        @Override public <U> AList<U> flatMap (Function<T, Iterable<U>> f) {
+            return ACollectionSupport.flatMap(newBuilder(), this, f);
+        }
+
+        @Override public <U> AList<U> collect (Predicate<T> filter, Function<T, U> f) {
+            return ACollectionSupport.collect(newBuilder(), this, filter, f);
+        }
+
+        @Override public boolean addAll (int index, Collection<? extends T> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public T set (int index, T element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public void add (int index, T element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public T remove (int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        private Object writeReplace() {
+            return toVector();
+        }
+    }
+
+    /**
+     * A read-only view of two immutable lists' concatenation. It is created in O(1) time, and reading operations access the two lists
+     *  directly. Operations that create a structurally different list (like {@link #append(Object)} or {@link #updated(int, Object)})
+     *  materialize the view's elements in a new {@link AVector}, while {@link #take(int)}, {@link #drop(int)},
+     *  {@link #slice(int, int)}, {@link #subList(int, int)} and {@link #concat(Iterable)} return views again.
+     *
+     * <p> Every view adds a level of indirection to element access, so views nested deeper than {@link #MAX_DEPTH} are materialized
+     *  rather than nested further. A view is serialized as an {@link AVector} holding its elements.
+     */
+    static class ConcatView<T> extends AbstractImmutableCollection<T> implements AListDefaults<T, AList<T>>, Serializable {
+        private static final int MAX_DEPTH = 16;
+
+        private final AList<T> left;
+        private final AList<T> right;
+        private final int leftSize;
+        private final int size;
+        private final int depth;
+        private final boolean isImmutable;
+        private final boolean isRandomAccess;
+
+        ConcatView (AList<T> left, AList<T> right) {
+            this.left = left;
+            this.right = right;
+            this.leftSize = left.size();
+            this.size = leftSize + right.size();
+            this.depth = 1 + Math.max(depth(left), depth(right));
+            this.isImmutable = isImmutableList(left) && isImmutableList(right);
+            this.isRandomAccess = isRandomAccess(left) && isRandomAccess(right);
+        }
+
+        private static int depth (AList<?> l) {
+            return l instanceof ConcatView ? ((ConcatView<?>) l).depth : 0;
+        }
+
+        @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
+        @Override public boolean equals (Object o) {
+            return AListSupport.equals(this, o);
+        }
+
+        @Override public int hashCode () {
+            return AListSupport.hashCode(this);
+        }
+
+        @Override public String toString () {
+            return ACollectionSupport.toString(ConcatView.class, this);
+        }
+
+        @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
+            return AVector.builder();
+        }
+
+        @Override public int size () {
+            return size;
+        }
+
+        @Override public boolean isEmpty () {
+            return size == 0;
+        }
+
+        @Override public T get (int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException();
+            return index < leftSize ? left.get(index) : right.get(index - leftSize);
+        }
+
+        @Override public AIterator<T> iterator () {
+            return left.iterator().concat(right.iterator());
+        }
+
+        @Override public AIterator<T> reverseIterator () {
+            return right.reverseIterator().concat(left.reverseIterator());
+        }
+
+        @Override public AList<T> prepend (T o) {
+            return toVector().prepend(o);
+        }
+
+        @Override public AList<T> append (T o) {
+            return toVector().append(o);
+        }
+
+        @Override public AList<T> concat (Iterator<? extends T> that) {
+            return toVector().concat(that);
+        }
+
+        @Override public AList<T> concat (Iterable<? extends T> that) {
+            if (depth >= MAX_DEPTH) return toVector().concat(that);
+            return AListSupport.concat(this, that);
+        }
+
+        @Override public AList<T> updated (int idx, T o) {
+            return toVector().updated(idx, o);
+        }
+
+        @Override public AList<T> take (int n) {
+            return slice(0, n);
+        }
+
+        @Override public AList<T> takeRight (int n) {
+            return slice(size - Math.max(n, 0), size);
+        }
+
+        @Override public AList<T> drop (int n) {
+            return slice(n, size);
+        }
+
+        @Override public AList<T> dropRight (int n) {
+            return slice(0, size - Math.max(n, 0));
+        }
+
+        @Override public AList<T> slice (int from, int to) {
+            // slices that lie within one of the two lists do not need this view
+            if (to <= leftSize) return AListSupport.slice(left, from, to);
+            if (from >= leftSize) return AListSupport.slice(right, from - leftSize, to - leftSize);
+            return AListSupport.slice(this, from, to);
+        }
+
+        @Override public AList<T> subList (int fromIndex, int toIndex) {
+            if (fromIndex>toIndex || toIndex>size || fromIndex<0)
+                throw new IndexOutOfBoundsException();
+            return slice(fromIndex, toIndex);
+        }
+
+        @Override public <U> AList<U> map (Function<T, U> f) {
+            return ACollectionSupport.map(newBuilder(), this, f);
+        }
+
+        @Override public <U> AList<U> flatMap (Function<T, Iterable<U>> f) {
+            return ACollectionSupport.flatMap(newBuilder(), this, f);
+        }
+
+        @Override public <U> AList<U> collect (Predicate<T> filter, Function<T, U> f) {
+            return ACollectionSupport.collect(newBuilder(), this, filter, f);
+        }
+
+        @Override public boolean addAll (int index, Collection<? extends T> c) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public T set (int index, T element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public void add (int index, T element) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public T remove (int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        private Object writeReplace() {
+            return toVector();
+        }
+    }
 }
@@ -2,7 +2,9 @@ package com.ajjpj.acollections.internal;
 
 import com.ajjpj.acollections.AMap;
 import com.ajjpj.acollections.immutable.AHashMap;
+import com.ajjpj.acollections.util.AOption;
 
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -13,6 +15,20 @@ public interface AMapDefaults<K,V,C extends AMap<K,V>> extends AMap<K,V> {
         return (C) plus(entry.getKey(), entry.getValue());
     }
 
+    @Override default C updatedWith (K key, Function<AOption<V>, AOption<V>> f) {
+        //noinspection unchecked
+        return (C) AMap.super.updatedWith(key, f);
+    }
+    @Override default C computed (K key, BiFunction<? super K, AOption<V>, AOption<V>> f) {
+        return updatedWith(key, v -> f.apply(key, v));
+    }
+    @Override default C computedIfAbsent (K key, Function<? super K, ? extends V> f) {
+        return updatedWith(key, v -> v.isDefined() ? v : AOption.some(f.apply(key)));
+    }
+    @Override default C merged (K key, V value, BiFunction<V, V, V> f) {
+        return updatedWith(key, v -> AOption.some(v.isDefined() ? f.apply(v.get(), value) : value));
+    }
+
     default <V1> AMap<K, V1> mapValues(Function<V, V1> f) {
         final AMap<K,V1> zero = (AMap<K, V1>) this.<K,V1>newEntryBuilder().build();
         return foldLeft(zero, (acc, el) -> acc.plus(el.getKey(), f.apply(el.getValue())));
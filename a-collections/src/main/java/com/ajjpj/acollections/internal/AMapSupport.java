@@ -10,6 +10,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -36,6 +37,60 @@ public class AMapSupport {
         return m.getOptional(e.getKey()).contains(e.getValue());
     }
 
+    /**
+     * Returns a {@link Spliterator} for a view on a map's entries, delegating to the map's own spliterator if that has exactly
+     *  known size, and falling back to an iterator based spliterator otherwise.
+     *
+     * @param droppedCharacteristics the map's spliterator's characteristics that do not hold for the view's elements
+     */
+    static <K,V,T> Spliterator<T> viewSpliterator (Collection<T> view, AMap<K,V> map, Function<Map.Entry<K,V>,T> f, int droppedCharacteristics) {
+        final Spliterator<Map.Entry<K,V>> s = map.spliterator();
+        if (! s.hasCharacteristics(Spliterator.SIZED)) return Spliterators.spliterator(view, 0);
+        return new MappedSpliterator<>(s, f, s.characteristics() & ~droppedCharacteristics);
+    }
+
+    private static class MappedSpliterator<T,U> implements Spliterator<U> {
+        private final Spliterator<T> inner;
+        private final Function<T,U> f;
+        private final int characteristics;
+
+        MappedSpliterator (Spliterator<T> inner, Function<T,U> f, int characteristics) {
+            this.inner = inner;
+            this.f = f;
+            this.characteristics = characteristics;
+        }
+
+        @Override public boolean tryAdvance (Consumer<? super U> action) {
+            return inner.tryAdvance(x -> action.accept(f.apply(x)));
+        }
+
+        @Override public void forEachRemaining (Consumer<? super U> action) {
+            inner.forEachRemaining(x -> action.accept(f.apply(x)));
+        }
+
+        @Override public Spliterator<U> trySplit () {
+            final Spliterator<T> prefix = inner.trySplit();
+            return prefix == null ? null : new MappedSpliterator<>(prefix, f, characteristics);
+        }
+
+        @Override public long estimateSize () {
+            return inner.estimateSize();
+        }
+
+        @Override public int characteristics () {
+            return characteristics;
+        }
+
+        /**
+         * Only called if the view keeps {@link Spliterator#SORTED}, i.e. if the mapping preserves the inner spliterator's order
+         */
+        @Override public Comparator<? super U> getComparator () {
+            if (! hasCharacteristics(Spliterator.SORTED)) throw new IllegalStateException();
+            //noinspection unchecked
+            return (Comparator<? super U>) inner.getComparator();
+        }
+    }
+
     public static class KeySet<T> extends AbstractImmutableCollection<T> implements ASet<T>, ACollectionDefaults<T, AHashSet<T>>, ASetDefaults<T, AHashSet<T>>, Serializable {
         private final AMap<T,?> map;
 
@@ -43,6 +98,12 @@ public class AMapSupport {
             this.map = map;
         }
 
+        /**
+         * @return the map whose keys this set contains
+         */
+        public AMap<T, ?> getMap () {
+            return map;
+        }
 
 
         @Override public AHashSet<T> plus (T o) {
@@ -69,6 +130,10 @@ public class AMapSupport {
             return map.iterator().map(Map.Entry::getKey);
         }
 
+        @Override public Spliterator<T> spliterator () {
+            return viewSpliterator(this, map, Map.Entry::getKey, Spliterator.SORTED | Spliterator.NONNULL);
+        }
+
         @Override public <U> ACollectionBuilder<U, AHashSet<U>> newBuilder () {
             return AHashSet.builder();
         }
@@ -138,6 +203,10 @@ public class AMapSupport {
             return map.iterator().map(Map.Entry::getValue);
         }
 
+        @Override public Spliterator<T> spliterator () {
+            return viewSpliterator(this, map, Map.Entry::getValue, Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+        }
+
         @Override public <U> ACollectionBuilder<U, AVector<U>> newBuilder () {
             return AVector.builder();
         }
@@ -249,6 +318,10 @@ public class AMapSupport {
             return map.iterator();
         }
 
+        @Override public Spliterator<Map.Entry<K,V>> spliterator () {
+            return viewSpliterator(this, map, e -> e, 0);
+        }
+
         @Override public <U> ACollectionBuilder<U, AHashSet<U>> newBuilder () {
             return AHashSet.builder();
         }
@@ -317,6 +390,13 @@ public class AMapSupport {
             this.map = map;
         }
 
+        /**
+         * @return the map whose keys this set contains
+         */
+        public ASortedMap<T, ?> getMap () {
+            return map;
+        }
+
         @Override public Comparator<? super T> comparator () {
             return map.comparator();
         }
@@ -372,6 +452,14 @@ public class AMapSupport {
             return map.greatest().map(Map.Entry::getKey);
         }
 
+        @Override public T getByIndex (int index) {
+            return map.getByIndex(index);
+        }
+
+        @Override public int indexOf (T o) {
+            return map.indexOf(o);
+        }
+
         @Override public AIterator<T> iterator (AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
             return map.keysIterator(from, fromInclusive, to, toInclusive);
         }
@@ -380,6 +468,10 @@ public class AMapSupport {
             return map.keysIterator();
         }
 
+        @Override public Spliterator<T> spliterator () {
+            return viewSpliterator(this, map, Map.Entry::getKey, Spliterator.SORTED | Spliterator.NONNULL);
+        }
+
         @Override public <U> ACollectionBuilder<U, ATreeSet<U>> newBuilder () {
             //noinspection unchecked
             return ATreeSet.builder((Comparator) map.comparator()); //TODO this is somewhat hacky - better alternatives?
@@ -578,6 +670,14 @@ public class AMapSupport {
             return map.greatest();
         }
 
+        @Override public Map.Entry<K,V> getByIndex (int index) {
+            return map.entryAtRank(index);
+        }
+
+        @Override public int indexOf (Map.Entry<K,V> o) {
+            return contains(o) ? map.indexOf(o.getKey()) : -1;
+        }
+
         @Override public AIterator<Map.Entry<K,V>> iterator (AOption<Map.Entry<K,V>> from, boolean fromInclusive, AOption<Map.Entry<K,V>> to, boolean toInclusive) {
             return map.iterator(from.map(Map.Entry::getKey), fromInclusive, to.map(Map.Entry::getKey), toInclusive);
         }
@@ -586,6 +686,10 @@ public class AMapSupport {
             return map.iterator();
         }
 
+        @Override public Spliterator<Map.Entry<K,V>> spliterator () {
+            return viewSpliterator(this, map, e -> e, 0);
+        }
+
         @Override public <U> ACollectionBuilder<U, ATreeSet<U>> newBuilder () {
             //noinspection unchecked
             return ATreeSet.builder((Comparator) map.comparator()); //TODO this is somewhat hacky - better alternatives?
@@ -748,7 +852,8 @@ public class AMapSupport {
                 new SortedMapWithDefaultValueInvocationHandler<>(inner, defaultProvider));
     }
 
-    private static final ASet<String> wrappedMapMethodNames = ASet.of("plus", "plusAll", "minus", "filter", "filterNot", "filterKeys");
+    private static final ASet<String> wrappedMapMethodNames = ASet.of("plus", "plusAll", "minus", "minusAll", "retainKeys", "updatedWith", "computed", "computedIfAbsent", "merged",
+            "filter", "filterNot", "filterKeys");
     private static final ASet<String> wrappedSortedMapMethodNames = wrappedMapMethodNames.plusAll(ASet.of("range", "drop", "take", "slice", "descendingMap", "subMap", "headMap", "tailMap"));
 
 
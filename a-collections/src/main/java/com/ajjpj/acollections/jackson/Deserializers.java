@@ -41,6 +41,20 @@ class Deserializers extends com.fasterxml.jackson.databind.deser.Deserializers.B
                         return (ACollectionBuilder) AHashMap.builder();
                     }
                 });
+            if (AIntHashMap.class.isAssignableFrom(raw))
+                return new AMapDeserializer(type, keyDeserializer, elementTypeDeserializer, elementDeserializer, new SerSupp<ACollectionBuilder<Map.Entry, ? extends AMap>>() {
+                    @Override public ACollectionBuilder<Map.Entry, ? extends AMap> get () {
+                        //noinspection unchecked
+                        return (ACollectionBuilder) AIntHashMap.builder();
+                    }
+                });
+            if (ALongHashMap.class.isAssignableFrom(raw))
+                return new AMapDeserializer(type, keyDeserializer, elementTypeDeserializer, elementDeserializer, new SerSupp<ACollectionBuilder<Map.Entry, ? extends AMap>>() {
+                    @Override public ACollectionBuilder<Map.Entry, ? extends AMap> get () {
+                        //noinspection unchecked
+                        return (ACollectionBuilder) ALongHashMap.builder();
+                    }
+                });
             if (ATreeMap.class.isAssignableFrom(raw) || raw.equals(ASortedMap.class))
                 return new AMapDeserializer(type, keyDeserializer, elementTypeDeserializer, elementDeserializer, new SerSupp<ACollectionBuilder<Map.Entry, ? extends AMap>>() {
                     @Override public ACollectionBuilder<Map.Entry, ? extends AMap> get () {
@@ -48,6 +62,13 @@ class Deserializers extends com.fasterxml.jackson.databind.deser.Deserializers.B
                         return (ACollectionBuilder) ATreeMap.builder();
                     }
                 });
+            if (ABTreeMap.class.isAssignableFrom(raw))
+                return new AMapDeserializer(type, keyDeserializer, elementTypeDeserializer, elementDeserializer, new SerSupp<ACollectionBuilder<Map.Entry, ? extends AMap>>() {
+                    @Override public ACollectionBuilder<Map.Entry, ? extends AMap> get () {
+                        //noinspection unchecked
+                        return (ACollectionBuilder) ABTreeMap.builder();
+                    }
+                });
             if (AMutableMapWrapper.class.isAssignableFrom(raw))
                 return new AMapDeserializer(type, keyDeserializer, elementTypeDeserializer, elementDeserializer, new SerSupp<ACollectionBuilder<Map.Entry, ? extends AMap>>() {
                     @Override public ACollectionBuilder<Map.Entry, ? extends AMap> get () {
@@ -89,6 +110,12 @@ class Deserializers extends com.fasterxml.jackson.databind.deser.Deserializers.B
                         return ALinkedList.builder();
                     }
                 }, type, elementTypeDeserializer, elementDeserializer);
+            if (ARrbVector.class.isAssignableFrom(raw))
+                return new ACollectionDeserializer(new SerSupp<ACollectionBuilder>() {
+                    @Override public ACollectionBuilder get () {
+                        return ARrbVector.builder();
+                    }
+                }, type, elementTypeDeserializer, elementDeserializer);
             if (AHashSet.class.isAssignableFrom(raw) || raw.equals(ASet.class))
                 return new ACollectionDeserializer(new SerSupp<ACollectionBuilder>() {
                     @Override public ACollectionBuilder get () {
@@ -101,6 +128,12 @@ class Deserializers extends com.fasterxml.jackson.databind.deser.Deserializers.B
                         return ATreeSet.builder();
                     }
                 }, type, elementTypeDeserializer, elementDeserializer);
+            if (ABTreeSet.class.isAssignableFrom(raw))
+                return new ACollectionDeserializer(new SerSupp<ACollectionBuilder>() {
+                    @Override public ACollectionBuilder get () {
+                        return ABTreeSet.builder();
+                    }
+                }, type, elementTypeDeserializer, elementDeserializer);
 
             if (AMutableArrayWrapper.class.isAssignableFrom(raw))
                 return new ACollectionDeserializer(new SerSupp<ACollectionBuilder>() {
@@ -370,11 +370,12 @@ public class AMutableArrayWrapper<T> implements AList<T>, AListDefaults<T, AMuta
         return result;
     }
 
-    @Override public AList<T> subList (int fromIndex, int toIndex) {
-        //noinspection unchecked
-        final T[] newInner = (T[]) new Object[toIndex-fromIndex]; //TODO potential for optimization
-        System.arraycopy(inner, fromIndex, newInner, 0, newInner.length);
-        return new AMutableArrayWrapper<>(newInner);
+    /**
+     * Returns a view on a range of this list's elements in O(1) time, as specified by {@link List#subList(int, int)}. Changes to the
+     *  view's elements write through to this list's array and vice versa, as long as this list's size does not change.
+     */
+    @Override public AMutableListWrapper<T> subList (int fromIndex, int toIndex) {
+        return AMutableListWrapper.wrap(Arrays.asList(inner).subList(fromIndex, toIndex));
     }
 
     @Override public int size () {
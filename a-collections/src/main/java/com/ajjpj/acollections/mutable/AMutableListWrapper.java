@@ -375,7 +375,7 @@ public class AMutableListWrapper<T> implements AListDefaults<T, AMutableListWrap
         return new AListIteratorWrapper<>(inner.listIterator());
     }
 
-    @Override public List<T> subList (int fromIndex, int toIndex) {
+    @Override public AMutableListWrapper<T> subList (int fromIndex, int toIndex) {
         return new AMutableListWrapper<>(inner.subList(fromIndex,toIndex ));
     }
 
@@ -282,6 +282,21 @@ public class AMutableSortedMapWrapper<K,V> implements ASortedMap<K,V>, ACollecti
         return isEmpty() ? AOption.none() : AOption.some(lastEntry());
     }
 
+    @Override public Entry<K, V> entryAtRank (int rank) {
+        if (rank < 0 || rank >= inner.size()) throw new IndexOutOfBoundsException(String.valueOf(rank));
+        final Iterator<Entry<K,V>> it = inner.entrySet().iterator();
+        for (int i=0; i<rank; i++) it.next();
+        return it.next();
+    }
+
+    @Override public K getByIndex (int index) {
+        return entryAtRank(index).getKey();
+    }
+
+    @Override public int indexOf (K key) {
+        return inner.containsKey(key) ? inner.headMap(key, false).size() : -1;
+    }
+
     @Override public ASortedSet<K> keySet () {
         return AMutableSortedSetWrapper.wrap(inner.navigableKeySet());
     }
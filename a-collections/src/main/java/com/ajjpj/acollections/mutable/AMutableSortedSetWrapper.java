@@ -325,6 +325,17 @@ public class AMutableSortedSetWrapper<T> implements ASortedSet<T>, ACollectionDe
         return AOption.some(inner.last());
     }
 
+    @Override public T getByIndex (int index) {
+        if (index < 0 || index >= inner.size()) throw new IndexOutOfBoundsException(String.valueOf(index));
+        final Iterator<T> it = inner.iterator();
+        for (int i=0; i<index; i++) it.next();
+        return it.next();
+    }
+
+    @Override public int indexOf (T o) {
+        return inner.contains(o) ? inner.headSet(o, false).size() : -1;
+    }
+
     @Override public AIterator<T> iterator(AOption<T> from, boolean fromInclusive, AOption<T> to, boolean toInclusive) {
         return range(from,fromInclusive, to, toInclusive).iterator();
     }
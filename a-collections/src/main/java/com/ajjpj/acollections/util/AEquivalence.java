@@ -0,0 +1,62 @@
+package com.ajjpj.acollections.util;
+
+import com.ajjpj.acollections.immutable.AHashMap;
+import com.ajjpj.acollections.immutable.AHashSet;
+
+
+/**
+ * An {@code AEquivalence} determines when two objects are considered equal, and it provides hash codes consistent with that. It
+ *  allows hash based collections ({@link AHashMap} and {@link AHashSet}) to compare keys in a way other than
+ *  {@link Object#equals(Object)} without wrapping every key, e.g. by identity or ignoring case:
+ *
+ * <p> {@code AHashMap<String,Integer> m = AHashMap.<String,Integer>empty(AEquivalence.caseInsensitive()).plus("a", 1);}
+ * <p> {@code System.out.println(m.get("A")); // 1 }
+ *
+ * <p> Implementations must be an equivalence relation (reflexive, symmetric and transitive), and {@link #hash(Object)} must return the
+ *  same hash code for objects that are equivalent. Both methods must handle {@code null}. Collections are serializable if and only if
+ *  their equivalence is serializable, which the predefined equivalences are.
+ *
+ * @param <T> the type of objects being compared
+ */
+public interface AEquivalence<T> {
+    /**
+     * @param a the first object, may be null
+     * @param b the second object, may be null
+     * @return true if and only if the two objects are considered equal
+     */
+    boolean equivalent (T a, T b);
+
+    /**
+     * @param o the object, may be null
+     * @return a hash code for the object that is consistent with {@link #equivalent(Object, Object)}
+     */
+    int hash (T o);
+
+    /**
+     * @param <T> the type of objects being compared
+     * @return the equivalence based on {@link Object#equals(Object)} and {@link Object#hashCode()}, which is the default for all
+     *         collections
+     */
+    static <T> AEquivalence<T> equality () {
+        //noinspection unchecked
+        return (AEquivalence<T>) StandardEquivalence.EQUALITY;
+    }
+
+    /**
+     * @param <T> the type of objects being compared
+     * @return the equivalence that considers objects equal if and only if they are the same instance, using
+     *         {@link System#identityHashCode(Object)} as hash code
+     */
+    static <T> AEquivalence<T> identity () {
+        //noinspection unchecked
+        return (AEquivalence<T>) StandardEquivalence.IDENTITY;
+    }
+
+    /**
+     * @return the equivalence that compares strings using {@link String#equalsIgnoreCase(String)}
+     */
+    static AEquivalence<String> caseInsensitive () {
+        //noinspection unchecked
+        return (AEquivalence<String>) (AEquivalence) StandardEquivalence.CASE_INSENSITIVE;
+    }
+}
@@ -0,0 +1,43 @@
+package com.ajjpj.acollections.util;
+
+import java.util.Objects;
+
+
+/**
+ * The predefined {@link AEquivalence} implementations. They are enum constants so that they remain singletons when they are
+ *  deserialized, which allows collections to recognize them by identity.
+ */
+enum StandardEquivalence implements AEquivalence<Object> {
+    EQUALITY {
+        @Override public boolean equivalent (Object a, Object b) {
+            return Objects.equals(a, b);
+        }
+        @Override public int hash (Object o) {
+            return Objects.hashCode(o);
+        }
+    },
+    IDENTITY {
+        @Override public boolean equivalent (Object a, Object b) {
+            return a == b;
+        }
+        @Override public int hash (Object o) {
+            return System.identityHashCode(o);
+        }
+    },
+    CASE_INSENSITIVE {
+        @Override public boolean equivalent (Object a, Object b) {
+            return a == null ? b == null : ((String) a).equalsIgnoreCase((String) b);
+        }
+        @Override public int hash (Object o) {
+            if (o == null) return 0;
+
+            // String.equalsIgnoreCase() treats characters as equal if their upper case and then their lower case variants are equal
+            final String s = (String) o;
+            int result = 0;
+            for (int i=0; i<s.length(); i++) {
+                result = 31*result + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+            }
+            return result;
+        }
+    }
+}
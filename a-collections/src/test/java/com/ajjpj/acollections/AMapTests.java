@@ -5,6 +5,7 @@ import com.ajjpj.acollections.immutable.AHashSet;
 import com.ajjpj.acollections.immutable.ATreeMap;
 import com.ajjpj.acollections.jackson.ACollectionsModule;
 import com.ajjpj.acollections.jackson.JacksonModuleTest;
+import com.ajjpj.acollections.util.AOption;
 import com.ajjpj.acollections.util.AUnchecker;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -220,6 +221,111 @@ public interface AMapTests extends AEntryCollectionOpsTests {
         });
     }
 
+    @Test default void testPlusAllWithMergeFunction() {
+        doTest(v -> {
+            assertTrue(v.mkMap().plusAll(v.mkMap(), Integer::sum).isEmpty());
+            assertEquals(v.mkMap(1), v.mkMap().plusAll(v.mkMap(1), Integer::sum));
+            assertEquals(v.mkMap(1), v.mkMap(1).plusAll(v.mkMap(), Integer::sum));
+            assertEquals(v.mkMap(1, 2), v.mkMap(1).plusAll(v.mkMap(2), Integer::sum));
+
+            final AMap<Integer,Integer> merged = v.mkMap(1, 2).plusAll(AHashMap.of(2, 100, 3, 200), (a, b) -> a - b);
+            assertEquals(3, merged.size());
+            assertEquals(3, merged.get(1).intValue());
+            assertEquals(5-100, merged.get(2).intValue());
+            assertEquals(200, merged.get(3).intValue());
+        });
+    }
+
+    @Test default void testUpdatedWith() {
+        doTest(v -> {
+            assertTrue(v.mkMap().updatedWith(1, o -> AOption.none()).isEmpty());
+            assertEquals(v.mkMap(1), v.mkMap().updatedWith(1, o -> AOption.some(3)));
+            assertEquals(v.mkMap(1, 2), v.mkMap(1).updatedWith(2, o -> o.isDefined() ? AOption.none() : AOption.some(5)));
+            assertEquals(v.mkMap(1), v.mkMap(1, 2).updatedWith(2, o -> AOption.none()));
+            assertEquals(v.mkMap(1, 2), v.mkMap(1, 2).updatedWith(3, o -> AOption.none()));
+
+            final AMap<Integer,Integer> m = v.mkMap(1, 2, 3).updatedWith(2, o -> AOption.some(o.get() * 10));
+            assertEquals(3, m.size());
+            assertEquals(50, m.get(2).intValue());
+            assertEquals(7, m.get(3).intValue());
+
+            assertEquals(v.mkMap(1, 2), v.mkMap(1, 2).updatedWith(2, o -> o));
+            assertEquals(v.mkMap(1, 2), v.mkMap(1, 2).computed(2, (k, o) -> AOption.some(2*k + 1)));
+            assertEquals(v.mkMap(1), v.mkMap(1, 2).computed(2, (k, o) -> AOption.none()));
+
+            AMap<Integer,Integer> counts = v.mkMap();
+            for (int i=0; i<100; i++) {
+                counts = counts.updatedWith(i % 7, o -> AOption.some(o.orElse(0) + 1));
+            }
+            assertEquals(7, counts.size());
+            assertEquals(15, counts.get(0).intValue());
+            assertEquals(14, counts.get(6).intValue());
+        });
+    }
+
+    @Test default void testComputedIfAbsent() {
+        doTest(v -> {
+            assertEquals(v.mkMap(1), v.mkMap().computedIfAbsent(1, k -> 2*k + 1));
+            assertEquals(v.mkMap(1, 2), v.mkMap(1, 2).computedIfAbsent(2, k -> { throw new AssertionError(); }));
+            assertEquals(v.mkMap(1, 2, 3), v.mkMap(1, 3).computedIfAbsent(2, k -> 2*k + 1));
+        });
+    }
+
+    @Test default void testMerged() {
+        doTest(v -> {
+            assertEquals(v.mkMap(1), v.mkMap().merged(1, 3, Integer::sum));
+            assertEquals(8, v.mkMap(1, 2).merged(2, 3, Integer::sum).get(2).intValue());
+            assertEquals(2, v.mkMap(1, 2).merged(2, 3, Integer::sum).size());
+
+            AMap<Integer,Integer> counts = v.mkMap();
+            for (int i=0; i<100; i++) {
+                counts = counts.merged(i % 10, 1, Integer::sum);
+            }
+            assertEquals(10, counts.size());
+            for (int i=0; i<10; i++) {
+                assertEquals(10, counts.get(i).intValue());
+            }
+        });
+    }
+
+    @Test default void testDiff() {
+        doTest(v -> {
+            assertFalse(v.mkMap().diff(v.mkMap()).hasNext());
+            assertFalse(v.mkMap(1, 2, 3).diff(v.mkMap(1, 2, 3)).hasNext());
+            assertEquals(AHashSet.of(AMapChange.added(1, 3)), v.mkMap().diff(v.mkMap(1)).toSet());
+            assertEquals(AHashSet.of(AMapChange.removed(1, 3)), v.mkMap(1).diff(v.mkMap()).toSet());
+            assertEquals(AHashSet.of(AMapChange.removed(1, 3), AMapChange.added(3, 7)), v.mkMap(1, 2).diff(v.mkMap(2, 3)).toSet());
+            assertEquals(AHashSet.of(AMapChange.removed(1, 3), AMapChange.added(3, 7)), v.mkMap(1, 2).diff(AHashMap.of(2, 5, 3, 7)).toSet());
+
+            final AMap<Integer,Integer> changed = v.mkMap(1, 2, 3).plus(2, 99).minus(3).plus(4, 9);
+            assertEquals(AHashSet.of(AMapChange.changed(2, 5, 99), AMapChange.removed(3, 7), AMapChange.added(4, 9)),
+                    v.mkMap(1, 2, 3).diff(changed).toSet());
+            assertEquals(AHashSet.of(AMapChange.changed(2, 99, 5), AMapChange.added(3, 7), AMapChange.removed(4, 9)),
+                    changed.diff(v.mkMap(1, 2, 3)).toSet());
+        });
+    }
+
+    @Test default void testMinusAll() {
+        doTest(v -> {
+            assertTrue(v.mkMap().minusAll(Collections.emptyList()).isEmpty());
+            assertTrue(v.mkMap().minusAll(Arrays.asList(1, 2)).isEmpty());
+            assertEquals(v.mkMap(1, 2, 3), v.mkMap(1, 2, 3).minusAll(Arrays.asList(4, 5)));
+            assertEquals(v.mkMap(2), v.mkMap(1, 2, 3).minusAll(Arrays.asList(1, 3, 4)));
+            assertEquals(v.mkMap(2), v.mkMap(1, 2, 3).minusAll(AHashMap.of(1, 0, 3, 0).keySet()));
+            assertTrue(v.mkMap(1, 2, 3).minusAll(v.mkMap(1, 2, 3).keySet()).isEmpty());
+        });
+    }
+
+    @Test default void testRetainKeys() {
+        doTest(v -> {
+            assertTrue(v.mkMap().retainKeys(Collections.emptyList()).isEmpty());
+            assertTrue(v.mkMap(1, 2).retainKeys(Collections.emptyList()).isEmpty());
+            assertEquals(v.mkMap(1, 3), v.mkMap(1, 2, 3).retainKeys(Arrays.asList(1, 3, 4)));
+            assertEquals(v.mkMap(1, 3), v.mkMap(1, 2, 3).retainKeys(AHashMap.of(1, 0, 3, 0, 4, 0).keySet()));
+            assertEquals(v.mkMap(1, 2, 3), v.mkMap(1, 2, 3).retainKeys(v.mkMap(1, 2, 3).keySet()));
+        });
+    }
+
     @Test default void testWithDefaultValue() {
         doTest(v -> {
             final AMap<Integer,Integer> m = v.mkMap().withDefaultValue(1);
@@ -267,6 +373,18 @@ public interface AMapTests extends AEntryCollectionOpsTests {
             assertEquals(99, m.get(5).intValue());
         });
     }
+    @Test default void testUpdatedWithMaintainsWithDefaultValue() {
+        doTest(v -> {
+            AMap<Integer,Integer> m = v.mkMap(1, 2).withDefaultValue(99);
+
+            m = m.updatedWith(1, o -> AOption.none()).merged(2, 1, Integer::sum).computedIfAbsent(3, k -> 0);
+            assertEquals(2, m.size());
+            assertEquals(6, m.get(2).intValue());
+            assertEquals(0, m.get(3).intValue());
+
+            assertEquals(99, m.get(1).intValue());
+        });
+    }
     @Test default void testFilterMaintainsWithDefaultValue() {
         doTest(v -> {
             AMap<Integer,Integer> m = v.mkMap(1, 2, 3).withDefaultValue(99);
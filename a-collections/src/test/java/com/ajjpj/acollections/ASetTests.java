@@ -123,6 +123,18 @@ public interface ASetTests extends ACollectionTests {
         });
     }
 
+    @Test default void testSymmetricDiff() {
+        doTest(v -> {
+            assertTrue(v.mkSet().symmetricDiff(AHashSet.empty()).toVector().isEmpty());
+            assertTrue(v.mkSet(1, 2).symmetricDiff(v.mkSet(1, 2)).toVector().isEmpty());
+            assertEquals(AHashSet.of(1), v.mkSet(1).symmetricDiff(AHashSet.empty()).toSet());
+            assertEquals(AHashSet.of(1), v.mkSet().symmetricDiff(AHashSet.of(1)).toSet());
+            assertEquals(AHashSet.of(1, 3), v.mkSet(1, 2).symmetricDiff(AHashSet.of(2, 3)).toSet());
+            assertEquals(AHashSet.of(1, 3), v.mkSet(1, 2).symmetricDiff(v.mkSet(2, 3)).toSet());
+            assertEquals(2, v.mkSet(1, 2).symmetricDiff(v.mkSet(2, 3)).toVector().size());
+        });
+    }
+
     @SuppressWarnings("unchecked")
     @Test default void testSubsets() {
         doTest(v -> {
@@ -579,6 +579,54 @@ public interface ASortedMapTests extends AMapTests {
         });
     }
 
+    @Test default void testEntryAtRankAndIndexOf() {
+        doTest(v -> {
+            assertThrows(IndexOutOfBoundsException.class, () -> v.mkSortedMap().entryAtRank(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> v.mkSortedMap().getByIndex(0));
+            assertEquals(-1, v.mkSortedMap().indexOf(1));
+
+            final Integer[] values = new Integer[100];
+            for (int i=0; i<values.length; i++) values[i] = 2*i;
+            final ASortedMap<Integer,Integer> m = v.mkSortedMap(values);
+            for (int i=0; i<100; i++) {
+                final int expected = v.isAscending() ? 2*i : 2*(99-i);
+                assertEquals(entryOf(expected), m.entryAtRank(i));
+                assertEquals(expected, m.getByIndex(i).intValue());
+                assertEquals(i, m.indexOf(expected));
+                assertEquals(-1, m.indexOf(expected+1));
+
+                assertEquals(expected, m.keySet().getByIndex(i).intValue());
+                assertEquals(i, m.keySet().indexOf(expected));
+                assertEquals(entryOf(expected), m.entrySet().getByIndex(i));
+                assertEquals(i, m.entrySet().indexOf(entryOf(expected)));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> m.entryAtRank(-1));
+            assertThrows(IndexOutOfBoundsException.class, () -> m.getByIndex(100));
+        });
+    }
+
+    @Test default void testQuantile() {
+        doTest(v -> {
+            assertThrows(NoSuchElementException.class, () -> v.mkSortedMap().quantile(0.5));
+            assertThrows(IllegalArgumentException.class, () -> v.mkSortedMap(1).quantile(2));
+
+            final Integer[] values = new Integer[100];
+            for (int i=0; i<values.length; i++) values[i] = i+1;
+            final ASortedMap<Integer,Integer> m = v.mkSortedMap(values);
+            if (v.isAscending()) {
+                assertEquals(entryOf(1), m.quantile(0));
+                assertEquals(entryOf(50), m.quantile(0.5));
+                assertEquals(entryOf(99), m.quantile(0.99));
+                assertEquals(entryOf(100), m.quantile(1));
+            }
+            else {
+                assertEquals(entryOf(100), m.quantile(0));
+                assertEquals(entryOf(51), m.quantile(0.5));
+                assertEquals(entryOf(1), m.quantile(1));
+            }
+        });
+    }
+
     @Test default void testGreatest() {
         doTest(v -> {
             assertEquals(AOption.none(), v.mkSortedMap().greatest());
@@ -1078,6 +1126,16 @@ public interface ASortedMapTests extends AMapTests {
         });
     }
 
+    @Test default void testEntrySetStream() {
+        doTest(v -> {
+            assertEquals(0, v.mkSortedMap().entrySet().stream().count());
+            assertEquals(v.iterationOrder123(), v.mkSortedMap(1, 2, 3).entrySet().stream().collect(AVector.streamCollector()));
+            assertEquals(v.iterationOrder123(), v.mkSortedMap(1, 2, 3).entrySet().parallelStream().collect(AVector.streamCollector()));
+            assertEquals(v.iterationOrder123().map(Map.Entry::getKey), v.mkSortedMap(1, 2, 3).keySet().stream().collect(AVector.streamCollector()));
+            assertEquals(3, v.mkSortedMap(1, 2, 3).values().parallelStream().count());
+        });
+    }
+
     @Test default void testSubMapWithFlags() {
         doTest(v -> {
             assertEquals (AVector.of(entryOf(4)), v.mkSortedMap(2, 4, 6).subMap(4, true, 4, true).toVector());
@@ -260,6 +260,52 @@ public interface ASortedSetTests extends ASetTests {
         });
     }
 
+    @Test default void testGetByIndexAndIndexOf() {
+        doTest(v -> {
+            assertThrows(IndexOutOfBoundsException.class, () -> v.mkSortedSet().getByIndex(0));
+            assertEquals(-1, v.mkSortedSet().indexOf(1));
+
+            final Integer[] values = new Integer[100];
+            for (int i=0; i<values.length; i++) values[i] = 2*i;
+            final ASortedSet<Integer> s = v.mkSortedSet(values);
+            for (int i=0; i<100; i++) {
+                final int expected = v.isAscending() ? 2*i : 2*(99-i);
+                assertEquals(expected, s.getByIndex(i).intValue());
+                assertEquals(i, s.indexOf(expected));
+                assertEquals(-1, s.indexOf(expected+1));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> s.getByIndex(-1));
+            assertThrows(IndexOutOfBoundsException.class, () -> s.getByIndex(100));
+        });
+    }
+
+    @Test default void testQuantile() {
+        doTest(v -> {
+            assertThrows(NoSuchElementException.class, () -> v.mkSortedSet().quantile(0.5));
+            assertThrows(IllegalArgumentException.class, () -> v.mkSortedSet(1).quantile(1.01));
+            assertThrows(IllegalArgumentException.class, () -> v.mkSortedSet(1).quantile(-0.01));
+            assertThrows(IllegalArgumentException.class, () -> v.mkSortedSet(1).quantile(Double.NaN));
+
+            final Integer[] values = new Integer[100];
+            for (int i=0; i<values.length; i++) values[i] = i+1;
+            final ASortedSet<Integer> s = v.mkSortedSet(values);
+            if (v.isAscending()) {
+                assertEquals(1, s.quantile(0).intValue());
+                assertEquals(1, s.quantile(0.01).intValue());
+                assertEquals(50, s.quantile(0.5).intValue());
+                assertEquals(99, s.quantile(0.99).intValue());
+                assertEquals(100, s.quantile(0.999).intValue());
+                assertEquals(100, s.quantile(1).intValue());
+            }
+            else {
+                assertEquals(100, s.quantile(0).intValue());
+                assertEquals(51, s.quantile(0.5).intValue());
+                assertEquals(1, s.quantile(1).intValue());
+            }
+            assertEquals(1, v.mkSortedSet(1).quantile(0.99).intValue());
+        });
+    }
+
     @Test default void testFirst() {
         doTest(v -> {
             assertThrows (NoSuchElementException.class, () -> v.mkSortedSet().first());
@@ -3,10 +3,28 @@ package com.ajjpj.acollections;
 import com.ajjpj.acollections.util.AUnchecker;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 
 public class TestHelpers {
+    /**
+     * deserializes an object from its Base64 encoded serialized form, e.g. for checking that streams written by earlier versions
+     *  can still be read
+     */
+    public static <T> T deserialize (String base64) {
+        return AUnchecker.executeUnchecked(() -> {
+            final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(base64)));
+            //noinspection unchecked
+            return (T) ois.readObject();
+        });
+    }
+
     public static <T> T serDeser (T o) {
         return AUnchecker.executeUnchecked(() -> {
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -27,4 +45,29 @@ public class TestHelpers {
             return 2*i;
         }
     }
+
+    /**
+     * Splits a spliterator recursively as far as it goes, checking that all parts report their exact sizes, and returns all
+     *  elements in encounter order.
+     */
+    public static <T> List<T> splitFully (Spliterator<T> spliterator) {
+        final List<T> result = new ArrayList<>();
+        splitFully(spliterator, result);
+        return result;
+    }
+    private static <T> void splitFully (Spliterator<T> spliterator, List<T> result) {
+        final long expectedSize = spliterator.estimateSize();
+        final int sizeBefore = result.size();
+
+        final Spliterator<T> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            assertEquals(expectedSize, prefix.estimateSize() + spliterator.estimateSize());
+            splitFully(prefix, result);
+            splitFully(spliterator, result);
+        }
+        else {
+            spliterator.forEachRemaining(result::add);
+        }
+        assertEquals(expectedSize, result.size() - sizeBefore);
+    }
 }
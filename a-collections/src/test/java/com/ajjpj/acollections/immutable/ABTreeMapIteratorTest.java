@@ -0,0 +1,16 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AEntryIteratorTests;
+import com.ajjpj.acollections.AIterator;
+
+import java.util.*;
+
+
+public class ABTreeMapIteratorTest implements AEntryIteratorTests {
+    @Override public AIterator<Map.Entry<Integer, Integer>> mkIterator (Integer... values) {
+        final ABTreeMap.Builder<Integer,Integer> builder = ABTreeMap.builder(Comparator.<Integer>naturalOrder());
+        for (int v: values)
+            builder.add(AEntryIteratorTests.entryOf(v));
+        return builder.build().iterator();
+    }
+}
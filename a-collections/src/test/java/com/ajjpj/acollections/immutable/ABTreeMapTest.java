@@ -0,0 +1,173 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.ASortedMapTests;
+import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.util.AOption;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ABTreeMapTest implements ASortedMapTests {
+    @Override public Iterable<Variant> variants () {
+        return Arrays.asList(
+                new Variant(ABTreeMap.class,true, () -> ABTreeMap.builder(Comparator.<Integer>naturalOrder()), AVector.of(1, 2, 3)),
+                new Variant(ABTreeMap.class,true, () -> ABTreeMap.builder(Comparator.<Integer>naturalOrder().reversed()), AVector.of(3, 2, 1))
+        );
+    }
+
+    @Override @Test public void testComparator() {
+        assertTrue(ABTreeMap.of(9, "a").comparator().compare(1, 2) < 0);
+        assertTrue(ABTreeMap.<Integer, String> empty().comparator().compare(1, 2) < 0);
+
+        assertTrue(ABTreeMap.<Integer,String>empty(Comparator.naturalOrder()).comparator().compare(1, 2) < 0);
+        assertTrue(ABTreeMap.<Integer,String>empty(Comparator.<Integer>naturalOrder().reversed()).comparator().compare(1, 2) > 0);
+    }
+
+    @Override @Test public void testStaticFactories() {
+        assertTrue(ABTreeMap.empty().isEmpty());
+
+        AMap<Integer,String> expected = AMap.empty();
+        assertEquals(expected, ABTreeMap.of());
+        expected = expected.plus(1, "1");
+        assertEquals(expected, ABTreeMap.of(1,"1"));
+        expected = expected.plus(2, "2");
+        assertEquals(expected, ABTreeMap.of(1,"1", 2, "2"));
+        expected = expected.plus(3, "3");
+        assertEquals(expected, ABTreeMap.of(1,"1", 2, "2", 3, "3"));
+        expected = expected.plus(4, "4");
+        assertEquals(expected, ABTreeMap.of(1,"1", 2, "2", 3, "3", 4, "4"));
+
+        assertEquals (AMap.of(5, "5"), ABTreeMap.from(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5"))));
+        assertEquals (AMap.of(5, "5"), ABTreeMap.fromIterator(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")).iterator()));
+
+        assertEquals (AMap.of(5, "5"), ABTreeMap.ofEntries(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5"))));
+
+        assertEquals(expected, ABTreeMap.fromMap(expected));
+
+        assertTrue(ABTreeMap.empty(Comparator.naturalOrder().reversed()).isEmpty());
+        assertEquals(Comparator.naturalOrder().reversed(), ABTreeMap.empty(Comparator.naturalOrder().reversed()).comparator());
+
+        assertEquals (AMap.of(5, "5"), ABTreeMap.from(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")), Comparator.<Integer>naturalOrder().reversed()));
+        assertEquals (AMap.of(5, "5"), ABTreeMap.fromIterator(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")).iterator(), Comparator.<Integer>naturalOrder().reversed()));
+        assertEquals (Comparator.naturalOrder().reversed(), ABTreeMap.from(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")), Comparator.<Integer>naturalOrder().reversed()).comparator());
+        assertEquals (Comparator.naturalOrder().reversed(), ABTreeMap.fromIterator(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")).iterator(), Comparator.<Integer>naturalOrder().reversed()).comparator());
+
+        assertEquals(expected, ABTreeMap.fromMap(expected, Comparator.<Integer>naturalOrder().reversed()));
+        assertEquals(Comparator.naturalOrder().reversed(), ABTreeMap.fromMap(expected, Comparator.<Integer>naturalOrder().reversed()).comparator());
+    }
+
+    @Override @Test public void testSerDeser () {
+        doTest(v -> {
+            assertEquals(v.mkMap(), TestHelpers.serDeser(v.mkMap()));
+            assertEquals(v.mkMap(1), TestHelpers.serDeser(v.mkMap(1)));
+            assertEquals(v.mkMap(1, 2, 3), TestHelpers.serDeser(v.mkMap(1, 2, 3)));
+            assertEquals(((ABTreeMap<?,?>) v.mkMap(1, 2, 3)).comparator(), ((ABTreeMap<?,?>) TestHelpers.serDeser(v.mkMap(1, 2, 3))).comparator());
+        });
+    }
+
+    @Test void testBuilderWithSortedAndUnsortedInput() {
+        final ABTreeMap<Integer,String> sorted = ABTreeMap.<Integer,String>builder().add(1, "a").add(2, "b").add(2, "c").add(5, "d").build();
+        assertEquals(AMap.of(1, "a", 2, "c", 5, "d"), sorted);
+
+        final ABTreeMap<Integer,String> unsorted = ABTreeMap.<Integer,String>builder().add(5, "d").add(2, "b").add(1, "a").add(2, "c").add(5, "e").build();
+        assertEquals(AMap.of(1, "a", 2, "c", 5, "e"), unsorted);
+        assertEquals(AVector.of(1, 2, 5), unsorted.keySet().toVector());
+
+        final TreeMap<Integer,Integer> expected = new TreeMap<>();
+        final ABTreeMap.Builder<Integer,Integer> builder = ABTreeMap.builder();
+        final Random rand = new Random(4711);
+        for (int i=0; i<10_000; i++) {
+            final int key = rand.nextInt(5000);
+            expected.put(key, i);
+            builder.add(key, i);
+        }
+        assertEquals(expected, builder.build());
+        assertEquals(expected, ABTreeMap.fromMap(expected));
+
+        // adding beyond the greatest key
+        ABTreeMap<Integer,Integer> m = ABTreeMap.empty();
+        for (int i=0; i<1000; i++) m = m.plus(i, 2*i);
+        assertEquals(1000, m.size());
+        for (int i=0; i<1000; i++) assertEquals(2*i, m.get(i).intValue());
+        assertEquals(0, m.smallest().get().getKey().intValue());
+        assertEquals(999, m.greatest().get().getKey().intValue());
+    }
+
+    @Test void testAgainstTreeMap() {
+        final Random rand = new Random(12345);
+        for (Comparator<Integer> comparator: Arrays.asList(Comparator.<Integer>naturalOrder(), Comparator.<Integer>reverseOrder())) {
+            final TreeMap<Integer,Integer> expected = new TreeMap<>(comparator);
+            ABTreeMap<Integer,Integer> map = ABTreeMap.empty(comparator);
+
+            for (int i=0; i<20_000; i++) {
+                final int key = rand.nextInt(4000);
+                if (rand.nextInt(3) < 2) {
+                    expected.put(key, i);
+                    map = map.plus(key, i);
+                }
+                else {
+                    expected.remove(key);
+                    map = map.minus(key);
+                }
+
+                if (i % 1000 == 0) {
+                    assertEquals(expected.size(), map.size());
+                    assertEquals(AVector.from(expected.entrySet()), map.toVector());
+                    assertEquals(AVector.from(expected.descendingMap().keySet()), map.keySet().descendingIterator().toVector());
+
+                    for (int j=0; j<20; j++) {
+                        final int k = rand.nextInt(4100) - 50;
+                        assertEquals(expected.get(k), map.get(k));
+                        assertEquals(expected.lowerEntry(k), map.lowerEntry(k));
+                        assertEquals(expected.floorKey(k), map.floorKey(k));
+                        assertEquals(expected.ceilingEntry(k), map.ceilingEntry(k));
+                        assertEquals(expected.higherKey(k), map.higherKey(k));
+
+                        final int k2 = rand.nextInt(4100) - 50;
+                        final boolean fromInclusive = rand.nextBoolean(), toInclusive = rand.nextBoolean();
+                        if (comparator.compare(k, k2) <= 0) {
+                            final NavigableMap<Integer,Integer> sub = expected.subMap(k, fromInclusive, k2, toInclusive);
+                            assertEquals(sub.size(), map.countInRange(AOption.some(k), fromInclusive, AOption.some(k2), toInclusive));
+                            assertEquals(AVector.from(sub.entrySet()), map.range(AOption.some(k), fromInclusive, AOption.some(k2), toInclusive).toVector());
+                            assertEquals(AVector.from(sub.entrySet()), map.iterator(AOption.some(k), fromInclusive, AOption.some(k2), toInclusive).toVector());
+                        }
+                        assertEquals(AVector.from(expected.headMap(k, toInclusive).values()), map.valuesIterator(AOption.none(), false, AOption.some(k), toInclusive).toVector());
+                        assertEquals(AVector.from(expected.tailMap(k, fromInclusive).keySet()), map.tailMap(k, fromInclusive).keySet().toVector());
+
+                        final int n = rand.nextInt(expected.size() + 10);
+                        assertEquals(AVector.from(expected.entrySet()).drop(n), map.drop(n).toVector());
+                        assertEquals(AVector.from(expected.entrySet()).take(n), map.take(n).toVector());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 3, 31, 1000, 100_000}) {
+            ABTreeMap<Integer,Integer> map = ABTreeMap.empty(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size; i++) map = map.plus(i, 2*i);
+
+            final Spliterator<Map.Entry<Integer,Integer>> spliterator = map.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT));
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(map.iterator().toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(map.keysIterator().toVector(), TestHelpers.splitFully(map.keySet().spliterator()));
+            assertEquals(map.valuesIterator().toVector(), TestHelpers.splitFully(map.values().spliterator()));
+            assertEquals(map.keysIterator().toVector(), map.keySet().parallelStream().collect(AVector.streamCollector()));
+        }
+    }
+
+    @Test void testSharesNodesWithPreviousVersion() {
+        ABTreeMap<Integer,Integer> original = ABTreeMap.empty();
+        for (int i=0; i<100_000; i++) original = original.plus(i, i);
+
+        final ABTreeMap<Integer,Integer> modified = original.plus(50_000, -1);
+        assertTrue(modified.stats(original).sharedBytes() > 0.95 * modified.stats().retainedBytes());
+        assertTrue(original.stats().maxDepth() <= 3);
+    }
+}
@@ -0,0 +1,150 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.*;
+import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AOption;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ABTreeSetTest implements ASortedSetTests {
+    @Override @Test public void testStaticFactories() {
+        assertTrue(ABTreeSet.empty().isEmpty());
+        assertTrue(ABTreeSet.of().isEmpty());
+        assertEquals(new HashSet<>(Collections.singletonList(1)), ABTreeSet.of(1));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), ABTreeSet.of(1,2));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), ABTreeSet.of(1,2,3));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4)), ABTreeSet.of(1,2,3,4));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5)), ABTreeSet.of(1,2,3,4,5));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3, 4, 5, 6)), ABTreeSet.of(1,2,3,4,5,6));
+
+        assertEquals(AVector.of(1, 2, 3), ABTreeSet.from(Arrays.asList(1, 2, 3)).toVector());
+        assertEquals(AVector.of(1, 2, 3), ABTreeSet.from(new Integer[] {1, 2, 3}).toVector());
+        assertEquals(AVector.of(1, 2, 3), ABTreeSet.fromIterator(Arrays.asList(1, 2, 3).iterator()).toVector());
+
+        assertTrue(ABTreeSet.empty(Comparator.naturalOrder().reversed()).isEmpty());
+        assertEquals(Comparator.naturalOrder().reversed(), ABTreeSet.empty(Comparator.naturalOrder().reversed()).comparator());
+
+        assertEquals(AVector.of(3, 2, 1), ABTreeSet.from(Arrays.asList(1, 2, 3), Comparator.<Integer>naturalOrder().reversed()).toVector());
+        assertEquals(AVector.of(3, 2, 1), ABTreeSet.from(new Integer[] {1, 2, 3}, Comparator.<Integer>naturalOrder().reversed()).toVector());
+        assertEquals(AVector.of(3, 2, 1), ABTreeSet.fromIterator(Arrays.asList(1, 2, 3).iterator(), Comparator.<Integer>naturalOrder().reversed()).toVector());
+    }
+
+    @Override @Test public void testSerDeser () {
+        doTest(v -> {
+            assertEquals(AHashSet.empty(), TestHelpers.serDeser(v.mkSet()));
+            assertEquals(v.mkSet().getClass(), TestHelpers.serDeser(v.mkSet()).getClass());
+            assertEquals(((ABTreeSet)v.mkSet()).comparator(), ((ABTreeSet)TestHelpers.serDeser(v.mkSet())).comparator());
+
+            assertEquals(AHashSet.of(1), TestHelpers.serDeser(v.mkSet(1)));
+            assertEquals(AHashSet.of(1, 2, 3), TestHelpers.serDeser(v.mkSet(1, 2, 3)));
+        });
+    }
+
+    @Test @Override public void testToSortedSet() {
+        doTest(v -> {
+            assertEquals(v.mkColl(), v.mkColl().toSortedSet());
+            assertEquals(v.mkColl(1), v.mkColl(1).toSortedSet());
+        });
+    }
+
+    @Test void testCollector() {
+        assertEquals(ABTreeSet.of(1, 2, 3, 4), Stream.of(1, 2, 3, 4).collect(ABTreeSet.streamCollector()));
+        assertEquals(ABTreeSet.empty(), Stream.<Integer>of().collect(ABTreeSet.streamCollector()));
+        assertEquals(ARange.create(0, 100000).toSortedSet(), ARange.create(0, 100000).parallelStream().collect(ABTreeSet.streamCollector()));
+    }
+
+    @Test @Override  public void testComparator() {
+        assertTrue (ABTreeSet.of(1, 2, 3).comparator().compare(1, 2) < 0);
+        assertTrue(ABTreeSet.<Integer> empty().comparator().compare(1, 2) < 0);
+
+        assertTrue(ABTreeSet.empty(Comparator.<Integer>naturalOrder()).comparator().compare(1, 2) < 0);
+        assertTrue(ABTreeSet.empty(Comparator.<Integer>naturalOrder().reversed()).comparator().compare(1, 2) > 0);
+    }
+
+    @Override public Iterable<Variant> variants () {
+        return Arrays.asList(
+                new Variant(ABTreeSet.class, () -> ABTreeSet.builder(Comparator.<Integer>naturalOrder()), AVector.of(1, 2, 3)),
+                new Variant(ABTreeSet.class, () -> ABTreeSet.builder(Comparator.<Integer>naturalOrder().reversed()), AVector.of(3, 2, 1))
+        );
+    }
+
+    @Test @Override public void testToMap () {
+        assertThrows(ClassCastException.class, () -> ABTreeSet.of(1, 2, 3).toMap());
+
+        final ASet s = ABTreeSet
+                .<Map.Entry<Integer,String>>empty(new AMapSupport.EntryComparator<>(Comparator.naturalOrder()))
+                .plus(new AbstractMap.SimpleImmutableEntry<>(1, "one"));
+
+        assertEquals(AMap.of(1, "one"), s.toMap());
+    }
+    @Test @Override public void testToMutableMap () {
+        assertThrows(ClassCastException.class, () -> ABTreeSet.of(1, 2, 3).toMutableMap());
+
+        final ASet s = ABTreeSet
+                .<Map.Entry<Integer,String>>empty(new AMapSupport.EntryComparator<>(Comparator.naturalOrder()))
+                .plus(new AbstractMap.SimpleImmutableEntry<>(1, "one"));
+
+        assertEquals(AMap.of(1, "one"), s.toMutableMap());
+    }
+
+    @Test void testAgainstTreeSet() {
+        final Random rand = new Random(12345);
+        for (Comparator<Integer> comparator: Arrays.asList(Comparator.<Integer>naturalOrder(), Comparator.<Integer>reverseOrder())) {
+            final TreeSet<Integer> expected = new TreeSet<>(comparator);
+            ABTreeSet<Integer> set = ABTreeSet.empty(comparator);
+
+            for (int i=0; i<20_000; i++) {
+                final int el = rand.nextInt(4000);
+                if (rand.nextInt(3) < 2) {
+                    expected.add(el);
+                    set = set.plus(el);
+                }
+                else {
+                    expected.remove(el);
+                    set = set.minus(el);
+                }
+
+                if (i % 1000 == 0) {
+                    assertEquals(expected.size(), set.size());
+                    assertEquals(AVector.from(expected), set.toVector());
+                    assertEquals(AVector.from(expected.descendingSet()), set.descendingIterator().toVector());
+
+                    for (int j=0; j<20; j++) {
+                        final int e = rand.nextInt(4100) - 50;
+                        assertEquals(expected.contains(e), set.contains(e));
+                        assertEquals(expected.lower(e), set.lower(e));
+                        assertEquals(expected.floor(e), set.floor(e));
+                        assertEquals(expected.ceiling(e), set.ceiling(e));
+                        assertEquals(expected.higher(e), set.higher(e));
+
+                        final boolean inclusive = rand.nextBoolean();
+                        assertEquals(AVector.from(expected.headSet(e, inclusive)), set.headSet(e, inclusive).toVector());
+                        assertEquals(AVector.from(expected.tailSet(e, inclusive)), set.iterator(AOption.some(e), inclusive, AOption.none(), false).toVector());
+                        assertEquals(expected.tailSet(e, inclusive).size(), set.countInRange(AOption.some(e), inclusive, AOption.none(), false));
+
+                        final int n = rand.nextInt(expected.size() + 10);
+                        assertEquals(AVector.from(expected).drop(n), set.drop(n).toVector());
+                        assertEquals(AVector.from(expected).take(n), set.take(n).toVector());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 3, 31, 1000, 100_000}) {
+            final ABTreeSet<Integer> set = ABTreeSet.from(ARange.create(0, size), Comparator.<Integer>reverseOrder());
+            final Spliterator<Integer> spliterator = set.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT));
+            assertEquals(set.comparator(), spliterator.getComparator());
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(set.toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(set.toVector(), set.parallelStream().collect(AVector.streamCollector()));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ADoubleVectorTest {
+    @Test void testStaticFactories() {
+        assertTrue(ADoubleVector.empty().isEmpty());
+        assertTrue(ADoubleVector.of().isEmpty());
+        assertEquals(AList.of(1.0, 2.5, 3.0), ADoubleVector.of(1.0, 2.5, 3.0));
+        assertEquals(ADoubleVector.of(1.0, 2.5, 3.0), ADoubleVector.from(Arrays.asList(1.0, 2.5, 3.0)));
+        assertEquals(ADoubleVector.of(1.0, 2.5, 3.0), ADoubleVector.fromIterator(Arrays.asList(1.0, 2.5, 3.0).iterator()));
+        assertEquals(ADoubleVector.of(1.0, 2.5, 3.0), ADoubleVector.from(DoubleStream.of(1.0, 2.5, 3.0)));
+        assertEquals(100_000, ADoubleVector.from(IntStream.range(0, 100_000).parallel().asDoubleStream()).size());
+    }
+
+    @Test void testSerDeser() {
+        assertSame(ADoubleVector.empty(), TestHelpers.serDeser(ADoubleVector.empty()));
+        assertEquals(ADoubleVector.of(1.5, Double.NaN, Double.NEGATIVE_INFINITY), TestHelpers.serDeser(ADoubleVector.of(1.5, Double.NaN, Double.NEGATIVE_INFINITY)));
+        assertEquals(ADoubleVector.class, TestHelpers.serDeser(ADoubleVector.of(1.0)).getClass());
+    }
+
+    @Test void testPrimitiveAccess() {
+        ADoubleVector v = ADoubleVector.empty();
+        final List<Double> expected = new ArrayList<>();
+        for (int i=0; i<2000; i++) {
+            v = v.appendDouble(i + .5);
+            expected.add(i + .5);
+            v = v.prependDouble(-i);
+            expected.add(0, (double) -i);
+        }
+        for (int i=0; i<expected.size(); i+=5) {
+            v = v.updatedDouble(i, i * .25);
+            expected.set(i, i * .25);
+        }
+        assertEquals(expected, v);
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i).doubleValue(), v.getDouble(i));
+        }
+        assertEquals(expected.subList(100, 3000), v.slice(100, 3000));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> ADoubleVector.of(1.0).getDouble(1));
+    }
+
+    @Test void testAggregatesAndStreams() {
+        final ADoubleVector v = ADoubleVector.from(IntStream.range(0, 1000).asDoubleStream()).drop(10);
+
+        assertEquals(IntStream.range(10, 1000).sum(), v.sum());
+        assertEquals(IntStream.range(10, 1000).sum(), v.doubleStream().sum());
+        assertEquals(10.0, v.min().doubleValue());
+        assertEquals(999.0, v.max().doubleValue());
+        assertThrows(NoSuchElementException.class, () -> ADoubleVector.empty().max());
+
+        // consistent with the natural ordering of Double
+        assertEquals(ADoubleVector.of(1.0, Double.NaN, -1.0).toVector().min(), ADoubleVector.of(1.0, Double.NaN, -1.0).min());
+        assertEquals(ADoubleVector.of(1.0, Double.NaN, -1.0).toVector().max(), ADoubleVector.of(1.0, Double.NaN, -1.0).max());
+        assertEquals(Double.NaN, ADoubleVector.of(Double.NaN, Double.NaN).min().doubleValue());
+        assertEquals(-0.0, ADoubleVector.of(0.0, -0.0).min().doubleValue());
+
+        double expected = 10;
+        for (PrimitiveIterator.OfDouble it = v.doubleIterator(); it.hasNext(); ) assertEquals(expected++, it.nextDouble());
+        assertEquals(1000.0, expected);
+
+        assertArrayEquals(IntStream.range(10, 1000).asDoubleStream().toArray(), v.toDoubleArray());
+        assertArrayEquals(IntStream.range(10, 1000).filter(i -> i%3 == 0).asDoubleStream().toArray(), v.filterDouble(d -> d%3 == 0).toDoubleArray());
+    }
+}
@@ -1,9 +1,12 @@
 package com.ajjpj.acollections.immutable;
 
 import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.AMapChange;
 import com.ajjpj.acollections.AMapTests;
 import com.ajjpj.acollections.TestHelpers;
 import com.ajjpj.acollections.mutable.AMutableMapWrapper;
+import com.ajjpj.acollections.util.AEquivalence;
+import com.ajjpj.acollections.util.AOption;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
@@ -18,6 +21,14 @@ public class AHashMapTest implements AMapTests {
         assertEquals(AHashMap.empty().plus(1,2).plus(3,4).plus(5,6), TestHelpers.serDeser(AHashMap.empty().plus(1,2).plus(3,4).plus(5,6)));
     }
 
+    @Test void testDeserializeEarlierFormat() {
+        // AHashMap.of(1, "a", 2, "b"), serialized before AHashMap supported equivalences
+        final AHashMap<Integer,String> map = TestHelpers.deserialize(
+                "rO0ABXNyADxjb20uYWpqcGouYWNvbGxlY3Rpb25zLmltbXV0YWJsZS5BSGFzaE1hcCRTZXJpYWxpemF0aW9uUHJveHkAAAAAAAAAAgMAAHhwdwQAAAACc3IAEWphdmEubGFuZy5JbnRlZ2VyEuKgpPeBhzgCAAFJAAV2YWx1ZXhyABBqYXZhLmxhbmcuTnVtYmVyhqyVHQuU4IsCAAB4cAAAAAF0AAFhc3EAfgACAAAAAnQAAWJ4");
+        assertEquals(AHashMap.of(1, "a", 2, "b"), map);
+        assertSame(AEquivalence.equality(), map.equivalence());
+    }
+
     @Override public Iterable<Variant> variants () {
         return Collections.singletonList(
                 new Variant(AHashMap.class, false, AHashMap::builder, null)
@@ -131,6 +142,31 @@ public class AHashMapTest implements AMapTests {
         assertEquals(juMap, juMap2);
     }
 
+    @Test void testBuilderSealsResult() {
+        final AHashMap.Builder<Integer,Integer> builder = AHashMap.builder();
+        final Map<Integer,Integer> juMap = new HashMap<>();
+        for (int i=0; i<10_000; i++) {
+            builder.add(i, i);
+            juMap.put(i, i);
+        }
+        final AHashMap<Integer,Integer> first = builder.build();
+
+        for (int i=5_000; i<20_000; i++) {
+            builder.add(i, -i);
+        }
+        final AHashMap<Integer,Integer> second = builder.build();
+        builder.add(-1, -1);
+
+        assertEquals(juMap, first);
+        assertEquals(10_000, first.size());
+        assertEquals(20_000, second.size());
+        for (int i=0; i<20_000; i++) {
+            assertEquals(i < 5_000 ? i : -i, second.get(i).intValue());
+        }
+        assertFalse(second.containsKey(-1));
+        assertEquals(first.plus(-1, -1), first.plus(-1, -1).plus(-1, -1));
+    }
+
     @Test void testCollision() {
         AHashMap<IntWithCollision, Integer> aMap = AHashMap.empty();
         for (int i=0; i<10; i++) {
@@ -156,6 +192,127 @@ public class AHashMapTest implements AMapTests {
         }
     }
 
+    @Test void testCollisionRemove() {
+        AHashMap<IntWithCollision, Integer> aMap = AHashMap.empty();
+        for (int i=0; i<10; i++) {
+            aMap = aMap.plus(new IntWithCollision(i), i);
+        }
+        aMap = aMap.plus(new IntWithCollision(99) { @Override public int hashCode () { return 2; } }, 99);
+        assertEquals(11, aMap.size());
+
+        // removing an absent key with a colliding hash code leaves the map's size unchanged
+        assertEquals(11, aMap.minus(new IntWithCollision(50)).size());
+
+        for (int i=0; i<10; i++) {
+            aMap = aMap.minus(new IntWithCollision(i));
+            assertEquals(10-i, aMap.size());
+            assertNull(aMap.get(new IntWithCollision(i)));
+            for (int j=i+1; j<10; j++) {
+                assertEquals(j, aMap.get(new IntWithCollision(j)).intValue());
+            }
+            assertEquals(10-i, aMap.toVector().size());
+        }
+        assertEquals(1, aMap.size());
+        assertEquals(99, aMap.values().head().intValue());
+    }
+
+    @Test void testIncrementalHashCodeAndEquals() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<100; round++) {
+            final int range = 1 + rand.nextInt(round < 50 ? 50 : 1_000);
+            final Map<Object,Integer> ju = new HashMap<>();
+            AHashMap<Object,Integer> a = AHashMap.empty();
+            final AHashMap.Builder<Object,Integer> builder = AHashMap.builder();
+            for (int i=0; i<range; i++) {
+                final int n = rand.nextInt(range);
+                final Object key = rand.nextInt(4) == 0 ? new IntWithCollision(n) : rand.nextBoolean() ? new AHashSetTest.LowQualityHash(n) : n;
+                final Integer value = rand.nextInt(5) == 0 ? null : rand.nextInt(3);
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(key);
+                    a = a.minus(key);
+                }
+                else {
+                    ju.put(key, value);
+                    a = a.plus(key, value);
+                    builder.add(key, value);
+                }
+            }
+            final AHashMap<Object,Integer> built = builder.build().retainKeys(ju.keySet());
+
+            assertEquals(ju.hashCode(), a.hashCode());
+            assertEquals(ju.hashCode(), built.hashCode());
+            assertEquals(a, built);
+            assertEquals(built, a);
+            assertEquals(ju, a);
+
+            for (Map.Entry<Object,Integer> e: ju.entrySet()) {
+                final AHashMap<Object,Integer> modified = a.plus(e.getKey(), e.getValue() == null ? 99 : null);
+                assertEquals(ju.hashCode() - e.hashCode() + new AbstractMap.SimpleImmutableEntry<>(e.getKey(), modified.get(e.getKey())).hashCode(), modified.hashCode());
+                assertNotEquals(a, modified);
+                assertNotEquals(modified, a);
+                assertEquals(a, modified.plus(e.getKey(), e.getValue()));
+            }
+        }
+    }
+
+    @Test void testStructuralBulkOperations() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<200; round++) {
+            final int range = 1 + rand.nextInt(round < 100 ? 50 : 5_000);
+            final Map<Object,Integer> juA = new HashMap<>();
+            final Map<Object,Integer> juB = new HashMap<>();
+            AHashMap<Object,Integer> a = AHashMap.empty();
+            AHashMap<Object,Integer> b = AHashMap.empty();
+            for (int i=0; i<range; i++) {
+                // a mix of regular keys and keys with partial and full hash collisions
+                final int n = rand.nextInt(range);
+                final Object key = rand.nextInt(4) == 0 ? new IntWithCollision(n) : rand.nextBoolean() ? new AHashSetTest.LowQualityHash(n) : n;
+                if (rand.nextBoolean()) { juA.put(key, i); a = a.plus(key, i); }
+                if (rand.nextBoolean()) { juB.put(key, -i); b = b.plus(key, -i); }
+            }
+
+            final Map<Object,Integer> plusAll = new HashMap<>(juA);
+            plusAll.putAll(juB);
+            final Map<Object,Integer> merged = new HashMap<>(juA);
+            juB.forEach((k, v) -> merged.merge(k, v, Integer::sum));
+            final Map<Object,Integer> minusAll = new HashMap<>(juA);
+            minusAll.keySet().removeAll(juB.keySet());
+            final Map<Object,Integer> retained = new HashMap<>(juA);
+            retained.keySet().retainAll(juB.keySet());
+
+            final AHashMap<Object,Integer> aPlusAll = a.plusAll(b);
+            final AHashMap<Object,Integer> aMerged = a.plusAll(b, Integer::sum);
+            final AHashMap<Object,Integer> aMinusAll = a.minusAll(b.keySet());
+            final AHashMap<Object,Integer> aRetained = a.retainKeys(b.keySet());
+
+            assertEquals(plusAll, aPlusAll);
+            assertEquals(plusAll.size(), aPlusAll.toVector().size());
+            assertEquals(merged, aMerged);
+            assertEquals(merged.size(), aMerged.toVector().size());
+            assertEquals(minusAll, aMinusAll);
+            assertEquals(minusAll.size(), aMinusAll.toVector().size());
+            assertEquals(retained, aRetained);
+            assertEquals(retained.size(), aRetained.toVector().size());
+
+            // results must be valid tries that support further modification
+            for (Object key: juA.keySet()) {
+                assertEquals(plusAll.size() - 1, aPlusAll.minus(key).size());
+                assertEquals(minusAll.size() + (minusAll.containsKey(key) ? 0 : 1), aMinusAll.plus(key, 0).size());
+            }
+        }
+    }
+
+    @Test void testStructuralBulkOperationsSharing() {
+        final AHashMap<Integer,Integer> a = AHashMap.<Integer,Integer>builder().addAll(ARange.create(0, 1000).map(i -> new AbstractMap.SimpleImmutableEntry<>(i, i))).build();
+
+        assertSame(a, a.plusAll(a));
+        assertSame(a, a.plusAll(AHashMap.empty()));
+        assertSame(a, a.minusAll(AHashMap.<Integer,Integer>empty().keySet()));
+        assertSame(a, a.retainKeys(a.keySet()));
+        assertSame(a, a.plusAll(a, (x, y) -> x));
+        assertTrue(a.minusAll(a.keySet()).isEmpty());
+    }
+
     static class IntWithCollision {
         final int i;
 
@@ -175,4 +332,384 @@ public class AHashMapTest implements AMapTests {
             return String.valueOf(i);
         }
     }
+
+    @Test void testUpdatedWithReturnsSameInstance() {
+        final AHashMap<Integer,Integer> map = AHashMap.<Integer,Integer>empty().plus(1, 1000).plus(2, null).plus(3, 3);
+        assertSame(map, map.updatedWith(1, o -> o));
+        assertSame(map, map.updatedWith(1, o -> AOption.some(o.get())));
+        assertSame(map, map.updatedWith(2, o -> AOption.some(null)));
+        assertSame(map, map.updatedWith(4, o -> AOption.none()));
+        assertSame(map, map.computedIfAbsent(3, k -> 0));
+        assertNotSame(map, map.updatedWith(1, o -> AOption.some(1001)));
+    }
+
+    @Test void testUpdatedWithCollision() {
+        AHashMap<AHashSetTest.IntWithCollision,Integer> map = AHashMap.empty();
+        for (int i=0; i<10; i++) map = map.plus(new AHashSetTest.IntWithCollision(i), i);
+
+        assertSame(map, map.updatedWith(new AHashSetTest.IntWithCollision(3), o -> o));
+        assertSame(map, map.updatedWith(new AHashSetTest.IntWithCollision(11), o -> AOption.none()));
+        assertEquals(13, map.merged(new AHashSetTest.IntWithCollision(3), 10, Integer::sum).get(new AHashSetTest.IntWithCollision(3)).intValue());
+        assertEquals(11, map.merged(new AHashSetTest.IntWithCollision(11), 10, Integer::sum).size());
+
+        AHashMap<AHashSetTest.IntWithCollision,Integer> removed = map;
+        for (int i=0; i<10; i++) removed = removed.updatedWith(new AHashSetTest.IntWithCollision(i), o -> AOption.none());
+        assertTrue(removed.isEmpty());
+    }
+
+    @Test void testUpdatedWithRandom() {
+        final Random rand = new Random(12345);
+        final Map<Integer,Integer> juMap = new HashMap<>();
+        AHashMap<Integer,Integer> aMap = AHashMap.empty();
+
+        for (int i=0; i<100_000; i++) {
+            final int key = rand.nextInt(2_000);
+            final int op = rand.nextInt(3);
+            aMap = aMap.updatedWith(key, o -> op == 0 ? AOption.none() : AOption.some(o.orElse(0) + op));
+            if (op == 0) juMap.remove(key);
+            else juMap.merge(key, op, Integer::sum);
+        }
+        assertEquals(juMap, aMap);
+        assertEquals(juMap.size(), aMap.size());
+        assertEquals(juMap.hashCode(), aMap.hashCode());
+    }
+
+    @Test void testDiffOfVersions() {
+        final Random rand = new Random(12345);
+        AHashMap<Integer,Integer> original = AHashMap.empty();
+        for (int i=0; i<100_000; i++) original = original.plus(i, i);
+
+        for (int numChanges: new int[] {0, 1, 10, 1000}) {
+            AHashMap<Integer,Integer> modified = original;
+            final Map<Integer,AMapChange<Integer,Integer>> expected = new HashMap<>();
+            for (int i=0; i<numChanges; i++) {
+                final int key = rand.nextInt(110_000);
+                final boolean wasContained = key < 100_000;
+                switch (rand.nextInt(3)) {
+                    case 0:
+                        modified = modified.minus(key);
+                        if (wasContained) expected.put(key, AMapChange.removed(key, key));
+                        else expected.remove(key);
+                        break;
+                    case 1:
+                        // replacing a value with an equal one is no change
+                        modified = modified.plus(key, key);
+                        if (wasContained) expected.remove(key);
+                        else expected.put(key, AMapChange.added(key, key));
+                        break;
+                    default:
+                        modified = modified.plus(key, -key-1);
+                        expected.put(key, wasContained ? AMapChange.changed(key, key, -key-1) : AMapChange.added(key, -key-1));
+                }
+            }
+
+            assertEquals(new HashSet<>(expected.values()), original.diff(modified).toSet());
+            assertEquals(expected.size(), original.diff(modified).toVector().size());
+            assertEquals(original.diff(modified).toSet(), AMutableMapWrapper.wrap(new HashMap<>(original)).diff(modified).toSet());
+        }
+    }
+
+    @Test void testDiffWithCollisions() {
+        AHashMap<AHashSetTest.IntWithCollision,Integer> map = AHashMap.empty();
+        for (int i=0; i<10; i++) map = map.plus(new AHashSetTest.IntWithCollision(i), i);
+        final AHashMap<AHashSetTest.IntWithCollision,Integer> modified = map
+                .plus(new AHashSetTest.IntWithCollision(3), 33)
+                .minus(new AHashSetTest.IntWithCollision(4))
+                .plus(new AHashSetTest.IntWithCollision(20), 20);
+
+        assertEquals(AHashSet.of(
+                AMapChange.changed(new AHashSetTest.IntWithCollision(3), 3, 33),
+                AMapChange.removed(new AHashSetTest.IntWithCollision(4), 4),
+                AMapChange.added(new AHashSetTest.IntWithCollision(20), 20)), map.diff(modified).toSet());
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 31, 32, 33, 1000, 100_000}) {
+            AHashMap<Integer,Integer> map = AHashMap.empty();
+            for (int i=0; i<size; i++) map = map.plus(i, 2*i);
+
+            final Spliterator<Map.Entry<Integer,Integer>> spliterator = map.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT | Spliterator.IMMUTABLE));
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(map.iterator().toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(map.keysIterator().toVector(), TestHelpers.splitFully(map.keySet().spliterator()));
+            assertEquals(map.valuesIterator().toVector(), TestHelpers.splitFully(map.values().spliterator()));
+            assertEquals(size, map.values().spliterator().getExactSizeIfKnown());
+
+            assertEquals((long) size * (size-1), map.values().parallelStream().mapToLong(i -> i).sum());
+        }
+    }
+
+    @Test void testFromParallel() {
+        for (int size: new int[] {0, 1, 100, CompactHashMap.PARALLEL_THRESHOLD, 100_000}) {
+            final List<Map.Entry<Integer,Integer>> entries = new ArrayList<>();
+            for (int i=0; i<size; i++) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(i, i));
+                if (i%5 == 0) entries.add(new AbstractMap.SimpleImmutableEntry<>(i/2, -i)); // the last entry for a key wins
+            }
+            final AHashMap<Integer,Integer> expected = AHashMap.from(entries);
+            final AHashMap<Integer,Integer> map = AHashMap.fromParallel(entries);
+            assertEquals(expected, map);
+            assertEquals(expected.hashCode(), map.hashCode());
+            assertEquals(expected.iterator().toVector(), map.iterator().toVector()); // canonical trie layout
+            assertEquals(expected, entries.parallelStream().collect(AHashMap.streamCollector()));
+            assertEquals(expected, entries.stream().collect(AHashMap.streamCollector()));
+        }
+    }
+
+    @Test void testCollisionWithComparableKeys() {
+        final int n = 2000;
+        final Map<Object,Integer> expected = new HashMap<>();
+        AHashMap<Object,Integer> aMap = AHashMap.empty();
+        for (int i=0; i<n; i++) {
+            aMap = aMap.plus(new ComparableWithCollision(i), 2*i);
+            expected.put(new ComparableWithCollision(i), 2*i);
+        }
+        for (int i=0; i<n; i+=2) {
+            aMap = aMap.plus(new ComparableWithCollision(i), i);
+            expected.put(new ComparableWithCollision(i), i);
+        }
+        assertEquals(expected, aMap);
+        assertEquals(expected.hashCode(), aMap.hashCode());
+        for (int i=0; i<n; i++) {
+            assertEquals(expected.get(new ComparableWithCollision(i)), aMap.get(new ComparableWithCollision(i)));
+        }
+        assertFalse(aMap.containsKey(new ComparableWithCollision(n)));
+        assertFalse(aMap.containsKey(new AHashSetTest.IntWithCollision(1)));
+
+        // a key that is not comparable with the others switches the collision node back to a list
+        final AHashMap<Object,Integer> mixed = aMap.plus(new AHashSetTest.IntWithCollision(1), -1);
+        assertEquals(n+1, mixed.size());
+        assertEquals(-1, mixed.get(new AHashSetTest.IntWithCollision(1)).intValue());
+        assertEquals(expected, mixed.minus(new AHashSetTest.IntWithCollision(1)));
+
+        for (int i=0; i<n; i++) {
+            aMap = aMap.minus(new ComparableWithCollision(i));
+            expected.remove(new ComparableWithCollision(i));
+            if (i%100 == 0 || n-i < 10) {
+                assertEquals(expected, aMap);
+                assertEquals(expected.hashCode(), aMap.hashCode());
+                assertEquals(expected.size(), aMap.size());
+            }
+        }
+        assertTrue(aMap.isEmpty());
+    }
+
+    @Test void testCollisionWithInconsistentCompareTo() {
+        // compareTo treats keys 2k and 2k+1 as equal, but they are different keys
+        AHashMap<ComparableWithCollision,Integer> aMap = AHashMap.empty();
+        for (int i=0; i<100; i++) {
+            aMap = aMap.plus(new InconsistentComparable(i), i);
+        }
+        assertEquals(100, aMap.size());
+        for (int i=0; i<100; i++) {
+            assertEquals(i, aMap.get(new InconsistentComparable(i)).intValue());
+        }
+        for (int i=0; i<100; i+=2) {
+            aMap = aMap.minus(new InconsistentComparable(i));
+        }
+        assertEquals(50, aMap.size());
+        for (int i=1; i<100; i+=2) {
+            assertEquals(i, aMap.get(new InconsistentComparable(i)).intValue());
+        }
+    }
+
+    @Test void testIdentityKeys() {
+        final String a1 = new String("a");
+        final String a2 = new String("a");
+
+        AHashMap<String,Integer> map = AIdentityHashMap.<String,Integer>empty().plus(a1, 1).plus(a2, 2);
+        assertEquals(2, map.size());
+        assertEquals(1, map.get(a1).intValue());
+        assertEquals(2, map.get(a2).intValue());
+        assertFalse(map.containsKey("a"));
+        assertSame(AEquivalence.identity(), map.equivalence());
+
+        map = map.minus(new String("a"));
+        assertEquals(2, map.size());
+        map = map.minus(a1);
+        assertEquals(AHashMap.of(a2, 2), map);
+        assertTrue(map.containsKey(a2));
+        assertFalse(map.containsKey(a1));
+
+        final Map<String,Integer> m = new IdentityHashMap<>();
+        m.put(a1, 1);
+        m.put(a2, 2);
+        assertEquals(2, AIdentityHashMap.fromMap(m).size());
+        assertEquals(2, AIdentityHashMap.from(m.entrySet()).size());
+        assertEquals(1, AHashMap.fromMap(m).size());
+    }
+
+    @Test void testCaseInsensitiveKeys() {
+        AHashMap<String,Integer> map = AHashMap.<String,Integer>empty(AEquivalence.caseInsensitive()).plus("abc", 1).plus("ABC", 2).plus("xyz", 3);
+        assertEquals(2, map.size());
+        assertEquals(2, map.get("aBc").intValue());
+        assertTrue(map.containsKey("XYZ"));
+        assertEquals(AHashSet.of("abc", "xyz"), map.keySet().map(String::toLowerCase));
+
+        // derived maps keep the equivalence
+        assertSame(AEquivalence.caseInsensitive(), map.plus("def", 4).equivalence());
+        assertTrue(map.filter(e -> e.getValue() > 2).containsKey("XyZ"));
+        assertTrue(map.filterKeys(k -> k.startsWith("x")).containsKey("XyZ"));
+        assertTrue(map.mapValues(v -> v+1).containsKey("XyZ"));
+        assertEquals(30, map.updatedWith("XYZ", o -> o.map(v -> 10*v)).get("xyz").intValue());
+        assertTrue(map.minus("ABC").minus("Xyz").isEmpty());
+
+        final AHashMap<String,Integer> deser = TestHelpers.serDeser(map);
+        assertEquals(map, deser);
+        assertSame(AEquivalence.caseInsensitive(), deser.equivalence());
+        assertEquals(3, deser.get("XYZ").intValue());
+    }
+
+    @Test void testEquivalenceWithCollisions() {
+        // 'Aa' and 'BB' have the same hash code, both with and without ignoring case
+        AHashMap<String,Integer> map = AHashMap.empty(AEquivalence.caseInsensitive());
+        map = map.plus("Aa", 1).plus("BB", 2).plus("aa", 3).plus("bb", 4);
+        assertEquals(2, map.size());
+        assertEquals(3, map.get("AA").intValue());
+        assertEquals(4, map.get("Bb").intValue());
+        map = map.minus("AA");
+        assertEquals(1, map.size());
+        assertEquals(4, map.get("bB").intValue());
+    }
+
+    @Test void testCombiningDifferentEquivalences() {
+        final AHashMap<String,Integer> caseInsensitive = AHashMap.<String,Integer>empty(AEquivalence.caseInsensitive()).plus("a", 1).plus("B", 2);
+        final AHashMap<String,Integer> regular = AHashMap.of("A", 3, "b", 4, "c", 5);
+
+        // bulk operations must not combine tries node by node if the maps compare keys differently
+        final AHashMap<String,Integer> merged = caseInsensitive.plusAll(regular);
+        assertEquals(3, merged.size());
+        assertEquals(3, merged.get("a").intValue());
+        assertEquals(4, merged.get("B").intValue());
+        assertSame(AEquivalence.caseInsensitive(), merged.equivalence());
+
+        final AHashMap<String,Integer> mergedRegular = regular.plusAll(caseInsensitive);
+        assertEquals(5, mergedRegular.size());
+
+        assertEquals(AHashMap.of("c", 5), caseInsensitive.plusAll(regular).minusAll(caseInsensitive.keySet()));
+
+        // retainKeys and minusAll both match keys using the receiver's equivalence
+        final AHashMap<String,Integer> mixedCase = AHashMap.<String,Integer>empty(AEquivalence.caseInsensitive()).plus("A", 1).plus("b", 2);
+        final AHashMap<String,Integer> otherCase = AHashMap.of("a", 3, "B", 4);
+        assertEquals(mixedCase, mixedCase.retainKeys(otherCase.keySet()));
+        assertTrue(mixedCase.minusAll(otherCase.keySet()).isEmpty());
+        assertTrue(otherCase.retainKeys(mixedCase.keySet()).isEmpty());
+        assertEquals(otherCase, otherCase.minusAll(mixedCase.keySet()));
+        assertEquals(mixedCase, mixedCase.retainKeys(new HashSet<>(otherCase.keySet())));
+        assertTrue(mixedCase.minusAll(new HashSet<>(otherCase.keySet())).isEmpty());
+        assertEquals(caseInsensitive, AHashMap.of("a", 1, "B", 2));
+    }
+
+    @Test void testPrehashedKey() {
+        AHashMap<CountingKey,Integer> map = AHashMap.empty();
+        for (int i=0; i<1000; i++) map = map.plus(new CountingKey(i), i);
+        final AHashMap<CountingKey,Integer> other = map.minus(new CountingKey(500)).plus(new CountingKey(1000), 1000);
+
+        final PrehashedKey<CountingKey> key = PrehashedKey.of(new CountingKey(123));
+        final PrehashedKey<CountingKey> missing = PrehashedKey.of(new CountingKey(500));
+        final PrehashedKey<CountingKey> added = PrehashedKey.of(new CountingKey(1000));
+        CountingKey.numHashCodeCalls = 0;
+
+        for (AHashMap<CountingKey,Integer> m: Arrays.asList(map, other)) {
+            assertEquals(123, m.getPrehashed(key).intValue());
+            assertTrue(m.containsKeyPrehashed(key));
+            assertEquals(AOption.some(123), m.getOptionalPrehashed(key));
+        }
+        assertEquals(500, map.getPrehashed(missing).intValue());
+        assertNull(other.getPrehashed(missing));
+        assertFalse(other.containsKeyPrehashed(missing));
+        assertEquals(AOption.none(), other.getOptionalPrehashed(missing));
+        assertFalse(map.containsKeyPrehashed(added));
+        assertTrue(other.containsKeyPrehashed(added));
+
+        final AHashMap<CountingKey,Integer> withMissing = other.plusPrehashed(missing, 500);
+        assertEquals(500, withMissing.getPrehashed(missing).intValue());
+        assertEquals(0, CountingKey.numHashCodeCalls);
+
+        // replacing an entry updates the map's hash code, which requires the replaced key's hash code
+        final AHashMap<CountingKey,Integer> updated = withMissing.plusPrehashed(key, -1);
+        assertEquals(-1, updated.getPrehashed(key).intValue());
+        assertEquals(1, CountingKey.numHashCodeCalls);
+
+        assertEquals(map.plus(new CountingKey(1000), 1000).plus(new CountingKey(123), -1), updated);
+        assertEquals(-1, updated.get(new CountingKey(123)).intValue());
+
+        // the key is not confused with the handle
+        assertFalse(map.containsKey(key));
+        assertNull(map.get(key));
+    }
+
+    @Test void testPrehashedKeyWithEquivalence() {
+        final AHashMap<String,Integer> caseInsensitive = AHashMap.<String,Integer>empty(AEquivalence.caseInsensitive()).plus("abc", 1);
+        final AHashMap<String,Integer> regular = AHashMap.of("abc", 1);
+
+        final PrehashedKey<String> key = PrehashedKey.of("ABC", AEquivalence.caseInsensitive());
+        assertEquals(1, caseInsensitive.getPrehashed(key).intValue());
+        assertEquals(2, caseInsensitive.plusPrehashed(key, 2).get("abc").intValue());
+        assertEquals(1, caseInsensitive.plusPrehashed(key, 2).size());
+
+        // a handle for a different equivalence is looked up the regular way
+        assertFalse(regular.containsKeyPrehashed(key));
+        assertEquals(1, regular.getPrehashed(PrehashedKey.of("abc", AEquivalence.caseInsensitive())).intValue());
+        assertEquals(1, caseInsensitive.getPrehashed(PrehashedKey.of("abc")).intValue());
+        assertTrue(caseInsensitive.containsKeyPrehashed(PrehashedKey.of("ABC", AEquivalence.identity())));
+    }
+
+    static class CountingKey {
+        static int numHashCodeCalls;
+
+        final int i;
+
+        CountingKey (int i) {
+            this.i = i;
+        }
+
+        @Override public boolean equals (Object obj) {
+            return obj instanceof CountingKey && ((CountingKey) obj).i == i;
+        }
+
+        @Override public int hashCode () {
+            numHashCodeCalls += 1;
+            return i;
+        }
+
+        @Override public String toString () {
+            return "CountingKey{" + i + "}";
+        }
+    }
+
+    static class ComparableWithCollision implements Comparable<ComparableWithCollision> {
+        final int i;
+
+        ComparableWithCollision (int i) {
+            this.i = i;
+        }
+
+        @Override public int compareTo (ComparableWithCollision o) {
+            return Integer.compare(i, o.i);
+        }
+
+        @Override public boolean equals (Object obj) {
+            return obj != null && obj.getClass() == getClass() && ((ComparableWithCollision) obj).i == i;
+        }
+
+        @Override public int hashCode () {
+            return 1;
+        }
+
+        @Override public String toString () {
+            return String.valueOf(i);
+        }
+    }
+
+    static class InconsistentComparable extends ComparableWithCollision {
+        InconsistentComparable (int i) {
+            super(i);
+        }
+
+        @Override public int compareTo (ComparableWithCollision o) {
+            return Integer.compare(i/2, o.i/2);
+        }
+    }
 }
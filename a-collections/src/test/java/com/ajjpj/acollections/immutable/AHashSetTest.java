@@ -3,6 +3,7 @@ package com.ajjpj.acollections.immutable;
 import com.ajjpj.acollections.ASet;
 import com.ajjpj.acollections.ASetTests;
 import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.util.AEquivalence;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
@@ -62,6 +63,14 @@ public class AHashSetTest implements ASetTests {
         assertEquals(AHashSet.of(1, 2, 3).getClass(), TestHelpers.serDeser(AHashSet.of(1, 2, 3)).getClass());
     }
 
+    @Test void testDeserializeEarlierFormat() {
+        // AHashSet.of(1, 2, 3), serialized before AHashSet supported equivalences
+        final AHashSet<Integer> set = TestHelpers.deserialize(
+                "rO0ABXNyADxjb20uYWpqcGouYWNvbGxlY3Rpb25zLmltbXV0YWJsZS5BSGFzaFNldCRTZXJpYWxpemF0aW9uUHJveHkAAAAAAAAAewMAAHhwdwQAAAADc3IAEWphdmEubGFuZy5JbnRlZ2VyEuKgpPeBhzgCAAFJAAV2YWx1ZXhyABBqYXZhLmxhbmcuTnVtYmVyhqyVHQuU4IsCAAB4cAAAAAFzcQB+AAIAAAACc3EAfgACAAAAA3g=");
+        assertEquals(AHashSet.of(1, 2, 3), set);
+        assertSame(AEquivalence.equality(), set.equivalence());
+    }
+
     private Set<Integer> createJu() {
         final Random rand = new Random(12345);
         final Set<Integer> result = new HashSet<>();
@@ -112,6 +121,24 @@ public class AHashSetTest implements ASetTests {
         assertEquals(juSet, juSet2);
     }
 
+    @Test void testBuilderSealsResult() {
+        final AHashSet.Builder<Integer> builder = AHashSet.builder();
+        for (int i=0; i<10_000; i++) {
+            builder.add(i);
+        }
+        final AHashSet<Integer> first = builder.build();
+
+        for (int i=5_000; i<20_000; i++) {
+            builder.add(i);
+        }
+        final AHashSet<Integer> second = builder.build();
+        builder.add(-1);
+
+        assertEquals(ARange.create(0, 10_000).toSet(), first);
+        assertEquals(ARange.create(0, 20_000).toSet(), second);
+        assertFalse(second.contains(-1));
+    }
+
     @Test public void testCollision() {
         AHashSet<IntWithCollision> aMap = AHashSet.empty();
         for (int i=0; i<10; i++) {
@@ -141,6 +168,116 @@ public class AHashSetTest implements ASetTests {
         }
     }
 
+    @Test void testStructuralSetAlgebra() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<200; round++) {
+            final int range = 1 + rand.nextInt(round < 100 ? 50 : 5_000);
+            final Set<Object> juA = new HashSet<>();
+            final Set<Object> juB = new HashSet<>();
+            AHashSet<Object> a = AHashSet.empty();
+            AHashSet<Object> b = AHashSet.empty();
+            for (int i=0; i<range; i++) {
+                // a mix of regular keys and keys with partial and full hash collisions
+                final int n = rand.nextInt(range);
+                final Object o = rand.nextInt(4) == 0 ? new IntWithCollision(n) : rand.nextBoolean() ? new LowQualityHash(n) : n;
+                if (rand.nextBoolean()) { juA.add(o); a = a.plus(o); }
+                if (rand.nextBoolean()) { juB.add(o); b = b.plus(o); }
+            }
+
+            final Set<Object> union = new HashSet<>(juA);
+            union.addAll(juB);
+            final Set<Object> intersection = new HashSet<>(juA);
+            intersection.retainAll(juB);
+            final Set<Object> difference = new HashSet<>(juA);
+            difference.removeAll(juB);
+
+            final AHashSet<Object> aUnion = a.union(b);
+            final AHashSet<Object> aIntersection = a.intersect(b);
+            final AHashSet<Object> aDifference = a.diff(b);
+
+            assertEquals(union, aUnion);
+            assertEquals(union.size(), aUnion.toVector().size());
+            assertEquals(intersection, aIntersection);
+            assertEquals(intersection.size(), aIntersection.toVector().size());
+            assertEquals(difference, aDifference);
+            assertEquals(difference.size(), aDifference.toVector().size());
+
+            // results must be valid tries that support further modification
+            for (Object o: juA) {
+                assertEquals(union.size() - 1, aUnion.minus(o).size());
+                assertEquals(difference.size() + (difference.contains(o) ? 0 : 1), aDifference.plus(o).size());
+            }
+        }
+    }
+
+    @Test void testStructuralSetAlgebraSharing() {
+        final AHashSet<Integer> s = ARange.create(0, 10_000).toSet();
+        final AHashSet<Integer> s2 = s.plus(-1);
+
+        assertSame(s, s.union(s));
+        assertSame(s, s.union(AHashSet.empty()));
+        assertSame(s2, s.union(s2));
+        assertSame(s, s.intersect(s2));
+        assertSame(s, s.diff(AHashSet.of(-1, -2)));
+        assertEquals(AHashSet.of(-1), s2.diff(s));
+        assertTrue(s.diff(s2).isEmpty());
+    }
+
+    @Test void testIncrementalHashCodeAndEquals() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<100; round++) {
+            final int range = 1 + rand.nextInt(round < 50 ? 50 : 1_000);
+            final Set<Object> ju = new HashSet<>();
+            AHashSet<Object> a = AHashSet.empty();
+            final AHashSet.Builder<Object> builder = AHashSet.builder();
+            for (int i=0; i<range; i++) {
+                final int n = rand.nextInt(range);
+                final Object o = rand.nextInt(4) == 0 ? new IntWithCollision(n) : rand.nextBoolean() ? new LowQualityHash(n) : n;
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(o);
+                    a = a.minus(o);
+                }
+                else {
+                    ju.add(o);
+                    a = a.plus(o);
+                    builder.add(o);
+                }
+            }
+            final AHashSet<Object> built = builder.build().intersect(ju);
+
+            assertEquals(ju.hashCode(), a.hashCode());
+            assertEquals(ju.hashCode(), built.hashCode());
+            assertEquals(ju.hashCode(), a.union(built).hashCode());
+            assertEquals(a, built);
+            assertEquals(built, a);
+            assertEquals(ju, a);
+
+            for (Object o: ju) {
+                final AHashSet<Object> without = a.minus(o);
+                assertEquals(ju.hashCode() - o.hashCode(), without.hashCode());
+                assertNotEquals(a, without);
+                assertNotEquals(without, a);
+                assertEquals(a, without.plus(o));
+            }
+        }
+    }
+
+    static class LowQualityHash {
+        final int i;
+
+        LowQualityHash (int i) {
+            this.i = i;
+        }
+
+        @Override public boolean equals (Object obj) {
+            return obj instanceof LowQualityHash && ((LowQualityHash) obj).i == i;
+        }
+
+        @Override public int hashCode () {
+            return i / 3;
+        }
+    }
+
     static class IntWithCollision {
         final int i;
 
@@ -166,4 +303,149 @@ public class AHashSetTest implements ASetTests {
         assertEquals(AHashSet.empty(), Stream.of().collect(AHashSet.streamCollector()));
         assertEquals(ARange.create(0, 100000).toSet(), ARange.create(0, 100000).parallelStream().collect(AHashSet.streamCollector()));
     }
+
+    @Test void testSymmetricDiffOfVersions() {
+        final Random rand = new Random(12345);
+        final AHashSet<Integer> original = AHashSet.from(ARange.create(0, 100_000));
+
+        for (int numChanges: new int[] {0, 1, 10, 1000}) {
+            AHashSet<Integer> modified = original;
+            final Set<Integer> expected = new HashSet<>();
+            for (int i=0; i<numChanges; i++) {
+                final int el = rand.nextInt(110_000);
+                if (rand.nextBoolean()) {
+                    modified = modified.minus(el);
+                    if (el < 100_000) expected.add(el);
+                    else expected.remove(el);
+                }
+                else {
+                    modified = modified.plus(el);
+                    if (el < 100_000) expected.remove(el);
+                    else expected.add(el);
+                }
+            }
+
+            assertEquals(expected, original.symmetricDiff(modified).toSet());
+            assertEquals(expected.size(), original.symmetricDiff(modified).toVector().size());
+            assertEquals(expected, modified.symmetricDiff(original).toSet());
+        }
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 31, 32, 33, 1000, 100_000}) {
+            final AHashSet<Integer> set = AHashSet.from(ARange.create(0, size));
+            final Spliterator<Integer> spliterator = set.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT | Spliterator.IMMUTABLE));
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(set.toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(set.toVector(), TestHelpers.splitFully(set.toVector().spliterator()));
+
+            assertEquals((long) size * (size-1) / 2, set.parallelStream().mapToLong(i -> i).sum());
+        }
+    }
+
+    @Test void testSpliteratorWithCollisions() {
+        final AHashSet<IntWithCollision> set = AHashSet.from(ARange.create(0, 1000).map(IntWithCollision::new));
+        assertEquals(set.toVector(), TestHelpers.splitFully(set.spliterator()));
+    }
+
+    @Test void testFromParallel() {
+        for (int size: new int[] {0, 1, 100, CompactHashMap.PARALLEL_THRESHOLD, 100_000}) {
+            final List<Object> elements = new ArrayList<>();
+            for (int i=0; i<size; i++) {
+                elements.add(i%500 == 0 ? new IntWithCollision(i) : i);
+                if (i%5 == 0) elements.add(i); // duplicates
+            }
+            final AHashSet<Object> expected = AHashSet.from(elements);
+            final AHashSet<Object> set = AHashSet.fromParallel(elements);
+            assertEquals(expected, set);
+            assertEquals(expected.hashCode(), set.hashCode());
+            assertEquals(expected.toVector(), set.toVector()); // canonical trie layout
+            assertEquals(expected, elements.parallelStream().collect(AHashSet.streamCollector()));
+        }
+    }
+
+    @Test void testEquivalence() {
+        final String a1 = new String("a");
+        final String a2 = new String("a");
+
+        AHashSet<String> identitySet = AHashSet.<String>empty(AEquivalence.identity()).plus(a1).plus(a2).plus(a1);
+        assertEquals(2, identitySet.size());
+        assertTrue(identitySet.contains(a2));
+        assertFalse(identitySet.contains("a"));
+        identitySet = identitySet.minus(a1);
+        assertEquals(1, identitySet.size());
+        assertSame(a2, identitySet.head());
+
+        final AHashSet<String> caseInsensitive = AHashSet.<String>builder(AEquivalence.caseInsensitive()).addAll(Arrays.asList("a", "A", "b", "Aa", "BB", "aa")).build();
+        assertEquals(4, caseInsensitive.size());
+        assertTrue(caseInsensitive.contains("B"));
+        assertTrue(caseInsensitive.contains("AA"));
+        assertTrue(caseInsensitive.filter(s -> s.length() == 2).contains("bb"));
+        assertSame(AEquivalence.caseInsensitive(), caseInsensitive.filter(s -> true).equivalence());
+
+        final AHashSet<String> deser = TestHelpers.serDeser(caseInsensitive);
+        assertEquals(caseInsensitive, deser);
+        assertSame(AEquivalence.caseInsensitive(), deser.equivalence());
+        assertTrue(deser.contains("bB"));
+    }
+
+    @Test void testCombiningDifferentEquivalences() {
+        final AHashSet<String> caseInsensitive = AHashSet.<String>empty(AEquivalence.caseInsensitive()).plus("a").plus("B");
+        final AHashSet<String> regular = AHashSet.of("A", "b", "c");
+
+        assertEquals(3, caseInsensitive.union(regular).size());
+        assertEquals(5, regular.union(caseInsensitive).size());
+
+        // intersect and diff both match elements using the receiver's equivalence
+        assertEquals(AHashSet.of("a", "B"), caseInsensitive.intersect(regular));
+        assertSame(AEquivalence.caseInsensitive(), caseInsensitive.intersect(regular).equivalence());
+        assertTrue(caseInsensitive.diff(regular).isEmpty());
+        assertTrue(regular.intersect(caseInsensitive).isEmpty());
+        assertEquals(regular, regular.diff(caseInsensitive));
+
+        final AHashSet<String> mixedCase = AHashSet.<String>empty(AEquivalence.caseInsensitive()).plus("A").plus("b");
+        final AHashSet<String> otherCase = AHashSet.of("a", "B");
+        assertEquals(AHashSet.of("A", "b"), mixedCase.intersect(otherCase));
+        assertTrue(mixedCase.diff(otherCase).isEmpty());
+        assertTrue(otherCase.intersect(mixedCase).isEmpty());
+        assertEquals(otherCase, otherCase.diff(mixedCase));
+        assertEquals(AHashSet.of("A", "b"), mixedCase.intersect(new TreeSet<>(otherCase)));
+        assertTrue(mixedCase.diff(new TreeSet<>(otherCase)).isEmpty());
+        assertEquals(AHashSet.of("a", "B", "c"), caseInsensitive.symmetricDiff(regular).toSet());
+    }
+
+    @Test void testPrehashedKey() {
+        AHashSet<AHashMapTest.CountingKey> set = AHashSet.empty();
+        for (int i=0; i<1000; i++) set = set.plus(new AHashMapTest.CountingKey(i));
+        final AHashSet<AHashMapTest.CountingKey> other = set.minus(new AHashMapTest.CountingKey(500));
+
+        final PrehashedKey<AHashMapTest.CountingKey> key = PrehashedKey.of(new AHashMapTest.CountingKey(123));
+        final PrehashedKey<AHashMapTest.CountingKey> missing = PrehashedKey.of(new AHashMapTest.CountingKey(500));
+        final PrehashedKey<AHashMapTest.CountingKey> added = PrehashedKey.of(new AHashMapTest.CountingKey(1000));
+        AHashMapTest.CountingKey.numHashCodeCalls = 0;
+
+        assertTrue(set.containsPrehashed(key));
+        assertTrue(other.containsPrehashed(key));
+        assertTrue(set.containsPrehashed(missing));
+        assertFalse(other.containsPrehashed(missing));
+
+        final AHashSet<AHashMapTest.CountingKey> updated = other.plusPrehashed(added).plusPrehashed(missing);
+        assertEquals(1001, updated.size());
+        assertTrue(updated.containsPrehashed(added));
+        assertTrue(updated.containsPrehashed(missing));
+        assertEquals(0, AHashMapTest.CountingKey.numHashCodeCalls);
+        assertEquals(updated, updated.plusPrehashed(key));
+
+        assertEquals(set.plus(new AHashMapTest.CountingKey(1000)), updated);
+        assertEquals(set.plus(new AHashMapTest.CountingKey(1000)).hashCode(), updated.hashCode());
+        assertTrue(updated.contains(new AHashMapTest.CountingKey(1000)));
+        assertFalse(updated.minus(new AHashMapTest.CountingKey(1000)).containsPrehashed(added));
+
+        final AHashSet<String> caseInsensitive = AHashSet.<String>empty(AEquivalence.caseInsensitive()).plusPrehashed(PrehashedKey.of("Abc", AEquivalence.caseInsensitive()));
+        assertTrue(caseInsensitive.contains("aBC"));
+        assertTrue(caseInsensitive.containsPrehashed(PrehashedKey.of("ABC", AEquivalence.caseInsensitive())));
+        assertTrue(caseInsensitive.containsPrehashed(PrehashedKey.of("abc")));
+        assertFalse(AHashSet.of("abc").containsPrehashed(PrehashedKey.of("ABC", AEquivalence.caseInsensitive())));
+    }
 }
@@ -0,0 +1,126 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.AMapTests;
+import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.jackson.ACollectionsModule;
+import com.ajjpj.acollections.util.AUnchecker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AIntHashMapTest implements AMapTests {
+    @Override @Test public void testSerDeser () {
+        assertEquals(AIntHashMap.empty(), TestHelpers.serDeser(AIntHashMap.empty()));
+        assertEquals(AIntHashMap.empty().plusInt(1,2), TestHelpers.serDeser(AIntHashMap.empty().plusInt(1,2)));
+        assertEquals(AIntHashMap.empty().plusInt(1,2).plusInt(3,4).plusInt(5,6), TestHelpers.serDeser(AIntHashMap.empty().plusInt(1,2).plusInt(3,4).plusInt(5,6)));
+        assertEquals(AIntHashMap.class, TestHelpers.serDeser(AIntHashMap.of(1, 2)).getClass());
+    }
+
+    @Override public Iterable<Variant> variants () {
+        return Collections.singletonList(
+                new Variant(AIntHashMap.class, false, AIntHashMap::builder, null)
+        );
+    }
+
+    @Override @Test public void testStaticFactories() {
+        assertTrue(AIntHashMap.empty().isEmpty());
+
+        AMap<Integer,String> expected = AMap.empty();
+        assertEquals(expected, AIntHashMap.of());
+        expected = expected.plus(1, "1");
+        assertEquals(expected, AIntHashMap.of(1,"1"));
+        expected = expected.plus(2, "2");
+        assertEquals(expected, AIntHashMap.of(1,"1", 2, "2"));
+        expected = expected.plus(3, "3");
+        assertEquals(expected, AIntHashMap.of(1,"1", 2, "2", 3, "3"));
+        expected = expected.plus(4, "4");
+        assertEquals(expected, AIntHashMap.of(1,"1", 2, "2", 3, "3", 4, "4"));
+
+        assertEquals (AMap.of(5, "5"), AIntHashMap.from(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5"))));
+        assertEquals (AMap.of(5, "5"), AIntHashMap.fromIterator(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5")).iterator()));
+
+        assertEquals (AMap.of(5, "5"), AIntHashMap.ofEntries(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5, "5"))));
+
+        assertEquals(expected, AIntHashMap.fromMap(expected));
+    }
+
+    @Override @Test public void testJacksonFromJson() {
+        // AIntHashMap's key type is always Integer, so this does not use the generic test with String keys
+        final ObjectMapper om = new ObjectMapper();
+        om.registerModule(new ACollectionsModule());
+
+        assertEquals(AIntHashMap.empty(), AUnchecker.executeUnchecked(() -> om.readValue("{}", AIntHashMap.class)));
+        assertEquals(AIntHashMap.of(1, 3), AUnchecker.executeUnchecked(() -> om.readValue("{\"1\":3}", AIntHashMap.class)));
+        assertEquals(AIntHashMap.of(1, 3, 2, 5, 3, 7), AUnchecker.executeUnchecked(() -> om.readValue("{\"1\":3,\"2\":5,\"3\":7}", AIntHashMap.class)));
+        assertEquals(AIntHashMap.class, AUnchecker.executeUnchecked(() -> om.readValue("{\"1\":3}", AIntHashMap.class)).getClass());
+    }
+
+    @Test void testPrimitiveAccess() {
+        final AIntHashMap<String> m = AIntHashMap.<String>empty().plusInt(1, "a").plusInt(-1, "b").plusInt(Integer.MIN_VALUE, "c").plusInt(Integer.MAX_VALUE, null);
+
+        assertEquals(4, m.size());
+        assertEquals("a", m.get(1));
+        assertEquals("b", m.get(-1));
+        assertEquals("c", m.get(Integer.MIN_VALUE));
+        assertNull(m.get(Integer.MAX_VALUE));
+        assertNull(m.get(2));
+
+        assertTrue(m.containsKey(Integer.MAX_VALUE));
+        assertFalse(m.containsKey(2));
+        assertFalse(m.containsKey((Object) "1"));
+        assertFalse(m.containsKey((Object) 1L));
+        assertNull(m.get((Object) 1L));
+
+        assertTrue(m.getOptional(Integer.MAX_VALUE).isDefined());
+        assertTrue(m.getOptional(2).isEmpty());
+
+        final Set<Integer> keys = new HashSet<>();
+        for (PrimitiveIterator.OfInt it = m.intKeysIterator(); it.hasNext(); ) keys.add(it.nextInt());
+        assertEquals(m.keySet(), keys);
+
+        assertSame(m, m.plusInt(1, m.get(1)));
+        assertSame(m, m.minus(2));
+    }
+
+    @Test void testAddRemove() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<50; round++) {
+            // dense keys as well as keys spread over the full int range
+            final int range = round % 2 == 0 ? 1 + rand.nextInt(5_000) : Integer.MAX_VALUE;
+            final Map<Integer,Integer> ju = new HashMap<>();
+            AIntHashMap<Integer> a = AIntHashMap.empty();
+
+            for (int i=0; i<5_000; i++) {
+                final int key = range == Integer.MAX_VALUE ? rand.nextInt() : rand.nextInt(range) - range/2;
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(key);
+                    a = a.minus(key);
+                }
+                else {
+                    ju.put(key, i);
+                    a = a.plusInt(key, i);
+                }
+                assertEquals(ju.size(), a.size());
+            }
+
+            assertEquals(ju, a);
+            assertEquals(a, ju);
+            assertEquals(ju.hashCode(), a.hashCode());
+            assertEquals(ju.size(), a.toVector().size());
+            for (Map.Entry<Integer,Integer> e: ju.entrySet()) {
+                assertEquals(e.getValue(), a.get(e.getKey().intValue()));
+            }
+
+            for (Integer key: ju.keySet()) {
+                a = a.minus(key.intValue());
+                assertFalse(a.containsKey(key.intValue()));
+            }
+            assertTrue(a.isEmpty());
+        }
+    }
+}
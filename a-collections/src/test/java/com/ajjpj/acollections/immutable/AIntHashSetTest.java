@@ -0,0 +1,105 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ASetTests;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AIntHashSetTest implements ASetTests {
+    @Override public Iterable<Variant> variants () {
+        return Collections.singletonList(
+                new Variant(AIntHashSet.class, AIntHashSet::builder, null)
+        );
+    }
+
+    @Override public void testJacksonFromJson () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override public void testJacksonFromJsonSingleValue () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override @Test public void testStaticFactories() {
+        assertTrue(AIntHashSet.empty().isEmpty());
+        assertTrue(AIntHashSet.of().isEmpty());
+        assertEquals(new HashSet<>(Collections.singletonList(1)), AIntHashSet.of(1));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), AIntHashSet.of(1, 2, 3, 2));
+
+        assertEquals(AIntHashSet.of(1, 2, 3), AIntHashSet.from(Arrays.asList(1, 2, 3)));
+        assertEquals(AIntHashSet.of(1, 2, 3), AIntHashSet.fromIterator(Arrays.asList(1, 2, 3).iterator()));
+        assertEquals(AIntHashSet.of(1, 2, 3), AIntHashSet.from(IntStream.of(1, 2, 3)));
+        assertEquals(ARange.create(0, 100_000).toSet(), AIntHashSet.from(IntStream.range(0, 100_000).parallel()));
+    }
+
+    @Override @Test public void testSerDeser () {
+        assertSame(AIntHashSet.empty(), TestHelpers.serDeser(AIntHashSet.empty()));
+
+        assertEquals(AIntHashSet.of(1), TestHelpers.serDeser(AIntHashSet.of(1)));
+        assertEquals(AIntHashSet.class, TestHelpers.serDeser(AIntHashSet.of(1)).getClass());
+        assertEquals(AIntHashSet.of(1, -2, Integer.MIN_VALUE, Integer.MAX_VALUE), TestHelpers.serDeser(AIntHashSet.of(1, -2, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+    }
+
+    @Test void testPrimitiveAccess() {
+        final AIntHashSet s = AIntHashSet.empty().plus(1).plus(-1).plus(Integer.MIN_VALUE).plus(Integer.MAX_VALUE);
+
+        assertEquals(4, s.size());
+        assertTrue(s.contains(-1));
+        assertTrue(s.contains(Integer.MIN_VALUE));
+        assertFalse(s.contains(2));
+        assertFalse(s.contains((Object) 1L));
+        assertFalse(s.contains((Object) "1"));
+
+        final Set<Integer> elements = new HashSet<>();
+        for (PrimitiveIterator.OfInt it = s.intIterator(); it.hasNext(); ) elements.add(it.nextInt());
+        assertEquals(s, elements);
+        assertEquals(s, AIntHashSet.of(s.toIntArray()));
+
+        assertSame(s, s.plus(1));
+        assertSame(s, s.minus(2));
+        assertSame(AIntHashSet.empty(), AIntHashSet.of(5).minus(5));
+        assertEquals(AIntHashSet.of(1, Integer.MIN_VALUE), s.filterInt(i -> i != -1 && i != Integer.MAX_VALUE));
+        assertEquals(AHashSet.of("1", "-1"), s.filterInt(i -> Math.abs(i) == 1).map(String::valueOf));
+    }
+
+    @Test void testAddRemove() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<50; round++) {
+            // dense elements as well as elements spread over the full int range
+            final boolean dense = round % 2 == 0;
+            final Set<Integer> ju = new HashSet<>();
+            AIntHashSet a = AIntHashSet.empty();
+
+            for (int i=0; i<5_000; i++) {
+                final int value = dense ? rand.nextInt(3_000) - 1_500 : rand.nextInt();
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(value);
+                    a = a.minus(value);
+                }
+                else {
+                    ju.add(value);
+                    a = a.plus(value);
+                }
+                assertEquals(ju.size(), a.size());
+            }
+
+            assertEquals(ju, a);
+            assertEquals(a, ju);
+            assertEquals(ju.hashCode(), a.hashCode());
+            for (Integer value: ju) {
+                assertTrue(a.contains(value.intValue()));
+            }
+
+            for (Integer value: ju) {
+                a = a.minus(value.intValue());
+                assertFalse(a.contains(value.intValue()));
+            }
+            assertTrue(a.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AListTests;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class AIntVectorTest implements AListTests {
+    @Override public Iterable<Variant> variants () {
+        return Collections.singletonList(
+                new Variant(AIntVector.class, AIntVector::builder, AVector.of(1, 2, 3))
+        );
+    }
+
+    @Override public void testJacksonFromJson () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override public void testJacksonFromJsonSingleValue () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override @Test public void testStaticFactories() {
+        assertTrue(AIntVector.empty().isEmpty());
+        assertTrue(AIntVector.of().isEmpty());
+        assertEquals("1", AIntVector.of(1).mkString(","));
+        assertEquals("1,2,3", AIntVector.of(1,2,3).mkString(","));
+
+        assertEquals(AIntVector.of(1, 2, 3), AIntVector.from(Arrays.asList(1, 2, 3)));
+        assertEquals(AIntVector.of(1, 2, 3), AIntVector.fromIterator(Arrays.asList(1, 2, 3).iterator()));
+        assertEquals(AIntVector.of(1, 2, 3), AIntVector.from(IntStream.of(1, 2, 3)));
+        assertEquals(ARange.create(0, 100_000), AIntVector.from(IntStream.range(0, 100_000).parallel()));
+    }
+
+    @Override @Test public void testSerDeser () {
+        assertSame(AIntVector.empty(), TestHelpers.serDeser(AIntVector.empty()));
+
+        assertEquals(AIntVector.of(1), TestHelpers.serDeser(AIntVector.of(1)));
+        assertEquals(AIntVector.class, TestHelpers.serDeser(AIntVector.of(1)).getClass());
+
+        final AIntVector v = AIntVector.from(ARange.create(0, 1000)).prependInt(-1).drop(5);
+        assertEquals(v, TestHelpers.serDeser(v));
+    }
+
+    @Test void testPrimitiveAppendPrependUpdated() {
+        AIntVector v = AIntVector.empty();
+        final List<Integer> expected = new ArrayList<>();
+        for (int i=0; i<5000; i++) {
+            v = v.appendInt(i);
+            expected.add(i);
+        }
+        for (int i=0; i<5000; i++) {
+            v = v.prependInt(-i);
+            expected.add(0, -i);
+        }
+        for (int i=0; i<expected.size(); i+=7) {
+            v = v.updatedInt(i, 3*i);
+            expected.set(i, 3*i);
+        }
+        assertEquals(expected, v);
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i).intValue(), v.getInt(i));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class, () -> AIntVector.of(1, 2).getInt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> AIntVector.of(1, 2).getInt(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> AIntVector.of(1, 2).updatedInt(2, 5));
+    }
+
+    @Test void testVersionsAreIndependent() {
+        final AIntVector v1 = AIntVector.of(1, 2, 3);
+        final AIntVector v2 = v1.updatedInt(1, 99);
+        final AIntVector v3 = v1.appendInt(4);
+        final AIntVector v4 = v1.drop(1).prependInt(0);
+
+        assertEquals(AVector.of(1, 2, 3), v1);
+        assertEquals(AVector.of(1, 99, 3), v2);
+        assertEquals(AVector.of(1, 2, 3, 4), v3);
+        assertEquals(AVector.of(0, 2, 3), v4);
+    }
+
+    @Test void testTakeDropSlice() {
+        final AIntVector v = AIntVector.from(ARange.create(0, 1000));
+        for (int n: new int[] {0, 1, 31, 32, 33, 500, 999, 1000}) {
+            assertEquals(ARange.create(0, n), v.take(n));
+            assertEquals(ARange.create(n, 1000), v.drop(n));
+            assertEquals(ARange.create(1000-n, 1000), v.takeRight(n));
+            assertEquals(ARange.create(0, 1000-n), v.dropRight(n));
+            assertEquals(1000-n, v.drop(n).appendInt(-1).indexOf(-1));
+            assertEquals(0, v.take(n).prependInt(-1).indexOf(-1));
+        }
+        assertEquals(ARange.create(33, 100), v.slice(33, 100));
+        assertEquals(ARange.create(33, 100), v.drop(30).slice(3, 70));
+        assertEquals(AIntVector.class, v.slice(33, 100).getClass());
+    }
+
+    @Test void testConcat() {
+        final AIntVector v = AIntVector.from(ARange.create(0, 300));
+        // covers a block aligned end, ends that match the other vector's offset, and ends that don't
+        for (int n: new int[] {0, 1, 31, 32, 33, 64, 100}) {
+            for (int m: new int[] {0, 1, 31, 32, 33, 64, 100}) {
+                for (int k: new int[] {0, 1, 20, 40}) {
+                    final AIntVector left = v.drop(k).take(n);
+                    final AIntVector right = v.drop(n+k).take(m);
+                    final AIntVector concat = left.concat(right);
+                    assertEquals(ARange.create(k, k + left.size() + right.size()), concat);
+                    assertEquals(ARange.create(k, k + left.size() + right.size()).toVector().append(-1), concat.appendInt(-1));
+                    assertEquals(ARange.create(k, k + left.size() + right.size()), left.concat(AIntVector.from(right)));
+                    assertEquals(ARange.create(k, k + left.size() + right.size()), left.concat(right.prependInt(-1).drop(1)));
+                    assertEquals(ARange.create(k, k+n), left);
+                    assertEquals(ARange.create(n+k, n+k+m), right);
+                }
+            }
+        }
+        assertEquals(AIntVector.of(5, 1, 2, 3), AIntVector.of(5).concat(v.drop(1).take(3)));
+        assertEquals(AIntVector.of(1, 2, 3, 4), AIntVector.of(1, 2).concat(AVector.of(3, 4)));
+        assertEquals(AIntVector.class, AIntVector.of(1, 2).concat(AVector.of(3, 4)).getClass());
+    }
+
+    @Test void testAggregates() {
+        assertEquals(0, AIntVector.empty().sum());
+        assertEquals(6, AIntVector.of(1, 2, 3).sum());
+        assertEquals(2L * Integer.MAX_VALUE, AIntVector.of(Integer.MAX_VALUE, Integer.MAX_VALUE).sum());
+        assertEquals(499_500, AIntVector.from(ARange.create(0, 1000)).sum());
+        assertEquals(ARange.create(100, 1000).stream().mapToLong(i -> i).sum(), AIntVector.from(ARange.create(0, 1000)).drop(100).sum());
+
+        assertEquals(-5, AIntVector.of(3, -5, 7).min().intValue());
+        assertEquals(7, AIntVector.of(3, -5, 7).max().intValue());
+        assertEquals(40, AIntVector.from(ARange.create(0, 1000)).slice(40, 60).min().intValue());
+        assertEquals(59, AIntVector.from(ARange.create(0, 1000)).slice(40, 60).max().intValue());
+        assertThrows(NoSuchElementException.class, () -> AIntVector.empty().min());
+        assertThrows(NoSuchElementException.class, () -> AIntVector.empty().max());
+    }
+
+    @Test void testPrimitiveIterationAndStreams() {
+        final AIntVector v = AIntVector.from(ARange.create(0, 100)).drop(10);
+
+        final List<Integer> collected = new ArrayList<>();
+        for (PrimitiveIterator.OfInt it = v.intIterator(); it.hasNext(); ) collected.add(it.nextInt());
+        assertEquals(ARange.create(10, 100), collected);
+
+        assertArrayEquals(IntStream.range(10, 100).toArray(), v.toIntArray());
+        assertEquals(IntStream.range(10, 100).sum(), v.intStream().sum());
+        assertEquals(IntStream.range(10, 100).boxed().collect(Collectors.toList()), v.intStream().boxed().collect(Collectors.toList()));
+        assertEquals(v, AIntVector.from(v.intStream()));
+        assertEquals(0, AIntVector.empty().intStream().count());
+        assertEquals(0, AIntVector.empty().toIntArray().length);
+
+        assertEquals(AIntVector.of(10, 12, 14), v.filterInt(i -> i%2 == 0).take(3));
+    }
+}
@@ -51,4 +51,23 @@ public class ALinkedListTest implements AListTests {
         assertEquals(ARange.create(0, 100000).toVector(), ARange.create(0, 100000).parallelStream().collect(ALinkedList.streamCollector()));
     }
 
+    @Test void testSubListAndSliceShareTails() {
+        final ALinkedList<Integer> l = ALinkedList.from(ARange.create(0, 10));
+
+        assertEquals(ARange.create(3, 7), l.subList(3, 7));
+        assertSame(l.drop(3), l.subList(3, 10));
+        assertEquals(ALinkedList.empty(), l.subList(10, 10));
+        assertThrows(IndexOutOfBoundsException.class, () -> l.subList(9, 11));
+        assertThrows(IndexOutOfBoundsException.class, () -> l.subList(11, 11));
+        assertThrows(IndexOutOfBoundsException.class, () -> l.subList(-1, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> l.subList(4, 3));
+
+        assertEquals(ARange.create(3, 7), l.slice(3, 7));
+        assertSame(l.drop(3), l.slice(3, 20));
+        assertSame(l, l.slice(-5, 10));
+        assertEquals(ARange.create(0, 4), l.slice(-5, 4));
+        assertTrue(l.slice(7, 3).isEmpty());
+        assertTrue(l.slice(12, 20).isEmpty());
+    }
+
 }
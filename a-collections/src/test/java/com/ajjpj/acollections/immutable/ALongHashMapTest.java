@@ -0,0 +1,105 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ALongHashMapTest {
+    @Test void testSerDeser () {
+        assertEquals(ALongHashMap.empty(), TestHelpers.serDeser(ALongHashMap.empty()));
+        assertEquals(ALongHashMap.of(1L, 2), TestHelpers.serDeser(ALongHashMap.of(1L, 2)));
+        assertEquals(ALongHashMap.of(1L, 2, Long.MIN_VALUE, 4, Long.MAX_VALUE, 6), TestHelpers.serDeser(ALongHashMap.of(1L, 2, Long.MIN_VALUE, 4, Long.MAX_VALUE, 6)));
+        assertEquals(ALongHashMap.class, TestHelpers.serDeser(ALongHashMap.of(1L, 2)).getClass());
+    }
+
+    @Test void testStaticFactories() {
+        assertTrue(ALongHashMap.empty().isEmpty());
+
+        AMap<Long,String> expected = AMap.empty();
+        assertEquals(expected, ALongHashMap.of());
+        expected = expected.plus(1L, "1");
+        assertEquals(expected, ALongHashMap.of(1L,"1"));
+        expected = expected.plus(2L, "2");
+        assertEquals(expected, ALongHashMap.of(1L,"1", 2L, "2"));
+        expected = expected.plus(3L, "3");
+        assertEquals(expected, ALongHashMap.of(1L,"1", 2L, "2", 3L, "3"));
+        expected = expected.plus(4L, "4");
+        assertEquals(expected, ALongHashMap.of(1L,"1", 2L, "2", 3L, "3", 4L, "4"));
+
+        assertEquals (AMap.of(5L, "5"), ALongHashMap.from(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5L, "5"))));
+        assertEquals (AMap.of(5L, "5"), ALongHashMap.fromIterator(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5L, "5")).iterator()));
+        assertEquals (AMap.of(5L, "5"), ALongHashMap.ofEntries(Collections.singletonList(new AbstractMap.SimpleImmutableEntry<>(5L, "5"))));
+
+        assertEquals(expected, ALongHashMap.fromMap(expected));
+    }
+
+    @Test void testPrimitiveAccess() {
+        // keys that differ only in their highest bits
+        final ALongHashMap<String> m = ALongHashMap.<String>empty().plusLong(1L, "a").plusLong(1L | (1L << 62), "b").plusLong(Long.MIN_VALUE | 1L, "c").plusLong(Long.MAX_VALUE, null);
+
+        assertEquals(4, m.size());
+        assertEquals("a", m.get(1L));
+        assertEquals("b", m.get(1L | (1L << 62)));
+        assertEquals("c", m.get(Long.MIN_VALUE | 1L));
+        assertNull(m.get(Long.MAX_VALUE));
+        assertNull(m.get(Long.MIN_VALUE));
+
+        assertTrue(m.containsKey(Long.MAX_VALUE));
+        assertFalse(m.containsKey(2L));
+        assertFalse(m.containsKey((Object) 1));
+        assertNull(m.get((Object) 1));
+
+        assertTrue(m.getOptional(Long.MAX_VALUE).isDefined());
+        assertTrue(m.getOptional(2L).isEmpty());
+
+        final Set<Long> keys = new HashSet<>();
+        for (PrimitiveIterator.OfLong it = m.longKeysIterator(); it.hasNext(); ) keys.add(it.nextLong());
+        assertEquals(m.keySet(), keys);
+
+        assertEquals("a", m.minus(1L | (1L << 62)).minus(Long.MIN_VALUE | 1L).get(1L));
+        assertSame(m, m.minus(2L));
+    }
+
+    @Test void testAddRemove() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<50; round++) {
+            final boolean dense = round % 2 == 0;
+            final Map<Long,Integer> ju = new HashMap<>();
+            ALongHashMap<Integer> a = ALongHashMap.empty();
+
+            for (int i=0; i<5_000; i++) {
+                final long key = dense ? rand.nextInt(3_000) : rand.nextLong();
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(key);
+                    a = a.minus(key);
+                }
+                else {
+                    ju.put(key, i);
+                    a = a.plusLong(key, i);
+                }
+                assertEquals(ju.size(), a.size());
+            }
+
+            assertEquals(ju, a);
+            assertEquals(a, ju);
+            assertEquals(ju.hashCode(), a.hashCode());
+            for (Map.Entry<Long,Integer> e: ju.entrySet()) {
+                assertEquals(e.getValue(), a.get(e.getKey().longValue()));
+            }
+            assertEquals(ju, ALongHashMap.fromMap(ju));
+            assertEquals(ju.keySet(), a.keySet());
+            assertEquals(new HashSet<>(ju.values()), a.values().toSet());
+
+            for (Long key: ju.keySet()) {
+                a = a.minus(key.longValue());
+                assertFalse(a.containsKey(key.longValue()));
+            }
+            assertTrue(a.isEmpty());
+        }
+    }
+}
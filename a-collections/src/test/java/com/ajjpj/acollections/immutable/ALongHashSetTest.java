@@ -0,0 +1,90 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ALongHashSetTest {
+    @Test void testSerDeser () {
+        assertSame(ALongHashSet.empty(), TestHelpers.serDeser(ALongHashSet.empty()));
+        assertEquals(ALongHashSet.of(1L), TestHelpers.serDeser(ALongHashSet.of(1L)));
+        assertEquals(ALongHashSet.of(1L, Long.MIN_VALUE, Long.MAX_VALUE), TestHelpers.serDeser(ALongHashSet.of(1L, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals(ALongHashSet.class, TestHelpers.serDeser(ALongHashSet.of(1L)).getClass());
+    }
+
+    @Test void testStaticFactories() {
+        assertTrue(ALongHashSet.empty().isEmpty());
+        assertTrue(ALongHashSet.of().isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 3L)), ALongHashSet.of(1L, 2L, 3L, 2L));
+
+        assertEquals(ALongHashSet.of(1L, 2L, 3L), ALongHashSet.from(Arrays.asList(1L, 2L, 3L)));
+        assertEquals(ALongHashSet.of(1L, 2L, 3L), ALongHashSet.fromIterator(Arrays.asList(1L, 2L, 3L).iterator()));
+        assertEquals(ALongHashSet.of(1L, 2L, 3L), ALongHashSet.from(LongStream.of(1L, 2L, 3L)));
+    }
+
+    @Test void testSetOperations() {
+        final ALongHashSet s = ALongHashSet.of(1L, 2L, 3L, 4L);
+        assertEquals(ALongHashSet.of(1L, 2L, 3L, 4L, 5L), s.union(ALongHashSet.of(4L, 5L)));
+        assertEquals(ALongHashSet.of(1L, 2L, 3L, 4L, 5L), s.union(Arrays.asList(4L, 5L)));
+        assertEquals(ALongHashSet.of(2L, 4L), s.intersect(ALongHashSet.of(2L, 4L, 6L)));
+        assertEquals(ALongHashSet.of(2L, 4L), s.intersect(new HashSet<>(Arrays.asList(2L, 4L, 6L))));
+        assertEquals(ALongHashSet.of(1L, 3L), s.diff(ALongHashSet.of(2L, 4L, 6L)));
+        assertEquals(ALongHashSet.class, s.filter(x -> x > 2).getClass());
+        assertEquals(AHashSet.of(2L, 4L, 6L, 8L), s.map(x -> 2*x));
+    }
+
+    @Test void testPrimitiveAccess() {
+        // elements that differ only in their highest bits
+        final ALongHashSet s = ALongHashSet.empty().plus(1L).plus(1L | (1L << 62)).plus(Long.MIN_VALUE | 1L).plus(Long.MAX_VALUE);
+
+        assertEquals(4, s.size());
+        assertTrue(s.contains(1L | (1L << 62)));
+        assertTrue(s.contains(Long.MIN_VALUE | 1L));
+        assertFalse(s.contains(Long.MIN_VALUE));
+        assertFalse(s.contains((Object) 1));
+
+        final Set<Long> elements = new HashSet<>();
+        for (PrimitiveIterator.OfLong it = s.longIterator(); it.hasNext(); ) elements.add(it.nextLong());
+        assertEquals(s, elements);
+
+        assertTrue(s.minus(1L | (1L << 62)).minus(Long.MIN_VALUE | 1L).contains(1L));
+        assertSame(s, s.minus(2L));
+    }
+
+    @Test void testAddRemove() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<50; round++) {
+            final boolean dense = round % 2 == 0;
+            final Set<Long> ju = new HashSet<>();
+            ALongHashSet a = ALongHashSet.empty();
+
+            for (int i=0; i<5_000; i++) {
+                final long value = dense ? rand.nextInt(3_000) : rand.nextLong();
+                if (rand.nextInt(3) == 0) {
+                    ju.remove(value);
+                    a = a.minus(value);
+                }
+                else {
+                    ju.add(value);
+                    a = a.plus(value);
+                }
+                assertEquals(ju.size(), a.size());
+            }
+
+            assertEquals(ju, a);
+            assertEquals(a, ju);
+            assertEquals(ju.hashCode(), a.hashCode());
+
+            for (Long value: ju) {
+                a = a.minus(value.longValue());
+                assertFalse(a.contains(value.longValue()));
+            }
+            assertTrue(a.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ALongVectorTest {
+    @Test void testStaticFactories() {
+        assertTrue(ALongVector.empty().isEmpty());
+        assertTrue(ALongVector.of().isEmpty());
+        assertEquals(AList.of(1L, 2L, 3L), ALongVector.of(1L, 2L, 3L));
+        assertEquals(ALongVector.of(1L, 2L, 3L), ALongVector.from(Arrays.asList(1L, 2L, 3L)));
+        assertEquals(ALongVector.of(1L, 2L, 3L), ALongVector.fromIterator(Arrays.asList(1L, 2L, 3L).iterator()));
+        assertEquals(ALongVector.of(1L, 2L, 3L), ALongVector.from(LongStream.of(1L, 2L, 3L)));
+        assertArrayEquals(LongStream.range(0, 100_000).toArray(), ALongVector.from(LongStream.range(0, 100_000).parallel()).toLongArray());
+    }
+
+    @Test void testSerDeser() {
+        assertSame(ALongVector.empty(), TestHelpers.serDeser(ALongVector.empty()));
+        assertEquals(ALongVector.of(1L, Long.MIN_VALUE, Long.MAX_VALUE), TestHelpers.serDeser(ALongVector.of(1L, Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertEquals(ALongVector.class, TestHelpers.serDeser(ALongVector.of(1L)).getClass());
+    }
+
+    @Test void testPrimitiveAccess() {
+        ALongVector v = ALongVector.empty();
+        final List<Long> expected = new ArrayList<>();
+        for (long i=0; i<2000; i++) {
+            v = v.appendLong(i << 32);
+            expected.add(i << 32);
+            v = v.prependLong(-i);
+            expected.add(0, -i);
+        }
+        for (int i=0; i<expected.size(); i+=5) {
+            v = v.updatedLong(i, Long.MAX_VALUE - i);
+            expected.set(i, Long.MAX_VALUE - i);
+        }
+        assertEquals(expected, v);
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i).longValue(), v.getLong(i));
+        }
+        assertEquals(expected.subList(100, 3000), v.slice(100, 3000));
+        assertEquals(ALongVector.class, v.slice(100, 3000).getClass());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> ALongVector.of(1L).getLong(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> ALongVector.of(1L).updatedLong(-1, 2L));
+    }
+
+    @Test void testAggregatesAndStreams() {
+        final ALongVector v = ALongVector.from(LongStream.range(0, 1000)).drop(10);
+
+        assertEquals(LongStream.range(10, 1000).sum(), v.sum());
+        assertEquals(LongStream.range(10, 1000).sum(), v.longStream().sum());
+        assertEquals(10L, v.min().longValue());
+        assertEquals(999L, v.max().longValue());
+        assertEquals(Long.MIN_VALUE, ALongVector.of(0L, Long.MIN_VALUE).min().longValue());
+        assertEquals(Long.MAX_VALUE, ALongVector.of(Long.MAX_VALUE, 0L).max().longValue());
+        assertThrows(NoSuchElementException.class, () -> ALongVector.empty().min());
+
+        long expected = 10;
+        for (PrimitiveIterator.OfLong it = v.longIterator(); it.hasNext(); ) assertEquals(expected++, it.nextLong());
+        assertEquals(1000, expected);
+
+        assertArrayEquals(LongStream.range(10, 1000).toArray(), v.toLongArray());
+        assertArrayEquals(LongStream.range(10, 1000).filter(l -> l%3 == 0).toArray(), v.filterLong(l -> l%3 == 0).toLongArray());
+    }
+}
@@ -0,0 +1,13 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AIterator;
+import com.ajjpj.acollections.AIteratorTests;
+
+import java.util.Arrays;
+
+
+public class ARrbVectorIteratorTest implements AIteratorTests {
+    @Override public AIterator<Integer> mkIterator (Integer... values) {
+        return ARrbVector.from(Arrays.asList(values)).iterator();
+    }
+}
@@ -0,0 +1,183 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.AListTests;
+import com.ajjpj.acollections.TestHelpers;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ARrbVectorTest implements AListTests {
+
+    @Override public Iterable<Variant> variants () {
+        return Collections.singletonList(
+                new Variant(ARrbVector.class, ARrbVector::builder, AVector.of(1, 2, 3))
+        );
+    }
+
+    @Override @Test public void testStaticFactories() {
+        assertTrue(ARrbVector.empty().isEmpty());
+        assertTrue(ARrbVector.of().isEmpty());
+        assertEquals("1", ARrbVector.of(1).mkString(","));
+        assertEquals("1,2", ARrbVector.of(1,2).mkString(","));
+        assertEquals("1,2,3", ARrbVector.of(1,2,3).mkString(","));
+        assertEquals("1,2,3,4", ARrbVector.of(1,2,3,4).mkString(","));
+        assertEquals("1,2,3,4,5", ARrbVector.of(1,2,3,4,5).mkString(","));
+        assertEquals("1,2,3,4,5,6", ARrbVector.of(1,2,3,4,5,6).mkString(","));
+
+        assertEquals(ARrbVector.of(1, 2, 3), ARrbVector.from(Arrays.asList(1, 2, 3)));
+        assertEquals(ARrbVector.of(1, 2, 3), ARrbVector.from(new Integer[] {1, 2, 3}));
+        assertEquals(ARrbVector.of(1, 2, 3), ARrbVector.fromIterator(Arrays.asList(1, 2, 3).iterator()));
+    }
+
+    @Override @Test public void testSerDeser () {
+        assertSame(ARrbVector.empty(), TestHelpers.serDeser(ARrbVector.empty()));
+
+        assertNotSame(ARrbVector.of(1), TestHelpers.serDeser(ARrbVector.of(1)));
+        assertEquals(ARrbVector.of(1), TestHelpers.serDeser(ARrbVector.of(1)));
+
+        final ARrbVector<Integer> concatenated = ARrbVector.from(ARange.create(0, 1000)).concat(ARrbVector.from(ARange.create(1000, 2000)));
+        assertEquals(ARange.create(0, 2000).toVector(), TestHelpers.serDeser(concatenated));
+    }
+
+    @Test void testCollector() {
+        assertEquals(AVector.of(1, 2, 3, 4), Stream.of(1, 2, 3, 4).collect(ARrbVector.streamCollector()));
+        assertEquals(AVector.empty(), Stream.of().collect(ARrbVector.streamCollector()));
+        assertEquals(ARange.create(0, 100000).toVector(), ARange.create(0, 100000).parallelStream().collect(ARrbVector.streamCollector()));
+    }
+
+    @Test void testAppendPrepend() {
+        ARrbVector<Integer> v = ARrbVector.empty();
+        final List<Integer> expected = new ArrayList<>();
+        for (int i=0; i<50_000; i++) {
+            v = v.append(i);
+            expected.add(i);
+        }
+        for (int i=0; i<50_000; i++) {
+            v = v.prepend(-i);
+            expected.add(0, -i);
+        }
+        assertEquals(expected, v);
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i), v.get(i));
+        }
+    }
+
+    @Test void testConcatPreservesBothVectors() {
+        final ARrbVector<Integer> a = ARrbVector.from(ARange.create(0, 5000));
+        final ARrbVector<Integer> b = ARrbVector.from(ARange.create(5000, 5033));
+
+        assertEquals(ARange.create(0, 5033).toVector(), a.concat(b));
+        assertEquals(ARange.create(5000, 5033).toVector().concat(ARange.create(0, 5000)), b.concat(a));
+        assertEquals(ARange.create(0, 5000).toVector(), a);
+        assertEquals(ARange.create(5000, 5033).toVector(), b);
+
+        assertSame(a, a.concat(ARrbVector.empty()));
+        assertSame(a, ARrbVector.<Integer>empty().concat(a));
+    }
+
+    @Test void testRandomSplitAndConcat() {
+        final Random rand = new Random(12345);
+
+        // a list of pieces, each represented by a vector and the expected elements
+        final List<ARrbVector<Integer>> pieces = new ArrayList<>();
+        final List<List<Integer>> expected = new ArrayList<>();
+        int nextValue = 0;
+        for (int i=0; i<20; i++) {
+            final int size = rand.nextInt(2000);
+            final List<Integer> l = new ArrayList<>();
+            for (int j=0; j<size; j++) l.add(nextValue++);
+            pieces.add(ARrbVector.from(l));
+            expected.add(l);
+        }
+
+        for (int step=0; step<2000; step++) {
+            final int i = rand.nextInt(pieces.size());
+            if (rand.nextBoolean() && pieces.size() > 1) {
+                // merge two pieces
+                final int j = rand.nextInt(pieces.size());
+                if (i == j) continue;
+                final ARrbVector<Integer> merged = pieces.get(i).concat(pieces.get(j));
+                final List<Integer> mergedExpected = new ArrayList<>(expected.get(i));
+                mergedExpected.addAll(expected.get(j));
+
+                pieces.set(i, merged);
+                expected.set(i, mergedExpected);
+                pieces.remove(j);
+                expected.remove(j);
+            }
+            else {
+                // split a piece
+                final ARrbVector<Integer> v = pieces.get(i);
+                final int at = rand.nextInt(v.size() + 1);
+                pieces.set(i, v.take(at));
+                pieces.add(v.drop(at));
+                final List<Integer> l = expected.get(i);
+                expected.set(i, new ArrayList<>(l.subList(0, at)));
+                expected.add(new ArrayList<>(l.subList(at, l.size())));
+            }
+        }
+
+        for (int i=0; i<pieces.size(); i++) {
+            final ARrbVector<Integer> v = pieces.get(i);
+            final List<Integer> l = expected.get(i);
+            assertEquals(l, v);
+            assertEquals(l.size(), v.size());
+            for (int j=0; j<l.size(); j++) {
+                assertEquals(l.get(j), v.get(j));
+            }
+            final List<Integer> reversed = new ArrayList<>(l);
+            Collections.reverse(reversed);
+            assertEquals(reversed, v.reverseIterator().toVector());
+        }
+    }
+
+    @Test void testManySmallConcatenations() {
+        ARrbVector<Integer> v = ARrbVector.empty();
+        for (int i=0; i<10_000; i++) {
+            v = v.concat(ARrbVector.of(3*i, 3*i+1, 3*i+2));
+        }
+        assertEquals(ARange.create(0, 30_000).toVector(), v);
+
+        ARrbVector<Integer> w = ARrbVector.empty();
+        for (int i=9_999; i>=0; i--) {
+            w = ARrbVector.of(3*i, 3*i+1, 3*i+2).concat(w);
+        }
+        assertEquals(v, w);
+        assertEquals(v, v.updated(1234, -1).updated(1234, 1234));
+    }
+
+    @Test void testInserted() {
+        final Random rand = new Random(54321);
+        ARrbVector<Integer> v = ARrbVector.empty();
+        final List<Integer> expected = new ArrayList<>();
+        for (int i=0; i<5000; i++) {
+            final int idx = rand.nextInt(expected.size() + 1);
+            v = v.inserted(idx, i);
+            expected.add(idx, i);
+        }
+        assertEquals(expected, v);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> ARrbVector.of(1, 2).inserted(-1, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> ARrbVector.of(1, 2).inserted(3, 0));
+    }
+
+    @Test void testPatchAndSlice() {
+        final ARrbVector<Integer> v = ARrbVector.from(ARange.create(0, 10_000));
+
+        assertEquals(ARange.create(1234, 5678).toVector(), v.slice(1234, 5678));
+        assertEquals(ARange.create(0, 10).toVector(), v.slice(-5, 10));
+        assertEquals(ARange.create(9990, 10_000).toVector(), v.slice(9990, 20_000));
+        assertTrue(v.slice(500, 400).isEmpty());
+
+        final List<Integer> expected = new ArrayList<>(v);
+        expected.subList(100, 5100).clear();
+        expected.addAll(100, Arrays.asList(-1, -2, -3));
+        assertEquals(expected, v.patch(100, Arrays.asList(-1, -2, -3), 5000));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> v.patch(9999, Collections.emptyList(), 2));
+    }
+}
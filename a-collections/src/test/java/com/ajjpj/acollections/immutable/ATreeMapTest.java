@@ -1,15 +1,16 @@
 package com.ajjpj.acollections.immutable;
 
 import com.ajjpj.acollections.AMap;
+import com.ajjpj.acollections.AMapChange;
 import com.ajjpj.acollections.ASortedMap;
 import com.ajjpj.acollections.ASortedMapTests;
 import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.util.AOption;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 public class ATreeMapTest implements ASortedMapTests {
@@ -20,6 +21,37 @@ public class ATreeMapTest implements ASortedMapTests {
         );
     }
 
+    @Test void testBuilderWithSortedAndUnsortedInput() {
+        final ATreeMap<Integer,String> sorted = ATreeMap.<Integer,String>builder().add(1, "a").add(2, "b").add(2, "c").add(5, "d").build();
+        assertEquals(AMap.of(1, "a", 2, "c", 5, "d"), sorted);
+
+        final ATreeMap<Integer,String> unsorted = ATreeMap.<Integer,String>builder().add(5, "d").add(2, "b").add(1, "a").add(2, "c").add(5, "e").build();
+        assertEquals(AMap.of(1, "a", 2, "c", 5, "e"), unsorted);
+        assertEquals(AVector.of(1, 2, 5), unsorted.keySet().toVector());
+
+        final ATreeMap<Integer,String> reversed = ATreeMap.<Integer,String>builder(Comparator.<Integer>naturalOrder().reversed()).add(1, "a").add(5, "d").add(2, "b").build();
+        assertEquals(AVector.of(5, 2, 1), reversed.keySet().toVector());
+
+        final TreeMap<Integer,Integer> expected = new TreeMap<>();
+        final ATreeMap.Builder<Integer,Integer> builder = ATreeMap.builder();
+        final Random rand = new Random(4711);
+        for (int i=0; i<10_000; i++) {
+            final int key = rand.nextInt(5000);
+            expected.put(key, i);
+            builder.add(key, i);
+        }
+        assertEquals(expected, builder.build());
+        assertEquals(expected, ATreeMap.fromMap(expected));
+
+        // adding beyond the greatest key
+        ATreeMap<Integer,Integer> m = ATreeMap.empty();
+        for (int i=0; i<1000; i++) m = m.plus(i, 2*i);
+        assertEquals(1000, m.size());
+        for (int i=0; i<1000; i++) assertEquals(2*i, m.get(i).intValue());
+        assertEquals(0, m.smallest().get().getKey().intValue());
+        assertEquals(999, m.greatest().get().getKey().intValue());
+    }
+
     @Override @Test public void testComparator() {
         assertTrue(ATreeMap.of(9, "a").comparator().compare(1, 2) < 0);
         assertTrue(ATreeMap.<Integer, String> empty().comparator().compare(1, 2) < 0);
@@ -153,4 +185,159 @@ public class ATreeMapTest implements ASortedMapTests {
         assertEquals(juMap, juMap2);
     }
 
+    @Test void testUpdatedWithReturnsSameInstance() {
+        final ATreeMap<Integer,Integer> map = ATreeMap.<Integer,Integer>empty().plus(1, 1000).plus(2, null).plus(3, 3);
+        assertSame(map, map.updatedWith(1, o -> o));
+        assertSame(map, map.updatedWith(1, o -> AOption.some(o.get())));
+        assertSame(map, map.updatedWith(2, o -> AOption.some(null)));
+        assertSame(map, map.updatedWith(4, o -> AOption.none()));
+        assertSame(map, map.computedIfAbsent(3, k -> 0));
+        assertNotSame(map, map.updatedWith(1, o -> AOption.some(1001)));
+    }
+
+    @Test void testUpdatedWithRandom() {
+        final Random rand = new Random(12345);
+        final Map<Integer,Integer> juMap = new HashMap<>();
+        ATreeMap<Integer,Integer> aMap = ATreeMap.empty();
+
+        for (int i=0; i<100_000; i++) {
+            final int key = rand.nextInt(2_000);
+            final int op = rand.nextInt(3);
+            aMap = aMap.updatedWith(key, o -> op == 0 ? AOption.none() : AOption.some(o.orElse(0) + op));
+            if (op == 0) juMap.remove(key);
+            else juMap.merge(key, op, Integer::sum);
+            if (i % 1000 == 0) {
+                assertTrue(aMap.stats().maxDepth() < 2 * (32 - Integer.numberOfLeadingZeros(aMap.size() + 1)));
+            }
+        }
+        assertEquals(juMap, aMap);
+        assertEquals(juMap.size(), aMap.size());
+        assertEquals(juMap.hashCode(), aMap.hashCode());
+    }
+
+    @Test void testDiffOfVersions() {
+        final Random rand = new Random(12345);
+        ATreeMap<Integer,Integer> original = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<100_000; i++) original = original.plus(i, i);
+
+        for (int numChanges: new int[] {0, 1, 10, 1000}) {
+            ATreeMap<Integer,Integer> modified = original;
+            final Map<Integer,AMapChange<Integer,Integer>> expected = new HashMap<>();
+            for (int i=0; i<numChanges; i++) {
+                final int key = rand.nextInt(110_000);
+                final boolean wasContained = key < 100_000;
+                switch (rand.nextInt(3)) {
+                    case 0:
+                        modified = modified.minus(key);
+                        if (wasContained) expected.put(key, AMapChange.removed(key, key));
+                        else expected.remove(key);
+                        break;
+                    case 1:
+                        // replacing a value with an equal one is no change
+                        modified = modified.plus(key, key);
+                        if (wasContained) expected.remove(key);
+                        else expected.put(key, AMapChange.added(key, key));
+                        break;
+                    default:
+                        modified = modified.plus(key, -key-1);
+                        expected.put(key, wasContained ? AMapChange.changed(key, key, -key-1) : AMapChange.added(key, -key-1));
+                }
+            }
+
+            assertEquals(new HashSet<>(expected.values()), original.diff(modified).toSet());
+            assertEquals(expected.size(), original.diff(modified).toVector().size());
+            assertEquals(original.diff(modified).toSet(), AMap.fromMap(new HashMap<>(original)).diff(modified).toSet());
+        }
+    }
+
+    @Test void testDiffSkipsSharedSubtrees() {
+        final int[] numComparisons = new int[1];
+        final Comparator<Integer> countingComparator = (a, b) -> {
+            numComparisons[0] += 1;
+            return Integer.compare(a, b);
+        };
+
+        ATreeMap<Integer,Integer> original = ATreeMap.empty(countingComparator);
+        for (int i=0; i<100_000; i++) original = original.plus(i, i);
+        final ATreeMap<Integer,Integer> modified = original.plus(50_000, -1).minus(77_777).plus(-1, -1);
+
+        numComparisons[0] = 0;
+        final AVector<AMapChange<Integer,Integer>> changes = original.diff(modified).toVector();
+        assertEquals(AVector.of(AMapChange.added(-1, -1), AMapChange.changed(50_000, 50_000, -1), AMapChange.removed(77_777, 77_777)), changes);
+        assertTrue(numComparisons[0] < 1000);
+    }
+
+    @Test void testJoinBasedBulkOperations() {
+        final Random rand = new Random(12345);
+        for (Comparator<Integer> comparator: Arrays.asList(Comparator.<Integer>naturalOrder(), Comparator.<Integer>reverseOrder())) {
+            for (int i=0; i<200; i++) {
+                final TreeMap<Integer,Integer> expected1 = new TreeMap<>(comparator);
+                final TreeMap<Integer,Integer> expected2 = new TreeMap<>(comparator);
+                final int n1 = rand.nextInt(200), n2 = rand.nextInt(200);
+                for (int j=0; j<n1; j++) expected1.put(rand.nextInt(300), rand.nextInt());
+                for (int j=0; j<n2; j++) expected2.put(rand.nextInt(300), rand.nextInt());
+
+                final ATreeMap<Integer,Integer> map1 = ATreeMap.fromMap(expected1, comparator);
+                final ATreeMap<Integer,Integer> map2 = ATreeMap.fromMap(expected2, comparator);
+                final ATreeMap<Integer,Integer> differentOrder = ATreeMap.fromMap(expected2, comparator.reversed());
+
+                final TreeMap<Integer,Integer> plusAll = new TreeMap<>(expected1);
+                plusAll.putAll(expected2);
+                final TreeMap<Integer,Integer> merged = new TreeMap<>(expected1);
+                expected2.forEach((k, v) -> merged.merge(k, v, Integer::sum));
+                final TreeMap<Integer,Integer> minusAll = new TreeMap<>(expected1);
+                minusAll.keySet().removeAll(expected2.keySet());
+                final TreeMap<Integer,Integer> retained = new TreeMap<>(expected1);
+                retained.keySet().retainAll(expected2.keySet());
+
+                for (Map<Integer,Integer> other: Arrays.<Map<Integer,Integer>>asList(map2, differentOrder, expected2)) {
+                    assertEquals(AVector.from(plusAll.entrySet()), map1.plusAll(other).toVector());
+                    assertEquals(AVector.from(merged.entrySet()), map1.plusAll(other, Integer::sum).toVector());
+                    assertEquals(AVector.from(minusAll.entrySet()), map1.minusAll(other.keySet()).toVector());
+                    assertEquals(AVector.from(retained.entrySet()), map1.retainKeys(other.keySet()).toVector());
+                }
+                assertEquals(AVector.from(minusAll.entrySet()), map1.minusAll(ATreeSet.from(expected2.keySet(), comparator)).toVector());
+                assertEquals(AVector.from(retained.entrySet()), map1.retainKeys(ATreeSet.from(expected2.keySet(), comparator)).toVector());
+                assertEquals(AVector.from(minusAll.entrySet()), map1.minusAll(AVector.from(expected2.keySet())).toVector());
+            }
+        }
+    }
+
+    @Test void testJoinBasedBulkOperationsReuseThis() {
+        ATreeMap<Integer,Integer> map = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<1000; i++) map = map.plus(i, i);
+
+        assertSame(map, map.minusAll(ATreeSet.of(-1, 1000)));
+        assertSame(map, map.retainKeys(map.keySet()));
+        assertTrue(map.retainKeys(ATreeSet.empty()).isEmpty());
+        assertEquals(1000, map.plusAll(ATreeMap.of(1, -1)).size());
+        assertEquals(-1, map.plusAll(ATreeMap.of(1, -1)).get(1).intValue());
+    }
+
+    @Test void testPlusAllWithDerivedVersion() {
+        // the maps share most of their structure, and the merge function must still be applied to the shared entries
+        ATreeMap<Integer,Integer> map = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+        for (int i=0; i<20; i++) map = map.plus(i, 1);
+
+        final AHashMap<Integer,Integer> expected = AHashMap.from(map).plusAll(map, Integer::sum);
+        assertEquals(expected, map.plusAll(map, Integer::sum));
+        assertEquals(expected.plus(100, 1), map.plusAll(map.plus(100, 1), Integer::sum));
+        assertEquals(expected.plus(5, 11), map.plusAll(map.plus(5, 10), Integer::sum));
+        assertSame(map, map.plusAll(map));
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 3, 31, 1000, 100_000}) {
+            ATreeMap<Integer,Integer> map = ATreeMap.empty(Comparator.<Integer>naturalOrder());
+            for (int i=0; i<size; i++) map = map.plus(i, 2*i);
+
+            final Spliterator<Map.Entry<Integer,Integer>> spliterator = map.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT));
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(map.iterator().toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(map.keysIterator().toVector(), TestHelpers.splitFully(map.keySet().spliterator()));
+            assertEquals(map.valuesIterator().toVector(), TestHelpers.splitFully(map.values().spliterator()));
+            assertEquals(map.keysIterator().toVector(), map.keySet().parallelStream().collect(AVector.streamCollector()));
+        }
+    }
 }
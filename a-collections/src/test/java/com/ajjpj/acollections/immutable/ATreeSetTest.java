@@ -77,6 +77,19 @@ public class ATreeSetTest implements ASortedSetTests {
         assertEquals(ARange.create(0, 100000).toSortedSet(), ARange.create(0, 100000).parallelStream().collect(ATreeSet.streamCollector()));
     }
 
+    @Test void testBuilderWithSortedAndUnsortedInput() {
+        final Comparator<Integer> reversed = Comparator.<Integer>naturalOrder().reversed();
+        assertEquals(ATreeSet.from(Arrays.asList(5, 3, 9, 1, 3, 7)), ATreeSet.<Integer>builder().addAll(Arrays.asList(1, 3, 5, 7, 9)).build());
+        assertEquals(AVector.of(9, 7, 5, 3, 1), ATreeSet.builder(reversed).addAll(Arrays.asList(5, 3, 9, 1, 3, 7)).build().toVector());
+        assertEquals(AVector.of(9, 7, 5, 3, 1), ATreeSet.builder(reversed).addAll(Arrays.asList(9, 7, 7, 5, 3, 1)).build().toVector());
+
+        // adding beyond the greatest element
+        ATreeSet<Integer> s = ATreeSet.empty();
+        for (int i=0; i<1000; i++) s = s.plus(i);
+        assertEquals(ARange.create(0, 1000).toSortedSet(), s);
+        assertEquals(ARange.create(0, 1000).toSortedSet(), ATreeSet.from(ARange.create(0, 1000).reverse()));
+    }
+
     @Test @Override  public void testComparator() {
         assertTrue (ATreeSet.of(1, 2, 3).comparator().compare(1, 2) < 0);
         assertTrue(ATreeSet.<Integer> empty().comparator().compare(1, 2) < 0);
@@ -110,4 +123,85 @@ public class ATreeSetTest implements ASortedSetTests {
 
         assertEquals(AMap.of(1, "one"), s.toMutableMap());
     }
+
+    @Test void testSymmetricDiffOfVersions() {
+        final Random rand = new Random(12345);
+        final ATreeSet<Integer> original = ATreeSet.from(ARange.create(0, 100_000), Comparator.<Integer>naturalOrder());
+
+        for (int numChanges: new int[] {0, 1, 10, 1000}) {
+            ATreeSet<Integer> modified = original;
+            final Set<Integer> expected = new HashSet<>();
+            for (int i=0; i<numChanges; i++) {
+                final int el = rand.nextInt(110_000);
+                if (rand.nextBoolean()) {
+                    modified = modified.minus(el);
+                    if (el < 100_000) expected.add(el);
+                    else expected.remove(el);
+                }
+                else {
+                    modified = modified.plus(el);
+                    if (el < 100_000) expected.remove(el);
+                    else expected.add(el);
+                }
+            }
+
+            assertEquals(expected, original.symmetricDiff(modified).toSet());
+            assertEquals(expected.size(), original.symmetricDiff(modified).toVector().size());
+            assertEquals(expected, modified.symmetricDiff(original).toSet());
+        }
+    }
+
+    @Test void testJoinBasedSetOperations() {
+        final Random rand = new Random(12345);
+        for (Comparator<Integer> comparator: Arrays.asList(Comparator.<Integer>naturalOrder(), Comparator.<Integer>reverseOrder())) {
+            for (int i=0; i<200; i++) {
+                final TreeSet<Integer> expected1 = new TreeSet<>(comparator);
+                final TreeSet<Integer> expected2 = new TreeSet<>(comparator);
+                final int n1 = rand.nextInt(200), n2 = rand.nextInt(200);
+                for (int j=0; j<n1; j++) expected1.add(rand.nextInt(300));
+                for (int j=0; j<n2; j++) expected2.add(rand.nextInt(300));
+
+                final ATreeSet<Integer> set1 = ATreeSet.from(expected1, comparator);
+                final ATreeSet<Integer> set2 = ATreeSet.from(expected2, comparator);
+                final ATreeSet<Integer> differentOrder = ATreeSet.from(expected2, comparator.reversed());
+
+                final TreeSet<Integer> union = new TreeSet<>(expected1);
+                union.addAll(expected2);
+                final TreeSet<Integer> intersection = new TreeSet<>(expected1);
+                intersection.retainAll(expected2);
+                final TreeSet<Integer> difference = new TreeSet<>(expected1);
+                difference.removeAll(expected2);
+
+                for (Iterable<Integer> other: Arrays.<Iterable<Integer>>asList(set2, differentOrder, expected2, AVector.from(expected2))) {
+                    assertEquals(AVector.from(union), set1.union(other).toVector());
+                }
+                for (Set<Integer> other: Arrays.<Set<Integer>>asList(set2, differentOrder, expected2)) {
+                    assertEquals(AVector.from(difference), set1.diff(other).toVector());
+                    assertEquals(AVector.from(intersection), set1.intersect(other).toVector());
+                }
+            }
+        }
+    }
+
+    @Test void testJoinBasedSetOperationsReuseThis() {
+        ATreeSet<Integer> set = ATreeSet.empty();
+        for (int i=0; i<1000; i++) set = set.plus(i);
+
+        assertSame(set, set.union(ATreeSet.of(1, 500, 999)));
+        assertSame(set, set.diff(ATreeSet.of(-1, 1000)));
+        assertSame(set, set.intersect(set));
+        assertTrue(set.intersect(ATreeSet.empty()).isEmpty());
+    }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 3, 31, 1000, 100_000}) {
+            final ATreeSet<Integer> set = ATreeSet.from(ARange.create(0, size), Comparator.<Integer>reverseOrder());
+            final Spliterator<Integer> spliterator = set.spliterator();
+            assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT));
+            assertEquals(set.comparator(), spliterator.getComparator());
+            assertEquals(size, spliterator.estimateSize());
+            assertEquals(set.toVector(), TestHelpers.splitFully(spliterator));
+            assertEquals(set.toVector(), set.parallelStream().collect(AVector.streamCollector()));
+        }
+    }
 }
@@ -5,9 +5,7 @@ import com.ajjpj.acollections.AListTests;
 import com.ajjpj.acollections.TestHelpers;
 import org.junit.jupiter.api.Test;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.*;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -138,4 +136,130 @@ public class AVectorTest implements AListTests {
         assertEquals(AVector.empty(), Stream.of().collect(AVector.streamCollector()));
         assertEquals(ARange.create(0, 100000).toVector(), ARange.create(0, 100000).parallelStream().collect(AVector.streamCollector()));
     }
+
+    @Test void testSpliterator() {
+        for (int size: new int[] {0, 1, 2, 31, 32, 33, 1000, 100_000}) {
+            final AVector<Integer> v = ARange.create(0, size).toVector();
+            for (AVector<Integer> vec: Arrays.asList(v, v.drop(size/3), v.dropRight(size/3), v.prepend(-1), v.append(size))) {
+                final Spliterator<Integer> spliterator = vec.spliterator();
+                assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE));
+                assertEquals(vec.size(), spliterator.estimateSize());
+                assertEquals(vec, TestHelpers.splitFully(spliterator));
+                assertEquals(vec, vec.parallelStream().collect(AVector.streamCollector()));
+            }
+        }
+    }
+
+    @Test void testBulkMapFilterCollect() {
+        for (int size: new int[] {0, 1, 2, 31, 32, 33, 1000, 1025, 40_000}) {
+            final AVector<Integer> v = ARange.create(0, size).toVector();
+            final List<AVector<Integer>> shapes = Arrays.asList(v, v.drop(size/3), v.dropRight(size/3), v.drop(size/3).dropRight(size/3),
+                    v.prepend(-1), v.prepend(-2).prepend(-1), v.append(size), v.isEmpty() ? v : v.updated(size/2, -5));
+            for (AVector<Integer> vec: shapes) {
+                final List<Integer> expected = new ArrayList<>(vec);
+
+                final AVector<String> mapped = vec.map(String::valueOf);
+                assertEquals(vec.size(), mapped.size());
+                for (int i=0; i<expected.size(); i++) assertEquals(String.valueOf(expected.get(i)), mapped.get(i));
+                assertEquals(vec.iterator().map(String::valueOf).toVector(), mapped);
+                assertEquals(vec.append(7).map(String::valueOf), mapped.append("7"));
+                assertEquals(vec.prepend(7).map(String::valueOf), mapped.prepend("7"));
+                if (! vec.isEmpty()) assertEquals(vec.updated(vec.size()-1, 7).drop(1).map(String::valueOf), mapped.updated(vec.size()-1, "7").drop(1));
+
+                for (int modulus: new int[] {1, 2, 3, 64, Integer.MAX_VALUE}) {
+                    final List<Integer> expectedFiltered = new ArrayList<>();
+                    final List<Integer> expectedCollected = new ArrayList<>();
+                    for (Integer i: expected) if (i % modulus == 0) {
+                        expectedFiltered.add(i);
+                        expectedCollected.add(2*i);
+                    }
+                    assertEquals(expectedFiltered, vec.filter(i -> i % modulus == 0));
+                    assertEquals(expectedCollected, vec.collect(i -> i % modulus == 0, i -> 2*i));
+                }
+            }
+        }
+
+        final AVector<Integer> v = AVector.of(1, 2, 3);
+        assertSame(v, v.filter(i -> true));
+        assertEquals(AVector.empty(), v.filter(i -> false));
+    }
+
+    @Test void testTransientAppend() {
+        for (AVector<Integer> initial: Arrays.asList(AVector.<Integer>empty(), AVector.of(-1), ARange.create(0, 1000).toVector(), ARange.create(0, 40_000).toVector().drop(7))) {
+            final List<Integer> expected = new ArrayList<>(initial);
+            final AVector.Transient<Integer> t = initial.toTransient();
+            for (int i=0; i<70_000; i++) {
+                t.append(i);
+                expected.add(i);
+            }
+            assertEquals(expected.size(), t.size());
+            assertEquals(expected.get(expected.size() / 2), t.get(expected.size() / 2));
+            assertEquals(expected, t.toVector());
+            assertEquals(expected, initial.withMutations(tt -> tt.appendAll(ARange.create(0, 70_000))));
+        }
+    }
+
+    @Test void testTransientRandomOperations() {
+        final Random rand = new Random(12345);
+        for (int round=0; round<20; round++) {
+            final AVector<Integer> initial = ARange.create(0, rand.nextInt(5000)).toVector();
+            final AVector<Integer> initialCopy = AVector.from(initial);
+            final List<Integer> expected = new ArrayList<>(initial);
+
+            final AVector.Transient<Integer> t = initial.toTransient();
+            AVector<Integer> frozen = null;
+            List<Integer> frozenExpected = null;
+            for (int i=0; i<5000; i++) {
+                final int op = rand.nextInt(10);
+                if (op < 4) {
+                    t.append(i);
+                    expected.add(i);
+                }
+                else if (op < 6) {
+                    t.prepend(i);
+                    expected.add(0, i);
+                }
+                else if (op < 9) {
+                    if (expected.isEmpty()) continue;
+                    final int idx = rand.nextInt(expected.size());
+                    t.set(idx, -i);
+                    expected.set(idx, -i);
+                }
+                else {
+                    // modifications after freezing must not affect the frozen vector
+                    frozen = t.toVector();
+                    frozenExpected = new ArrayList<>(expected);
+                }
+                assertEquals(expected.size(), t.size());
+                if (! expected.isEmpty()) {
+                    final int idx = rand.nextInt(expected.size());
+                    assertEquals(expected.get(idx), t.get(idx));
+                }
+            }
+            assertEquals(expected, t.toVector());
+            assertEquals(initialCopy, initial);
+            if (frozen != null) assertEquals(frozenExpected, frozen);
+        }
+    }
+
+    @Test void testTransientCopiesArraysOnlyOnce() {
+        final AVector<Integer> initial = ARange.create(0, 32*32*32).toVector();
+        final AVector.Transient<Integer> t = initial.toTransient();
+        for (int i=0; i<32; i++) t.set(i, -i);
+        for (int i=0; i<32*32; i++) t.append(i);
+        final AVector<Integer> result = t.toVector();
+
+        // the arrays on the path to the first block are copied; appending adds 32 leaves, one branch on each of the two lower levels
+        //  and a new root because the vector's depth increases
+        final CollectionStats stats = result.stats(initial);
+        final long expectedUnsharedBytes = CollectionStats.arrayBytes(32) * (3 + 32 + 2 + 1);
+        assertEquals(expectedUnsharedBytes, stats.retainedBytes() - stats.sharedBytes());
+        assertEquals(-31, result.get(31).intValue());
+        assertEquals(31, initial.get(31).intValue());
+
+        // after freezing, the result is not modified in place
+        t.set(0, 1000).append(1000);
+        assertEquals(0, result.get(0).intValue());
+        assertEquals(32*32*32 + 32*32, result.size());
+    }
 }
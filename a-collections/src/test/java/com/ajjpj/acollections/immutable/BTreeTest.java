@@ -0,0 +1,176 @@
+package com.ajjpj.acollections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class BTreeTest {
+    private static final Comparator<Integer> ORDERING = Comparator.naturalOrder();
+
+    /**
+     * Checks that the tree is a valid B-tree with keys in ascending order, nodes of the permitted widths, all leaves at the same depth
+     *  and correct entry counts.
+     */
+    private static void checkInvariants (BTree.Node root) {
+        if (root == null) return;
+        assertTrue(root.isLeaf() ? root.width() > 0 : root.width() > 1);
+        checkInvariants(root, true, null, null);
+    }
+
+    /**
+     * @return the node's height
+     */
+    private static int checkInvariants (BTree.Node node, boolean isRoot, Integer lowerBound, Integer upperBound) {
+        assertTrue(node.width() <= BTree.MAX_WIDTH);
+        if (!isRoot) assertTrue(node.width() >= BTree.MIN_WIDTH);
+
+        if (node.isLeaf()) {
+            Integer prev = null;
+            for (Object k: node.keys) {
+                final Integer key = (Integer) k;
+                if (prev != null) assertTrue(prev < key);
+                if (lowerBound != null) assertTrue(key >= lowerBound);
+                if (upperBound != null) assertTrue(key < upperBound);
+                prev = key;
+            }
+            if (node.values != null) assertEquals(node.keys.length, node.values.length);
+            return 0;
+        }
+
+        assertEquals(node.children.length - 1, node.keys.length);
+        int height = -1;
+        int count = 0;
+        for (int i=0; i<node.children.length; i++) {
+            final Integer lower = i == 0 ? lowerBound : (Integer) node.keys[i-1];
+            final Integer upper = i == node.keys.length ? upperBound : (Integer) node.keys[i];
+            final int childHeight = checkInvariants(node.children[i], false, lower, upper);
+            if (height >= 0) assertEquals(height, childHeight);
+            height = childHeight;
+            count += node.children[i].size();
+            assertEquals(count, node.counts[i]);
+        }
+        return height + 1;
+    }
+
+    private static List<Integer> keys (BTree.Node root) {
+        final List<Integer> result = new ArrayList<>();
+        BTree.<Integer>iterator(root, 0, BTree.size(root), true, BTree.keys()).forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test void testFromSorted() {
+        for (int size=0; size<2000; size += (size < 100 ? 1 : 37)) {
+            final Object[] keys = new Object[size];
+            final Object[] values = new Object[size];
+            for (int i=0; i<size; i++) {
+                keys[i] = i;
+                values[i] = "v" + i;
+            }
+            final BTree.Node root = BTree.fromSorted(keys, values, size);
+            checkInvariants(root);
+            assertEquals(size, BTree.size(root));
+            assertEquals(Arrays.asList(keys), keys(root));
+            for (int i=0; i<size; i++) {
+                assertEquals("v" + i, BTree.getOrElse(root, i, null, ORDERING));
+            }
+        }
+    }
+
+    @Test void testUpdatedAndRemoved() {
+        final Random rand = new Random(12345);
+        final TreeMap<Integer,Integer> expected = new TreeMap<>();
+        BTree.Node root = null;
+
+        for (int i=0; i<50_000; i++) {
+            final int key = rand.nextInt(3000);
+            if (rand.nextInt(5) < 3) {
+                expected.put(key, i);
+                root = BTree.updated(root, key, i, true, ORDERING);
+            }
+            else {
+                expected.remove(key);
+                root = BTree.removed(root, key, ORDERING);
+            }
+            if (i % 500 == 0) {
+                checkInvariants(root);
+                assertEquals(new ArrayList<>(expected.keySet()), keys(root));
+            }
+        }
+        checkInvariants(root);
+        assertEquals(expected.size(), BTree.size(root));
+        for (Map.Entry<Integer,Integer> e: expected.entrySet()) {
+            assertEquals(e.getValue(), BTree.getOrElse(root, e.getKey(), null, ORDERING));
+        }
+
+        // removing everything again
+        for (Integer key: new ArrayList<>(expected.keySet())) root = BTree.removed(root, key, ORDERING);
+        assertNull(root);
+    }
+
+    @Test void testUpdatedReturnsSameTree() {
+        BTree.Node root = null;
+        final Integer value = 99;
+        for (int i=0; i<1000; i++) root = BTree.updated(root, i, value, true, ORDERING);
+        assertSame(root, BTree.updated(root, BTree.keyAt(root, 500), value, true, ORDERING));
+        assertSame(root, BTree.removed(root, 5000, ORDERING));
+    }
+
+    @Test void testAppended() {
+        BTree.Node root = null;
+        for (int i=0; i<5000; i++) {
+            root = BTree.appended(root, i, null, false);
+            if (i % 97 == 0) checkInvariants(root);
+        }
+        checkInvariants(root);
+        assertEquals(5000, BTree.size(root));
+        for (int i=0; i<5000; i++) {
+            assertTrue(BTree.contains(root, i, ORDERING));
+            assertEquals(i, BTree.<Integer>keyAt(root, i).intValue());
+        }
+    }
+
+    @Test void testSlice() {
+        final Random rand = new Random(12345);
+        for (int size: new int[] {0, 1, 31, 32, 33, 100, 1024, 1025, 5000, 40_000}) {
+            BTree.Node root = null;
+            for (int i=0; i<size; i++) root = BTree.updated(root, 2*i, null, false, ORDERING);
+
+            for (int j=0; j<200; j++) {
+                final int from = rand.nextInt(size + 10) - 5;
+                final int until = from + rand.nextInt(size + 10);
+                final BTree.Node sliced = BTree.slice(root, from, until);
+                checkInvariants(sliced);
+
+                final List<Integer> expected = new ArrayList<>();
+                for (int i=Math.max(0, from); i<Math.min(size, until); i++) expected.add(2*i);
+                assertEquals(expected, keys(sliced));
+            }
+            assertSame(root, BTree.slice(root, 0, size));
+        }
+    }
+
+    @Test void testRankAndIterators() {
+        BTree.Node root = null;
+        for (int i=0; i<3000; i++) root = BTree.updated(root, 2*i, null, false, ORDERING);
+
+        for (int key=-1; key<6000; key++) {
+            assertEquals((key+1)/2, BTree.rank(root, key, false, ORDERING));
+            assertEquals(key/2 + (key >= 0 ? 1 : 0), BTree.rank(root, key, true, ORDERING));
+        }
+
+        for (int from=0; from<3000; from += 97) {
+            final List<Integer> ascending = new ArrayList<>();
+            BTree.<Integer>iterator(root, from, 3000, true, BTree.keys()).forEachRemaining(ascending::add);
+            final List<Integer> descending = new ArrayList<>();
+            BTree.<Integer>iterator(root, 0, from, false, BTree.keys()).forEachRemaining(descending::add);
+
+            assertEquals(3000 - from, ascending.size());
+            for (int i=0; i<ascending.size(); i++) assertEquals(2*(from+i), ascending.get(i).intValue());
+            assertEquals(from, descending.size());
+            for (int i=0; i<descending.size(); i++) assertEquals(2*(from-1-i), descending.get(i).intValue());
+        }
+    }
+}
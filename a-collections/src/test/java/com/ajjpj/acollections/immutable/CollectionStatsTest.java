@@ -0,0 +1,131 @@
+package com.ajjpj.acollections.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CollectionStatsTest {
+    private static void assertConsistent(CollectionStats stats) {
+        int nodeCount = 0;
+        for (int n: stats.depthHistogram()) nodeCount += n;
+        assertEquals(stats.nodeCount(), nodeCount);
+        assertTrue(stats.retainedBytes() >= 0);
+        assertTrue(stats.sharedBytes() <= stats.retainedBytes());
+    }
+
+    @Test void testEmpty() {
+        for (CollectionStats stats: new CollectionStats[] {AHashMap.empty().stats(), AHashSet.empty().stats(), AVector.empty().stats(),
+                ATreeMap.<Integer,Integer>empty().stats(), ATreeSet.<Integer>empty().stats()}) {
+            assertEquals(0, stats.size());
+            assertEquals(0, stats.nodeCount());
+            assertEquals(-1, stats.maxDepth());
+            assertEquals(0, stats.retainedBytes());
+            assertEquals(0.0, stats.averageFanOut());
+        }
+    }
+
+    @Test void testAHashMap() {
+        AHashMap<Integer,Integer> map = AHashMap.empty();
+        for (int i=0; i<10_000; i++) map = map.plus(i, i);
+
+        final CollectionStats stats = map.stats();
+        assertConsistent(stats);
+        assertEquals(10_000, stats.size());
+        assertEquals(1, stats.depthHistogram().head().intValue());
+        assertEquals(stats.nodeCount(), stats.nodeCountsByType().get("HashTrieMap").intValue());
+        assertEquals(0, stats.collisionNodeCount());
+        assertTrue(stats.averageFanOut() > 1);
+        assertTrue(stats.retainedBytes() > 10_000 * CollectionStats.objectBytes(2, 1));
+        assertEquals(0, stats.sharedBytes());
+
+        // a modified version shares all nodes except those on the path to the modified entry
+        final CollectionStats modified = map.plus(5, 6).stats(map);
+        assertConsistent(modified);
+        assertEquals(modified.retainedBytes(), stats.retainedBytes());
+        assertTrue(modified.sharedBytes() > 0);
+        final long unsharedBytes = modified.retainedBytes() - modified.sharedBytes();
+        assertTrue(unsharedBytes > 0);
+        assertTrue(unsharedBytes < stats.retainedBytes() / 10);
+
+        assertEquals(stats.retainedBytes(), map.stats(map).sharedBytes());
+    }
+
+    @Test void testAHashMapCollisions() {
+        AHashMap<AHashSetTest.IntWithCollision,Integer> map = AHashMap.empty();
+        for (int i=0; i<10; i++) map = map.plus(new AHashSetTest.IntWithCollision(i), i);
+        map = map.plus(new AHashSetTest.IntWithCollision(-1), 0).plus(null, 1);
+
+        final CollectionStats stats = map.stats();
+        assertConsistent(stats);
+        assertEquals(12, stats.size());
+        assertEquals(1, stats.collisionNodeCount());
+        assertEquals(1, stats.nodeCountsByType().get("HashMapCollision1").intValue());
+    }
+
+    @Test void testAHashSet() {
+        final AHashSet<Integer> set = AHashSet.from(ARange.create(0, 10_000));
+        final CollectionStats stats = set.stats();
+        assertConsistent(stats);
+        assertEquals(10_000, stats.size());
+        AHashMap<Integer,Integer> map = AHashMap.empty();
+        for (int i: set) map = map.plus(i, i);
+        assertTrue(stats.retainedBytes() < map.stats().retainedBytes());
+
+        final AHashSet<Integer> modified = set.minus(17);
+        assertTrue(modified.stats(set).sharedBytes() > 0);
+        assertTrue(modified.stats(set).sharedBytes() < modified.stats().retainedBytes());
+    }
+
+    @Test void testAVector() {
+        final AVector<Integer> vector = ARange.create(0, 32*32*32 + 1).toVector();
+        final CollectionStats stats = vector.stats();
+        assertConsistent(stats);
+        assertEquals(32*32*32 + 1, stats.size());
+        assertEquals(4, stats.depthHistogram().size());
+        assertEquals(32*32 + 1, stats.nodeCountsByType().get("leaf").intValue());
+        assertEquals(1, stats.depthHistogram().head().intValue());
+        assertEquals(0, stats.collisionNodeCount());
+
+        // appending copies only the arrays on the path to the new element
+        final AVector<Integer> appended = vector.append(1);
+        final CollectionStats appendedStats = appended.stats(vector);
+        assertConsistent(appendedStats);
+        assertTrue(appendedStats.sharedBytes() > stats.retainedBytes() * 9 / 10);
+
+        // a slice retains most of the original vector's arrays
+        assertTrue(vector.drop(100).stats(vector).sharedBytes() > stats.retainedBytes() * 9 / 10);
+
+        // updates may leave a vector 'dirty', i.e. with displays that are not linked from their parents yet
+        final AVector<Integer> updated = vector.updated(1000, -1);
+        final CollectionStats updatedStats = updated.stats(vector);
+        assertConsistent(updatedStats);
+        assertEquals(stats.nodeCount(), updatedStats.nodeCount());
+        assertEquals(stats.retainedBytes(), updatedStats.retainedBytes());
+    }
+
+    @Test void testATreeMap() {
+        ATreeMap<Integer,Integer> map = ATreeMap.empty();
+        for (int i=0; i<10_000; i++) map = map.plus(i, i);
+
+        final CollectionStats stats = map.stats();
+        assertConsistent(stats);
+        assertEquals(10_000, stats.nodeCount());
+        assertEquals(10_000, stats.nodeCountsByType().values().stream().mapToInt(i -> i).sum());
+        assertTrue(stats.maxDepth() <= 2 * 14);
+        assertEquals(10_000 * CollectionStats.objectBytes(4, 1), stats.retainedBytes());
+        assertEquals((2.0 * 10_000 - 1) / 10_000, stats.averageFanOut(), 1e-9);
+
+        final CollectionStats modified = map.minus(1234).stats(map);
+        assertConsistent(modified);
+        assertTrue(modified.sharedBytes() > modified.retainedBytes() * 9 / 10);
+    }
+
+    @Test void testATreeSet() {
+        final ATreeSet<Integer> set = ATreeSet.from(ARange.create(0, 1000));
+        final CollectionStats stats = set.stats();
+        assertConsistent(stats);
+        assertEquals(1000, stats.nodeCount());
+        assertEquals(stats.retainedBytes(), set.stats(set).sharedBytes());
+    }
+}
@@ -0,0 +1,265 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.util.AOption;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class RedBlackTreeTest {
+    /**
+     * @return the tree's black height, after checking that the tree is a valid red-black tree with keys in ascending order
+     */
+    private static int checkInvariants (RedBlackTree.Tree<Integer, ?> tree, Integer lowerBound, Integer upperBound) {
+        if (tree == null) return 0;
+        if (lowerBound != null) assertTrue(tree.key > lowerBound);
+        if (upperBound != null) assertTrue(tree.key < upperBound);
+        if (tree instanceof RedBlackTree.RedTree) {
+            assertFalse(tree.left instanceof RedBlackTree.RedTree);
+            assertFalse(tree.right instanceof RedBlackTree.RedTree);
+        }
+        final int leftHeight = checkInvariants(tree.left, lowerBound, tree.key);
+        final int rightHeight = checkInvariants(tree.right, tree.key, upperBound);
+        assertEquals(leftHeight, rightHeight);
+        assertEquals(1 + RedBlackTree.count(tree.left) + RedBlackTree.count(tree.right), tree.count);
+        return leftHeight + (tree instanceof RedBlackTree.BlackTree ? 1 : 0);
+    }
+
+    private static List<Integer> keys (RedBlackTree.Tree<Integer, ?> tree) {
+        final List<Integer> result = new ArrayList<>();
+        RedBlackTree.keysIterator(tree, AOption.none(), true, AOption.none(), false, Comparator.<Integer>naturalOrder())
+                .forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test void testFromSorted() {
+        for (int size=0; size<300; size++) {
+            final Object[] keys = new Object[size];
+            final Object[] values = new Object[size];
+            for (int i=0; i<size; i++) {
+                keys[i] = i;
+                values[i] = "v" + i;
+            }
+            final RedBlackTree.Tree<Integer, String> tree = RedBlackTree.fromSorted(keys, values, size);
+            assertFalse(tree instanceof RedBlackTree.RedTree);
+            checkInvariants(tree, null, null);
+            assertEquals(size, RedBlackTree.count(tree));
+            assertEquals(Arrays.asList(keys), keys(tree));
+            for (int i=0; i<size; i++) {
+                assertEquals("v" + i, RedBlackTree.get(tree, i, Comparator.naturalOrder()).get());
+            }
+        }
+    }
+
+    @Test void testAppend() {
+        RedBlackTree.Tree<Integer, Object> tree = null;
+        final List<Integer> expected = new ArrayList<>();
+        for (int i=0; i<2000; i++) {
+            tree = RedBlackTree.append(tree, i, null);
+            expected.add(i);
+            assertFalse(tree instanceof RedBlackTree.RedTree);
+            checkInvariants(tree, null, null);
+        }
+        assertEquals(expected, keys(tree));
+    }
+
+    @Test void testBuilder() {
+        final Random rand = new Random(12345);
+        for (int size: new int[] {0, 1, 2, 3, 10, 100, 5000}) {
+            final RedBlackTree.Builder<Integer, Integer> sortedBuilder = new RedBlackTree.Builder<>(Comparator.naturalOrder(), true);
+            final RedBlackTree.Builder<Integer, Integer> randomBuilder = new RedBlackTree.Builder<>(Comparator.naturalOrder(), true);
+            final RedBlackTree.Builder<Integer, Object> setBuilder = new RedBlackTree.Builder<>(Comparator.naturalOrder(), false);
+            final TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i=0; i<size; i++) {
+                sortedBuilder.add(i, i);
+                sortedBuilder.add(i, -i); // duplicates in a sorted run: last one wins
+                final int key = rand.nextInt(size);
+                randomBuilder.add(key, i);
+                setBuilder.add(key, null);
+                expected.put(key, i);
+            }
+
+            final RedBlackTree.Tree<Integer, Integer> sorted = sortedBuilder.build();
+            checkInvariants(sorted, null, null);
+            assertEquals(size, RedBlackTree.count(sorted));
+            for (int i=0; i<size; i++) assertEquals(-i, RedBlackTree.get(sorted, i, Comparator.naturalOrder()).get().intValue());
+
+            final RedBlackTree.Tree<Integer, Integer> random = randomBuilder.build();
+            checkInvariants(random, null, null);
+            assertEquals(new ArrayList<>(expected.keySet()), keys(random));
+            for (Map.Entry<Integer, Integer> e: expected.entrySet()) {
+                assertEquals(e.getValue(), RedBlackTree.get(random, e.getKey(), Comparator.naturalOrder()).get());
+            }
+
+            final RedBlackTree.Tree<Integer, Object> set = setBuilder.build();
+            checkInvariants(set, null, null);
+            assertEquals(new ArrayList<>(expected.keySet()), keys(set));
+        }
+    }
+
+    private static RedBlackTree.Tree<Integer, String> randomTree (Random rand, int size, int maxKey, String valuePrefix, TreeMap<Integer, String> expected) {
+        RedBlackTree.Tree<Integer, String> result = null;
+        for (int i=0; i<size; i++) {
+            final int key = rand.nextInt(maxKey);
+            result = RedBlackTree.update(result, key, valuePrefix + key, true, Comparator.naturalOrder());
+            expected.put(key, valuePrefix + key);
+        }
+        return result;
+    }
+
+    private static void assertTree (TreeMap<Integer, String> expected, RedBlackTree.Tree<Integer, String> tree) {
+        assertFalse(tree instanceof RedBlackTree.RedTree);
+        checkInvariants(tree, null, null);
+        assertEquals(new ArrayList<>(expected.keySet()), keys(tree));
+        for (Map.Entry<Integer, String> e: expected.entrySet()) {
+            assertEquals(e.getValue(), RedBlackTree.get(tree, e.getKey(), Comparator.naturalOrder()).get());
+        }
+    }
+
+    @Test void testSetOperations() {
+        final Random rand = new Random(98765);
+        final int[] sizes = {0, 1, 2, 5, 30, 200, 3000};
+        for (int size1: sizes) {
+            for (int size2: sizes) {
+                for (int maxKey: new int[] {10, 1000, 100_000}) {
+                    final TreeMap<Integer, String> m1 = new TreeMap<>();
+                    final TreeMap<Integer, String> m2 = new TreeMap<>();
+                    final RedBlackTree.Tree<Integer, String> t1 = randomTree(rand, size1, maxKey, "a", m1);
+                    final RedBlackTree.Tree<Integer, String> t2 = randomTree(rand, size2, maxKey, "b", m2);
+
+                    final TreeMap<Integer, String> union = new TreeMap<>(m1);
+                    union.putAll(m2);
+                    assertTree(union, RedBlackTree.union(t1, t2, null, Comparator.naturalOrder()));
+
+                    final TreeMap<Integer, String> merged = new TreeMap<>(m1);
+                    m2.forEach((k, v) -> merged.merge(k, v, String::concat));
+                    assertTree(merged, RedBlackTree.union(t1, t2, String::concat, Comparator.naturalOrder()));
+
+                    final TreeMap<Integer, String> intersection = new TreeMap<>(m1);
+                    intersection.keySet().retainAll(m2.keySet());
+                    assertTree(intersection, RedBlackTree.intersect(t1, t2, Comparator.naturalOrder()));
+
+                    final TreeMap<Integer, String> diff = new TreeMap<>(m1);
+                    diff.keySet().removeAll(m2.keySet());
+                    assertTree(diff, RedBlackTree.diff(t1, t2, Comparator.naturalOrder()));
+                }
+            }
+        }
+    }
+
+    @Test void testTakeDropSlice() {
+        final Random rand = new Random(1);
+        for (int size=1; size<150; size++) {
+            final TreeMap<Integer, String> m = new TreeMap<>();
+            final RedBlackTree.Tree<Integer, String> t = randomTree(rand, size, 1000, "a", m);
+            final List<Integer> keys = new ArrayList<>(m.keySet());
+            for (int n=0; n<=keys.size(); n++) {
+                final RedBlackTree.Tree<Integer, String> taken = RedBlackTree.take(t, n);
+                final RedBlackTree.Tree<Integer, String> dropped = RedBlackTree.drop(t, n);
+                final RedBlackTree.Tree<Integer, String> sliced = RedBlackTree.slice(t, n/2, n);
+                checkInvariants(taken, null, null);
+                checkInvariants(dropped, null, null);
+                checkInvariants(sliced, null, null);
+                assertEquals(keys.subList(0, n), keys(taken));
+                assertEquals(keys.subList(n, keys.size()), keys(dropped));
+                assertEquals(keys.subList(n/2, n), keys(sliced));
+            }
+        }
+    }
+
+    @Test void testSetOperationsReuseSubtrees() {
+        final Object[] keys = new Object[1000];
+        for (int i=0; i<keys.length; i++) keys[i] = 2*i;
+        final RedBlackTree.Tree<Integer, Object> big = RedBlackTree.fromSorted(keys, null, keys.length);
+        final RedBlackTree.Tree<Integer, Object> small = RedBlackTree.fromSorted(new Object[] {1001}, null, 1);
+
+        assertSame(big, RedBlackTree.union(big, null, null, Comparator.naturalOrder()));
+        assertSame(big, RedBlackTree.diff(big, null, Comparator.naturalOrder()));
+
+        // adding a single key copies only the nodes along a few paths, the rest of the tree is shared
+        final RedBlackTree.Tree<Integer, Object> union = RedBlackTree.union(big, small, null, Comparator.naturalOrder());
+        assertEquals(1001, RedBlackTree.count(union));
+        final Set<RedBlackTree.Tree<?,?>> bigNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        collectNodes(big, bigNodes);
+        final Set<RedBlackTree.Tree<?,?>> unionNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        collectNodes(union, unionNodes);
+        unionNodes.removeAll(bigNodes);
+        assertTrue(unionNodes.size() < 100, "" + unionNodes.size());
+    }
+
+    @Test void testIteratorsWithRanges() {
+        final Random rand = new Random(12345);
+        final Comparator<Integer> ordering = Comparator.naturalOrder();
+        for (int size: new int[] {0, 1, 2, 3, 10, 100, 5000}) {
+            // ascending insertion gives trees with long red-black paths
+            RedBlackTree.Tree<Integer, Integer> tree = null;
+            final TreeMap<Integer, Integer> expected = new TreeMap<>();
+            for (int i=0; i<size; i++) {
+                tree = RedBlackTree.update(tree, 2*i, i, true, ordering);
+                expected.put(2*i, i);
+            }
+
+            for (int j=0; j<50; j++) {
+                final int from = rand.nextInt(2*size + 3) - 1;
+                final int to = from + rand.nextInt(2*size + 3);
+
+                final List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+                RedBlackTree.iterator(tree, AOption.some(from), true, AOption.some(to), false, ordering).forEachRemaining(entries::add);
+                assertEquals(new ArrayList<>(expected.subMap(from, true, to, false).entrySet()), entries);
+
+                final List<Integer> keys = new ArrayList<>();
+                RedBlackTree.keysIterator(tree, AOption.some(from), false, AOption.some(to), true, ordering).forEachRemaining(keys::add);
+                assertEquals(new ArrayList<>(expected.subMap(from, false, to, true).keySet()), keys);
+
+                final List<Integer> reverseKeys = new ArrayList<>();
+                RedBlackTree.reverseKeysIterator(tree, AOption.some(to), true, AOption.none(), false, ordering).forEachRemaining(reverseKeys::add);
+                assertEquals(new ArrayList<>(expected.headMap(to, true).descendingKeySet()), reverseKeys);
+            }
+
+            final List<Integer> values = new ArrayList<>();
+            RedBlackTree.spliterator(tree, ordering).forEachRemaining(e -> values.add(e.getValue()));
+            assertEquals(new ArrayList<>(expected.values()), values);
+        }
+    }
+
+    @Test void testMirrored() {
+        final Random rand = new Random(4711);
+        for (int size: new int[] {0, 1, 2, 3, 10, 100, 3000}) {
+            final TreeMap<Integer, String> expected = new TreeMap<>();
+            final RedBlackTree.Tree<Integer, String> tree = randomTree(rand, size, 10_000, "v", expected);
+            final RedBlackTree.Tree<Integer, String> mirrored = RedBlackTree.mirrored(tree);
+
+            final List<Integer> descendingKeys = new ArrayList<>();
+            RedBlackTree.keysIterator(mirrored, AOption.none(), true, AOption.none(), false, Comparator.<Integer>reverseOrder())
+                    .forEachRemaining(descendingKeys::add);
+            assertEquals(new ArrayList<>(expected.descendingKeySet()), descendingKeys);
+            for (Map.Entry<Integer, String> e: expected.entrySet()) {
+                assertEquals(e.getValue(), RedBlackTree.get(mirrored, e.getKey(), Comparator.reverseOrder()).get());
+            }
+            // mirroring twice gives back the original shape, so the invariants can be checked in ascending order
+            assertTree(expected, RedBlackTree.mirrored(mirrored));
+        }
+    }
+
+    @Test void testEntriesAreNotTreeNodes() {
+        // an entry that references a tree node would keep the node's entire subtree alive
+        final ATreeMap<Integer, String> map = ATreeMap.of(1, "a", 2, "b", 3, "c");
+        final List<Map.Entry<Integer, String>> entries = Arrays.asList(map.smallest().get(), map.greatest().get(), map.entryAtRank(1),
+                map.firstEntry(), map.lastEntry(), map.floorEntry(2), map.iterator().next(), map.tailMap(1).descendingMap().iterator().next(),
+                StreamSupport.stream(map.spliterator(), false).findFirst().get());
+        for (Map.Entry<Integer, String> e: entries) {
+            assertEquals(AbstractMap.SimpleImmutableEntry.class, e.getClass());
+        }
+        assertEquals(new AbstractMap.SimpleImmutableEntry<>(2, "b"), map.entryAtRank(1));
+    }
+
+    private static void collectNodes (RedBlackTree.Tree<?, ?> tree, Set<RedBlackTree.Tree<?,?>> result) {
+        if (tree == null) return;
+        result.add(tree);
+        collectNodes(tree.left, result);
+        collectNodes(tree.right, result);
+    }
+}
@@ -0,0 +1,170 @@
+package com.ajjpj.acollections.immutable;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.ASortedMap;
+import com.ajjpj.acollections.ASortedMapTests;
+import com.ajjpj.acollections.ASortedSet;
+import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.internal.AMapSupport;
+import com.ajjpj.acollections.util.AOption;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TreeMapViewTest implements ASortedMapTests {
+    @Override public Iterable<Variant> variants () {
+        // the views leave out entries for the smallest and greatest Integer which the underlying maps contain
+        return Arrays.asList(
+                new Variant(TreeMapView.class, true, () -> new ViewBuilder(m -> m.subMap(Integer.MIN_VALUE, false, Integer.MAX_VALUE, false)), AVector.of(1, 2, 3)),
+                new Variant(TreeMapView.class, true, () -> new ViewBuilder(m -> m.headMap(Integer.MAX_VALUE).tailMap(Integer.MIN_VALUE, false)), AVector.of(1, 2, 3)),
+                new Variant(TreeMapView.class, true, () -> new ViewBuilder(m -> descendingView(m).tailMap(Integer.MAX_VALUE, false).headMap(Integer.MIN_VALUE, false)), AVector.of(3, 2, 1))
+        );
+    }
+
+    private static class ViewBuilder implements ACollectionBuilder<Map.Entry<Integer,Integer>, ASortedMap<Integer,Integer>> {
+        private final ATreeMap.Builder<Integer,Integer> builder = ATreeMap.builder(Comparator.<Integer>naturalOrder());
+        private final Function<ATreeMap<Integer,Integer>, ASortedMap<Integer,Integer>> view;
+
+        ViewBuilder (Function<ATreeMap<Integer,Integer>, ASortedMap<Integer,Integer>> view) {
+            this.view = view;
+        }
+
+        @Override public ViewBuilder add (Map.Entry<Integer, Integer> el) {
+            builder.add(el);
+            return this;
+        }
+
+        @Override public ASortedMap<Integer, Integer> build () {
+            return view.apply(builder.add(Integer.MIN_VALUE, 0).add(Integer.MAX_VALUE, 0).build());
+        }
+    }
+
+    @Override @Test public void testStaticFactories() {
+        // nothing to be done - no static factories
+    }
+
+    @Override @Test public void testJacksonFromJson () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override @Test public void testComparator() {
+        final ATreeMap<Integer,Integer> map = ATreeMap.of(1, 1, 2, 2);
+        assertTrue(map.tailMap(1).comparator().compare(1, 2) < 0);
+        assertTrue(map.descendingMap().comparator().compare(1, 2) > 0);
+        assertTrue(descendingView(map).comparator().compare(1, 2) > 0);
+        assertTrue(descendingView(map).headMap(1).comparator().compare(1, 2) > 0);
+        assertTrue(descendingView(map).headMap(1).descendingMap().comparator().compare(1, 2) < 0);
+    }
+
+    @Override @Test public void testSerDeser () {
+        doTest(v -> {
+            assertEquals(v.mkMap(), TestHelpers.serDeser(v.mkMap()));
+            assertEquals(v.mkMap(1), TestHelpers.serDeser(v.mkMap(1)));
+            assertEquals(v.mkMap(1, 2, 3), TestHelpers.serDeser(v.mkMap(1, 2, 3)));
+            assertEquals(v.mkSortedMap(1, 2, 3).keySet().toVector(), TestHelpers.serDeser(v.mkSortedMap(1, 2, 3)).keySet().toVector());
+        });
+    }
+
+    @Test void testViewsMatchTreeMap() {
+        final Random rand = new Random(12345);
+        final TreeMap<Integer,Integer> expected = new TreeMap<>();
+        ATreeMap<Integer,Integer> map = ATreeMap.empty();
+        for (int i=0; i<2000; i++) {
+            final int key = rand.nextInt(4000);
+            expected.put(key, i);
+            map = map.plus(key, i);
+        }
+
+        for (int i=0; i<300; i++) {
+            final int from = rand.nextInt(4200) - 100;
+            final int to = from + rand.nextInt(4200 - from);
+            final boolean fromInclusive = rand.nextBoolean();
+            final boolean toInclusive = rand.nextBoolean();
+
+            checkSame(expected.subMap(from, fromInclusive, to, toInclusive), map.subMap(from, fromInclusive, to, toInclusive));
+            checkSame(expected.headMap(to, toInclusive), map.headMap(to, toInclusive));
+            checkSame(expected.tailMap(from, fromInclusive), map.tailMap(from, fromInclusive));
+            checkSame(expected.descendingMap().subMap(to, toInclusive, from, fromInclusive), descendingView(map).subMap(to, toInclusive, from, fromInclusive));
+            checkSame(expected.subMap(from, fromInclusive, to, toInclusive).descendingMap(), map.subMap(from, fromInclusive, to, toInclusive).descendingMap());
+            if (from != to) // java.util.TreeMap rejects an inclusive bound at an excluded key
+                checkSame(expected.tailMap(from, fromInclusive).headMap(to, toInclusive), map.tailMap(from, fromInclusive).headMap(to, toInclusive));
+        }
+    }
+
+    private static void checkSame (NavigableMap<Integer,Integer> expected, ASortedMap<Integer,Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(new ArrayList<>(expected.entrySet()), actual.toVector());
+        assertEquals(new ArrayList<>(expected.keySet()), actual.keySet().toVector());
+        assertEquals(new ArrayList<>(expected.values()), actual.values().toVector());
+        assertEquals(expected.firstEntry(), actual.firstEntry());
+        assertEquals(expected.lastEntry(), actual.lastEntry());
+
+        int index = 0;
+        for (Integer key: expected.keySet()) {
+            assertEquals(key, actual.getByIndex(index));
+            assertEquals(index, actual.indexOf(key));
+            index += 1;
+        }
+        for (int k=-10; k<4010; k += 37) {
+            final Integer key = k;
+            assertEquals(expected.get(key), actual.get(key));
+            assertEquals(expected.containsKey(key), actual.containsKey(key));
+            if (!expected.containsKey(key)) assertEquals(-1, actual.indexOf(key));
+            assertEquals(expected.lowerEntry(key), actual.lowerEntry(key));
+            assertEquals(expected.floorEntry(key), actual.floorEntry(key));
+            assertEquals(expected.ceilingEntry(key), actual.ceilingEntry(key));
+            assertEquals(expected.higherEntry(key), actual.higherEntry(key));
+            assertEquals(expected.keySet().stream().filter(x -> actual.comparator().compare(x, key) >= 0).count(),
+                    actual.countInRange(AOption.some(key), true, AOption.none(), false));
+        }
+    }
+
+    @Test void testPlusAndMinusMaterialize() {
+        final ATreeMap<Integer,Integer> map = ATreeMap.of(1, 1, 2, 2, 3, 3, 4, 4);
+
+        final ATreeMap<Integer,Integer> tail = (ATreeMap<Integer,Integer>) map.tailMap(3).plus(0, 0);
+        assertEquals(AVector.of(0, 3, 4), tail.keySet().toVector());
+
+        final ATreeMap<Integer,Integer> descending = (ATreeMap<Integer,Integer>) descendingView(map).minus(2);
+        assertEquals(AVector.of(4, 3, 1), descending.keySet().toVector());
+        assertTrue(descending.comparator().compare(1, 2) > 0);
+
+        assertSame(map, descendingView(map).descendingMap());
+    }
+
+    @Test void testDescendingMapAndSetViews() {
+        final ATreeMap<Integer,Integer> map = ATreeMap.of(1, 1, 2, 2, 3, 3);
+        final ATreeMap<Integer,Integer> descending = map.descendingMap();
+        assertEquals(AVector.of(3, 2, 1), descending.keySet().toVector());
+        assertEquals(AVector.of(3, 2), descending.headMap(1).keySet().toVector());
+        assertEquals(AVector.of(1, 2, 3), descending.descendingMap().keySet().toVector());
+        assertEquals(AVector.of(3, 2, 1), map.descendingKeySet().toVector());
+
+        final ATreeSet<Integer> set = ATreeSet.of(1, 2, 3, 4);
+        assertEquals(AVector.of(2, 3), set.subSet(2, 4).toVector());
+        assertEquals(set.range(AOption.some(2), true, AOption.some(4), false), set.subSet(2, true, 4, false));
+        assertEquals(AVector.of(1, 2), set.headSet(3).toVector());
+        assertEquals(AVector.of(1, 2, 3), set.headSet(3, true).toVector());
+        assertEquals(AVector.of(3, 4), set.tailSet(3).toVector());
+        assertEquals(AVector.of(4), set.tailSet(3, false).toVector());
+        assertEquals(AVector.of(4, 3, 2, 1), set.descendingSet().toVector());
+        assertEquals(AVector.of(3, 2), set.subSet(1, false, 4, false).descendingSet().toVector());
+        assertEquals(3, set.subSet(1, true, 4, false).size());
+        assertEquals(ATreeSet.of(0, 2, 3), set.subSet(2, 4).plus(0));
+
+        for (ASortedSet<Integer> view: Arrays.asList(set.subSet(2, 4), set.headSet(3), set.tailSet(3), set.subSet(2, true, 4, true),
+                set.headSet(3, true), set.tailSet(3, false), set.descendingSet())) {
+            assertEquals(AMapSupport.SortedKeySet.class, view.getClass());
+            assertEquals(TreeMapView.class, ((AMapSupport.SortedKeySet<?>) view).getMap().getClass());
+        }
+    }
+
+    private static ASortedMap<Integer,Integer> descendingView (ATreeMap<Integer,Integer> map) {
+        return new TreeMapView<>(map, AOption.none(), true, AOption.none(), false, true);
+    }
+}
@@ -0,0 +1,102 @@
+package com.ajjpj.acollections.internal;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AListTests;
+import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.immutable.ALinkedList;
+import com.ajjpj.acollections.immutable.ARange;
+import com.ajjpj.acollections.immutable.AVector;
+import com.ajjpj.acollections.mutable.AMutableListWrapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ConcatViewTest implements AListTests {
+    @Override @Test public void testStaticFactories() {
+        // nothing to be done - no static factories
+    }
+
+    @Override public void testJacksonFromJson () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override public void testJacksonFromJsonSingleValue () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override @Test public void testSerDeser () {
+        doTest(v -> {
+            assertEquals(v.mkList(), TestHelpers.serDeser(v.mkList()));
+            assertEquals(v.mkList(1), TestHelpers.serDeser(v.mkList(1)));
+            assertEquals(v.mkList(1, 2, 3), TestHelpers.serDeser(v.mkList(1, 2, 3)));
+            assertEquals(AVector.class, TestHelpers.serDeser(v.mkList(1, 2, 3)).getClass());
+        });
+    }
+
+    @Test void testConcatenatedViews() {
+        final AList<Integer> l = ARange.create(0, 1000).concat(ALinkedList.from(ARange.create(1000, 2000)));
+        assertEquals(AListSupport.ConcatView.class, l.getClass());
+        assertEquals(ARange.create(0, 2000), l);
+        assertEquals(ARange.create(1999, -1), l.reverseIterator().toVector());
+        assertEquals(1500, l.get(1500).intValue());
+
+        // slices within one of the two lists do not refer to the concatenation
+        assertEquals(ARange.create(10, 20), l.slice(10, 20));
+        assertEquals(AListSupport.SliceView.class, l.slice(10, 20).getClass());
+        assertSame(l, l.slice(-1, 2000));
+        assertEquals(ARange.create(995, 1005), l.subList(995, 1005));
+        assertEquals(AListSupport.SliceView.class, l.subList(995, 1005).getClass());
+    }
+
+    @Test void testDeeplyNestedViewsAreMaterialized() {
+        AList<Integer> l = ARange.create(0, 10);
+        for (int i=1; i<100; i++) {
+            l = l.concat(ARange.create(10*i, 10*i+10));
+        }
+        assertEquals(ARange.create(0, 1000), l);
+        assertEquals(ARange.create(0, 1000).toVector(), l.toVector());
+    }
+
+    @Test void testLinkedListsAreNotConcatenatedLazily() {
+        final ALinkedList<Integer> l = ALinkedList.of(1, 2).concat(ARange.create(3, 5));
+        assertEquals(AVector.of(1, 2, 3, 4), l);
+        assertEquals(AVector.of(0, 1, 2, 3, 4), l.prepend(0));
+        assertSame(l, l.prepend(0).tail());
+    }
+
+    @Test void testMutableListsAreNotConcatenatedLazily() {
+        final List<Integer> inner = new ArrayList<>(Arrays.asList(3, 4));
+        final AList<Integer> l = ARange.create(1, 3).concat(AMutableListWrapper.wrap(inner));
+        inner.set(0, 99);
+        assertEquals(AVector.of(1, 2, 3, 4), l);
+    }
+
+    /**
+     * creates views by concatenating the first half of the elements with the second half
+     */
+    private static class ConcatViewBuilder implements ACollectionBuilder<Integer, AList<Integer>> {
+        private final List<Integer> elements = new ArrayList<>();
+
+        @Override public ACollectionBuilder<Integer, AList<Integer>> add (Integer el) {
+            elements.add(el);
+            return this;
+        }
+
+        @Override public AList<Integer> build () {
+            final int half = elements.size() / 2;
+            return AListSupport.concat(AVector.from(elements.subList(0, half)), AVector.from(elements.subList(half, elements.size())));
+        }
+    }
+
+    @Override public Iterable<Variant> variants () {
+        return Arrays.asList(
+                new Variant(AListSupport.ConcatView.class, ConcatViewBuilder::new, AVector.of(1, 2, 3))
+        );
+    }
+}
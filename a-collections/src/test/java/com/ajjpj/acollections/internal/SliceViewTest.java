@@ -0,0 +1,99 @@
+package com.ajjpj.acollections.internal;
+
+import com.ajjpj.acollections.ACollectionBuilder;
+import com.ajjpj.acollections.AList;
+import com.ajjpj.acollections.AListTests;
+import com.ajjpj.acollections.TestHelpers;
+import com.ajjpj.acollections.immutable.ALinkedList;
+import com.ajjpj.acollections.immutable.ARange;
+import com.ajjpj.acollections.immutable.AVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class SliceViewTest implements AListTests {
+    @Override @Test public void testStaticFactories() {
+        // nothing to be done - no static factories
+    }
+
+    @Override public void testJacksonFromJson () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override public void testJacksonFromJsonSingleValue () {
+        // nothing to be done - can not be deserialized from JSON
+    }
+
+    @Override @Test public void testSerDeser () {
+        doTest(v -> {
+            assertEquals(v.mkList(), TestHelpers.serDeser(v.mkList()));
+            assertEquals(v.mkList(1), TestHelpers.serDeser(v.mkList(1)));
+            assertEquals(v.mkList(1, 2, 3), TestHelpers.serDeser(v.mkList(1, 2, 3)));
+            assertEquals(AVector.class, TestHelpers.serDeser(v.mkList(1, 2, 3)).getClass());
+        });
+    }
+
+    @Test void testViewsAreNotCopied() {
+        final AVector<Integer> v = AVector.from(ARange.create(0, 100_000));
+        final AList<Integer> page = v.subList(50_000, 50_100);
+        assertEquals(AListSupport.SliceView.class, page.getClass());
+        assertEquals(ARange.create(50_000, 50_100), page);
+
+        final AList<Integer> nested = page.subList(10, 20).drop(2).take(5);
+        assertEquals(AListSupport.SliceView.class, nested.getClass());
+        assertEquals(ARange.create(50_012, 50_017), nested);
+        assertEquals(AVector.of(50_016, 50_015, 50_014, 50_013, 50_012), nested.reverseIterator().toVector());
+
+        // structural changes materialize the view
+        assertEquals(AVector.of(50_012, 50_013, 50_014, 50_015, 50_016, -1), nested.append(-1));
+        assertEquals(AVector.class, nested.append(-1).getClass());
+        assertEquals(AVector.of(50_012, -1, 50_014, 50_015, 50_016), nested.updated(1, -1));
+    }
+
+    @Test void testViewOnLinkedList() {
+        final ALinkedList<Integer> l = ALinkedList.from(ARange.create(0, 1000));
+        final AList<Integer> view = AListSupport.subList(l, 100, 200);
+        assertEquals(AListSupport.SliceView.class, view.getClass());
+        assertEquals(ARange.create(100, 200), view);
+        assertEquals(ARange.create(199, 99), view.reverseIterator().toVector());
+        assertEquals(150, view.get(50).intValue());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> AListSupport.subList(l, 999, 1001));
+    }
+
+    /**
+     * creates views on lists with additional elements before and after the view's range
+     */
+    private static class SliceViewBuilder implements ACollectionBuilder<Integer, AList<Integer>> {
+        private final Function<List<Integer>, AList<Integer>> listFactory;
+        private final List<Integer> elements = new ArrayList<>(Arrays.asList(-1, -2));
+
+        SliceViewBuilder (Function<List<Integer>, AList<Integer>> listFactory) {
+            this.listFactory = listFactory;
+        }
+
+        @Override public ACollectionBuilder<Integer, AList<Integer>> add (Integer el) {
+            elements.add(el);
+            return this;
+        }
+
+        @Override public AList<Integer> build () {
+            final int size = elements.size() - 2;
+            elements.add(-3);
+            return AListSupport.subList(listFactory.apply(elements), 2, 2 + size);
+        }
+    }
+
+    @Override public Iterable<Variant> variants () {
+        return Arrays.asList(
+                new Variant(AListSupport.SliceView.class, () -> new SliceViewBuilder(AVector::from), AVector.of(1, 2, 3)),
+                new Variant(AListSupport.SliceView.class, () -> new SliceViewBuilder(ALinkedList::from), AVector.of(1, 2, 3))
+        );
+    }
+}
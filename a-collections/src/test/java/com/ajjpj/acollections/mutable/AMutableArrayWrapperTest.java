@@ -55,4 +55,18 @@ public class AMutableArrayWrapperTest implements AListTests {
         assertEquals(ARange.create(0, 100000).toVector(), ARange.create(0, 100000).parallelStream().collect(AMutableArrayWrapper.streamCollector()));
 
     }
+
+    @Test void testSubListWritesThrough() {
+        final Integer[] arr = {1, 2, 3, 4, 5};
+        final AMutableArrayWrapper<Integer> l = AMutableArrayWrapper.wrap(arr);
+        final AMutableListWrapper<Integer> view = l.subList(1, 4);
+        assertEquals(AVector.of(2, 3, 4), view);
+
+        l.set(2, 99);
+        assertEquals(AVector.of(2, 99, 4), view);
+
+        view.set(0, 42);
+        assertEquals(AVector.of(1, 42, 99, 4, 5), l);
+        assertEquals(42, arr[1].intValue());
+    }
 }